@@ -0,0 +1,203 @@
+package ecologylab.serialization.benchmarks;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.formatenums.StringFormat;
+import ecologylab.serialization.library.apple.PList;
+import ecologylab.serialization.library.apple.PListTranslations;
+import ecologylab.serialization.library.endnote.EndnoteNameSpace;
+import ecologylab.serialization.library.endnote.XmlState;
+import ecologylab.serialization.library.geom.Point2DDoubleState;
+import ecologylab.serialization.library.geom.PolygonState;
+import ecologylab.serialization.library.jnlp.JnlpState;
+import ecologylab.serialization.library.jnlp.JnlpTranslations;
+import ecologylab.serialization.library.rss.RssState;
+import ecologylab.serialization.library.rss.RssTranslations;
+
+/**
+ * The object models from serialization/library that the format benchmarks run over. Each one makes
+ * an XML document with size repetitions of its repeated part, which is deserialized once to get
+ * the object graph to benchmark with.
+ */
+public enum BenchmarkModel
+{
+	RSS
+	{
+		@Override
+		public SimplTypesScope scope()
+		{
+			return RssTranslations.get();
+		}
+
+		@Override
+		public Class<?> rootClass()
+		{
+			return RssState.class;
+		}
+
+		@Override
+		void appendDocument(StringBuilder xml, int size)
+		{
+			xml.append("<rss version=\"2.0\"><channel><title>ecologylab news</title>");
+			xml.append("<description>Items for the benchmarks &amp; tests</description>");
+			xml.append("<link>http://ecologylab.net/news</link>");
+			for (int i = 0; i < size; i++)
+			{
+				xml.append("<item><title>Item ").append(i).append("</title>");
+				xml.append("<description>The description of item ").append(i);
+				xml.append(", with &lt;markup&gt; to escape</description>");
+				xml.append("<link>http://ecologylab.net/news/").append(i).append("</link>");
+				xml.append("<guid>http://ecologylab.net/guid/").append(i).append("</guid>");
+				xml.append("<author>author").append(i % 7).append("@ecologylab.net</author></item>");
+			}
+			xml.append("</channel></rss>");
+		}
+	},
+
+	ENDNOTE
+	{
+		@Override
+		public SimplTypesScope scope()
+		{
+			return EndnoteNameSpace.get();
+		}
+
+		@Override
+		public Class<?> rootClass()
+		{
+			return XmlState.class;
+		}
+
+		@Override
+		void appendDocument(StringBuilder xml, int size)
+		{
+			xml.append("<xml><records>");
+			for (int i = 0; i < size; i++)
+			{
+				xml.append("<Record><contributors>");
+				xml.append("<Author>Author, First ").append(i).append("</Author>");
+				xml.append("<Author>Author, Second ").append(i).append("</Author>");
+				xml.append("</contributors>");
+				xml.append("<titles><title>A study of ").append(i).append("</title></titles>");
+				xml.append("<volume>").append(i % 40).append("</volume>");
+				xml.append("<number>").append(i % 12).append("</number>");
+				xml.append("<pages>").append(i).append('-').append(i + 10).append("</pages>");
+				xml.append("<publisher>ACM</publisher><isbn>978-0-").append(i).append("</isbn>");
+				xml.append("<label>label").append(i).append("</label></Record>");
+			}
+			xml.append("</records></xml>");
+		}
+	},
+
+	GEOM
+	{
+		@Override
+		public SimplTypesScope scope()
+		{
+			return SimplTypesScope.get("benchmark_geom", PolygonState.class, Point2DDoubleState.class);
+		}
+
+		@Override
+		public Class<?> rootClass()
+		{
+			return PolygonState.class;
+		}
+
+		@Override
+		void appendDocument(StringBuilder xml, int size)
+		{
+			xml.append("<polygon><polygon_verticies>");
+			for (int i = 0; i < size; i++)
+			{
+				double angle = 2 * Math.PI * i / size;
+				xml.append("<point2_d_double x=\"").append(100 * Math.cos(angle));
+				xml.append("\" y=\"").append(100 * Math.sin(angle)).append("\"/>");
+			}
+			xml.append("</polygon_verticies></polygon>");
+		}
+	},
+
+	JNLP
+	{
+		@Override
+		public SimplTypesScope scope()
+		{
+			return JnlpTranslations.get();
+		}
+
+		@Override
+		public Class<?> rootClass()
+		{
+			return JnlpState.class;
+		}
+
+		@Override
+		void appendDocument(StringBuilder xml, int size)
+		{
+			xml.append("<jnlp spec=\"1.0+\" codebase=\"http://ecologylab.net/jnlp\" href=\"app.jnlp\">");
+			xml.append("<information><title>Benchmark</title><vendor>Interface Ecology Lab</vendor>");
+			xml.append("<homepage href=\"http://ecologylab.net\"/></information>");
+			xml.append("<resources><j2se version=\"1.7+\"/>");
+			for (int i = 0; i < size; i++)
+				xml.append("<jar href=\"lib/library").append(i).append(".jar\" download=\"eager\"/>");
+			xml.append("</resources>");
+			for (int i = 0; i < size; i++)
+			{
+				xml.append("<property name=\"property.").append(i);
+				xml.append("\" value=\"value ").append(i).append("\"/>");
+			}
+			xml.append("</jnlp>");
+		}
+	},
+
+	PLIST
+	{
+		@Override
+		public SimplTypesScope scope()
+		{
+			return PListTranslations.get();
+		}
+
+		@Override
+		public Class<?> rootClass()
+		{
+			return PList.class;
+		}
+
+		@Override
+		void appendDocument(StringBuilder xml, int size)
+		{
+			xml.append("<plist version=\"1.0\"><dict>");
+			for (int i = 0; i < size; i++)
+			{
+				xml.append("<key>Track ").append(i + 1).append("</key><dict>");
+				xml.append("<key>Name</key><string>Song ").append(i).append("</string>");
+				xml.append("<key>Track Number</key><integer>").append(i + 1).append("</integer>");
+				xml.append("<key>Rating</key><real>").append(i % 5 + 0.5).append("</real>");
+				xml.append("<key>Compilation</key>").append(i % 2 == 0 ? "<true/>" : "<false/>");
+				xml.append("<key>Genres</key><array><string>Rock</string><string>Pop</string></array>");
+				xml.append("</dict>");
+			}
+			xml.append("</dict></plist>");
+		}
+	};
+
+	public abstract SimplTypesScope scope();
+
+	public abstract Class<?> rootClass();
+
+	abstract void appendDocument(StringBuilder xml, int size);
+
+	/**
+	 * @param size
+	 *          how many times to repeat the model's repeated part.
+	 * @return A new object graph for this model.
+	 * @throws SIMPLTranslationException
+	 */
+	public Object create(int size) throws SIMPLTranslationException
+	{
+		StringBuilder xml = new StringBuilder(size * 256 + 256);
+		appendDocument(xml, size);
+		return scope().deserialize(xml, StringFormat.XML);
+	}
+}
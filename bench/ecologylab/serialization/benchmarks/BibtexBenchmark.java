@@ -0,0 +1,54 @@
+package ecologylab.serialization.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.formatenums.StringFormat;
+
+/**
+ * BibTeX serialize throughput and latency, over the library models it can write. BibTeX has no
+ * deserializer, so this is kept apart from SerializationBenchmark.
+ * <p/>
+ * Run with: ant bench -Dbench.includes=BibtexBenchmark -Dbench.args="-prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BibtexBenchmark
+{
+	@Param({ "RSS", "ENDNOTE", "GEOM" })
+	public String	model;
+
+	@Param({ "10", "1000" })
+	public int		size;
+
+	private Object	object;
+
+	@Setup
+	public void setup() throws SIMPLTranslationException
+	{
+		object = BenchmarkModel.valueOf(model).create(size);
+	}
+
+	@Benchmark
+	public StringBuilder serialize() throws SIMPLTranslationException
+	{
+		return SimplTypesScope.serialize(object, StringFormat.BIBTEX);
+	}
+}
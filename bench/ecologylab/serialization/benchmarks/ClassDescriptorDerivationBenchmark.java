@@ -0,0 +1,48 @@
+package ecologylab.serialization.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecologylab.serialization.ClassDescriptor;
+import ecologylab.serialization.SimplTypesScope;
+
+/**
+ * The cold start cost of building a library model's SimplTypesScope, which derives the
+ * ClassDescriptors and FieldDescriptors of all of its classes.
+ * <p/>
+ * ClassDescriptors are cached for the life of the JVM, so each measurement is a single shot in a
+ * fresh fork; the spread across forks is the interesting part. It includes loading the model's
+ * classes, as a real cold start does.
+ * <p/>
+ * Run with: ant bench -Dbench.includes=ClassDescriptorDerivationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ClassDescriptorDerivationBenchmark
+{
+	@Param({ "RSS", "ENDNOTE", "GEOM", "JNLP", "PLIST" })
+	public String	model;
+
+	@Benchmark
+	public Object deriveDescriptors()
+	{
+		BenchmarkModel benchmarkModel = BenchmarkModel.valueOf(model);
+		SimplTypesScope scope = benchmarkModel.scope();
+		return ClassDescriptor.getClassDescriptor(benchmarkModel.rootClass()).allFieldDescriptors()
+				.size() + scope.getClassDescriptors().size();
+	}
+}
@@ -0,0 +1,105 @@
+package ecologylab.serialization.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplCodec;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.deserializers.pullhandlers.PullDeserializer;
+import ecologylab.serialization.deserializers.pullhandlers.stringformats.StringPullDeserializer;
+import ecologylab.serialization.formatenums.StringFormat;
+import ecologylab.serialization.serializers.FormatSerializer;
+
+/**
+ * Round trips of a small message, through a new deserializer for each message, as
+ * SimplTypesScope.deserialize() used to do, and through a SimplCodec, which reuses one per thread.
+ * <p/>
+ * Run with: ant bench -Dbench.includes=CodecBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CodecBenchmark
+{
+	@simpl_tag("ping")
+	public static class Ping
+	{
+		@simpl_scalar
+		long		sequence;
+
+		@simpl_scalar
+		String	sender;
+	}
+
+	@Param({ "XML", "JSON" })
+	public String						format;
+
+	private StringFormat		stringFormat;
+
+	private SimplTypesScope	scope;
+
+	private SimplCodec			codec;
+
+	private Ping						ping;
+
+	private String					message;
+
+	@Setup
+	public void setup() throws SIMPLTranslationException
+	{
+		stringFormat = StringFormat.valueOf(format);
+		scope = SimplTypesScope.get("codec_benchmark", Ping.class);
+		codec = scope.codec(stringFormat);
+
+		ping = new Ping();
+		ping.sequence = 42;
+		ping.sender = "client";
+		message = codec.serialize(ping).toString();
+	}
+
+	@Benchmark
+	public Object deserializeWithNewDeserializer() throws SIMPLTranslationException
+	{
+		StringPullDeserializer deserializer = PullDeserializer.getStringDeserializer(scope,
+				new TranslationContext(), stringFormat);
+		return deserializer.parse(message);
+	}
+
+	@Benchmark
+	public Object deserializeWithCodec() throws SIMPLTranslationException
+	{
+		return codec.deserialize(message);
+	}
+
+	@Benchmark
+	public StringBuilder serializeWithStringSerializer() throws SIMPLTranslationException
+	{
+		return FormatSerializer.getStringSerializer(stringFormat).serialize(ping);
+	}
+
+	@Benchmark
+	public StringBuilder serializeWithCodec() throws SIMPLTranslationException
+	{
+		return codec.serialize(ping);
+	}
+}
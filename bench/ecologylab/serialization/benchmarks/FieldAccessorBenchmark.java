@@ -0,0 +1,145 @@
+package ecologylab.serialization.benchmarks;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.accessors.FieldAccessor;
+import ecologylab.serialization.accessors.FieldAccessorFactory;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.StringFormat;
+
+/**
+ * Compares the FieldAccessor strategies, on raw field access, and on round trips of an object made
+ * up of primitive fields.
+ * <p/>
+ * Each strategy runs in its own fork, because ClassDescriptors keep the accessors that were built
+ * when they were derived. GENERATED needs ant build-codegen first, so that SimplProcessor writes
+ * Sample's accessors; otherwise it falls back to METHOD_HANDLE.
+ * <p/>
+ * Run with: ant bench -Dbench.includes=FieldAccessorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessorBenchmark
+{
+	@simpl_tag("sample")
+	public static class Sample
+	{
+		@simpl_scalar
+		int			x;
+
+		@simpl_scalar
+		int			y;
+
+		@simpl_scalar
+		long		timestamp;
+
+		@simpl_scalar
+		double	value;
+
+		@simpl_scalar
+		boolean	valid;
+
+		@simpl_scalar
+		String	label;
+	}
+
+	@Param({ "UNSAFE", "GENERATED", "METHOD_HANDLE", "REFLECTION" })
+	public String						strategy;
+
+	private Sample					sample;
+
+	private FieldAccessor		x;
+
+	private FieldAccessor		timestamp;
+
+	private FieldAccessor		label;
+
+	private Field						reflectedX;
+
+	private SimplTypesScope	scope;
+
+	private String					xml;
+
+	@Setup
+	public void setup() throws NoSuchFieldException, SIMPLTranslationException
+	{
+		FieldAccessorFactory.setStrategy(FieldAccessorFactory.Strategy.valueOf(strategy));
+
+		sample = new Sample();
+		sample.x = 12;
+		sample.y = -4;
+		sample.timestamp = System.currentTimeMillis();
+		sample.value = 3.25;
+		sample.valid = true;
+		sample.label = "sample";
+
+		x = FieldAccessorFactory.create(Sample.class.getDeclaredField("x"));
+		timestamp = FieldAccessorFactory.create(Sample.class.getDeclaredField("timestamp"));
+		label = FieldAccessorFactory.create(Sample.class.getDeclaredField("label"));
+		reflectedX = Sample.class.getDeclaredField("x");
+		reflectedX.setAccessible(true);
+
+		scope = SimplTypesScope.get("field_accessor_benchmark", Sample.class);
+		xml = SimplTypesScope.serialize(sample, StringFormat.XML).toString();
+	}
+
+	/**
+	 * What FieldDescriptor did before accessors: a boxing Field.get().
+	 */
+	@Benchmark
+	public Object reflectiveBoxedGet() throws IllegalAccessException
+	{
+		return reflectedX.get(sample);
+	}
+
+	@Benchmark
+	public int typedGetInt()
+	{
+		return x.getInt(sample);
+	}
+
+	@Benchmark
+	public long typedSetAndGetLong()
+	{
+		timestamp.setLong(sample, timestamp.getLong(sample) + 1);
+		return sample.timestamp;
+	}
+
+	@Benchmark
+	public Object referenceGet()
+	{
+		return label.get(sample);
+	}
+
+	@Benchmark
+	public StringBuilder serializeXML() throws SIMPLTranslationException
+	{
+		return SimplTypesScope.serialize(sample, StringFormat.XML);
+	}
+
+	@Benchmark
+	public Object deserializeXML() throws SIMPLTranslationException
+	{
+		return scope.deserialize(xml, StringFormat.XML);
+	}
+}
@@ -0,0 +1,118 @@
+package ecologylab.serialization.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.SimplTypesScope.GRAPH_SWITCH;
+import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.formatenums.StringFormat;
+
+/**
+ * Serialize and deserialize throughput, and the distribution of their latency, for each of the
+ * library models, in each format, at several sizes, with graph serialization off and on.
+ * <p/>
+ * String formats serialize into a StringBuilder and deserialize from a String; TLV goes through a
+ * byte array. For the allocation rate, add the gc profiler. Combinations that a format cannot round
+ * trip fail in deserialize, and JMH goes on with the rest.
+ * <p/>
+ * Run with: ant bench -Dbench.includes=SerializationBenchmark -Dbench.args="-prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark
+{
+	@Param({ "RSS", "ENDNOTE", "GEOM", "JNLP", "PLIST" })
+	public String									model;
+
+	@Param({ "10", "1000" })
+	public int										size;
+
+	@Param({ "XML", "JSON", "TLV" })
+	public String									format;
+
+	@Param({ "false", "true" })
+	public boolean								graph;
+
+	private SimplTypesScope				scope;
+
+	private Format								binaryFormat;
+
+	private StringFormat					stringFormat;
+
+	private Object								object;
+
+	private String								serializedString;
+
+	private byte[]								serializedBytes;
+
+	private ByteArrayOutputStream	outputStream;
+
+	@Setup
+	public void setup() throws SIMPLTranslationException
+	{
+		SimplTypesScope.graphSwitch = graph ? GRAPH_SWITCH.ON : GRAPH_SWITCH.OFF;
+
+		BenchmarkModel benchmarkModel = BenchmarkModel.valueOf(model);
+		scope = benchmarkModel.scope();
+		object = benchmarkModel.create(size);
+
+		binaryFormat = Format.valueOf(format);
+		if (binaryFormat == Format.TLV)
+		{
+			outputStream = new ByteArrayOutputStream();
+			SimplTypesScope.serialize(object, outputStream, binaryFormat);
+			serializedBytes = outputStream.toByteArray();
+		}
+		else
+		{
+			stringFormat = StringFormat.valueOf(format);
+			serializedString = SimplTypesScope.serialize(object, stringFormat).toString();
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		SimplTypesScope.graphSwitch = GRAPH_SWITCH.OFF;
+	}
+
+	@Benchmark
+	public Object serialize() throws SIMPLTranslationException
+	{
+		if (stringFormat != null)
+			return SimplTypesScope.serialize(object, stringFormat);
+
+		outputStream.reset();
+		SimplTypesScope.serialize(object, outputStream, binaryFormat);
+		return outputStream;
+	}
+
+	@Benchmark
+	public Object deserialize() throws SIMPLTranslationException
+	{
+		if (stringFormat != null)
+			return scope.deserialize(serializedString, stringFormat);
+
+		return scope.deserialize(new ByteArrayInputStream(serializedBytes), binaryFormat);
+	}
+}
@@ -0,0 +1,150 @@
+package ecologylab.serialization.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.formatenums.StringFormat;
+import ecologylab.serialization.library.rss.Channel;
+import ecologylab.serialization.library.rss.Item;
+import ecologylab.serialization.library.rss.RssState;
+import ecologylab.serialization.serializers.FormatSerializer;
+import ecologylab.serialization.serializers.stringformats.StringSerializer;
+
+/**
+ * Compares the string serializers writing through the old PrintStream bridge against the direct
+ * StringBuilder and UTF-8 sinks.
+ * <p/>
+ * Run with: ant bench -Dbench.includes=StringSinkBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringSinkBenchmark
+{
+	@Param({ "XML", "JSON" })
+	public String						format;
+
+	@Param({ "10", "1000" })
+	public int							numItems;
+
+	private RssState				rss;
+
+	private StringSerializer	serializer;
+
+	private NullOutputStream	sink;
+
+	@Setup
+	public void setup() throws SIMPLTranslationException
+	{
+		rss = new RssState();
+		Channel channel = new Channel();
+		channel.setTitle("Benchmark channel: café, 日本, & <markup>");
+		rss.setChannel(channel);
+		for (int i = 0; i < numItems; i++)
+		{
+			Item item = new Item("item number " + i);
+			item.setAuthor("authör " + i);
+			channel.add(item);
+		}
+		serializer = FormatSerializer.getStringSerializer(StringFormat.valueOf(format));
+		sink = new NullOutputStream();
+
+		// derive the ClassDescriptors before measuring
+		SimplTypesScope.serialize(rss, StringFormat.valueOf(format));
+	}
+
+	/**
+	 * What StringSerializer.serialize(Object, StringBuilder) used to do: encode into a PrintStream,
+	 * and cast each byte back to a char.
+	 */
+	@Benchmark
+	public StringBuilder legacyPrintStreamToStringBuilder() throws SIMPLTranslationException
+	{
+		final StringBuilder stringBuilder = new StringBuilder();
+		OutputStream outputStream = new OutputStream()
+		{
+			@Override
+			public void write(int b) throws IOException
+			{
+				stringBuilder.append((char) b);
+			}
+		};
+		serializeLegacy(new PrintStream(outputStream));
+		return stringBuilder;
+	}
+
+	@Benchmark
+	public StringBuilder directStringBuilder() throws SIMPLTranslationException
+	{
+		StringBuilder stringBuilder = new StringBuilder();
+		serializer.serialize(rss, stringBuilder, new TranslationContext());
+		return stringBuilder;
+	}
+
+	/**
+	 * What StringSerializer.serialize(Object, OutputStream) used to do.
+	 */
+	@Benchmark
+	public long legacyPrintStreamToOutputStream() throws SIMPLTranslationException
+	{
+		try
+		{
+			serializeLegacy(new PrintStream(sink, true, "utf-8"));
+		}
+		catch (IOException e)
+		{
+			throw new SIMPLTranslationException("IO Exception: ", e);
+		}
+		return sink.count;
+	}
+
+	@Benchmark
+	public long utf8OutputStream() throws SIMPLTranslationException
+	{
+		serializer.serialize(rss, sink, new TranslationContext());
+		return sink.count;
+	}
+
+	private void serializeLegacy(PrintStream printStream) throws SIMPLTranslationException
+	{
+		serializer.serialize(rss, (Appendable) printStream, new TranslationContext());
+		printStream.flush();
+	}
+
+	static class NullOutputStream extends OutputStream
+	{
+		long	count;
+
+		@Override
+		public void write(int b)
+		{
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package ecologylab.serialization.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplCodec;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.deserializers.pullhandlers.stringformats.XMLParserFactory;
+import ecologylab.serialization.deserializers.pullhandlers.stringformats.XMLParserFactory.Implementation;
+import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.formatenums.StringFormat;
+
+/**
+ * XML deserialization of the library models with SimplXMLParser, against the platform's parser,
+ * which is StAX on the desktop. Documents come from a String, and from UTF-8 bytes.
+ * <p/>
+ * Run with: ant bench -Dbench.includes=XMLParserBenchmark -Dbench.args="-prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLParserBenchmark
+{
+	@Param({ "SIMPL", "PLATFORM" })
+	public String						implementation;
+
+	@Param({ "RSS", "ENDNOTE", "PLIST" })
+	public String						model;
+
+	@Param({ "10", "1000" })
+	public int							size;
+
+	private SimplTypesScope	scope;
+
+	private SimplCodec			codec;
+
+	private String					xml;
+
+	private byte[]					utf8;
+
+	private Implementation	previous;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		previous = XMLParserFactory.getImplementation();
+		XMLParserFactory.setImplementation(Implementation.valueOf(implementation));
+		BenchmarkModel benchmarkModel = BenchmarkModel.valueOf(model);
+		scope = benchmarkModel.scope();
+		codec = scope.codec(StringFormat.XML);
+		xml = SimplTypesScope.serialize(benchmarkModel.create(size), StringFormat.XML).toString();
+		utf8 = xml.getBytes("UTF-8");
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		XMLParserFactory.setImplementation(previous);
+	}
+
+	@Benchmark
+	public Object deserializeString() throws SIMPLTranslationException
+	{
+		return codec.deserialize(xml);
+	}
+
+	@Benchmark
+	public Object deserializeBytes() throws SIMPLTranslationException
+	{
+		return scope.deserialize(new ByteArrayInputStream(utf8), Format.XML);
+	}
+}
@@ -0,0 +1,547 @@
+package ecologylab.serialization.codegen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * javac annotation processor that writes a GeneratedAccessors subclass, and a GeneratedSerializer
+ * subclass, for each class that declares fields annotated with simpl_scalar, simpl_composite,
+ * simpl_collection or simpl_map.
+ * <p/>
+ * The GeneratedAccessors have a FieldAccessor for each of those fields, that reads and writes it
+ * directly, by name, so the JIT sees a plain field load or store, and an Instantiator that calls
+ * the class's constructor with new. Fields that can't be reached from another class in the same
+ * package (private or final fields, or fields whose type is private to another class) get no
+ * generated accessor, and are left out of it, so they go through FieldAccessorFactory's other
+ * strategies.
+ * <p/>
+ * The GeneratedSerializer writes the class's fields, and those it inherits with simpl_inherit, with
+ * one call each, in the order that ClassDescriptor organizes them into attributes and elements.
+ * <p/>
+ * Nothing is generated for deserialization, which is driven by the tags in the input. Beyond the
+ * accessors and instantiator, generated code could only replace the lookup of each tag's field
+ * descriptor, and the switch on its type, which take a small share of the time: most of it goes to
+ * parsing, converting scalars and building objects.
+ * <p/>
+ * This only depends on javax.lang.model, and on the names of the annotations, so it is built on its
+ * own, before the rest of the tree: see the build-codegen target in build.xml.
+ */
+@SupportedAnnotationTypes(
+{ SimplProcessor.SCALAR, SimplProcessor.COMPOSITE, SimplProcessor.COLLECTION, SimplProcessor.MAP })
+public class SimplProcessor extends AbstractProcessor
+{
+	static final String	ANNOTATIONS	= "ecologylab.serialization.annotations.";
+
+	static final String	SCALAR			= ANNOTATIONS + "simpl_scalar";
+
+	static final String	COMPOSITE		= ANNOTATIONS + "simpl_composite";
+
+	static final String	COLLECTION	= ANNOTATIONS + "simpl_collection";
+
+	static final String	MAP					= ANNOTATIONS + "simpl_map";
+
+	static final String	INHERIT			= ANNOTATIONS + "simpl_inherit";
+
+	static final String	HINTS				= ANNOTATIONS + "simpl_hints";
+
+	static final String	SUFFIX			= "$SimplAccessors";
+
+	static final String	SERIALIZER_SUFFIX	= "$SimplSerializer";
+
+	/**
+	 * Thrown by the cast of an object of another class.
+	 */
+	static final String	WRONG_OBJECT	= "ClassCastException";
+
+	/**
+	 * Thrown by the cast, or the unboxing, of a value that can't be assigned to the field.
+	 */
+	static final String	WRONG_VALUE		= "ClassCastException | NullPointerException";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion()
+	{
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+	{
+		Set<TypeElement> classes = new LinkedHashSet<TypeElement>();
+		for (TypeElement annotation : annotations)
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+				if (element.getKind() == ElementKind.FIELD
+						&& element.getEnclosingElement() instanceof TypeElement)
+					classes.add((TypeElement) element.getEnclosingElement());
+
+		for (TypeElement type : classes)
+		{
+			NestingKind nesting = type.getNestingKind();
+			if (nesting != NestingKind.TOP_LEVEL && nesting != NestingKind.MEMBER)
+				continue;
+			List<VariableElement> fields = new ArrayList<VariableElement>();
+			for (Element member : type.getEnclosedElements())
+				if (member.getKind() == ElementKind.FIELD
+						&& !member.getModifiers().contains(Modifier.STATIC) && isSerialized(member))
+					fields.add((VariableElement) member);
+			if (fields.isEmpty())
+				continue;
+			try
+			{
+				writeAccessors(type, fields);
+				writeSerializer(type);
+			}
+			catch (IOException e)
+			{
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Can't write " + SUFFIX + " or " + SERIALIZER_SUFFIX + " for " + type + ": " + e, type);
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSerialized(Element field)
+	{
+		return annotation(field, SCALAR) != null || annotation(field, COMPOSITE) != null
+				|| annotation(field, COLLECTION) != null || annotation(field, MAP) != null;
+	}
+
+	/**
+	 * @return The annotation on element whose type is named annotationName, or null.
+	 */
+	private static AnnotationMirror annotation(Element element, String annotationName)
+	{
+		for (AnnotationMirror mirror : element.getAnnotationMirrors())
+		{
+			Name name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName();
+			if (name.contentEquals(annotationName))
+				return mirror;
+		}
+		return null;
+	}
+
+	private void writeAccessors(TypeElement type, List<VariableElement> serializedFields)
+			throws IOException
+	{
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String typeName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+		boolean typeAccessible = isAccessible(type, pkg);
+
+		// GeneratedAccessors takes a field that it names, but can't use, to have changed since
+		List<VariableElement> fields = new ArrayList<VariableElement>();
+		if (typeAccessible)
+			for (VariableElement field : serializedFields)
+				if (isAccessible(field, pkg))
+					fields.add(field);
+
+		String simpleName = generatedName(type, pkg, SUFFIX);
+		StringBuilder out = new StringBuilder();
+		appendPackage(out, pkg);
+		out.append("import java.lang.reflect.Field;\n\n");
+		out.append("import ecologylab.serialization.accessors.FieldAccessor;\n");
+		out.append("import ecologylab.serialization.accessors.GeneratedAccessors;\n");
+		out.append("import ecologylab.serialization.accessors.Instantiator;\n\n");
+		appendClassStart(out, typeName, simpleName, "GeneratedAccessors");
+
+		out.append("\tpublic ").append(simpleName).append("()\n\t{\n");
+		out.append("\t\tsuper(new String[] {");
+		for (int i = 0; i < fields.size(); i++)
+			out.append(i == 0 ? " \"" : ", \"").append(fields.get(i).getSimpleName()).append('"');
+		out.append(" },\n\t\t\t\tnew String[] {");
+		for (int i = 0; i < fields.size(); i++)
+			out.append(i == 0 ? " \"" : ", \"").append(erasure(fields.get(i))).append('"');
+		out.append(" });\n\t}\n\n");
+
+		if (typeAccessible && isInstantiable(type))
+		{
+			out.append("\t@Override\n");
+			out.append("\tpublic Instantiator getInstantiator()\n\t{\n");
+			out.append("\t\treturn new Instantiator(").append(typeName).append(".class)\n\t\t{\n");
+			appendMethod(out, "Object newInstance()", "return new " + typeName + "();", null);
+			out.setLength(out.length() - 1);
+			out.append("\t\t};\n\t}\n\n");
+		}
+
+		out.append("\t@Override\n");
+		out.append("\tprotected FieldAccessor accessor(int index, Field field)\n\t{\n");
+		out.append("\t\tswitch (index)\n\t\t{\n");
+		for (int i = 0; i < fields.size(); i++)
+			appendAccessor(out, i, typeName, fields.get(i));
+		out.append("\t\tdefault:\n\t\t\treturn null;\n\t\t}\n\t}\n}\n");
+
+		writeSource(type, pkg, simpleName, out);
+	}
+
+	/**
+	 * Write the GeneratedSerializer for type. Its lists of fields follow
+	 * ClassDescriptor.deriveAndOrganizeFieldsRecursive(): the fields inherited with simpl_inherit
+	 * first, then those that type declares; scalars are attributes, unless their first simpl_hint
+	 * makes them leaves, or text, which is in neither list.
+	 */
+	private void writeSerializer(TypeElement type) throws IOException
+	{
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		String typeName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+		List<VariableElement> attributes = new ArrayList<VariableElement>();
+		List<VariableElement> elements = new ArrayList<VariableElement>();
+		organize(type, attributes, elements);
+
+		String simpleName = generatedName(type, pkg, SERIALIZER_SUFFIX);
+		StringBuilder out = new StringBuilder();
+		appendPackage(out, pkg);
+		out.append("import java.io.IOException;\n");
+		out.append("import java.util.List;\n\n");
+		out.append("import ecologylab.serialization.FieldDescriptor;\n");
+		out.append("import ecologylab.serialization.FieldType;\n");
+		out.append("import ecologylab.serialization.SIMPLTranslationException;\n");
+		out.append("import ecologylab.serialization.TranslationContext;\n");
+		out.append("import ecologylab.serialization.serializers.GeneratedSerializer;\n");
+		out.append("import ecologylab.serialization.serializers.output.SerializationOutput;\n\n");
+		appendClassStart(out, typeName, simpleName, "GeneratedSerializer");
+
+		out.append("\tpublic ").append(simpleName).append("()\n\t{\n");
+		out.append("\t\tsuper(new String[] {");
+		appendFieldNames(out, attributes);
+		out.append(" },\n\t\t\t\tnew String[] {");
+		appendFieldNames(out, elements);
+		out.append(" },\n\t\t\t\tnew FieldType[] {");
+		for (int i = 0; i < elements.size(); i++)
+			out.append(i == 0 ? " FieldType." : ", FieldType.").append(elementType(elements.get(i)));
+		out.append(" });\n\t}\n\n");
+
+		appendSerializeMethod(out, "serializeAttributes", "attributes", attributes, pkg);
+		out.append('\n');
+		appendSerializeMethod(out, "serializeElements", "elements", elements, pkg);
+		out.append("}\n");
+
+		writeSource(type, pkg, simpleName, out);
+	}
+
+	private void organize(TypeElement type, List<VariableElement> attributes,
+			List<VariableElement> elements)
+	{
+		if (isInheriting(type) && type.getSuperclass().getKind() == TypeKind.DECLARED)
+			organize((TypeElement) ((DeclaredType) type.getSuperclass()).asElement(), attributes,
+					elements);
+
+		for (Element member : type.getEnclosedElements())
+		{
+			if (member.getKind() != ElementKind.FIELD || member.getModifiers().contains(Modifier.STATIC)
+					|| !isSerialized(member))
+				continue;
+			VariableElement field = (VariableElement) member;
+			if (annotation(field, SCALAR) == null)
+				elements.add(field);
+			else
+			{
+				String hint = hint(field);
+				if (hint.startsWith("XML_LEAF"))
+					elements.add(field);
+				else if (!hint.startsWith("XML_TEXT"))
+					attributes.add(field);
+			}
+		}
+	}
+
+	/**
+	 * @return true if type has simpl_inherit, which subclasses inherit.
+	 */
+	private boolean isInheriting(TypeElement type)
+	{
+		for (AnnotationMirror mirror : processingEnv.getElementUtils().getAllAnnotationMirrors(type))
+			if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(
+					INHERIT))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return The name of the first Hint in field's simpl_hints, or XML_ATTRIBUTE if it has none.
+	 */
+	private static String hint(VariableElement field)
+	{
+		AnnotationMirror hints = annotation(field, HINTS);
+		if (hints != null)
+			for (Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : hints
+					.getElementValues().entrySet())
+				if (entry.getKey().getSimpleName().contentEquals("value"))
+				{
+					Object value = entry.getValue().getValue();
+					if (value instanceof List && !((List<?>) value).isEmpty())
+						value = ((AnnotationValue) ((List<?>) value).get(0)).getValue();
+					if (value instanceof VariableElement)
+						return ((VariableElement) value).getSimpleName().toString();
+				}
+		return "XML_ATTRIBUTE";
+	}
+
+	/**
+	 * @return The FieldType that GeneratedSerializer expects for field, in the element list.
+	 */
+	private static String elementType(VariableElement field)
+	{
+		if (annotation(field, SCALAR) != null)
+			return "SCALAR";
+		if (annotation(field, COMPOSITE) != null)
+			return "COMPOSITE_ELEMENT";
+		return "COLLECTION_ELEMENT";
+	}
+
+	private void appendFieldNames(StringBuilder out, List<VariableElement> fields)
+	{
+		for (int i = 0; i < fields.size(); i++)
+		{
+			VariableElement field = fields.get(i);
+			out.append(i == 0 ? " \"" : ", \"");
+			out.append(processingEnv.getElementUtils().getBinaryName(
+					(TypeElement) field.getEnclosingElement()));
+			out.append('.').append(field.getSimpleName()).append('"');
+		}
+	}
+
+	/**
+	 * Write a method of GeneratedSerializer, that calls the FieldWriter for each of fields in turn.
+	 */
+	private void appendSerializeMethod(StringBuilder out, String method, String list,
+			List<VariableElement> fields, PackageElement pkg)
+	{
+		out.append("\t@Override\n");
+		out.append("\tpublic int ").append(method).append("(FieldWriter writer, Object object,\n");
+		out.append("\t\t\tList<? extends FieldDescriptor> ").append(list);
+		out.append(", SerializationOutput output,\n");
+		out.append("\t\t\tTranslationContext translationContext, int numOfFields)\n");
+		out.append("\t\t\tthrows SIMPLTranslationException, IOException\n\t{\n");
+		for (int i = 0; i < fields.size(); i++)
+		{
+			VariableElement field = fields.get(i);
+			String fd = list + ".get(" + i + ")";
+			out.append("\t\tnumOfFields = writer.");
+			if (annotation(field, SCALAR) != null)
+				out.append(list.equals("attributes") ? "attribute" : "leaf").append("(object, ");
+			else
+			{
+				out.append(annotation(field, COMPOSITE) != null ? "composite(" : "collection(");
+				TypeElement declaringType = (TypeElement) field.getEnclosingElement();
+				if (isReadable(field, pkg))
+					out.append("((").append(processingEnv.getTypeUtils().erasure(declaringType.asType()))
+							.append(") object).").append(field.getSimpleName()).append(", ");
+				else
+					out.append(fd).append(".getValue(object), ");
+			}
+			out.append(fd).append(", output, translationContext, numOfFields);\n");
+		}
+		out.append("\t\treturn numOfFields;\n\t}\n");
+	}
+
+	/**
+	 * @return true if a class in pkg can read field, through its declaring type.
+	 */
+	private boolean isReadable(VariableElement field, PackageElement pkg)
+	{
+		TypeElement declaringType = (TypeElement) field.getEnclosingElement();
+		Set<Modifier> modifiers = field.getModifiers();
+		if (modifiers.contains(Modifier.PRIVATE) || !isAccessible(declaringType, pkg))
+			return false;
+		return processingEnv.getElementUtils().getPackageOf(declaringType).equals(pkg)
+				|| modifiers.contains(Modifier.PUBLIC);
+	}
+
+	/**
+	 * @return The simple name of the class generated for type with suffix, which is its binary name
+	 *         without the package.
+	 */
+	private String generatedName(TypeElement type, PackageElement pkg, String suffix)
+	{
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		return (pkg.isUnnamed() ? binaryName : binaryName.substring(pkg.getQualifiedName().length() + 1))
+				+ suffix;
+	}
+
+	private static void appendPackage(StringBuilder out, PackageElement pkg)
+	{
+		if (!pkg.isUnnamed())
+			out.append("package ").append(pkg.getQualifiedName()).append(";\n\n");
+	}
+
+	private static void appendClassStart(StringBuilder out, String typeName, String simpleName,
+			String superclass)
+	{
+		out.append("/**\n * Generated by SimplProcessor from ").append(typeName);
+		out.append(". Do not edit.\n */\n");
+		out.append("@SuppressWarnings({ \"rawtypes\", \"unchecked\", \"deprecation\" })\n");
+		out.append("public final class ").append(simpleName).append(" extends ").append(superclass)
+				.append("\n{\n");
+	}
+
+	private void writeSource(TypeElement type, PackageElement pkg, String simpleName,
+			StringBuilder out) throws IOException
+	{
+		String generatedName = pkg.isUnnamed() ? simpleName : pkg.getQualifiedName() + "."
+				+ simpleName;
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(generatedName, type);
+		Writer writer = file.openWriter();
+		try
+		{
+			writer.write(out.toString());
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	private void appendAccessor(StringBuilder out, int index, String typeName, VariableElement field)
+	{
+		TypeMirror fieldType = erasure(field);
+		String name = field.getSimpleName().toString();
+		String target = "((" + typeName + ") object)." + name;
+
+		out.append("\t\tcase ").append(index).append(":\n");
+		out.append("\t\t\treturn new FieldAccessor(field)\n\t\t\t{\n");
+		appendMethod(out, "Object get(Object object)", "return " + target + ";", WRONG_OBJECT);
+		String valueType = fieldType.getKind().isPrimitive() ? boxed(fieldType.getKind()) : fieldType
+				.toString();
+		appendMethod(out, "void set(Object object, Object value)", target + " = (" + valueType
+				+ ") value;", WRONG_VALUE);
+		if (fieldType.getKind().isPrimitive())
+		{
+			String primitive = fieldType.toString();
+			String method = Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1);
+			appendMethod(out, primitive + " get" + method + "(Object object)", "return " + target + ";",
+					WRONG_OBJECT);
+			appendMethod(out, "void set" + method + "(Object object, " + primitive + " value)", target
+					+ " = value;", WRONG_OBJECT);
+		}
+		out.setLength(out.length() - 1);
+		out.append("\t\t\t};\n");
+	}
+
+	/**
+	 * Write an accessor method, that turns the exceptions caught, if any, into
+	 * IllegalArgumentException, as the other FieldAccessors do.
+	 */
+	private static void appendMethod(StringBuilder out, String signature, String statement,
+			String caught)
+	{
+		out.append("\t\t\t\t@Override\n");
+		out.append("\t\t\t\tpublic ").append(signature).append("\n\t\t\t\t{\n");
+		if (caught == null)
+		{
+			out.append("\t\t\t\t\t").append(statement).append("\n\t\t\t\t}\n\n");
+			return;
+		}
+		out.append("\t\t\t\t\ttry\n\t\t\t\t\t{\n");
+		out.append("\t\t\t\t\t\t").append(statement).append("\n\t\t\t\t\t}\n");
+		out.append("\t\t\t\t\tcatch (").append(caught).append(" e)\n\t\t\t\t\t{\n");
+		out.append("\t\t\t\t\t\tthrow cannotAccess(field, e);\n");
+		out.append("\t\t\t\t\t}\n\t\t\t\t}\n\n");
+	}
+
+	private static String boxed(TypeKind kind)
+	{
+		switch (kind)
+		{
+		case INT:
+			return "Integer";
+		case CHAR:
+			return "Character";
+		default:
+			String name = kind.name().toLowerCase();
+			return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+		}
+	}
+
+	/**
+	 * @return true if type is a concrete class, that another class in its package can make with new,
+	 *         and no arguments.
+	 */
+	private static boolean isInstantiable(TypeElement type)
+	{
+		Set<Modifier> modifiers = type.getModifiers();
+		if (type.getKind() != ElementKind.CLASS || modifiers.contains(Modifier.ABSTRACT)
+				|| (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)))
+			return false;
+		for (Element member : type.getEnclosedElements())
+			if (member.getKind() == ElementKind.CONSTRUCTOR
+					&& ((ExecutableElement) member).getParameters().isEmpty())
+				return !member.getModifiers().contains(Modifier.PRIVATE);
+		return false;
+	}
+
+	/**
+	 * @return true if a class in pkg can read and write field, and name its type.
+	 */
+	private boolean isAccessible(VariableElement field, PackageElement pkg)
+	{
+		Set<Modifier> modifiers = field.getModifiers();
+		if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL))
+			return false;
+		return isAccessible(erasure(field), pkg);
+	}
+
+	/**
+	 * @return The type of field after erasure, which prints as its canonical name.
+	 */
+	private TypeMirror erasure(VariableElement field)
+	{
+		return processingEnv.getTypeUtils().erasure(field.asType());
+	}
+
+	private boolean isAccessible(TypeMirror type, PackageElement pkg)
+	{
+		if (type.getKind() == TypeKind.ARRAY)
+			return isAccessible(((ArrayType) type).getComponentType(), pkg);
+		if (type.getKind() == TypeKind.DECLARED)
+			return isAccessible((TypeElement) ((DeclaredType) type).asElement(), pkg);
+		return type.getKind().isPrimitive();
+	}
+
+	/**
+	 * @return true if type, and each class it is nested in, can be named from pkg.
+	 */
+	private boolean isAccessible(TypeElement type, PackageElement pkg)
+	{
+		boolean samePackage = processingEnv.getElementUtils().getPackageOf(type).equals(pkg);
+		for (Element element = type; element instanceof TypeElement; element = element
+				.getEnclosingElement())
+		{
+			TypeElement enclosing = (TypeElement) element;
+			NestingKind nesting = enclosing.getNestingKind();
+			if (nesting != NestingKind.TOP_LEVEL && nesting != NestingKind.MEMBER)
+				return false;
+			Set<Modifier> modifiers = enclosing.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE))
+				return false;
+			if (!samePackage && !modifiers.contains(Modifier.PUBLIC))
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,152 @@
+package ecologylab.collections;
+
+import java.util.Arrays;
+
+/**
+ * Map from objects, compared by identity, to primitive ints, in a single open addressing table with
+ * linear probing.
+ * <p/>
+ * Keys are hashed with System.identityHashCode(), so their own hashCode() and equals() are never
+ * called, and values are never boxed. Entries cannot be removed one at a time; call clear().
+ * <p/>
+ * Not thread safe.
+ */
+public class IdentityIntMap
+{
+	private static final int	DEFAULT_CAPACITY			= 64;
+
+	/**
+	 * clear() gives up tables bigger than this, so that a map kept in a pool doesn't hold on to the
+	 * space taken by its biggest use.
+	 */
+	private static final int	MAX_RETAINED_CAPACITY	= 64 * 1024;
+
+	private Object[]					keys;
+
+	private int[]							values;
+
+	private int								size;
+
+	/**
+	 * Grow when size reaches this.
+	 */
+	private int								threshold;
+
+	public IdentityIntMap()
+	{
+		allocate(DEFAULT_CAPACITY);
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new Object[capacity];
+		values = new int[capacity];
+		threshold = capacity / 2;
+	}
+
+	private static int indexFor(Object key, int mask)
+	{
+		// spread the identity hash, which often has poor low bits
+		int h = System.identityHashCode(key) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * @param key
+	 * @param missing
+	 *          The value to return if key is not in the map.
+	 * @return The value for key, or missing.
+	 */
+	public int get(Object key, int missing)
+	{
+		Object[] keys = this.keys;
+		int mask = keys.length - 1;
+		for (int i = indexFor(key, mask);; i = (i + 1) & mask)
+		{
+			Object candidate = keys[i];
+			if (candidate == key)
+				return values[i];
+			if (candidate == null)
+				return missing;
+		}
+	}
+
+	public boolean containsKey(Object key)
+	{
+		Object[] keys = this.keys;
+		int mask = keys.length - 1;
+		for (int i = indexFor(key, mask);; i = (i + 1) & mask)
+		{
+			Object candidate = keys[i];
+			if (candidate == key)
+				return true;
+			if (candidate == null)
+				return false;
+		}
+	}
+
+	/**
+	 * Map key to value, replacing any value it had.
+	 *
+	 * @param key
+	 *          Must not be null.
+	 * @param value
+	 */
+	public void put(Object key, int value)
+	{
+		Object[] keys = this.keys;
+		int mask = keys.length - 1;
+		int i = indexFor(key, mask);
+		for (Object candidate; (candidate = keys[i]) != null; i = (i + 1) & mask)
+		{
+			if (candidate == key)
+			{
+				values[i] = value;
+				return;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size >= threshold)
+			grow();
+	}
+
+	private void grow()
+	{
+		Object[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++)
+		{
+			Object key = oldKeys[j];
+			if (key != null)
+			{
+				int i = indexFor(key, mask);
+				while (keys[i] != null)
+					i = (i + 1) & mask;
+				keys[i] = key;
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public void clear()
+	{
+		if (keys.length > MAX_RETAINED_CAPACITY)
+			allocate(DEFAULT_CAPACITY);
+		else if (size > 0)
+			Arrays.fill(keys, null);
+		size = 0;
+	}
+}
@@ -3,11 +3,11 @@
  */
 package ecologylab.generic;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 
+import ecologylab.generic.TimingWheel.Timeout;
+
 /**
  * This class runs in order to clean out unrefreshed elements of a Map on a specified interval.
  * Access to the Map should go through this object to ensure proper sychonous access.
@@ -16,9 +16,10 @@ import java.util.concurrent.ConcurrentHashMap;
  * for too long (per the liveTime argument) and will persist for at LEAST as long as the liveTime
  * argument.
  * 
- * I'm sure there's a nice mathmematical way to explain it, but each item lasts until the next
- * cleanupInterval...if, at the interval, it has been idle for more than liveTime, it is removed and
- * Java GC will take care of it when it gets around to it.
+ * Items are kept track of in a TimingWheel that ticks every cleanupInterval, so each cleanup only
+ * looks at the items that are due; an item that has been idle for more than liveTime is removed
+ * within about two cleanupIntervals after that, and Java GC will take care of it when it gets around
+ * to it.
  * 
  * This object automatically starts up a monitoring thread whenever it contains items, and shuts
  * itself off when there are no items.
@@ -27,22 +28,26 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class AutoCleanerMap<KEY, VALUE> extends ConcurrentHashMap<KEY, VALUE> implements Runnable
 {
-	private static final long	serialVersionUID	= 1L;
+	private static final long		serialVersionUID	= 1L;
+
+	HashMap<KEY, Timeout<KEY>>	timeouts					= new HashMap<KEY, Timeout<KEY>>();
 
-	HashMap<KEY, TimeTracker>	timeTrackerMap		= new HashMap<KEY, TimeTracker>();
+	private TimingWheel<KEY>		wheel;
 
-	private long							liveTime;
+	private long								liveTime;
 
-	private long							cleanupInterval;
+	private long								cleanupInterval;
 
-	private boolean						running						= false;
+	private boolean							running						= false;
 
-	private Thread						t;
+	private Thread							t;
 
 	public AutoCleanerMap(long liveTime, long cleanupInterval)
 	{
 		this.liveTime = liveTime;
 		this.cleanupInterval = cleanupInterval;
+		this.wheel = new TimingWheel<KEY>(cleanupInterval, (int) Math.min(liveTime / cleanupInterval
+				+ 2, 1024));
 	}
 
 	/**
@@ -86,9 +91,11 @@ public class AutoCleanerMap<KEY, VALUE> extends ConcurrentHashMap<KEY, VALUE> im
 	@Override
 	public synchronized VALUE put(KEY key, VALUE value)
 	{
-		TimeTracker tt = new TimeTracker(key);
-		// we're just letting the old time tracker get thrown away
-		timeTrackerMap.put(key, tt);
+		Timeout<KEY> old = timeouts.put(key, wheel.schedule(key, liveTime));
+		if (old != null)
+		{
+			old.cancel();
+		}
 
 		if (this.size() == 0)
 		{
@@ -105,7 +112,11 @@ public class AutoCleanerMap<KEY, VALUE> extends ConcurrentHashMap<KEY, VALUE> im
 		try
 		{
 			KEY actualKey = (KEY) key;
-			this.timeTrackerMap.remove(actualKey);
+			Timeout<KEY> timeout = this.timeouts.remove(actualKey);
+			if (timeout != null)
+			{
+				timeout.cancel();
+			}
 
 			if (this.size() == 1)
 			{
@@ -125,39 +136,20 @@ public class AutoCleanerMap<KEY, VALUE> extends ConcurrentHashMap<KEY, VALUE> im
 
 	public synchronized void access(KEY key)
 	{
-		// look up the TimeTracker object
-		TimeTracker tt = timeTrackerMap.get(key);
+		// look up the Timeout object
+		Timeout<KEY> timeout = timeouts.get(key);
 
-		if (tt != null)
+		if (timeout != null)
 		{
-			tt.access();
+			timeout.touch();
 		}
 	}
 
 	private synchronized void cleanup()
 	{
-		long cleanupTime = System.currentTimeMillis();
-
-		ArrayList<KEY> toRemove = new ArrayList<KEY>();
-
-		Iterator<KEY> trackerIter = timeTrackerMap.keySet().iterator();
-		while (trackerIter.hasNext())
-
-		{
-			KEY k = trackerIter.next();
-
-			TimeTracker tt = timeTrackerMap.get(k);
-
-			if (cleanupTime - tt.getLastAccess() > liveTime)
-			{ // too old
-				toRemove.add(tt.key);
-			}
-		}
-
-		for (KEY k : toRemove)
-		{
+		for (KEY k : wheel.expire(System.currentTimeMillis()))
+		{ // too old
 			this.remove(k);
-			timeTrackerMap.remove(k);
 
 			Debug.println("**********************************cleanup removed: " + k);
 		}
@@ -185,35 +177,4 @@ public class AutoCleanerMap<KEY, VALUE> extends ConcurrentHashMap<KEY, VALUE> im
 		}
 		Debug.println("Stopping AutoMapCleaner.");
 	}
-
-	/**
-	 * TimeTracker matches an object of type KEY to a Date. It is meant to track a Key into a Hash.
-	 * 
-	 * @author Zachary O. Toups (zach@ecologylab.net)
-	 */
-	class TimeTracker
-	{
-		private long	lastAccess;
-
-		private KEY		key;
-
-		public TimeTracker(KEY key)
-		{
-			this.key = key;
-			lastAccess = System.currentTimeMillis();
-		}
-
-		public void access()
-		{
-			lastAccess = System.currentTimeMillis();
-		}
-
-		/**
-		 * @return the lastAccess
-		 */
-		public long getLastAccess()
-		{
-			return lastAccess;
-		}
-	}
 }
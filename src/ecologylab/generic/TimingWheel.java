@@ -0,0 +1,279 @@
+package ecologylab.generic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A hashed timing wheel, for timing out items, such as connections or cache entries, that have been
+ * idle for too long, at a cost that goes with the number of items that time out, rather than the
+ * number there are.
+ * <p/>
+ * Time is divided into ticks, and each item is kept in the slot for the tick when it becomes due.
+ * When expire() is called, it visits the slots of the ticks that have passed since it last was, and
+ * only those. Marking an item as active again, with Timeout.touch(), just records the wheel's
+ * clock in it; the item is moved on to its new slot when its old one comes up.
+ * <p/>
+ * The clock is coarse: it is the time at which expire() last passed a tick, or an item was
+ * scheduled. So expire() should be called at least once a tick, while there are items, and touch()
+ * does not need to look at the system clock. Because of this, an item times out no sooner than its
+ * timeout after it was last touched, and within about two ticks after that.
+ * <p/>
+ * It is safe to use from any thread.
+ */
+public class TimingWheel<T>
+{
+	private final long					tick;
+
+	private final Timeout<T>[]	slots;
+
+	private volatile long				clock;
+
+	/**
+	 * When the tick after the last one that expire() passed starts.
+	 */
+	private volatile long				nextTick;
+
+	/**
+	 * The last tick that expire() passed.
+	 */
+	private long								currentTick;
+
+	private volatile int				size;
+
+	/**
+	 *
+	 * @param tick
+	 *          milliseconds in each tick.
+	 * @param numSlots
+	 *          how many ticks the wheel goes around in. Items due further off than that are visited
+	 *          once each time around, and left alone until they are due.
+	 */
+	@SuppressWarnings("unchecked")
+	public TimingWheel(long tick, int numSlots)
+	{
+		if (tick <= 0)
+			throw new IllegalArgumentException("tick must be positive: " + tick);
+		if (numSlots <= 0)
+			throw new IllegalArgumentException("numSlots must be positive: " + numSlots);
+
+		this.tick = tick;
+		this.slots = new Timeout[numSlots];
+
+		long now = System.currentTimeMillis();
+		this.clock = now;
+		this.currentTick = now / tick;
+		this.nextTick = (currentTick + 1) * tick;
+	}
+
+	/**
+	 * @return The wheel's coarse clock.
+	 */
+	public long now()
+	{
+		return clock;
+	}
+
+	public long getTick()
+	{
+		return tick;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Start timing item out, from now.
+	 *
+	 * @param item
+	 * @param timeout
+	 *          how many milliseconds item may be idle for.
+	 * @return The handle to touch() item with, when it is active, and to cancel() it with.
+	 */
+	public synchronized Timeout<T> schedule(T item, long timeout)
+	{
+		long now = System.currentTimeMillis();
+		if (now > clock)
+			clock = now;
+
+		Timeout<T> handle = new Timeout<T>(this, item, timeout, clock);
+		insert(handle);
+		size++;
+		return handle;
+	}
+
+	/**
+	 * Take out the items that have timed out by now.
+	 *
+	 * @param now
+	 *          the current time, from System.currentTimeMillis().
+	 * @return The items that timed out, which are no longer in the wheel; or an empty list, without
+	 *         taking a lock, if no tick has passed since the last call.
+	 */
+	public List<T> expire(long now)
+	{
+		if (now < nextTick)
+			return Collections.emptyList();
+
+		synchronized (this)
+		{
+			List<T> expired = null;
+
+			long lastTick = now / tick;
+			// past a whole turn of the wheel, each slot only needs to be visited once
+			long firstTick = Math.max(currentTick + 1, lastTick - slots.length + 1);
+			currentTick = lastTick;
+			nextTick = (lastTick + 1) * tick;
+			if (now > clock)
+				clock = now;
+
+			for (long t = firstTick; t <= lastTick; t++)
+			{
+				int slot = (int) (t % slots.length);
+				Timeout<T> timeout = slots[slot];
+				slots[slot] = null;
+
+				while (timeout != null)
+				{
+					Timeout<T> next = timeout.next;
+					timeout.next = timeout.prev = null;
+					timeout.slot = -1;
+
+					if (timeout.due() <= now)
+					{
+						size--;
+						if (expired == null)
+							expired = new ArrayList<T>();
+						expired.add(timeout.item);
+					}
+					else
+					{ // touched since it was put here, or due after another turn
+						insert(timeout);
+					}
+					timeout = next;
+				}
+			}
+
+			if (expired == null)
+				return Collections.emptyList();
+			return expired;
+		}
+	}
+
+	/**
+	 * @param now
+	 *          the current time, from System.currentTimeMillis().
+	 * @return How many milliseconds there are until expire() has anything to do, at least 1; or 0 if
+	 *         there are no items, so it never does.
+	 */
+	public long timeUntilNextTick(long now)
+	{
+		if (size() == 0)
+			return 0;
+		return Math.max(nextTick - now, 1);
+	}
+
+	private void insert(Timeout<T> timeout)
+	{
+		// the first tick at or after which it is due, but not one that has passed, or is a turn off
+		long dueTick = (timeout.due() + tick - 1) / tick;
+		dueTick = Math.min(Math.max(dueTick, currentTick + 1), currentTick + slots.length);
+
+		int slot = (int) (dueTick % slots.length);
+		Timeout<T> head = slots[slot];
+		timeout.next = head;
+		if (head != null)
+			head.prev = timeout;
+		slots[slot] = timeout;
+		timeout.slot = slot;
+	}
+
+	private synchronized boolean cancel(Timeout<T> timeout)
+	{
+		if (timeout.slot < 0)
+			return false;
+
+		if (timeout.prev == null)
+			slots[timeout.slot] = timeout.next;
+		else
+			timeout.prev.next = timeout.next;
+		if (timeout.next != null)
+			timeout.next.prev = timeout.prev;
+
+		timeout.next = timeout.prev = null;
+		timeout.slot = -1;
+		size--;
+		return true;
+	}
+
+	/**
+	 * An item in a TimingWheel, and when it was last active.
+	 */
+	public static final class Timeout<T>
+	{
+		private final TimingWheel<T>	wheel;
+
+		private final T								item;
+
+		private final long						timeout;
+
+		private volatile long					lastTouched;
+
+		/**
+		 * The slot it is in, or -1 once it has timed out, or been cancelled. The rest is guarded by the
+		 * wheel's lock.
+		 */
+		private int										slot	= -1;
+
+		private Timeout<T>						prev;
+
+		private Timeout<T>						next;
+
+		Timeout(TimingWheel<T> wheel, T item, long timeout, long lastTouched)
+		{
+			this.wheel = wheel;
+			this.item = item;
+			this.timeout = timeout;
+			this.lastTouched = lastTouched;
+		}
+
+		/**
+		 * Mark the item as active now, by the wheel's clock, so its timeout starts again.
+		 */
+		public void touch()
+		{
+			lastTouched = wheel.clock;
+		}
+
+		/**
+		 * Stop timing the item out.
+		 *
+		 * @return true if it was still in the wheel; false if it had already timed out, or been
+		 *         cancelled.
+		 */
+		public boolean cancel()
+		{
+			return wheel.cancel(this);
+		}
+
+		public T getItem()
+		{
+			return item;
+		}
+
+		public long getLastTouched()
+		{
+			return lastTouched;
+		}
+
+		/**
+		 * The clock may be up to a tick behind, when it is touched, so allow for that.
+		 */
+		long due()
+		{
+			return lastTouched + timeout + wheel.tick;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package ecologylab.generic.text;
+
+import java.io.IOException;
+
+/**
+ * A DecimalFormat pattern, compiled once, that any number of threads can format with at the same
+ * time.
+ * <p/>
+ * Patterns made only of digits, grouping separators and a decimal separator, such as #.##, 0.000 or
+ * #,##0.0, are formatted here, from the shortest digits of the value, rounding half-even the way
+ * EfficientDecimalFormat does. Any other pattern is handed to an EfficientDecimalFormat of each
+ * thread's own.
+ */
+public final class CompiledDecimalFormat
+{
+	private final String															pattern;
+
+	private final boolean															simple;
+
+	private final int																	minimumIntegerDigits;
+
+	private final int																	minimumFractionDigits;
+
+	private final int																	maximumFractionDigits;
+
+	/**
+	 * 0 if digits aren't grouped.
+	 */
+	private final int																	groupingSize;
+
+	private final boolean															decimalSeparatorAlwaysShown;
+
+	private final ThreadLocal<EfficientDecimalFormat>	formats;
+
+	private CompiledDecimalFormat(final String pattern)
+	{
+		this.pattern = pattern;
+		this.formats = new ThreadLocal<EfficientDecimalFormat>()
+		{
+			@Override
+			protected EfficientDecimalFormat initialValue()
+			{
+				return new EfficientDecimalFormat(pattern);
+			}
+		};
+
+		// digits are counted as DecimalFormat.applyPattern() counts them
+		int digitLeftCount = 0, zeroDigitCount = 0, digitRightCount = 0;
+		int decimalPos = -1, groupingCount = -1;
+		boolean simple = pattern.length() > 0;
+		for (int i = 0; i < pattern.length() && simple; i++)
+		{
+			char c = pattern.charAt(i);
+			if (c == '#')
+			{
+				if (zeroDigitCount > 0)
+					digitRightCount++;
+				else
+					digitLeftCount++;
+			}
+			else if (c == '0')
+			{
+				simple = digitRightCount == 0;
+				zeroDigitCount++;
+			}
+			else if (c == ',')
+			{
+				simple = decimalPos < 0;
+				groupingCount = 0;
+				continue;
+			}
+			else if (c == '.')
+			{
+				simple = decimalPos < 0;
+				decimalPos = digitLeftCount + zeroDigitCount + digitRightCount;
+				continue;
+			}
+			else
+				simple = false;
+			if (groupingCount >= 0 && decimalPos < 0)
+				groupingCount++;
+		}
+		if (groupingCount == 0)
+			simple = false;
+		if (zeroDigitCount == 0 && digitLeftCount > 0 && decimalPos >= 0)
+		{
+			// ###.###, ###. and .### put the zero before the decimal separator
+			int n = decimalPos == 0 ? 1 : decimalPos;
+			digitRightCount = digitLeftCount - n;
+			digitLeftCount = n - 1;
+			zeroDigitCount = 1;
+		}
+		int digitTotalCount = digitLeftCount + zeroDigitCount + digitRightCount;
+		int effectiveDecimalPos = decimalPos >= 0 ? decimalPos : digitTotalCount;
+
+		this.simple = simple && digitTotalCount > 0;
+		this.minimumIntegerDigits = effectiveDecimalPos - digitLeftCount;
+		this.maximumFractionDigits = decimalPos >= 0 ? digitTotalCount - decimalPos : 0;
+		this.minimumFractionDigits = decimalPos >= 0 ? digitLeftCount + zeroDigitCount - decimalPos : 0;
+		this.groupingSize = groupingCount > 0 ? groupingCount : 0;
+		this.decimalSeparatorAlwaysShown = decimalPos == 0 || decimalPos == digitTotalCount;
+
+		if (!this.simple)
+			formats.get();
+	}
+
+	/**
+	 * @param pattern
+	 *          A DecimalFormat pattern.
+	 * @throws IllegalArgumentException
+	 *           if the pattern is malformed.
+	 */
+	public static CompiledDecimalFormat compile(String pattern)
+	{
+		return new CompiledDecimalFormat(pattern);
+	}
+
+	public String getPattern()
+	{
+		return pattern;
+	}
+
+	public void format(double value, Appendable out) throws IOException
+	{
+		if (simple)
+			NumberCodec.append(out, value, this);
+		else
+			formats.get().format(value, out);
+	}
+
+	void appendNonFinite(Appendable out, double value) throws IOException
+	{
+		formats.get().format(value, out);
+	}
+
+	/**
+	 * Round digits * 10^exponent to the maximum fraction digits, and lay it out, as
+	 * DecimalFormat.subformat() does for a pattern without an exponent.
+	 */
+	void appendDigits(Appendable out, boolean negative, long digits, int exponent) throws IOException
+	{
+		if (digits != 0 && exponent < -maximumFractionDigits)
+		{
+			int dropped = -maximumFractionDigits - exponent;
+			int length = NumberCodec.digitCount(digits);
+			if (dropped > length)
+				digits = 0;
+			else
+			{
+				long divisor = NumberCodec.powerOfTen(dropped);
+				long kept = digits / divisor;
+				long rest = digits % divisor;
+				long half = divisor / 2;
+				if (rest > half || (rest == half && (kept & 1) != 0))
+					kept++;
+				digits = kept;
+				exponent += dropped;
+			}
+			while (digits != 0 && digits % 10 == 0)
+			{
+				digits /= 10;
+				exponent++;
+			}
+		}
+		int length = digits == 0 ? 0 : NumberCodec.digitCount(digits);
+		int decimalAt = digits == 0 ? 0 : length + exponent;
+
+		if (negative)
+			out.append('-');
+
+		int count = Math.max(minimumIntegerDigits, decimalAt);
+		int digitIndex = 0;
+		boolean integerDigits = count > 0;
+		for (int i = count - 1; i >= 0; i--)
+		{
+			if (i < decimalAt && digitIndex < length)
+				out.append(digitAt(digits, length, digitIndex++));
+			else
+				out.append('0');
+			if (groupingSize != 0 && i > 0 && i % groupingSize == 0)
+				out.append(',');
+		}
+
+		boolean fractionPresent = minimumFractionDigits > 0 || digitIndex < length;
+		if (!fractionPresent && !integerDigits)
+			out.append('0');
+		if (decimalSeparatorAlwaysShown || fractionPresent)
+			out.append('.');
+		for (int i = 0; i < maximumFractionDigits; i++)
+		{
+			if (i >= minimumFractionDigits && digitIndex >= length)
+				break;
+			if (-1 - i > decimalAt - 1)
+				out.append('0');
+			else if (digitIndex < length)
+				out.append(digitAt(digits, length, digitIndex++));
+			else
+				out.append('0');
+		}
+	}
+
+	private static char digitAt(long digits, int length, int index)
+	{
+		return (char) ('0' + (digits / NumberCodec.powerOfTen(length - 1 - index)) % 10);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + "[" + pattern + "]";
+	}
+}
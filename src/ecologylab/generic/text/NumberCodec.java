@@ -0,0 +1,647 @@
+package ecologylab.generic.text;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * Writes ints, longs, floats and doubles straight into an Appendable, and reads them straight from
+ * a run of chars in a CharSequence, without making Strings or boxing. It keeps no state, so any
+ * number of threads can use it at once.
+ * <p/>
+ * Floating point values are written with the fewest digits that read back as the same value, laid
+ * out the way Double.toString() and Float.toString() lay them out. The digits come from Florian
+ * Loitsch's Grisu3 algorithm; for the rare values it cannot settle, the digits of toString() are
+ * used instead. Reading takes a fast, exact path for decimals with few enough digits, and hands
+ * anything else to Double.parseDouble() and Float.parseFloat().
+ */
+public final class NumberCodec
+{
+	private static final long[]	POWERS_OF_TEN					= { 1L, 10L, 100L, 1000L, 10000L, 100000L,
+			1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L,
+			10000000000000L, 100000000000000L, 1000000000000000L, 10000000000000000L,
+			100000000000000000L, 1000000000000000000L		};
+
+	private static final double[]	DOUBLE_POWERS_OF_TEN	= { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7,
+			1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private static final float[]	FLOAT_POWERS_OF_TEN		= { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f,
+			1e7f, 1e8f, 1e9f, 1e10f											};
+
+	/**
+	 * The most digits a long can accumulate without overflowing.
+	 */
+	private static final int		MAX_LONG_DIGITS				= 18;
+
+	// Grisu3: the scaled value's binary exponent is kept between these, so that its integral part
+	// fits in 32 bits.
+	private static final int		MINIMAL_TARGET_EXPONENT	= -60;
+
+	private static final double	D_1_LOG2_10						= 0.30102999566398114;
+
+	private static final int		CACHED_POWERS_MIN_DECIMAL_EXPONENT	= -348;
+
+	private static final int		CACHED_POWERS_DECIMAL_DISTANCE			= 8;
+
+	private static final int		CACHED_POWERS_COUNT									= 87;
+
+	/**
+	 * Normalized 64 bit significands of 10^k, for k from -348 to 340 in steps of 8.
+	 */
+	private static final long[]	CACHED_POWER_SIGNIFICANDS						= new long[CACHED_POWERS_COUNT];
+
+	private static final int[]	CACHED_POWER_BINARY_EXPONENTS				= new int[CACHED_POWERS_COUNT];
+
+	static
+	{
+		for (int i = 0; i < CACHED_POWERS_COUNT; i++)
+			cachePower(i, CACHED_POWERS_MIN_DECIMAL_EXPONENT + i * CACHED_POWERS_DECIMAL_DISTANCE);
+	}
+
+	private NumberCodec()
+	{
+	}
+
+	private static void cachePower(int i, int decimalExponent)
+	{
+		BigInteger power = BigInteger.TEN.pow(Math.abs(decimalExponent));
+		BigInteger significand;
+		int binaryExponent;
+		if (decimalExponent >= 0)
+		{
+			binaryExponent = power.bitLength() - 64;
+			significand = binaryExponent > 0 ? power.shiftRight(binaryExponent - 1).add(BigInteger.ONE)
+					.shiftRight(1) : power.shiftLeft(-binaryExponent);
+		}
+		else
+		{
+			int shift = power.bitLength() + 63;
+			significand = BigInteger.ONE.shiftLeft(shift + 1).divide(power).add(BigInteger.ONE)
+					.shiftRight(1);
+			binaryExponent = -shift;
+		}
+		if (significand.bitLength() > 64)
+		{
+			significand = significand.shiftRight(1);
+			binaryExponent++;
+		}
+		CACHED_POWER_SIGNIFICANDS[i] = significand.longValue();
+		CACHED_POWER_BINARY_EXPONENTS[i] = binaryExponent;
+	}
+
+	public static void append(Appendable out, int value) throws IOException
+	{
+		if (out instanceof StringBuilder)
+			((StringBuilder) out).append(value);
+		else
+			append(out, (long) value);
+	}
+
+	public static void append(Appendable out, long value) throws IOException
+	{
+		if (out instanceof StringBuilder)
+		{
+			((StringBuilder) out).append(value);
+			return;
+		}
+		if (value < 0)
+		{
+			if (value == Long.MIN_VALUE)
+			{
+				out.append("-9223372036854775808");
+				return;
+			}
+			out.append('-');
+			value = -value;
+		}
+		if (value >= POWERS_OF_TEN[MAX_LONG_DIGITS])
+		{
+			out.append((char) ('0' + value / POWERS_OF_TEN[MAX_LONG_DIGITS]));
+			appendDigits(out, value % POWERS_OF_TEN[MAX_LONG_DIGITS], MAX_LONG_DIGITS);
+		}
+		else
+			appendDigits(out, value, digitCount(value));
+	}
+
+	public static void append(Appendable out, double value) throws IOException
+	{
+		append(out, value, null);
+	}
+
+	/**
+	 * Like append(Appendable, double), for a StringBuilder, which doesn't throw IOException.
+	 */
+	public static void append(StringBuilder out, double value)
+	{
+		try
+		{
+			append(out, value, null);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Like append(Appendable, float), for a StringBuilder, which doesn't throw IOException.
+	 */
+	public static void append(StringBuilder out, float value)
+	{
+		try
+		{
+			append((Appendable) out, value);
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static void append(Appendable out, float value) throws IOException
+	{
+		if (value != value || Float.isInfinite(value))
+		{
+			out.append(Float.toString(value));
+			return;
+		}
+		int bits = Float.floatToRawIntBits(value);
+		boolean negative = bits < 0;
+		int biasedExponent = (bits >>> 23) & 0xFF;
+		long significand = bits & 0x7FFFFF;
+		if (biasedExponent == 0 && significand == 0)
+		{
+			out.append(negative ? "-0.0" : "0.0");
+			return;
+		}
+		boolean lowerBoundaryIsCloser = significand == 0 && biasedExponent > 1;
+		int exponent = biasedExponent == 0 ? -149 : biasedExponent - 150;
+		if (biasedExponent != 0)
+			significand |= 1L << 23;
+		appendShortest(out, negative, significand, exponent, lowerBoundaryIsCloser, value, true, null);
+	}
+
+	/**
+	 * Write value with format, or as Double.toString() would if format is null.
+	 */
+	static void append(Appendable out, double value, CompiledDecimalFormat format)
+			throws IOException
+	{
+		long bits = Double.doubleToRawLongBits(value);
+		boolean negative = bits < 0;
+		int biasedExponent = (int) (bits >>> 52) & 0x7FF;
+		long significand = bits & 0xFFFFFFFFFFFFFL;
+		if (biasedExponent == 0x7FF)
+		{
+			if (format == null)
+				out.append(Double.toString(value));
+			else
+				format.appendNonFinite(out, value);
+			return;
+		}
+		if (biasedExponent == 0 && significand == 0)
+		{
+			if (format == null)
+				out.append(negative ? "-0.0" : "0.0");
+			else
+				format.appendDigits(out, negative, 0, 0);
+			return;
+		}
+		boolean lowerBoundaryIsCloser = significand == 0 && biasedExponent > 1;
+		int exponent = biasedExponent == 0 ? -1074 : biasedExponent - 1075;
+		if (biasedExponent != 0)
+			significand |= 1L << 52;
+		appendShortest(out, negative, significand, exponent, lowerBoundaryIsCloser, value, false,
+				format);
+	}
+
+	/**
+	 * Find the shortest digits for the positive value significand * 2^exponent, and lay them out.
+	 */
+	private static void appendShortest(Appendable out, boolean negative, long significand,
+			int exponent, boolean lowerBoundaryIsCloser, double value, boolean single,
+			CompiledDecimalFormat format) throws IOException
+	{
+		int wShift = Long.numberOfLeadingZeros(significand);
+		long w = significand << wShift;
+		int wExponent = exponent - wShift;
+
+		// the boundaries, halfway to the neighboring values, with w's exponent
+		long plus = ((significand << 1) + 1) << (wShift - 1);
+		long minus = lowerBoundaryIsCloser ? ((significand << 2) - 1) << (wShift - 2)
+				: ((significand << 1) - 1) << (wShift - 1);
+
+		// scale by a cached power of ten, so that the binary exponent lands in
+		// [MINIMAL_TARGET_EXPONENT, MINIMAL_TARGET_EXPONENT + 28]
+		int minExponent = MINIMAL_TARGET_EXPONENT - (wExponent + 64);
+		int k = (int) Math.ceil((minExponent + 63) * D_1_LOG2_10);
+		int index = (-CACHED_POWERS_MIN_DECIMAL_EXPONENT + k - 1) / CACHED_POWERS_DECIMAL_DISTANCE + 1;
+		long power = CACHED_POWER_SIGNIFICANDS[index];
+		int mk = CACHED_POWERS_MIN_DECIMAL_EXPONENT + index * CACHED_POWERS_DECIMAL_DISTANCE;
+		int oneShift = -(wExponent + CACHED_POWER_BINARY_EXPONENTS[index] + 64);
+
+		long scaledW = multiply(w, power);
+		long unit = 1;
+		long tooLow = multiply(minus, power) - unit;
+		long tooHigh = multiply(plus, power) + unit;
+		long unsafeInterval = tooHigh - tooLow;
+		long one = 1L << oneShift;
+		long integrals = tooHigh >>> oneShift;
+		long fractionals = tooHigh & (one - 1);
+
+		long divisor = 1;
+		int kappa = 1;
+		while (divisor * 10 <= integrals)
+		{
+			divisor *= 10;
+			kappa++;
+		}
+
+		long digits = 0;
+		int length = 0;
+		boolean done = false;
+		while (kappa > 0)
+		{
+			digits = digits * 10 + integrals / divisor;
+			length++;
+			integrals %= divisor;
+			kappa--;
+			long rest = (integrals << oneShift) + fractionals;
+			if (unsignedLess(rest, unsafeInterval))
+			{
+				digits = roundWeed(digits, tooHigh - scaledW, unsafeInterval, rest, divisor << oneShift,
+						unit);
+				done = true;
+				break;
+			}
+			divisor /= 10;
+		}
+		while (!done && length < MAX_LONG_DIGITS)
+		{
+			fractionals *= 10;
+			unit *= 10;
+			unsafeInterval *= 10;
+			digits = digits * 10 + (fractionals >>> oneShift);
+			length++;
+			fractionals &= one - 1;
+			kappa--;
+			if (unsignedLess(fractionals, unsafeInterval))
+			{
+				digits = roundWeed(digits, (tooHigh - scaledW) * unit, unsafeInterval, fractionals, one,
+						unit);
+				done = true;
+			}
+		}
+
+		int decimalExponent = kappa - mk;
+		if (!done || digits < 0)
+		{
+			// Grisu3 couldn't be sure: take the digits toString() finds
+			String string = single ? Float.toString((float) Math.abs(value)) : Double.toString(Math
+					.abs(value));
+			digits = 0;
+			decimalExponent = 0;
+			int count = 0;
+			boolean fraction = false;
+			for (int i = 0; i < string.length(); i++)
+			{
+				char c = string.charAt(i);
+				if (c == '.')
+					fraction = true;
+				else if (c == 'E')
+				{
+					decimalExponent += Integer.parseInt(string.substring(i + 1));
+					break;
+				}
+				else if (count < MAX_LONG_DIGITS)
+				{
+					digits = digits * 10 + (c - '0');
+					if (digits != 0)
+						count++;
+					if (fraction)
+						decimalExponent--;
+				}
+				else if (!fraction)
+					decimalExponent++;
+			}
+		}
+		while (digits % 10 == 0)
+		{
+			digits /= 10;
+			decimalExponent++;
+		}
+
+		if (format != null)
+			format.appendDigits(out, negative, digits, decimalExponent);
+		else
+		{
+			if (negative)
+				out.append('-');
+			appendLikeToString(out, digits, decimalExponent);
+		}
+	}
+
+	/**
+	 * Grisu3's weeding step: move the last digit down towards w while that gets closer, then check
+	 * that the result is unambiguously the closest.
+	 *
+	 * @return The adjusted digits, or -1 if they can't be trusted.
+	 */
+	private static long roundWeed(long digits, long distanceTooHighW, long unsafeInterval, long rest,
+			long tenKappa, long unit)
+	{
+		long smallDistance = distanceTooHighW - unit;
+		long bigDistance = distanceTooHighW + unit;
+		while (unsignedLess(rest, smallDistance)
+				&& !unsignedLess(unsafeInterval - rest, tenKappa)
+				&& (unsignedLess(rest + tenKappa, smallDistance) || !unsignedLess(smallDistance - rest,
+						rest + tenKappa - smallDistance)))
+		{
+			digits--;
+			rest += tenKappa;
+		}
+		if (unsignedLess(rest, bigDistance)
+				&& !unsignedLess(unsafeInterval - rest, tenKappa)
+				&& (unsignedLess(rest + tenKappa, bigDistance) || unsignedLess(rest + tenKappa
+						- bigDistance, bigDistance - rest)))
+			return -1;
+		return !unsignedLess(rest, 2 * unit) && !unsignedLess(unsafeInterval - 4 * unit, rest) ? digits
+				: -1;
+	}
+
+	/**
+	 * @return The upper 64 bits of the 128 bit product of x and y, as unsigned numbers, rounded.
+	 */
+	private static long multiply(long x, long y)
+	{
+		long a = x >>> 32, b = x & 0xFFFFFFFFL, c = y >>> 32, d = y & 0xFFFFFFFFL;
+		long bc = b * c, ad = a * d;
+		long middle = ((b * d) >>> 32) + (ad & 0xFFFFFFFFL) + (bc & 0xFFFFFFFFL) + (1L << 31);
+		return a * c + (ad >>> 32) + (bc >>> 32) + (middle >>> 32);
+	}
+
+	private static boolean unsignedLess(long a, long b)
+	{
+		return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+	}
+
+	/**
+	 * Lay out digits * 10^exponent as Double.toString() does: plainly from 10^-3 up to 10^7, and in
+	 * computerized scientific notation outside that.
+	 */
+	private static void appendLikeToString(Appendable out, long digits, int exponent)
+			throws IOException
+	{
+		int length = digitCount(digits);
+		int decimalAt = length + exponent;
+		if (decimalAt > -3 && decimalAt <= 7)
+		{
+			if (decimalAt <= 0)
+			{
+				out.append("0.");
+				appendZeros(out, -decimalAt);
+				appendDigits(out, digits, length);
+			}
+			else if (decimalAt < length)
+			{
+				long fraction = POWERS_OF_TEN[length - decimalAt];
+				appendDigits(out, digits / fraction, decimalAt);
+				out.append('.');
+				appendDigits(out, digits % fraction, length - decimalAt);
+			}
+			else
+			{
+				appendDigits(out, digits, length);
+				appendZeros(out, decimalAt - length);
+				out.append(".0");
+			}
+		}
+		else
+		{
+			long fraction = POWERS_OF_TEN[length - 1];
+			out.append((char) ('0' + digits / fraction));
+			out.append('.');
+			if (length > 1)
+				appendDigits(out, digits % fraction, length - 1);
+			else
+				out.append('0');
+			out.append('E');
+			append(out, (long) (decimalAt - 1));
+		}
+	}
+
+	/**
+	 * @return How many decimal digits a non-negative value below 10^18 has.
+	 */
+	static int digitCount(long value)
+	{
+		int count = 1;
+		while (count < MAX_LONG_DIGITS && value >= POWERS_OF_TEN[count])
+			count++;
+		return count;
+	}
+
+	static long powerOfTen(int exponent)
+	{
+		return POWERS_OF_TEN[exponent];
+	}
+
+	/**
+	 * Append exactly count digits of value, with leading zeros.
+	 */
+	static void appendDigits(Appendable out, long value, int count) throws IOException
+	{
+		for (int i = count - 1; i >= 0; i--)
+			out.append((char) ('0' + (value / POWERS_OF_TEN[i]) % 10));
+	}
+
+	static void appendZeros(Appendable out, int count) throws IOException
+	{
+		for (int i = 0; i < count; i++)
+			out.append('0');
+	}
+
+	/**
+	 * Parse the chars from start to end in text as an int, like Integer.parseInt().
+	 *
+	 * @throws NumberFormatException
+	 */
+	public static int parseInt(CharSequence text, int start, int end)
+	{
+		long value = parseLong(text, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+		return (int) value;
+	}
+
+	/**
+	 * Parse the chars from start to end in text as a long, like Long.parseLong().
+	 *
+	 * @throws NumberFormatException
+	 */
+	public static long parseLong(CharSequence text, int start, int end)
+	{
+		return parseLong(text, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Parse a decimal integer, from min to max, accumulating it negatively, as Long.parseLong() does,
+	 * so that min itself can be read.
+	 */
+	public static long parseLong(CharSequence text, int start, int end, long min, long max)
+	{
+		if (start >= end)
+			throw numberFormatException(text, start, end);
+		int i = start;
+		char first = text.charAt(i);
+		boolean negative = first == '-';
+		if (negative || first == '+')
+		{
+			if (++i == end)
+				throw numberFormatException(text, start, end);
+		}
+		long limit = negative ? min : -max;
+		long multiplicationLimit = limit / 10;
+		long result = 0;
+		for (; i < end; i++)
+		{
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || result < multiplicationLimit)
+				throw numberFormatException(text, start, end);
+			result *= 10;
+			if (result < limit + digit)
+				throw numberFormatException(text, start, end);
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parse the chars from start to end in text as a double, like Double.parseDouble().
+	 *
+	 * @throws NumberFormatException
+	 */
+	public static double parseDouble(CharSequence text, int start, int end)
+	{
+		long parsed = parseDecimal(text, start, end, 1L << 53, DOUBLE_POWERS_OF_TEN.length - 1);
+		if (parsed == NOT_SIMPLE)
+			return Double.parseDouble(text.subSequence(start, end).toString());
+		double value = decimalSignificand(parsed);
+		int exponent = decimalExponent(parsed);
+		value = exponent < 0 ? value / DOUBLE_POWERS_OF_TEN[-exponent] : value
+				* DOUBLE_POWERS_OF_TEN[exponent];
+		return decimalNegative(parsed) ? -value : value;
+	}
+
+	/**
+	 * Parse the chars from start to end in text as a float, like Float.parseFloat().
+	 *
+	 * @throws NumberFormatException
+	 */
+	public static float parseFloat(CharSequence text, int start, int end)
+	{
+		long parsed = parseDecimal(text, start, end, 1L << 24, FLOAT_POWERS_OF_TEN.length - 1);
+		if (parsed == NOT_SIMPLE)
+			return Float.parseFloat(text.subSequence(start, end).toString());
+		float value = decimalSignificand(parsed);
+		int exponent = decimalExponent(parsed);
+		value = exponent < 0 ? value / FLOAT_POWERS_OF_TEN[-exponent] : value
+				* FLOAT_POWERS_OF_TEN[exponent];
+		return decimalNegative(parsed) ? -value : value;
+	}
+
+	private static final long	NOT_SIMPLE	= -1;
+
+	// A simple decimal is packed into a long: the significand, below 2^53, in the high bits, then 6
+	// bits of biased decimal exponent, then the sign.
+	private static long decimalSignificand(long parsed)
+	{
+		return parsed >>> 7;
+	}
+
+	private static int decimalExponent(long parsed)
+	{
+		return (int) ((parsed >>> 1) & 0x3F) - 32;
+	}
+
+	private static boolean decimalNegative(long parsed)
+	{
+		return (parsed & 1) != 0;
+	}
+
+	/**
+	 * Read a plain decimal, such as -12.5 or 3e-7, whose significand is at most maxSignificand and
+	 * whose decimal exponent is within maxExponent, so that it can be computed exactly with one
+	 * floating point multiplication or division.
+	 *
+	 * @return The decimal, packed, or NOT_SIMPLE for anything else, including malformed input.
+	 */
+	private static long parseDecimal(CharSequence text, int start, int end, long maxSignificand,
+			int maxExponent)
+	{
+		int i = start;
+		if (i == end)
+			return NOT_SIMPLE;
+		char c = text.charAt(i);
+		boolean negative = c == '-';
+		if (negative || c == '+')
+			i++;
+
+		long significand = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean sawDigit = false;
+		boolean fraction = false;
+		for (; i < end; i++)
+		{
+			c = text.charAt(i);
+			if (c >= '0' && c <= '9')
+			{
+				sawDigit = true;
+				if (significand != 0 || c != '0')
+				{
+					if (++digits > MAX_LONG_DIGITS)
+						return NOT_SIMPLE;
+					significand = significand * 10 + (c - '0');
+				}
+				if (fraction)
+					exponent--;
+			}
+			else if (c == '.' && !fraction)
+				fraction = true;
+			else
+				break;
+		}
+		if (!sawDigit)
+			return NOT_SIMPLE;
+		if (i < end)
+		{
+			if (c != 'e' && c != 'E')
+				return NOT_SIMPLE;
+			if (++i == end)
+				return NOT_SIMPLE;
+			c = text.charAt(i);
+			boolean negativeExponent = c == '-';
+			if (negativeExponent || c == '+')
+				i++;
+			if (i == end || end - i > 3)
+				return NOT_SIMPLE;
+			int explicit = 0;
+			for (; i < end; i++)
+			{
+				c = text.charAt(i);
+				if (c < '0' || c > '9')
+					return NOT_SIMPLE;
+				explicit = explicit * 10 + (c - '0');
+			}
+			exponent += negativeExponent ? -explicit : explicit;
+		}
+		if (significand == 0)
+			exponent = 0;
+		if (significand > maxSignificand || exponent < -maxExponent || exponent > maxExponent)
+			return NOT_SIMPLE;
+		return (significand << 7) | ((exponent + 32L) << 1) | (negative ? 1 : 0);
+	}
+
+	private static NumberFormatException numberFormatException(CharSequence text, int start, int end)
+	{
+		return new NumberFormatException("For input string: \"" + text.subSequence(start, end) + "\"");
+	}
+}
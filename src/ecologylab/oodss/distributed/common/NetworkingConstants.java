@@ -16,6 +16,15 @@ public interface NetworkingConstants
 
 	static final int						DEFAULT_IDLE_TIMEOUT							= 10000;
 
+	/**
+	 * Bytes queued for writing to one connection, above which it is backed up, so that disposable
+	 * updates to it are held back.
+	 */
+	static final int						DEFAULT_WRITE_HIGH_WATERMARK			= 1024 * 1024;										// 1MB
+
+	/** Bytes queued for writing to one connection, below which it is no longer backed up. */
+	static final int						DEFAULT_WRITE_LOW_WATERMARK				= 256 * 1024;										// 256KB
+
 	/** The maximum size an http-like header on a message may be, in bytes. */
 	static final int						MAX_HTTP_HEADER_LENGTH						= 4 * 1024;											// 4KB
 
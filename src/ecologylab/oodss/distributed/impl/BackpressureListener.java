@@ -0,0 +1,17 @@
+package ecologylab.oodss.distributed.impl;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Told when a connection that NIONetworking had found backed up has caught up.
+ */
+public interface BackpressureListener
+{
+	/**
+	 * Called on the IO thread, once the bytes queued for writing to key have fallen below the low
+	 * watermark, after going over the high one.
+	 * 
+	 * @param key
+	 */
+	void backpressureRelieved(SelectionKey key);
+}
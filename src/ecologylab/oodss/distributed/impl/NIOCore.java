@@ -5,12 +5,14 @@ package ecologylab.oodss.distributed.impl;
 
 import java.io.IOException;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ecologylab.generic.Debug;
 import ecologylab.generic.ResourcePool;
@@ -24,7 +26,9 @@ import ecologylab.oodss.exceptions.ClientOfflineException;
  * StartAndStoppable; it's run method automatically handles interest-switching on a selector's keys,
  * as well as calling appropriate abstract methods whenever interest ops are selected.
  * 
- * Subclasses are required to configure their own selector.
+ * Subclasses are required to configure their own selector. Connections may be spread across further
+ * I/O selectors, each run in its own thread, by calling setIOThreads() before openSelector(), then
+ * registering them with register(SocketChannel, Object).
  * 
  * @author Zachary O. Toups (toupsz@cs.tamu.edu)
  * 
@@ -35,6 +39,13 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 
 	protected Selector											selector;
 
+	private int															numIOThreads;
+
+	/**
+	 * Loops for the I/O selectors; empty unless there are I/O threads.
+	 */
+	private volatile SelectorLoop[]					ioLoops										= new SelectorLoop[0];
+
 	private String													networkingIdentifier			= "NIOCore";
 
 	private volatile boolean								running;
@@ -67,161 +78,16 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 	 * 
 	 * Proper use of this method is through the start / stop methods.
 	 * 
-	 * Main run method. Performs a loop of changing the mode (read/write) for each socket, if
-	 * requested, then checks for and performs appropriate I/O for each socket that is ready. Ends
-	 * when running is set to false (through the stop method).
+	 * Main run method. Runs the loop for the main selector: changes the mode (read/write) for each
+	 * socket, if requested, then checks for and performs appropriate I/O for each socket that is
+	 * ready. Ends when running is set to false (through the stop method).
 	 * 
 	 * @see java.lang.Runnable#run()
 	 */
 	@Override
 	public final void run()
 	{
-		while (running)
-		{
-			// update pending selection operation changes
-			synchronized (this.pendingSelectionOpChanges)
-			{
-				for (SocketModeChangeRequest changeReq : pendingSelectionOpChanges)
-				{
-					if (changeReq.key.channel().isRegistered())
-					{
-						/*
-						 * Perform any changes to the interest ops on the keys, before selecting.
-						 */
-						switch (changeReq.type)
-						{
-						case CHANGEOPS:
-							try
-							{
-								changeReq.key.interestOps(changeReq.ops);
-							}
-							catch (CancelledKeyException e)
-							{
-								debug("tried to change ops after key was cancelled.");
-							}
-							catch (IllegalArgumentException e1)
-							{
-								debug("illegal argument for interestOps: " + changeReq.ops);
-							}
-							break;
-						case INVALIDATE_PERMANENTLY:
-							debug(">>>>>>>>>>>>>>>> invalidating permanently: " + changeReq.key.attachment());
-							invalidateKey(changeReq.key, true);
-							break;
-						case INVALIDATE_TEMPORARILY:
-							debug(">>>>>>>>>>>>>>>> invalidating temporarily: " + changeReq.key.attachment());
-							invalidateKey(changeReq.key, false);
-							break;
-						}
-					}
-
-					// release the SocketModeChangeRequest when done
-					changeReq = this.mReqPool.release(changeReq);
-				}
-
-				this.pendingSelectionOpChanges.clear();
-			}
-
-			// check selection operations
-			try
-			{
-				if (selector.select() > 0)
-				{
-					/*
-					 * get an iterator of the keys that have something to do we have to do it this way,
-					 * because we have to be able to call remove() which will not work in a foreach loop
-					 */
-					Iterator<SelectionKey> selectedKeyIter = selector.selectedKeys().iterator();
-
-					while (selectedKeyIter.hasNext())
-					{
-						/*
-						 * get the key corresponding to the event and process it appropriately, then remove it
-						 */
-						SelectionKey key = selectedKeyIter.next();
-
-						selectedKeyIter.remove();
-
-						if (!key.isValid())
-						{
-							debug("invalid key");
-							setPendingInvalidate(key, false);
-						}
-						else if (key.isReadable())
-						{
-							/*
-							 * incoming readable, valid key; have to double-check validity here, because accept
-							 * key may have rejected an incoming connection
-							 */
-							if (key.channel().isOpen() && key.isValid())
-							{
-								try
-								{
-									readReady(key);
-									readFinished(key);
-								}
-								catch (ClientOfflineException e)
-								{
-									warning(e.getMessage());
-									setPendingInvalidate(key, false);
-								}
-								catch (BadClientException e)
-								{
-									// close down this evil connection!
-									error(e.getMessage());
-									this.removeBadConnections(key);
-								}
-								catch (java.lang.IllegalArgumentException e)
-								{
-									warning(e.getMessage());
-								}
-							}
-							else
-							{
-								debug("Channel closed on " + key.attachment() + ", removing.");
-								invalidateKey(key, false);
-							}
-						}
-						else if (key.isWritable())
-						{
-							try
-							{
-								writeReady(key);
-								writeFinished(key);
-							}
-							catch (IOException e)
-							{
-								debug("IO error when attempting to write to socket; stack trace follows.");
-
-								e.printStackTrace();
-							}
-
-						}
-						else if (key.isAcceptable())
-						{ // incoming connection; accept
-							this.acceptReady(key);
-							this.acceptFinished(key);
-						}
-						else if (key.isConnectable())
-						{
-							this.connectReady(key);
-							this.connectFinished(key);
-						}
-					}
-				}
-			}
-			catch (IOException e)
-			{
-				this.stop();
-
-				debug("attempted to access selector after it was closed! shutting down");
-
-				e.printStackTrace();
-			}
-
-			// remove any that were idle for too long
-			this.checkAndDropIdleKeys();
-		}
+		new SelectorLoop(selector, pendingSelectionOpChanges).run();
 
 		this.close();
 	}
@@ -277,7 +143,7 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 	{
 		this.queueForRead(key);
 
-		selector.wakeup();
+		key.selector().wakeup();
 	}
 
 	/**
@@ -296,7 +162,7 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 	{
 		this.queueForRead(key);
 
-		selector.wakeup();
+		key.selector().wakeup();
 	}
 
 	protected abstract void removeBadConnections(SelectionKey key);
@@ -320,12 +186,9 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 		req.type = ((forcePermanent ? true : permanent) ? SocketModeChangeRequestType.INVALIDATE_PERMANENTLY
 				: SocketModeChangeRequestType.INVALIDATE_TEMPORARILY);
 
-		synchronized (pendingSelectionOpChanges)
-		{
-			this.pendingSelectionOpChanges.offer(req);
-		}
+		this.queueChange(req);
 
-		selector.wakeup();
+		key.selector().wakeup();
 	}
 
 	/**
@@ -349,6 +212,14 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 	 */
 	protected void invalidateKey(SocketChannel chan)
 	{
+		SelectionKey key = keyFor(chan);
+		if (key != null && key.isValid())
+		{
+			SelectorLoop loop = loopFor(key);
+			if (loop != null)
+				loop.numChannels.decrementAndGet();
+		}
+
 		try
 		{
 			chan.close();
@@ -362,12 +233,12 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 			debug(e.getMessage());
 		}
 
-		if (chan.keyFor(selector) != null)
+		if (key != null)
 		{ /*
 			 * it's possible that they key was somehow disposed of already, perhaps it was already
 			 * invalidated once
 			 */
-			chan.keyFor(selector).cancel();
+			key.cancel();
 		}
 	}
 
@@ -392,12 +263,32 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 			}
 		}
 
-		
+		SelectorLoop[] loops = ioLoops;
+		for (int i = 0; i < loops.length; i++)
+		{
+			if (loops[i].thread == null)
+			{
+				loops[i].thread = new Thread(loops[i], networkingIdentifier + " I/O " + i
+						+ " running on port " + portNumber);
+				loops[i].thread.start();
+			}
+		}
 	}
 
+	/**
+	 * Open the main selector, and one for each I/O thread.
+	 * 
+	 * @throws IOException
+	 */
 	protected void openSelector() throws IOException
 	{
 		selector = Selector.open();
+
+		SelectorLoop[] loops = new SelectorLoop[numIOThreads];
+		for (int i = 0; i < loops.length; i++)
+			loops[i] = new SelectorLoop(Selector.open(),
+					new ConcurrentLinkedQueue<SocketModeChangeRequest>());
+		ioLoops = loops;
 	}
 
 	@Override
@@ -408,6 +299,11 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 		try
 		{
 			this.selector.wakeup();
+			for (SelectorLoop loop : ioLoops)
+			{
+				loop.selector.wakeup();
+				loop.thread = null;
+			}
 		}
 		catch (Exception e)
 		{
@@ -434,6 +330,15 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 	 */
 	protected abstract void checkAndDropIdleKeys();
 
+	/**
+	 * @return How long each select may wait for activity, in milliseconds, so that
+	 *         checkAndDropIdleKeys() runs often enough; or 0 to wait for as long as it takes.
+	 */
+	protected long selectTimeout()
+	{
+		return 0;
+	}
+
 	/**
 	 * @param key
 	 */
@@ -446,11 +351,7 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 		req.type = SocketModeChangeRequestType.CHANGEOPS;
 		req.ops = SelectionKey.OP_ACCEPT;
 
-		synchronized (this.pendingSelectionOpChanges)
-		{
-			// queue the socket channel for writing
-			this.pendingSelectionOpChanges.offer(req);
-		}
+		this.queueChange(req);
 	}
 
 	protected void queueForConnect(SelectionKey key)
@@ -460,11 +361,7 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 		req.type = SocketModeChangeRequestType.CHANGEOPS;
 		req.ops = SelectionKey.OP_CONNECT;
 
-		synchronized (this.pendingSelectionOpChanges)
-		{
-			// queue the socket channel for writing
-			this.pendingSelectionOpChanges.offer(req);
-		}
+		this.queueChange(req);
 	}
 
 	protected void queueForRead(SelectionKey key)
@@ -474,11 +371,7 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 		req.type = SocketModeChangeRequestType.CHANGEOPS;
 		req.ops = SelectionKey.OP_READ;
 
-		synchronized (this.pendingSelectionOpChanges)
-		{
-			// queue the socket channel for writing
-			this.pendingSelectionOpChanges.offer(req);
-		}
+		this.queueChange(req);
 	}
 
 	protected void queueForWrite(SelectionKey key)
@@ -488,13 +381,152 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 		req.type = SocketModeChangeRequestType.CHANGEOPS;
 		req.ops = SelectionKey.OP_WRITE;
 
-		synchronized (this.pendingSelectionOpChanges)
+		this.queueChange(req);
+	}
+
+	/**
+	 * Queue req with the changes for the selector that its key belongs to.
+	 * 
+	 * @param req
+	 */
+	private void queueChange(SocketModeChangeRequest req)
+	{
+		SelectorLoop loop = loopFor(req.key);
+		Queue<SocketModeChangeRequest> changes = loop == null ? pendingSelectionOpChanges
+				: loop.pendingSelectionOpChanges;
+
+		synchronized (changes)
 		{
-			// queue the socket channel for writing
-			this.pendingSelectionOpChanges.offer(req);
+			changes.offer(req);
 		}
 	}
 
+	/**
+	 * @param key
+	 * @return The loop for the I/O selector that key belongs to, or null if it belongs to the main
+	 *         selector.
+	 */
+	private SelectorLoop loopFor(SelectionKey key)
+	{
+		Selector keySelector = key.selector();
+		for (SelectorLoop loop : ioLoops)
+			if (loop.selector == keySelector)
+				return loop;
+		return null;
+	}
+
+	/**
+	 * @param channel
+	 * @return The key of channel, with the main selector, or with any of the I/O selectors; null if it
+	 *         is not registered.
+	 */
+	protected SelectionKey keyFor(SocketChannel channel)
+	{
+		SelectionKey key = channel.keyFor(selector);
+		for (SelectorLoop loop : ioLoops)
+			if (key == null)
+				key = channel.keyFor(loop.selector);
+		return key;
+	}
+
+	/**
+	 * Register channel for reading, attaching attachment to its key. If there are I/O threads, it is
+	 * handed to the one with the fewest channels, which registers it with its selector; otherwise it
+	 * is registered with the main selector, from the calling thread. Either way, channelRegistered()
+	 * is then called, from the thread that will do its I/O, before anything is selected for it; or
+	 * channelRegistrationFailed(), if channel was closed first.
+	 * 
+	 * @param channel
+	 *          a non-blocking channel.
+	 * @param attachment
+	 * @throws ClosedChannelException
+	 */
+	protected void register(SocketChannel channel, Object attachment) throws ClosedChannelException
+	{
+		SelectorLoop[] loops = ioLoops;
+		if (loops.length == 0)
+		{
+			SelectionKey key;
+			try
+			{
+				key = channel.register(selector, SelectionKey.OP_READ, attachment);
+			}
+			catch (ClosedChannelException e)
+			{
+				channelRegistrationFailed(attachment);
+				throw e;
+			}
+			channelRegistered(key);
+			return;
+		}
+
+		SelectorLoop leastLoaded = loops[0];
+		for (int i = 1; i < loops.length; i++)
+			if (loops[i].numChannels.get() < leastLoaded.numChannels.get())
+				leastLoaded = loops[i];
+
+		leastLoaded.numChannels.incrementAndGet();
+		leastLoaded.pendingRegistrations.offer(new ChannelRegistration(channel, attachment));
+		leastLoaded.selector.wakeup();
+	}
+
+	/**
+	 * Called when a channel handed to register(SocketChannel, Object) has been registered, from the
+	 * thread of the selector it was registered with.
+	 * 
+	 * @param key
+	 */
+	protected void channelRegistered(SelectionKey key)
+	{
+	}
+
+	/**
+	 * Called instead of channelRegistered(), when a channel handed to register(SocketChannel, Object)
+	 * was closed before it could be registered, from the thread that tried to.
+	 * 
+	 * @param attachment
+	 *          what was to be attached to its key.
+	 */
+	protected void channelRegistrationFailed(Object attachment)
+	{
+	}
+
+	/**
+	 * Set how many I/O threads connections are spread across, each with its own selector. With 0, the
+	 * default, all I/O is done by this's own thread, with the main selector. Takes effect at the next
+	 * openSelector().
+	 * 
+	 * @param numIOThreads
+	 */
+	public void setIOThreads(int numIOThreads)
+	{
+		if (numIOThreads < 0)
+			throw new IllegalArgumentException("negative number of I/O threads: " + numIOThreads);
+		this.numIOThreads = numIOThreads;
+	}
+
+	/**
+	 * @return The number of I/O threads that connections are spread across; 0 if they are all handled
+	 *         by this's own thread.
+	 */
+	public int getIOThreads()
+	{
+		return ioLoops.length;
+	}
+
+	/**
+	 * @return The number of channels handed to each I/O thread, and not yet invalidated; empty if
+	 *         there are no I/O threads.
+	 */
+	public int[] getIOThreadChannelCounts()
+	{
+		SelectorLoop[] loops = ioLoops;
+		int[] counts = new int[loops.length];
+		for (int i = 0; i < loops.length; i++)
+			counts[i] = loops[i].numChannels.get();
+		return counts;
+	}
+
 	/**
 	 * @return the port number the server is listening on.
 	 */
@@ -533,6 +565,238 @@ public abstract class NIOCore extends Debug implements StartAndStoppable, Networ
 		INVALIDATE_TEMPORARILY
 	}
 
+	/**
+	 * A selector, and the queue of changes to make to its keys' interest ops, run in a thread of its
+	 * own. The main selector has one, run by this's own thread; I/O selectors, if there are any, each
+	 * have another, that channels are registered with by register(SocketChannel, Object).
+	 */
+	class SelectorLoop implements Runnable
+	{
+		final Selector													selector;
+
+		final Queue<SocketModeChangeRequest>		pendingSelectionOpChanges;
+
+		/**
+		 * Channels that have been handed to this, and are to be registered with its selector, by its own
+		 * thread.
+		 */
+		final Queue<ChannelRegistration>				pendingRegistrations	= new ConcurrentLinkedQueue<ChannelRegistration>();
+
+		/**
+		 * Channels registered with this, or about to be, that have not yet been invalidated.
+		 */
+		final AtomicInteger											numChannels						= new AtomicInteger();
+
+		Thread																	thread;
+
+		SelectorLoop(Selector selector, Queue<SocketModeChangeRequest> pendingSelectionOpChanges)
+		{
+			this.selector = selector;
+			this.pendingSelectionOpChanges = pendingSelectionOpChanges;
+		}
+
+		@Override
+		public void run()
+		{
+			while (running)
+			{
+				registerPendingChannels();
+
+				// update pending selection operation changes
+				synchronized (pendingSelectionOpChanges)
+				{
+					for (SocketModeChangeRequest changeReq : pendingSelectionOpChanges)
+					{
+						if (changeReq.key.channel().isRegistered())
+						{
+							/*
+							 * Perform any changes to the interest ops on the keys, before selecting.
+							 */
+							switch (changeReq.type)
+							{
+							case CHANGEOPS:
+								try
+								{
+									changeReq.key.interestOps(changeReq.ops);
+								}
+								catch (CancelledKeyException e)
+								{
+									debug("tried to change ops after key was cancelled.");
+								}
+								catch (IllegalArgumentException e1)
+								{
+									debug("illegal argument for interestOps: " + changeReq.ops);
+								}
+								break;
+							case INVALIDATE_PERMANENTLY:
+								debug(">>>>>>>>>>>>>>>> invalidating permanently: " + changeReq.key.attachment());
+								invalidateKey(changeReq.key, true);
+								break;
+							case INVALIDATE_TEMPORARILY:
+								debug(">>>>>>>>>>>>>>>> invalidating temporarily: " + changeReq.key.attachment());
+								invalidateKey(changeReq.key, false);
+								break;
+							}
+						}
+
+						// release the SocketModeChangeRequest when done
+						changeReq = mReqPool.release(changeReq);
+					}
+
+					pendingSelectionOpChanges.clear();
+				}
+
+				// check selection operations
+				try
+				{
+					if (selector.select(selectTimeout()) > 0)
+					{
+						/*
+						 * get an iterator of the keys that have something to do we have to do it this way,
+						 * because we have to be able to call remove() which will not work in a foreach loop
+						 */
+						Iterator<SelectionKey> selectedKeyIter = selector.selectedKeys().iterator();
+
+						while (selectedKeyIter.hasNext())
+						{
+							/*
+							 * get the key corresponding to the event and process it appropriately, then remove it
+							 */
+							SelectionKey key = selectedKeyIter.next();
+
+							selectedKeyIter.remove();
+
+							if (!key.isValid())
+							{
+								debug("invalid key");
+								setPendingInvalidate(key, false);
+							}
+							else if (key.isReadable())
+							{
+								/*
+								 * incoming readable, valid key; have to double-check validity here, because accept
+								 * key may have rejected an incoming connection
+								 */
+								if (key.channel().isOpen() && key.isValid())
+								{
+									try
+									{
+										readReady(key);
+										readFinished(key);
+									}
+									catch (ClientOfflineException e)
+									{
+										warning(e.getMessage());
+										setPendingInvalidate(key, false);
+									}
+									catch (BadClientException e)
+									{
+										// close down this evil connection!
+										error(e.getMessage());
+										removeBadConnections(key);
+									}
+									catch (java.lang.IllegalArgumentException e)
+									{
+										warning(e.getMessage());
+									}
+								}
+								else
+								{
+									debug("Channel closed on " + key.attachment() + ", removing.");
+									invalidateKey(key, false);
+								}
+							}
+							else if (key.isWritable())
+							{
+								try
+								{
+									writeReady(key);
+									writeFinished(key);
+								}
+								catch (IOException e)
+								{
+									debug("IO error when attempting to write to socket; stack trace follows.");
+
+									e.printStackTrace();
+								}
+
+							}
+							else if (key.isAcceptable())
+							{ // incoming connection; accept
+								acceptReady(key);
+								acceptFinished(key);
+							}
+							else if (key.isConnectable())
+							{
+								connectReady(key);
+								connectFinished(key);
+							}
+						}
+					}
+				}
+				catch (IOException e)
+				{
+					NIOCore.this.stop();
+
+					debug("attempted to access selector after it was closed! shutting down");
+
+					e.printStackTrace();
+				}
+
+				// remove any that were idle for too long
+				checkAndDropIdleKeys();
+			}
+
+			// the main selector is closed by close()
+			if (selector != NIOCore.this.selector)
+			{
+				try
+				{
+					selector.close();
+				}
+				catch (IOException e)
+				{
+					debug(e.getMessage());
+				}
+			}
+		}
+
+		private void registerPendingChannels()
+		{
+			ChannelRegistration registration;
+			while ((registration = pendingRegistrations.poll()) != null)
+			{
+				try
+				{
+					channelRegistered(registration.channel.register(selector, SelectionKey.OP_READ,
+							registration.attachment));
+				}
+				catch (ClosedChannelException e)
+				{
+					numChannels.decrementAndGet();
+					debug("connection closed before it could be registered: " + registration.attachment);
+					channelRegistrationFailed(registration.attachment);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A channel to register with a SelectorLoop, and what to attach to its key.
+	 */
+	static class ChannelRegistration
+	{
+		final SocketChannel	channel;
+
+		final Object				attachment;
+
+		ChannelRegistration(SocketChannel channel, Object attachment)
+		{
+			this.channel = channel;
+			this.attachment = attachment;
+		}
+	}
+
 	/**
 	 * A signaling object for modifying interest ops and socket invalidation in a thread-safe way.
 	 * 
@@ -10,10 +10,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.naming.OperationNotSupportedException;
 
@@ -33,16 +30,28 @@ import ecologylab.serialization.SimplTypesScope;
 public abstract class NIONetworking<S extends Scope> extends NIOCore
 {
 	/**
-	 * ByteBuffer that holds all incoming communication temporarily, immediately after it is read.
+	 * ByteBuffer that holds all incoming communication temporarily, immediately after it is read; one
+	 * for each thread that does I/O.
 	 */
-	private final ByteBuffer											readBuffer;
+	private final ThreadLocal<ByteBuffer>					readBuffer;
 
 	/**
-	 * Maps SocketChannels (connections) to their write Queues of ByteBuffers. Whenever a
-	 * SocketChannel is marked for writing, and comes up for writing, the server will write the set of
-	 * ByteBuffers to the socket.
+	 * Maps SocketChannels (connections) to their queues of ByteBuffers to write. Whenever a
+	 * SocketChannel is marked for writing, and comes up for writing, the server writes as much of its
+	 * queue as the socket will take. Buffers are queued without locking, so a slow connection holds
+	 * up nobody else.
 	 */
-	private Map<SelectionKey, Queue<ByteBuffer>>	pendingWrites		= new HashMap<SelectionKey, Queue<ByteBuffer>>();
+	private final ConcurrentHashMap<SelectionKey, OutboundQueue>	pendingWrites		= new ConcurrentHashMap<SelectionKey, OutboundQueue>();
+
+	/**
+	 * Queued bytes above which a connection is backed up.
+	 */
+	private volatile int													writeHighWatermark	= DEFAULT_WRITE_HIGH_WATERMARK;
+
+	/**
+	 * Queued bytes below which a backed up connection has caught up.
+	 */
+	private volatile int													writeLowWatermark		= DEFAULT_WRITE_LOW_WATERMARK;
 
 	protected boolean															shuttingDown		= false;
 
@@ -90,10 +99,16 @@ public abstract class NIONetworking<S extends Scope> extends NIOCore
 
 		this.objectRegistry = objectRegistry;
 
-		readBuffer = ByteBuffer.allocateDirect((int) Math.ceil(maxMessageSizeChars
-				* encoder.maxBytesPerChar()));
-		this.byteBufferPool = new ByteBufferPool(10, 10, (int) Math.ceil(maxMessageSizeChars
-				* encoder.maxBytesPerChar()));
+		final int readBufferSize = (int) Math.ceil(maxMessageSizeChars * encoder.maxBytesPerChar());
+		readBuffer = new ThreadLocal<ByteBuffer>()
+		{
+			@Override
+			protected ByteBuffer initialValue()
+			{
+				return ByteBuffer.allocateDirect(readBufferSize);
+			}
+		};
+		this.byteBufferPool = new ByteBufferPool(10, 10, readBufferSize);
 	}
 
 	/**
@@ -116,30 +131,115 @@ public abstract class NIONetworking<S extends Scope> extends NIOCore
 
 	/**
 	 * Queue up bytes to send on a particular socket. This method is typically called by some outside
-	 * context manager, that has produced an encoded message to send out.
+	 * context manager, that has produced an encoded message to send out. It does not block, however
+	 * far behind the socket is.
 	 * 
 	 * @param socketKey
 	 * @param data
+	 *          a buffer from acquireByteBufferFromPool(), filled, but not flipped; it is released once
+	 *          it has been written.
 	 */
 	public void enqueueBytesForWriting(SelectionKey socketKey, ByteBuffer data)
 	{
-		// queue data to write
-		synchronized (this.pendingWrites)
-		{
-			Queue<ByteBuffer> dataQueue = pendingWrites.get(socketKey);
+		if (!socketKey.isValid())
+		{ // the connection is gone; nothing will write this
+			this.byteBufferPool.release(data);
+			return;
+		}
 
-			if (dataQueue == null)
-			{
-				dataQueue = new LinkedList<ByteBuffer>();
-				pendingWrites.put(socketKey, dataQueue);
-			}
+		data.flip();
+		OutboundQueue queue = outboundQueue(socketKey);
+		queue.offer(data, writeHighWatermark);
+		if (discardIfInvalid(socketKey, queue))
+			return;
+
+		this.queueForWrite(socketKey);
+
+		socketKey.selector().wakeup();
+	}
 
-			dataQueue.offer(data);
+	private OutboundQueue outboundQueue(SelectionKey socketKey)
+	{
+		OutboundQueue queue = pendingWrites.get(socketKey);
+		if (queue == null)
+		{
+			queue = new OutboundQueue();
+			OutboundQueue existing = pendingWrites.putIfAbsent(socketKey, queue);
+			if (existing != null)
+				queue = existing;
 		}
+		return queue;
+	}
 
-		this.queueForWrite(socketKey);
+	/**
+	 * The key is invalid by the time discardWrites() is called for it, since closing its channel
+	 * cancels it. So if it is invalid after queue was looked up, or made, discardWrites() may already
+	 * have removed queue, or, if it had, queue is a new one, that it would never have seen.
+	 * 
+	 * @param socketKey
+	 * @param queue
+	 *          socketKey's queue, as outboundQueue() found it.
+	 * @return true if socketKey is invalid, and queue, and what was just put in it, has been dropped.
+	 */
+	private boolean discardIfInvalid(SelectionKey socketKey, OutboundQueue queue)
+	{
+		if (socketKey.isValid())
+			return false;
 
-		selector.wakeup();
+		pendingWrites.remove(socketKey, queue);
+		queue.discard(byteBufferPool);
+		return true;
+	}
+
+	/**
+	 * @param socketKey
+	 * @return true if more than the high watermark of bytes has been queued for socketKey, and it has
+	 *         not yet caught up to the low watermark. Senders should hold back what they can, until
+	 *         their BackpressureListener is told.
+	 */
+	public boolean isBackedUp(SelectionKey socketKey)
+	{
+		OutboundQueue queue = pendingWrites.get(socketKey);
+		return queue != null && queue.isBackedUp();
+	}
+
+	/**
+	 * @param socketKey
+	 * @return The number of bytes queued for socketKey, and not yet written.
+	 */
+	public long getQueuedBytes(SelectionKey socketKey)
+	{
+		OutboundQueue queue = pendingWrites.get(socketKey);
+		return queue == null ? 0 : queue.queuedBytes();
+	}
+
+	/**
+	 * Set the one listener that is told when socketKey stops being backed up.
+	 * 
+	 * @param socketKey
+	 * @param listener
+	 */
+	public void setBackpressureListener(SelectionKey socketKey, BackpressureListener listener)
+	{
+		OutboundQueue queue = outboundQueue(socketKey);
+		queue.listener = listener;
+		discardIfInvalid(socketKey, queue);
+	}
+
+	/**
+	 * Set the number of queued bytes above which a connection is backed up, and below which it has
+	 * caught up again.
+	 * 
+	 * @param lowWatermark
+	 * @param highWatermark
+	 */
+	public void setWriteWatermarks(int lowWatermark, int highWatermark)
+	{
+		if (lowWatermark > highWatermark)
+			throw new IllegalArgumentException("low watermark " + lowWatermark
+					+ " is above high watermark " + highWatermark);
+		this.writeLowWatermark = lowWatermark;
+		this.writeHighWatermark = highWatermark;
 	}
 
 	/**
@@ -152,9 +252,10 @@ public abstract class NIONetworking<S extends Scope> extends NIOCore
 	private final void readKey(SelectionKey key) throws BadClientException, ClientOfflineException
 	{
 		SocketChannel sc = (SocketChannel) key.channel();
+		ByteBuffer readBuffer = this.readBuffer.get();
 		int bytesRead;
 
-		this.readBuffer.clear();
+		readBuffer.clear();
 
 		// read
 		try
@@ -186,37 +287,58 @@ public abstract class NIONetworking<S extends Scope> extends NIOCore
 	}
 
 	/**
-	 * Writes the bytes from pendingWrites that belong to key.
+	 * Writes as many of the bytes from pendingWrites that belong to key as the socket will take,
+	 * gathering several buffers into each write. What doesn't fit stays queued, for the next time
+	 * the key is writable.
 	 * 
 	 * @param key
 	 * @throws IOException
 	 */
 	protected void writeKey(SelectionKey key) throws IOException
 	{
-		SocketChannel sc = (SocketChannel) key.channel();
+		OutboundQueue queue = pendingWrites.get(key);
+		if (queue == null)
+			return;
 
-		synchronized (this.pendingWrites)
+		if (queue.write((SocketChannel) key.channel(), byteBufferPool, writeLowWatermark))
 		{
-			Queue<ByteBuffer> writes = pendingWrites.get(key);
-
-			while (!writes.isEmpty())
-			{ // write everything
-				ByteBuffer bytes = writes.poll();
-
-				bytes.flip();
-				
-
-				while (bytes.remaining() > 0)
-				{ // the socket's buffer filled up!; should go out again next time
-					//debug("unable to write all data to client; will try again shortly.");
-					sc.write(bytes);
-				}
-				
-				bytes = this.byteBufferPool.release(bytes);
-			}
+			BackpressureListener listener = queue.listener;
+			if (listener != null)
+				listener.backpressureRelieved(key);
 		}
 	}
 
+	/**
+	 * Goes back to reading, unless there is more to write to key, in which case it stays registered
+	 * for writing.
+	 * 
+	 * @see ecologylab.oodss.distributed.impl.NIOCore#writeFinished(java.nio.channels.SelectionKey)
+	 */
+	@Override
+	protected void writeFinished(SelectionKey key)
+	{
+		OutboundQueue queue = pendingWrites.get(key);
+		if (queue == null || queue.isEmpty())
+			super.writeFinished(key);
+
+		// look again, after the OP_READ is queued, so that bytes queued meanwhile aren't stranded
+		queue = pendingWrites.get(key);
+		if (queue != null && !queue.isEmpty())
+			this.queueForWrite(key);
+	}
+
+	/**
+	 * Drop whatever is queued for writing to key, which is being invalidated.
+	 * 
+	 * @param key
+	 */
+	protected void discardWrites(SelectionKey key)
+	{
+		OutboundQueue queue = pendingWrites.remove(key);
+		if (queue != null)
+			queue.discard(byteBufferPool);
+	}
+
 	/**
 	 * Optional operation.
 	 * 
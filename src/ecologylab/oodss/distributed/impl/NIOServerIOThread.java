@@ -19,13 +19,15 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.DatatypeConverter;
 
 import ecologylab.collections.Scope;
-import ecologylab.generic.ObjectOrHashMap;
+import ecologylab.generic.TimingWheel;
+import ecologylab.generic.TimingWheel.Timeout;
 import ecologylab.oodss.distributed.common.ServerConstants;
 import ecologylab.oodss.distributed.server.NIOServerDataReader;
 import ecologylab.oodss.exceptions.BadClientException;
@@ -37,6 +39,10 @@ import ecologylab.serialization.SimplTypesScope;
  * Re-written based on the Rox Java NIO Tutorial
  * (http://rox-xmlrpc.sourceforge.net/niotut/index.html).
  * 
+ * By default, one thread accepts connections, and does all their I/O. With setIOThreads(), the
+ * thread only accepts them, and hands each to whichever I/O thread has the fewest, so that reads and
+ * writes are spread across cores.
+ * 
  * @author Zachary O. Toups (zach@ecologylab.net)
  * 
  */
@@ -50,17 +56,40 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 				objectRegistry, idleSocketTimeout, maxMessageLength);
 	}
 
+	/**
+	 * How finely idle timeouts are kept track of: connections are dropped within about two of these
+	 * fractions of the timeout after it passes.
+	 */
+	static final int																						IDLE_TICKS_PER_TIMEOUT		= 16;
+
 	private final ArrayList<ServerSocket>												incomingConnectionSockets	= new ArrayList<ServerSocket>();
 
 	private NIOServerDataReader																	sAP;
 
 	private int																									idleSocketTimeout;
 
-	private Map<SelectionKey, Long>															keyActivityTimes					= new HashMap<SelectionKey, Long>();
+	/**
+	 * Times out connections that are idle for idleSocketTimeout, or, if there is none,
+	 * GARBAGE_CONNECTION_CLEANUP_TIMEOUT.
+	 */
+	private TimingWheel<SelectionKey>														idleKeys;
+
+	private long																								keyTimeout;
+
+	private final Map<SelectionKey, Timeout<SelectionKey>>			keyTimeouts								= new ConcurrentHashMap<SelectionKey, Timeout<SelectionKey>>();
 
-	private Map<String, ObjectOrHashMap<String, SelectionKey>>	ipToKeyOrKeys							= new HashMap<String, ObjectOrHashMap<String, SelectionKey>>();
+	/**
+	 * The keys of the connections from each address, by session token. Each address's map is only
+	 * used while holding its lock; once it is empty, it is taken out, and not used again.
+	 */
+	private final ConcurrentHashMap<String, Map<String, SelectionKey>>	ipToKeys									= new ConcurrentHashMap<String, Map<String, SelectionKey>>();
 
-	private boolean																							acceptEnabled							= false;
+	private volatile int																				maxConnections						= MAX_CONNECTIONS;
+
+	/**
+	 * Connections accepted, and not yet invalidated.
+	 */
+	private final AtomicInteger																	numConnections						= new AtomicInteger();
 
 	private MessageDigest																				digester;
 
@@ -88,6 +117,11 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 
 		this.idleSocketTimeout = newIdleSocketTimeout;
 
+		this.keyTimeout = idleSocketTimeout > -1 ? idleSocketTimeout
+				: GARBAGE_CONNECTION_CLEANUP_TIMEOUT;
+		this.idleKeys = new TimingWheel<SelectionKey>(Math.max(keyTimeout / IDLE_TICKS_PER_TIMEOUT, 1),
+				IDLE_TICKS_PER_TIMEOUT * 2);
+
 		try
 		{
 			digester = MessageDigest.getInstance("SHA-256");
@@ -110,48 +144,32 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 	}
 
 	/**
-	 * Checks all of the current keys to see if they have been idle for too long and drops them if
-	 * they have.
-	 * 
+	 * Drops the keys that have been idle for too long. Only the ones that have timed out are looked
+	 * at, so this is cheap enough to do after every select.
 	 */
 	@Override
 	protected void checkAndDropIdleKeys()
 	{
-		LinkedList<SelectionKey> keysToInvalidate = new LinkedList<SelectionKey>();
-		long timeStamp = System.currentTimeMillis();
-
-		if (idleSocketTimeout > -1)
-		{ /*
-			 * after we select, we'll check to see if we need to boot any idle keys
-			 */
-			for (SelectionKey sKey : keyActivityTimes.keySet())
-			{
-				if ((timeStamp - keyActivityTimes.get(sKey)) > idleSocketTimeout)
-				{
-					keysToInvalidate.add(sKey);
-				}
-			}
-		}
-		else
-		{ /*
-			 * We have to clean up the key set at some point; use GARBAGE_CONNECTION_CLEANUP_TIMEOUT
-			 */
-			for (SelectionKey sKey : keyActivityTimes.keySet())
+		// another I/O thread may have got to some of them first
+		for (SelectionKey keyToInvalidate : idleKeys.expire(System.currentTimeMillis()))
+		{
+			if (keyTimeouts.remove(keyToInvalidate) != null)
 			{
-				if ((timeStamp - keyActivityTimes.get(sKey)) > GARBAGE_CONNECTION_CLEANUP_TIMEOUT)
-				{
-					keysToInvalidate.add(sKey);
-				}
+				debug(keyToInvalidate.attachment() + " took too long to request; disconnecting.");
+				this.setPendingInvalidate(keyToInvalidate, true);
 			}
 		}
+	}
 
-		// remove all the invalid keys
-		for (SelectionKey keyToInvalidate : keysToInvalidate)
-		{
-			debug(keyToInvalidate.attachment() + " took too long to request; disconnecting.");
-			keyActivityTimes.remove(keyToInvalidate);
-			this.setPendingInvalidate(keyToInvalidate, true);
-		}
+	/**
+	 * Wake up in time to drop idle keys, even when no clients are active.
+	 *
+	 * @see ecologylab.oodss.distributed.impl.NIOCore#selectTimeout()
+	 */
+	@Override
+	protected long selectTimeout()
+	{
+		return idleKeys.timeUntilNextTick(System.currentTimeMillis());
 	}
 
 	/**
@@ -165,92 +183,51 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 	{
 		try
 		{
-			int numConn = selector.keys().size() - 1;
+			int numConn = numConnections.get();
 
 			debug("connections running: " + numConn);
 
-			if (numConn < MAX_CONNECTIONS)
-			{ // the keyset includes this side of the connection
-				if (numConn - 1 == MAX_CONNECTIONS)
-				{
-					debug("Maximum connections reached; disabling accept until a client drops.");
+			SocketChannel newlyAcceptedChannel = ((ServerSocketChannel) key.channel()).accept();
 
-					for (ServerSocket s : this.incomingConnectionSockets)
-					{
-						SelectionKey closingKey = s.getChannel().keyFor(this.selector);
-						closingKey.cancel();
-						s.close();
-						closingKey.channel().close();
-					}
+			if (newlyAcceptedChannel == null)
+				return;
 
-					acceptEnabled = false;
-				}
-
-				SocketChannel newlyAcceptedChannel = ((ServerSocketChannel) key.channel()).accept();
+			InetAddress address = newlyAcceptedChannel.socket().getInetAddress();
 
-				InetAddress address = newlyAcceptedChannel.socket().getInetAddress();
+			debug("new address: " + address.getHostAddress());
 
-				debug("new address: " + address.getHostAddress());
+			if (numConn < maxConnections
+					&& !BadClientException.isEvilHostByNumber(address.getHostAddress()))
+			{
+				newlyAcceptedChannel.configureBlocking(false);
 
-				if (!BadClientException.isEvilHostByNumber(address.getHostAddress()))
-				{
-					newlyAcceptedChannel.configureBlocking(false);
-
-					// when we register, we want to attach the proper
-					// session token to all of the keys associated with
-					// this connection, so we can sort them out later.
-					String keyAttachment = this.generateSessionToken(newlyAcceptedChannel.socket());
-
-					SelectionKey newKey = newlyAcceptedChannel.register(selector, SelectionKey.OP_READ,
-							keyAttachment);
-
-					this.keyActivityTimes.put(newKey, System.currentTimeMillis());
-
-					if ((ipToKeyOrKeys.get(address.getHostAddress())) == null)
-					{
-						debug(address + " not in our list, adding it.");
-
-						ipToKeyOrKeys.put(address.getHostAddress(), new ObjectOrHashMap<String, SelectionKey>(
-								keyAttachment, newKey));
-					}
-					else
-					{
-						debug(address + " is in our list, adding another key.");
-						synchronized (ipToKeyOrKeys)
-						{
-							ipToKeyOrKeys.get(address.getHostAddress()).put(keyAttachment, newKey);
-							System.out.println("new size: " + ipToKeyOrKeys.get(address.getHostAddress()).size());
-						}
-					}
-
-					debug("Now connected to "
-							+ newlyAcceptedChannel
-							+ ", "
-							+ (MAX_CONNECTIONS - numConn - 1)
-							+ " connections remaining.");
-
-					return;
-				}
-			}
+				// when we register, we want to attach the proper
+				// session token to all of the keys associated with
+				// this connection, so we can sort them out later.
+				String keyAttachment = this.generateSessionToken(newlyAcceptedChannel.socket());
 
-			// we will prematurely exit before now if it's a good connection
-			// so now it's a bad one; disconnect it and return null
-			SocketChannel tempChannel = ((ServerSocketChannel) key.channel()).accept();
+				numConnections.incrementAndGet();
 
-			InetAddress address = null;
+				this.register(newlyAcceptedChannel, keyAttachment);
 
-			if (tempChannel != null && tempChannel.socket() != null)
-			{
-				address = tempChannel.socket().getInetAddress();
+				debug("Now connected to "
+						+ newlyAcceptedChannel
+						+ ", "
+						+ (maxConnections - numConn - 1)
+						+ " connections remaining.");
 
-				// shut it all down
-				tempChannel.socket().shutdownInput();
-				tempChannel.socket().shutdownOutput();
-				tempChannel.socket().close();
-				tempChannel.close();
+				return;
 			}
+
+			// we will prematurely exit before now if it's a good connection
+			// so now it's a bad one; shut it all down
+			newlyAcceptedChannel.socket().shutdownInput();
+			newlyAcceptedChannel.socket().shutdownOutput();
+			newlyAcceptedChannel.socket().close();
+			newlyAcceptedChannel.close();
+
 			// show a debug message
-			if (numConn >= MAX_CONNECTIONS)
+			if (numConn >= maxConnections)
 				debug("Rejected connection; already fulfilled max connections.");
 			else
 				debug("Evil host attempted to connect: " + address);
@@ -266,6 +243,127 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 		}
 	}
 
+	/**
+	 * Start keeping track of a newly-accepted connection, once it is registered with its selector.
+	 * 
+	 * @see ecologylab.oodss.distributed.impl.NIOCore#channelRegistered(java.nio.channels.SelectionKey)
+	 */
+	@Override
+	protected void channelRegistered(SelectionKey newKey)
+	{
+		this.keyTimeouts.put(newKey, idleKeys.schedule(newKey, keyTimeout));
+
+		String keyAttachment = (String) newKey.attachment();
+		InetAddress address = ((SocketChannel) newKey.channel()).socket().getInetAddress();
+
+		if (addKeyForAddress(address.getHostAddress(), keyAttachment, newKey))
+			debug(address + " not in our list, adding it.");
+		else
+			debug(address + " is in our list, adding another key.");
+	}
+
+	/**
+	 * Add key to the keys of the connections from hostAddress.
+	 * 
+	 * @param hostAddress
+	 * @param sessionToken
+	 * @param key
+	 * @return true if it is the only one.
+	 */
+	boolean addKeyForAddress(String hostAddress, String sessionToken, SelectionKey key)
+	{
+		while (true)
+		{
+			Map<String, SelectionKey> keys = ipToKeys.get(hostAddress);
+			if (keys == null)
+			{
+				keys = new HashMap<String, SelectionKey>();
+				Map<String, SelectionKey> existing = ipToKeys.putIfAbsent(hostAddress, keys);
+				if (existing != null)
+					keys = existing;
+			}
+
+			synchronized (keys)
+			{
+				if (ipToKeys.get(hostAddress) == keys)
+				{
+					keys.put(sessionToken, key);
+					return keys.size() == 1;
+				}
+			}
+			// it was emptied, and taken out, meanwhile; start again
+		}
+	}
+
+	/**
+	 * Take the key for sessionToken out of the keys of the connections from hostAddress, and, if it
+	 * was the last, take out their map.
+	 * 
+	 * @param hostAddress
+	 * @param sessionToken
+	 */
+	void removeKeyForAddress(String hostAddress, Object sessionToken)
+	{
+		Map<String, SelectionKey> keys = ipToKeys.get(hostAddress);
+		if (keys != null)
+		{
+			synchronized (keys)
+			{
+				keys.remove(sessionToken);
+
+				if (keys.isEmpty())
+				{
+					ipToKeys.remove(hostAddress, keys);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param hostAddress
+	 * @return The map of the keys of the connections from hostAddress, by session token, to be used
+	 *         only while holding its lock; or null if there are none.
+	 */
+	Map<String, SelectionKey> keysForAddress(String hostAddress)
+	{
+		return ipToKeys.get(hostAddress);
+	}
+
+	/**
+	 * The connection was counted when it was accepted, and will never be invalidated, so stop counting
+	 * it here.
+	 * 
+	 * @see ecologylab.oodss.distributed.impl.NIOCore#channelRegistrationFailed(java.lang.Object)
+	 */
+	@Override
+	protected void channelRegistrationFailed(Object attachment)
+	{
+		numConnections.decrementAndGet();
+	}
+
+	/**
+	 * Set how many connections may be open at once; further ones are turned away, until some close.
+	 * 
+	 * @param maxConnections
+	 */
+	public void setMaxConnections(int maxConnections)
+	{
+		this.maxConnections = maxConnections;
+	}
+
+	public int getMaxConnections()
+	{
+		return maxConnections;
+	}
+
+	/**
+	 * @return The number of connections accepted, and not yet invalidated.
+	 */
+	public int getConnectionCount()
+	{
+		return numConnections.get();
+	}
+
 	/**
 	 * @see ecologylab.oodss.distributed.impl.NIONetworking#removeBadConnections()
 	 */
@@ -275,9 +373,19 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 		// shut them ALL down!
 		InetAddress address = ((SocketChannel) key.channel()).socket().getInetAddress();
 
-		ObjectOrHashMap<String, SelectionKey> keyOrKeys = ipToKeyOrKeys.get(address.getHostAddress());
+		Map<String, SelectionKey> keys = ipToKeys.remove(address.getHostAddress());
+		if (keys == null)
+		{ // already shut down
+			this.setPendingInvalidate(key, true);
+			return;
+		}
 
-		Iterator<SelectionKey> allKeysForIp = keyOrKeys.values().iterator();
+		ArrayList<SelectionKey> keysForIp;
+		synchronized (keys)
+		{
+			keysForIp = new ArrayList<SelectionKey>(keys.values());
+		}
+		Iterator<SelectionKey> allKeysForIp = keysForIp.iterator();
 
 		debug("***********Shutting down all clients from " + address.getHostAddress());
 
@@ -289,9 +397,6 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 
 			this.setPendingInvalidate(keyForIp, true);
 		}
-
-		keyOrKeys.clear();
-		ipToKeyOrKeys.remove(address.getHostAddress());
 	}
 
 	/**
@@ -309,38 +414,19 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 
 		sAP.invalidate((String) key.attachment(), permanent);
 
-		super.invalidateKey(chan);
+		// keys are only invalidated by the thread that does their I/O, so this counts each once
+		if (chan.isOpen())
+			numConnections.decrementAndGet();
 
-		ObjectOrHashMap<String, SelectionKey> keyOrKeys = this.ipToKeyOrKeys.get(address
-				.getHostAddress());
+		super.invalidateKey(chan);
 
-		if (keyOrKeys != null)
-		{
-			keyOrKeys.remove(address);
+		this.discardWrites(key);
 
-			if (keyOrKeys.isEmpty())
-			{
-				this.ipToKeyOrKeys.remove(chan.socket().getInetAddress().getHostAddress());
-			}
-		}
-		this.keyActivityTimes.remove(key);
+		this.removeKeyForAddress(address.getHostAddress(), key.attachment());
 
-		/*
-		 * decrement numConnections & if the server disabled new connections due to hitting
-		 * max_connections, re-enable
-		 */
-		if (selector.keys().size() < MAX_CONNECTIONS && !acceptEnabled)
-		{
-			try
-			{
-				this.registerAcceptWithSelector();
-			}
-			catch (IOException e)
-			{
-				debug("Unable to re-open socket for accepts; critical failure.");
-				e.printStackTrace();
-			}
-		}
+		Timeout<SelectionKey> timeout = this.keyTimeouts.remove(key);
+		if (timeout != null)
+			timeout.cancel();
 	}
 
 	/**
@@ -395,10 +481,6 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 		{
 			throw new BindException("Server was unable to bind to any addresses.");
 		}
-
-		// register the channel with the selector to look for incoming
-		// accept requests
-		acceptEnabled = true;
 	}
 
 	/**
@@ -457,7 +539,9 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 			int bytesRead) throws BadClientException
 	{
 		this.sAP.processRead(sessionToken, this, sk, bytes, bytesRead);
-		this.keyActivityTimes.put(sk, System.currentTimeMillis());
+		Timeout<SelectionKey> timeout = this.keyTimeouts.get(sk);
+		if (timeout != null)
+			timeout.touch();
 	}
 
 	/**
@@ -491,7 +575,7 @@ public class NIOServerIOThread extends NIONetworking implements ServerConstants
 	 */
 	public void setPendingInvalidate(SocketChannel socket, boolean permanent)
 	{
-		this.setPendingInvalidate(socket.keyFor(selector), permanent);
+		this.setPendingInvalidate(this.keyFor(socket), permanent);
 	}
 
 	/**
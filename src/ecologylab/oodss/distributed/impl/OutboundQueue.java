@@ -0,0 +1,131 @@
+package ecologylab.oodss.distributed.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ecologylab.io.ByteBufferPool;
+
+/**
+ * The buffers waiting to be written to one connection. Any thread may offer() buffers, without
+ * locking; only the IO thread writes them.
+ */
+class OutboundQueue
+{
+	/**
+	 * How many buffers are handed to the channel in one gathering write.
+	 */
+	static final int										MAX_GATHER	= 16;
+
+	private final Queue<ByteBuffer>			buffers			= new ConcurrentLinkedQueue<ByteBuffer>();
+
+	private final AtomicLong						queuedBytes	= new AtomicLong();
+
+	/**
+	 * Reused by write(), which only the IO thread calls.
+	 */
+	private final ByteBuffer[]					gather			= new ByteBuffer[MAX_GATHER];
+
+	/**
+	 * Set when queuedBytes goes over the high watermark, and cleared when it falls under the low one.
+	 */
+	private volatile boolean						backedUp;
+
+	volatile BackpressureListener				listener;
+
+	/**
+	 * Queue bytes, which are ready to be read, between their position and limit.
+	 * 
+	 * @param bytes
+	 * @param highWatermark
+	 */
+	void offer(ByteBuffer bytes, int highWatermark)
+	{
+		buffers.offer(bytes);
+		if (queuedBytes.addAndGet(bytes.remaining()) > highWatermark)
+			backedUp = true;
+	}
+
+	/**
+	 * Write as many of the queued bytes as channel takes without blocking, a batch of buffers at a
+	 * time. Buffers that are written out are released to pool. Those that aren't stay queued.
+	 * 
+	 * @param channel
+	 *          in non-blocking mode.
+	 * @param pool
+	 * @param lowWatermark
+	 * @return true if this was backed up, and no longer is.
+	 * @throws IOException
+	 */
+	boolean write(GatheringByteChannel channel, ByteBufferPool pool, int lowWatermark)
+			throws IOException
+	{
+		while (true)
+		{
+			int count = 0;
+			for (ByteBuffer bytes : buffers)
+			{
+				if (count == MAX_GATHER)
+					break;
+				gather[count++] = bytes;
+			}
+			if (count == 0)
+				break;
+
+			long written = channel.write(gather, 0, count);
+			queuedBytes.addAndGet(-written);
+
+			int done = 0;
+			while (done < count && !gather[done].hasRemaining())
+			{
+				buffers.poll();
+				pool.release(gather[done++]);
+			}
+			Arrays.fill(gather, 0, count, null);
+
+			if (done < count)
+				break; // the socket's buffer is full; the rest goes when it drains
+		}
+
+		if (backedUp && queuedBytes.get() <= lowWatermark)
+		{
+			backedUp = false;
+			return true;
+		}
+		return false;
+	}
+
+	boolean isEmpty()
+	{
+		return buffers.isEmpty();
+	}
+
+	boolean isBackedUp()
+	{
+		return backedUp;
+	}
+
+	long queuedBytes()
+	{
+		return queuedBytes.get();
+	}
+
+	/**
+	 * Drop everything queued, releasing the buffers to pool.
+	 * 
+	 * @param pool
+	 */
+	void discard(ByteBufferPool pool)
+	{
+		ByteBuffer bytes;
+		while ((bytes = buffers.poll()) != null)
+		{
+			queuedBytes.addAndGet(-bytes.remaining());
+			pool.release(bytes);
+		}
+	}
+}
@@ -13,7 +13,11 @@ import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 
 import ecologylab.collections.Scope;
 import ecologylab.generic.CharBufferPool;
@@ -36,7 +40,10 @@ import ecologylab.serialization.SimplTypesScope;
  * A server that uses NIO and two threads (one for handling IO, the other for handling interfacing
  * with messages).
  * 
- * Automatically processes and responds to any client RequestMessages.
+ * Automatically processes and responds to any client RequestMessages. Only sessions with requests
+ * waiting are handed to the message thread, each client's in the order they arrived. More threads
+ * may be set with setRequestWorkers(), or another Executor, such as one of virtual threads, where the
+ * runtime has them, with setRequestExecutor(), so that a slow request holds up only its own client.
  * 
  * Subclasses should generally override the generateContextManager hook method, so that they can use
  * their own, specific ContextManager in place of the default.
@@ -71,25 +78,44 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 				idleConnectionTimeout, maxPacketSize);
 	}
 
-	Thread																													t												= null;
+	Thread[]																												workers									= null;
 
-	boolean																													running									= false;
+	volatile boolean																								running									= false;
+
+	private int																											numRequestWorkers				= 1;
+
+	/**
+	 * Tasks for the worker threads: performing the requests of a session, or a stateless request.
+	 */
+	private final BlockingQueue<Runnable>														readyTasks							= new LinkedBlockingQueue<Runnable>();
+
+	private final Executor																					workerExecutor					= new WorkerExecutor();
 
 	/**
-	 * Map in which keys are sessionTokens, and values are associated ClientSessionManagers.
+	 * Where requests are performed; the worker threads, unless setRequestExecutor() has been called.
 	 */
-	private HashMapArrayList<Object, TCPClientSessionManager>	clientSessionManagerMap	= new HashMapArrayList<Object, TCPClientSessionManager>();
+	private volatile Executor																				requestExecutor					= workerExecutor;
 
 	/**
-	 * Map in which keys are sessionTokens, and values are associated SessionHandles
+	 * Map in which keys are sessionTokens, and values are associated ClientSessionManagers. Looked up
+	 * without locking, on every read; each manager does its own locking.
 	 */
-	private HashMapArrayList<Object, SessionHandle>									clientSessionHandleMap	= new HashMapArrayList<Object, SessionHandle>();
+	private final ConcurrentHashMap<Object, TCPClientSessionManager>	clientSessionManagerMap	= new ConcurrentHashMap<Object, TCPClientSessionManager>();
+
+	/**
+	 * Map in which keys are sessionTokens, and values are associated SessionHandles. It is shared,
+	 * through the application object scope, as SESSIONS_MAP, so it is only changed while holding its
+	 * own lock; hold it, too, to iterate over it.
+	 */
+	private final HashMapArrayList<Object, SessionHandle>							clientSessionHandleMap	= new HashMapArrayList<Object, SessionHandle>();
 
 	private static final Charset																		ENCODED_CHARSET					= Charset
 																																															.forName(CHARACTER_ENCODING);
 
-	private static CharsetDecoder																		DECODER									= ENCODED_CHARSET
-																																															.newDecoder();
+	/**
+	 * One for each thread that reads, since decoders keep state.
+	 */
+	private static final ThreadLocal<CharsetDecoder>								DECODERS								= new ThreadLocal<CharsetDecoder>();
 
 	protected int																										maxMessageSize;
 
@@ -174,41 +200,67 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 	{
 		if (bytesRead > 0)
 		{
-			synchronized (clientSessionManagerMap)
+			TCPClientSessionManager cm = clientSessionManagerMap.get(sessionToken);
+
+			if (cm == null)
 			{
-				TCPClientSessionManager cm = clientSessionManagerMap.get(sessionToken);
+				debug("server creating context manager for " + sessionToken);
 
-				if (cm == null)
+				cm = generateContextManager((String) sessionToken, sk, translationScope,
+						applicationObjectScope);
+				TCPClientSessionManager existing = clientSessionManagerMap.putIfAbsent(sessionToken, cm);
+				if (existing != null)
 				{
-					debug("server creating context manager for " + sessionToken);
-
-					cm = generateContextManager((String) sessionToken, sk, translationScope,
-							applicationObjectScope);
-					clientSessionManagerMap.put(sessionToken, cm);
-					clientSessionHandleMap.put(sessionToken, cm.getHandle());
+					cm = existing;
 				}
-
-				try
+				else
 				{
-					CharBuffer buf = this.charBufferPool.acquire();
+					synchronized (clientSessionHandleMap)
+					{
+						clientSessionHandleMap.put(sessionToken, cm.getHandle());
+					}
+				}
+			}
 
-					DECODER.decode(bs, buf, true);
-					buf.flip();
-					cm.processIncomingSequenceBufToQueue(buf);
+			try
+			{
+				CharBuffer buf = this.charBufferPool.acquire();
 
-					buf = this.charBufferPool.release(buf);
-				}
-				catch (CharacterCodingException e)
-				{
-					e.printStackTrace();
-				}
+				decoder().decode(bs, buf, true);
+				buf.flip();
+				// locks just this session, while its messages are parsed
+				cm.processIncomingSequenceBufToQueue(buf);
+
+				buf = this.charBufferPool.release(buf);
+			}
+			catch (CharacterCodingException e)
+			{
+				e.printStackTrace();
 			}
 
-			synchronized (this)
+			try
 			{
-				this.notify();
+				cm.scheduleMessageProcessing(requestExecutor);
 			}
+			catch (RejectedExecutionException e)
+			{ // its requests wait until the next read
+				error("could not schedule requests for " + sessionToken + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * @return The calling thread's decoder.
+	 */
+	private static CharsetDecoder decoder()
+	{
+		CharsetDecoder decoder = DECODERS.get();
+		if (decoder == null)
+		{
+			decoder = ENCODED_CHARSET.newDecoder();
+			DECODERS.set(decoder);
 		}
+		return decoder;
 	}
 
 	/**
@@ -228,56 +280,66 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 				translationScopeIn, registryIn);
 	}
 
+	/**
+	 * Run by each worker thread: performs tasks as sessions get requests to perform, until the server
+	 * stops.
+	 */
 	@Override
 	public void run()
 	{
-		Iterator<TCPClientSessionManager> contextIter;
-
 		while (running)
 		{
-			synchronized (clientSessionManagerMap)
+			Runnable task;
+			try
 			{
-				contextIter = clientSessionManagerMap.values().iterator();
-
-				// process all of the messages in the queues
-				while (contextIter.hasNext())
-				{
-					TCPClientSessionManager cm = contextIter.next();
-
-					try
-					{
-						cm.processAllMessagesAndSendResponses();
-					}
-					catch (BadClientException e)
-					{
-						// Handle BadClientException! -- remove it
-						error(e.getMessage());
-
-						// invalidate the manager's key
-						this.getBackend().setPendingInvalidate(cm.getSocketKey(), true);
-
-						// remove the manager from the collection
-						contextIter.remove();
-					}
-				}
+				task = readyTasks.take();
+			}
+			catch (InterruptedException e)
+			{ // stopping
+				continue;
 			}
 
-			// sleep until notified of new messages
-			synchronized (this)
+			try
 			{
-				try
-				{
-					wait();
-				}
-				catch (InterruptedException e)
-				{
-					e.printStackTrace();
-					Thread.interrupted();
-				}
+				task.run();
+			}
+			catch (RuntimeException e)
+			{
+				error("request processing failed: " + e);
+				e.printStackTrace();
 			}
 		}
 	}
 
+	/**
+	 * Set how many threads perform requests; 1 by default. Takes effect at the next start().
+	 * 
+	 * @param numRequestWorkers
+	 */
+	public void setRequestWorkers(int numRequestWorkers)
+	{
+		if (numRequestWorkers < 1)
+			throw new IllegalArgumentException("need at least 1 request worker: " + numRequestWorkers);
+		this.numRequestWorkers = numRequestWorkers;
+	}
+
+	public int getRequestWorkers()
+	{
+		return numRequestWorkers;
+	}
+
+	/**
+	 * Perform requests with executor, instead of with this's own worker threads, which are then not
+	 * started. Each session hands it one task at a time, except while performing stateless requests.
+	 * 
+	 * @param executor
+	 *          null to go back to the worker threads.
+	 */
+	public void setRequestExecutor(Executor executor)
+	{
+		this.requestExecutor = executor == null ? workerExecutor : executor;
+	}
+
 	/**
 	 * @see ecologylab.generic.StartAndStoppable#start()
 	 */
@@ -286,13 +348,17 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 	{
 		running = true;
 
-		if (t == null)
+		if (workers == null && requestExecutor == workerExecutor)
 		{
-			t = new Thread(this);
+			workers = new Thread[numRequestWorkers];
+			for (int i = 0; i < workers.length; i++)
+			{
+				workers[i] = new Thread(this, "request worker " + i + " on port "
+						+ this.getBackend().getPortNumber());
+				workers[i].start();
+			}
 		}
 
-		t.start();
-
 		super.start();
 	}
 
@@ -304,13 +370,12 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 	{
 		debug("Server stopping.");
 		running = false;
-		synchronized (this)
+		Thread[] workers = this.workers;
+		if (workers != null)
 		{
-			this.notify();
-			synchronized (t)
-			{
-				t = null;
-			}
+			for (Thread worker : workers)
+				worker.interrupt();
+			this.workers = null;
 		}
 		super.stop();
 	}
@@ -342,11 +407,11 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 
 		// get the context manager...
 		if (permanent)
-		{
-			synchronized (clientSessionManagerMap)
-			{ // ...if this session will not be restored, remove the context
-				// manager
-				clientSessionManagerMap.remove(sessionId);
+		{ // ...if this session will not be restored, remove the context
+			// manager
+			clientSessionManagerMap.remove(sessionId);
+			synchronized (clientSessionHandleMap)
+			{
 				clientSessionHandleMap.remove(sessionId);
 			}
 		}
@@ -381,12 +446,8 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 	{
 		debug("attempting to restore old session...");
 
-		TCPClientSessionManager oldContextManager;
+		TCPClientSessionManager oldContextManager = this.clientSessionManagerMap.get(oldSessionId);
 
-		synchronized (clientSessionManagerMap)
-		{
-			oldContextManager = this.clientSessionManagerMap.get(oldSessionId);
-		}
 		if (oldContextManager == null)
 		{ // cannot restore old context
 			debug("restore failed.");
@@ -396,10 +457,10 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 		{
 			oldContextManager.setSocket(newContextManager.getSocketKey());
 
-			synchronized (clientSessionManagerMap)
+			/* remove pointers to new session manager since we're using the old one */
+			this.clientSessionManagerMap.remove(newContextManager.getSessionId());
+			synchronized (clientSessionHandleMap)
 			{
-				/* remove pointers to new session manager since we're using the old one */
-				this.clientSessionManagerMap.remove(newContextManager.getSessionId());
 				this.clientSessionHandleMap.remove(newContextManager.getSessionId());
 			}
 
@@ -454,6 +515,18 @@ public class DoubleThreadedNIOServer<S extends Scope> extends AbstractNIOServer<
 		return stringBuilderPool;
 	}
 
+	/**
+	 * Hands tasks to the worker threads.
+	 */
+	private class WorkerExecutor implements Executor
+	{
+		@Override
+		public void execute(Runnable task)
+		{
+			readyTasks.offer(task);
+		}
+	}
+
 	@Override
 	public void increaseSharedBufferPoolSize(int newCapacity) {
 		char[] tempCharBufferArray = Arrays.copyOf(charBufferPool.acquire().array(), charBufferPool.acquire().array().length);
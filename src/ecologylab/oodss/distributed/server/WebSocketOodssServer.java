@@ -10,6 +10,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.java_websocket.WebSocket;
 import org.java_websocket.WebSocketImpl;
@@ -50,17 +51,17 @@ public class WebSocketOodssServer extends Manager implements Runnable, WebSocket
 	
 	private WebSocketServerImpl webSocketServer;
 	
-	private String currentMessage;
-	
 	/**
-	 * Map in which keys are sessionTokens, and values are associated ClientSessionManagers
+	 * Map in which keys are sessionTokens, and values are associated ClientSessionManagers. Looked up
+	 * without locking; each manager does its own locking.
 	 */
-	private HashMapArrayList<Object, WebSocketClientSessionManager> clientSessionManagerMap = new HashMapArrayList<Object, WebSocketClientSessionManager>();
+	private final ConcurrentHashMap<Object, WebSocketClientSessionManager> clientSessionManagerMap = new ConcurrentHashMap<Object, WebSocketClientSessionManager>();
 	
 	/**
-	 * Map in which keys are sessionTokens, and values are associated SessionHandles
+	 * Map in which keys are sessionTokens, and values are associated SessionHandles. It is shared as
+	 * SESSIONS_MAP, so it is only changed while holding its own lock; hold it, too, to iterate over it.
 	 */
-	private HashMapArrayList<Object, SessionHandle>	clientSessionHandleMap	= new HashMapArrayList<Object, SessionHandle>();
+	private final HashMapArrayList<Object, SessionHandle>	clientSessionHandleMap	= new HashMapArrayList<Object, SessionHandle>();
 
 	private static final Charset	ENCODED_CHARSET		= Charset.forName(CHARACTER_ENCODING);
 	private static CharsetDecoder	DECODER		= ENCODED_CHARSET.newDecoder();
@@ -166,11 +167,11 @@ public class WebSocketOodssServer extends Manager implements Runnable, WebSocket
 		
 		// get the context manager...
 		if (permanent)
-		{
-			synchronized (clientSessionManagerMap)
-			{ // ...if this session will not be restored, remove the context
-				// manager
-				clientSessionManagerMap.remove(sessionId);
+		{ // ...if this session will not be restored, remove the context
+			// manager
+			clientSessionManagerMap.remove(sessionId);
+			synchronized (clientSessionHandleMap)
+			{
 				clientSessionHandleMap.remove(sessionId);
 			}
 		}
@@ -203,12 +204,8 @@ public class WebSocketOodssServer extends Manager implements Runnable, WebSocket
 	public boolean restoreContextManagerFromSessionId(String oldSessionId, WebSocketClientSessionManager newSessionManager)
 	{
 		debug("attempting to restore old session...");
-		WebSocketClientSessionManager oldSessionManager;
+		WebSocketClientSessionManager oldSessionManager = this.clientSessionManagerMap.get(oldSessionId);
 		
-		synchronized (clientSessionManagerMap)
-		{
-			oldSessionManager = this.clientSessionManagerMap.get(oldSessionId);
-		}
 		if (oldSessionManager == null)
 		{
 			// cannot restore old context
@@ -220,10 +217,10 @@ public class WebSocketOodssServer extends Manager implements Runnable, WebSocket
 			//TODO: replace the sessionManager's socket with the new one
 			oldSessionManager.setSocket(newSessionManager.getSocketKey());
 			
-			synchronized (clientSessionManagerMap)
+			/* remove pointers to new session manager since we're using the old one */
+			this.clientSessionManagerMap.remove(newSessionManager.getSessionId());
+			synchronized (clientSessionHandleMap)
 			{
-				/* remove pointers to new session manager since we're using the old one */
-				this.clientSessionManagerMap.remove(newSessionManager.getSessionId());
 				this.clientSessionHandleMap.remove(newSessionManager.getSessionId());
 			}
 			this.debug("old session restored");
@@ -300,7 +297,7 @@ public class WebSocketOodssServer extends Manager implements Runnable, WebSocket
 		byte[] uidArray = Arrays.copyOfRange(messageByteArray, 0, 8);
 		byte[] messageArray = Arrays.copyOfRange(messageByteArray, 8, messageByteArray.length);
 		long uid = bytesToLong(uidArray);
-		currentMessage = new String();
+		String currentMessage = new String();
 		try {
 			currentMessage = new String(messageArray, "UTF-8");
 		} catch (UnsupportedEncodingException e) {
@@ -327,7 +324,7 @@ public class WebSocketOodssServer extends Manager implements Runnable, WebSocket
 	 */
 	protected void processRead(WebSocket conn, long uid, String message) throws BadClientException
 	{
-		if (currentMessage.length() > 0)
+		if (message.length() > 0)
 		{
 			if (conn instanceof WebSocketImpl)
 			{
@@ -337,22 +334,30 @@ public class WebSocketOodssServer extends Manager implements Runnable, WebSocket
 					String sessionToken =  ((WebSocketImpl)conn).socket.toString();
 					if (!sessionToken.isEmpty() && sessionToken != null)
 					{
-						synchronized (clientSessionManagerMap)
-						{		
-							WebSocketClientSessionManager cm = clientSessionManagerMap.get(sessionToken);
-							if (cm == null)
+						WebSocketClientSessionManager cm = clientSessionManagerMap.get(sessionToken);
+						if (cm == null)
+						{
+							debug("server creating context manager for " + sessionToken);
+							//TODO: 
+							cm = generateContextManager(sessionToken, key, conn, translationScope, applicationObjectScope);
+							WebSocketClientSessionManager existing = clientSessionManagerMap.putIfAbsent(sessionToken, cm);
+							if (existing != null)
 							{
-								debug("server creating context manager for " + sessionToken);
-								//TODO: 
-								cm = generateContextManager(sessionToken, key, conn, translationScope, applicationObjectScope);
-								clientSessionManagerMap.put(sessionToken, cm);
-								clientSessionHandleMap.put(sessionToken, cm.getHandle());
+								cm = existing;
+							}
+							else
+							{
+								synchronized (clientSessionHandleMap)
+								{
+									clientSessionHandleMap.put(sessionToken, cm.getHandle());
+								}
 							}
-							
-							ResponseMessage responseMessage = cm.processString(message, uid);
-							
-							createPacketFromMessageAndSend(uid, responseMessage, conn);
 						}
+						
+						// parsed outside any lock; performed under just this session's
+						ResponseMessage responseMessage = cm.processString(message, uid);
+						
+						createPacketFromMessageAndSend(uid, responseMessage, conn);
 					}
 				}
 			}
@@ -402,7 +407,8 @@ public class WebSocketOodssServer extends Manager implements Runnable, WebSocket
 
 	public void shutdownClient(WebSocket conn) {
 		String sessionToken =  ((WebSocketImpl)conn).socket.toString();
-		if (sessionToken!=null)
-			clientSessionManagerMap.get(sessionToken).shutdown();
+		WebSocketClientSessionManager cm = sessionToken == null ? null : clientSessionManagerMap.get(sessionToken);
+		if (cm != null)
+			cm.shutdown();
 	}
 }
@@ -16,6 +16,7 @@ import ecologylab.oodss.messages.InitConnectionResponse;
 import ecologylab.oodss.messages.RequestMessage;
 import ecologylab.oodss.messages.ResponseMessage;
 import ecologylab.oodss.messages.UpdateMessage;
+import ecologylab.serialization.ElementStatePool;
 
 /**
  * @author Zachary O. Toups (zach@ecologylab.net)
@@ -191,6 +192,22 @@ public abstract class BaseSessionManager<S extends Scope, PARENT extends Scope>
 		return response;
 	}
 
+	/**
+	 * Called once a request has been performed, and its response sent, so nothing refers to it any
+	 * more. Returns the objects in it whose classes were set up with
+	 * ClassDescriptor.poolInstances() to their pools, so that deserializing the next request reuses
+	 * them.
+	 * 
+	 * Subclasses whose requests are kept, after they are performed, should override this to do
+	 * nothing.
+	 * 
+	 * @param request
+	 */
+	protected void recycleRequest(RequestMessage request)
+	{
+		ElementStatePool.recycle(request);
+	}
+
 	/**
 	 * Indicates the last System timestamp was when the ContextManager had any activity.
 	 * 
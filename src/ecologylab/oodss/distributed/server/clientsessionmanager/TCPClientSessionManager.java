@@ -14,9 +14,12 @@ import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -26,6 +29,7 @@ import ecologylab.generic.StringTools;
 import ecologylab.oodss.distributed.common.NetworkingConstants;
 import ecologylab.oodss.distributed.common.ServerConstants;
 import ecologylab.oodss.distributed.common.SessionObjects;
+import ecologylab.oodss.distributed.impl.BackpressureListener;
 import ecologylab.oodss.distributed.impl.MessageWithMetadata;
 import ecologylab.oodss.distributed.impl.MessageWithMetadataPool;
 import ecologylab.oodss.distributed.impl.NIOServerIOThread;
@@ -63,7 +67,7 @@ import ecologylab.serialization.formatenums.StringFormat;
  * 
  */
 public abstract class TCPClientSessionManager<S extends Scope, PARENT extends Scope> extends BaseSessionManager<S, PARENT>
-		implements ServerConstants
+		implements ServerConstants, BackpressureListener
 {
 	/**
 	 * Stores the key-value pairings from a parsed HTTP-like header on an incoming message.
@@ -164,6 +168,39 @@ public abstract class TCPClientSessionManager<S extends Scope, PARENT extends Sc
 
 	private static final String																					GET_PREFIX								= "GET ";
 
+	/**
+	 * Disposable updates held back while the client's connection is backed up, by coalescingKey(), in
+	 * the order they were first held.
+	 */
+	private LinkedHashMap<Object, UpdateMessage<?>>												heldUpdates;
+
+	private long																												droppedUpdateCount;
+
+	/**
+	 * Where this's requests are performed, while it is scheduled; see scheduleMessageProcessing().
+	 * This, and the fields below, are guarded by requestQueue.
+	 */
+	private Executor																										requestExecutor;
+
+	/**
+	 * Whether this has been handed to requestExecutor, and has not yet run out of requests.
+	 */
+	private boolean																											scheduled;
+
+	/**
+	 * Stateless requests being performed, each in a task of its own.
+	 */
+	private int																													statelessInFlight;
+
+	/**
+	 * The request, taken from the queue, that waits for statelessInFlight to come down to 0.
+	 */
+	private MessageWithMetadata<RequestMessage, Object>									deferredRequest;
+
+	private final Runnable																							messageProcessor					= new MessageProcessor();
+
+	private final Runnable																							heldUpdateSender					= new HeldUpdateSender();
+
 	/**
 	 * Creates a new ContextManager.
 	 * 
@@ -468,6 +505,172 @@ public abstract class TCPClientSessionManager<S extends Scope, PARENT extends Sc
 		}
 	}
 
+	/**
+	 * Have executor perform this's waiting requests, unless it is already doing so. Requests are
+	 * performed one at a time, in the order they arrived, by one task, which ends when there are none
+	 * left; so a session ties up at most one of executor's threads, and sessions with nothing to do tie
+	 * up none.
+	 * 
+	 * Stateless requests (see RequestMessage.isStateless()) are the exception: each is handed to
+	 * executor as a task of its own, so that a run of them is performed all at once. The next request
+	 * that isn't stateless waits for them to finish, without holding a thread.
+	 * 
+	 * @param executor
+	 * @return true if this was handed to executor; false if it was already scheduled, or has no
+	 *         requests waiting.
+	 * @throws RejectedExecutionException
+	 *           if executor would not take this. Its requests are left waiting, for the next call.
+	 */
+	public boolean scheduleMessageProcessing(Executor executor)
+	{
+		synchronized (requestQueue)
+		{
+			if (scheduled || (!isMessageWaiting() && deferredRequest == null))
+				return false;
+
+			scheduled = true;
+			requestExecutor = executor;
+		}
+		try
+		{
+			executor.execute(messageProcessor);
+		}
+		catch (RejectedExecutionException e)
+		{
+			synchronized (requestQueue)
+			{
+				scheduled = false;
+			}
+			throw e;
+		}
+		return true;
+	}
+
+	/**
+	 * Performs requests until there are none left, or the next one has to wait for stateless ones.
+	 */
+	private void processScheduledMessages()
+	{
+		try
+		{
+			while (true)
+			{
+				MessageWithMetadata<RequestMessage, Object> requestWithMetadata;
+				boolean stateless;
+				Executor executor;
+				synchronized (requestQueue)
+				{
+					requestWithMetadata = deferredRequest;
+					deferredRequest = null;
+					if (requestWithMetadata == null && isMessageWaiting())
+						requestWithMetadata = getNextRequest();
+					if (requestWithMetadata == null)
+					{
+						scheduled = false;
+						return;
+					}
+
+					executor = requestExecutor;
+					RequestMessage request = requestWithMetadata.getMessage();
+					stateless = isInitialized() && request != null && request.isStateless();
+					if (stateless)
+					{
+						statelessInFlight++;
+					}
+					else if (statelessInFlight > 0)
+					{ // the last of them to finish picks up from here
+						deferredRequest = requestWithMetadata;
+						return;
+					}
+				}
+
+				if (!stateless)
+				{
+					this.processRequest(requestWithMetadata);
+					continue;
+				}
+
+				try
+				{
+					executor.execute(new StatelessRequest(requestWithMetadata));
+				}
+				catch (RejectedExecutionException e)
+				{ // it goes first, when this is next scheduled
+					synchronized (requestQueue)
+					{
+						statelessInFlight--;
+						deferredRequest = requestWithMetadata;
+					}
+					throw e;
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			synchronized (requestQueue)
+			{ // let the next request that arrives schedule this again
+				scheduled = false;
+			}
+			throw e;
+		}
+	}
+
+	private class MessageProcessor implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			processScheduledMessages();
+		}
+	}
+
+	/**
+	 * Performs a stateless request, then, if it was the last one that a deferred request was waiting
+	 * for, carries on with the rest.
+	 */
+	private class StatelessRequest implements Runnable
+	{
+		private final MessageWithMetadata<RequestMessage, Object>	requestWithMetadata;
+
+		StatelessRequest(MessageWithMetadata<RequestMessage, Object> requestWithMetadata)
+		{
+			this.requestWithMetadata = requestWithMetadata;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				processRequest(requestWithMetadata);
+			}
+			finally
+			{
+				Executor resumeOn = null;
+				synchronized (requestQueue)
+				{
+					if (--statelessInFlight == 0 && deferredRequest != null && scheduled)
+						resumeOn = requestExecutor;
+				}
+				if (resumeOn != null)
+				{
+					try
+					{
+						resumeOn.execute(messageProcessor);
+					}
+					catch (RejectedExecutionException e)
+					{ // the deferred request goes first, when this is next scheduled
+						synchronized (requestQueue)
+						{
+							scheduled = false;
+						}
+						throw e;
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Sets the SelectionKey, and sets the new SelectionKey to have the same attachment (session id)
 	 * as the old one.
@@ -787,6 +990,7 @@ public abstract class TCPClientSessionManager<S extends Scope, PARENT extends Sc
 			debug("context manager did not produce a response message.");
 		}
 
+		recycleRequest(request);
 		requestWithMetadata = reqPool.release(requestWithMetadata);
 
 		return response;
@@ -908,15 +1112,108 @@ public abstract class TCPClientSessionManager<S extends Scope, PARENT extends Sc
 		// debug("...done ("+(System.currentTimeMillis()-currentTime)+"ms)");
 	}
 
+	/**
+	 * Send update to the client. While the client's connection is backed up, disposable updates are
+	 * held back, keeping only the latest for each coalescingKey(), or dropped, if they have none. Held
+	 * updates go out when the connection catches up, or before the next update that isn't
+	 * disposable, so that the client still sees updates in order.
+	 */
 	@Override
 	public synchronized void sendUpdateToClient(UpdateMessage<?> update)
 	{
-		StringBuilder msgBufOutgoing = this.frontend.getSharedStringBuilderPool().acquire();
-
 		if (this.isInvalidating())
 		{
 			return;
 		}
+
+		if (update.isDisposable() && server.isBackedUp(this.socketKey))
+		{
+			Object coalescingKey = update.coalescingKey();
+			if (coalescingKey == null)
+			{
+				droppedUpdateCount++;
+				return;
+			}
+			if (heldUpdates == null)
+				heldUpdates = new LinkedHashMap<Object, UpdateMessage<?>>();
+			if (heldUpdates.remove(coalescingKey) != null)
+				droppedUpdateCount++;
+			heldUpdates.put(coalescingKey, update);
+			server.setBackpressureListener(this.socketKey, this);
+			return;
+		}
+
+		sendHeldUpdates();
+		writeUpdate(update);
+	}
+
+	/**
+	 * Called by the IO thread when the client's connection has caught up. The held updates are
+	 * serialized and sent by the executor that performs this's requests, so that the IO thread neither
+	 * does that work nor waits for this's lock. Until requests have been scheduled, there is no
+	 * executor, and they are sent right away.
+	 */
+	@Override
+	public void backpressureRelieved(SelectionKey key)
+	{
+		Executor executor;
+		synchronized (requestQueue)
+		{
+			executor = requestExecutor;
+		}
+
+		if (executor == null)
+		{
+			heldUpdateSender.run();
+			return;
+		}
+
+		try
+		{
+			executor.execute(heldUpdateSender);
+		}
+		catch (RejectedExecutionException e)
+		{ // the server is stopping; whatever is held goes before the next update that isn't disposable
+			debug("could not send held updates: " + e);
+		}
+	}
+
+	private class HeldUpdateSender implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			synchronized (TCPClientSessionManager.this)
+			{
+				if (!isInvalidating())
+					sendHeldUpdates();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of disposable updates that were dropped, or superseded, while the client's
+	 *         connection was backed up.
+	 */
+	public synchronized long getDroppedUpdateCount()
+	{
+		return droppedUpdateCount;
+	}
+
+	private void sendHeldUpdates()
+	{
+		if (heldUpdates != null && !heldUpdates.isEmpty())
+		{
+			for (UpdateMessage<?> heldUpdate : heldUpdates.values())
+				writeUpdate(heldUpdate);
+			heldUpdates.clear();
+		}
+	}
+
+	private void writeUpdate(UpdateMessage<?> update)
+	{
+		StringBuilder msgBufOutgoing = this.frontend.getSharedStringBuilderPool().acquire();
+
 		try
 		{
 			// setup outgoingMessageBuffer
@@ -98,7 +98,8 @@ public class WebSocketClientSessionManager extends Debug
 	}
 
 	/**
-	 * process serialized request message.
+	 * process serialized request message. It is parsed straight away, but performed while holding
+	 * this's lock, one request at a time.
 	 * 
 	 * @param message
 	 * @param uid
@@ -111,7 +112,10 @@ public class WebSocketClientSessionManager extends Debug
 			o = translationScope.deserialize(message, StringFormat.XML);
 			if (o instanceof RequestMessage)
 			{
-				responseMessage = processRequest((RequestMessage) o);
+				synchronized (this)
+				{
+					responseMessage = processRequest((RequestMessage) o);
+				}
 			}
 		} catch (SIMPLTranslationException e) {
 			// TODO Auto-generated catch block
@@ -44,6 +44,22 @@ public abstract class RequestMessage<S extends Scope> extends ServiceMessage<S>
 		return false;
 	}
 
+	/**
+	 * Indicates whether or not this type of message may be performed at the same time as other
+	 * requests from the same client, rather than strictly after the ones that arrived before it. Only
+	 * messages that neither change nor depend upon the state of the client's session, such as one that
+	 * looks something up, should be.
+	 * 
+	 * By default, RequestMessages are performed in order; this method should be overriden if they are
+	 * stateless.
+	 * 
+	 * @return false.
+	 */
+	public boolean isStateless()
+	{
+		return false;
+	}
+
 	/**
 	 * A URL can be provided, indicating the response should be accomplished with HTTP redirect. Used
 	 * when browser security is an issue.
@@ -26,4 +26,29 @@ import ecologylab.serialization.annotations.simpl_inherit;
     {
 
     }
+
+    /**
+     * Disposable updates are those that a client may miss, such as one of a stream of positions,
+     * because a later one makes up for it. While the client's connection is backed up, they are
+     * held back, or dropped, rather than queued behind the rest.
+     * 
+     * @return false, by default.
+     */
+    public boolean isDisposable()
+    {
+        return false;
+    }
+
+    /**
+     * For a disposable update, a key that the later updates that supersede it share. While the
+     * client is backed up, only the latest update with each key is kept, and it is sent once the
+     * client catches up.
+     * 
+     * @return null, by default, so that disposable updates are dropped while the client is backed
+     *         up.
+     */
+    public Object coalescingKey()
+    {
+        return null;
+    }
 }
@@ -15,13 +15,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ecologylab.generic.HashMapArrayList;
 import ecologylab.generic.ReflectionTools;
 import ecologylab.platformspecifics.FundamentalPlatformSpecifics;
+import ecologylab.serialization.accessors.Instantiator;
 import ecologylab.serialization.annotations.Hint;
 import ecologylab.serialization.annotations.bibtex_key;
 import ecologylab.serialization.annotations.bibtex_type;
+import ecologylab.serialization.annotations.simpl_cached;
 import ecologylab.serialization.annotations.simpl_collection;
 import ecologylab.serialization.annotations.simpl_composite;
 import ecologylab.serialization.annotations.simpl_descriptor_classes;
@@ -34,6 +37,7 @@ import ecologylab.serialization.annotations.simpl_scalar;
 import ecologylab.serialization.annotations.simpl_tag;
 import ecologylab.serialization.annotations.simpl_use_equals_equals;
 import ecologylab.serialization.formatenums.StringFormat;
+import ecologylab.serialization.serializers.GeneratedSerializer;
 import ecologylab.serialization.types.CollectionType;
 import ecologylab.serialization.types.ScalarType;
 import ecologylab.serialization.types.TypeRegistry;
@@ -100,8 +104,9 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 
 	/**
 	 * This flag prevents loops when creating descriptors for type graphs.
+	 * Volatile, because it is read outside of the lock that derivation holds.
 	 */
-	private boolean isGetAndOrganizeComplete;
+	private volatile boolean isGetAndOrganizeComplete;
 
 	/**
 	 * Map of FieldToXMLOptimizations, with field names as keys.
@@ -113,6 +118,13 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 	 */
 	private HashMapArrayList<String, FD> fieldDescriptorsByFieldName = new HashMapArrayList<String, FD>();
 
+	/**
+	 * The position of each field in fieldDescriptorsByFieldName, by field name,
+	 * so that sets of fields of an object, such as the changed fields of an
+	 * ObservableElementState, can be kept as BitSets. Built on first use.
+	 */
+	private volatile HashMap<String, Integer> fieldIndexesByFieldName;
+
 	@simpl_nowrap	
 	@simpl_map("field_descriptor")
 	@simpl_map_key_field("name")
@@ -125,6 +137,14 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 	 */
 	private HashMap<String, FD> allFieldDescriptorsByTagNames = new HashMap<String, FD>();
 
+	/**
+	 * allFieldDescriptorsByTagNames, indexed for lookups by runs of chars.
+	 * Dropped whenever the map changes, and built again on the next lookup.
+	 * Both are done while holding this descriptor's lock, and it is dropped
+	 * after the map is changed.
+	 */
+	private volatile TagIndex<FD> fieldDescriptorsByTagIndex;
+
 	private HashMap<Integer, FD> allFieldDescriptorsByTLVIds = new HashMap<Integer, FD>();
 
 	private FD fieldDescriptorForBibTeXKey = null;
@@ -140,12 +160,26 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 	/**
 	 * Global map of all ClassDescriptors. Key is the full, qualified name of
 	 * the class == describedClassName.
+	 * <p/>
+	 * Safe to read without locking. Creating and deriving new entries is still
+	 * done while holding DERIVATION_LOCK, because that recurses through the
+	 * type graph.
+	 */
+	private static final ConcurrentHashMap<String, ClassDescriptor<? extends FieldDescriptor>> globalClassDescriptorsMap = new ConcurrentHashMap<String, ClassDescriptor<? extends FieldDescriptor>>();
+
+	private static final Object DERIVATION_LOCK = new Object();
+
+	/**
+	 * Complete ClassDescriptors, keyed by Class. null on platforms without
+	 * java.lang.ClassValue, in which case only globalClassDescriptorsMap is
+	 * used.
 	 */
-	private static final HashMap<String, ClassDescriptor<? extends FieldDescriptor>> globalClassDescriptorsMap = new HashMap<String, ClassDescriptor<? extends FieldDescriptor>>();
+	private static final ClassDescriptorCache completeClassDescriptors = ClassDescriptorCache
+			.create();
 
-	private ArrayList<FD> unresolvedScopeAnnotationFDs;
+	private volatile ArrayList<FD> unresolvedScopeAnnotationFDs;
 
-	private ArrayList<FD> unresolvedClassesAnnotationFDs;
+	private volatile ArrayList<FD> unresolvedClassesAnnotationFDs;
 
 	private String bibtexType = "";
 
@@ -160,6 +194,17 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 	@simpl_scalar
 	private boolean strictObjectGraphRequired = false;
 
+	/**
+	 * true if the class was annotated with @simpl_cached, so that the
+	 * serialized forms of its instances may be kept in the SerializationCache.
+	 */
+	private boolean serializationCached;
+
+	/**
+	 * The versionField of the class's @simpl_cached annotation, if any.
+	 */
+	private String versionFieldName;
+
 	public Class<?> fdClass;
 
 	@simpl_collection("generic_type_var")
@@ -179,6 +224,24 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 
 	private List<FieldDescriptorsDerivedEventListener> fieldDescriptorsDerivedEventListeners;
 
+	/**
+	 * Makes instances of describedClass. Created on first use.
+	 */
+	private volatile Instantiator<?> instantiator;
+
+	/**
+	 * If set, getInstance() takes instances from here, instead of making new ones.
+	 */
+	private volatile ElementStatePool<?> instancePool;
+
+	/**
+	 * The GeneratedSerializer for describedClass, if it has one that matches
+	 * this, once generatedSerializerFound is set.
+	 */
+	private volatile GeneratedSerializer generatedSerializer;
+
+	private volatile boolean generatedSerializerFound;
+
 	static {
 		TypeRegistry.init();
 	}
@@ -223,6 +286,13 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 		if (thatClass.isAnnotationPresent(simpl_use_equals_equals.class)) {
 			this.strictObjectGraphRequired = true;
 		}
+		final simpl_cached cachedAnnotation = thatClass
+				.getAnnotation(simpl_cached.class);
+		if (cachedAnnotation != null) {
+			this.serializationCached = true;
+			if (cachedAnnotation.versionField().length() > 0)
+				this.versionFieldName = cachedAnnotation.versionField();
+		}
 	}
 
 	/**
@@ -410,13 +480,18 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 	 */
 	public static ClassDescriptor<? extends FieldDescriptor> getClassDescriptor(
 			final Class<?> thatClass) {
+		ClassDescriptor<? extends FieldDescriptor> result;
+		if (completeClassDescriptors != null) {
+			result = completeClassDescriptors.get(thatClass);
+			if (result != null)
+				return result;
+		}
 		String className = thatClass.getName();
 		// stay out of the synchronized block most of the time
-		ClassDescriptor<? extends FieldDescriptor> result = globalClassDescriptorsMap
-				.get(className);
+		result = globalClassDescriptorsMap.get(className);
 		if (result == null || !result.isGetAndOrganizeComplete) {
 			// but still be thread safe!
-			synchronized (globalClassDescriptorsMap) {
+			synchronized (DERIVATION_LOCK) {
 				result = globalClassDescriptorsMap.get(className);
 				if (result == null) {
 					final simpl_descriptor_classes descriptorsClassesAnnotation = thatClass
@@ -431,7 +506,11 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 						result = (ClassDescriptor<? extends FieldDescriptor>) ReflectionTools
 								.getInstance(aClass, CONSTRUCTOR_ARGS, args);
 					}
-					globalClassDescriptorsMap.put(className, result);
+					ClassDescriptor<? extends FieldDescriptor> registered = globalClassDescriptorsMap
+							.putIfAbsent(className, result);
+					if (registered != null)
+						// deserializationPreHook() got there first
+						return registered;
 
 					ClassDescriptor<? extends FieldDescriptor> superCD = result
 							.getSuperClass();
@@ -439,8 +518,7 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 						// NB: this call was moved out of the constructor to
 						// avoid recursion problems
 						result.deriveAndOrganizeFieldsRecursive(thatClass);
-						result.isGetAndOrganizeComplete = true;
-						result.handleFieldDescriptorsDerivedEvent();
+						result.getAndOrganizeComplete(thatClass);
 					} else {
 						final ClassDescriptor resultFinalCopy = result;
 						FieldDescriptorsDerivedEventListener listener = new FieldDescriptorsDerivedEventListener() {
@@ -449,9 +527,8 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 									Object... eventArgs) {
 								resultFinalCopy
 										.deriveAndOrganizeFieldsRecursive(thatClass);
-								resultFinalCopy.isGetAndOrganizeComplete = true;
 								resultFinalCopy
-										.handleFieldDescriptorsDerivedEvent();
+										.getAndOrganizeComplete(thatClass);
 							}
 						};
 						superCD.addFieldDescriptorDerivedEventListener(listener);
@@ -466,6 +543,20 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 		return result;
 	}
 
+	/**
+	 * Mark this complete, publish it for lock-free lookup, and let the
+	 * descriptors of subclasses that were waiting on this finish.
+	 * 
+	 * @param thatClass
+	 *            The class that this describes.
+	 */
+	private void getAndOrganizeComplete(Class<?> thatClass) {
+		isGetAndOrganizeComplete = true;
+		if (completeClassDescriptors != null)
+			completeClassDescriptors.put(thatClass, this);
+		handleFieldDescriptorsDerivedEvent();
+	}
+
 	private List<FieldDescriptorsDerivedEventListener> fieldDescriptorsDerivedEventListeners() {
 		if (fieldDescriptorsDerivedEventListeners == null)
 			this.fieldDescriptorsDerivedEventListeners = new ArrayList<FieldDescriptorsDerivedEventListener>();
@@ -526,17 +617,49 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 
 	public FD getFieldDescriptorByTag(String tag, SimplTypesScope tScope,
 			Object context) {
+		return fieldDescriptorsByTagIndex().get(tag);
+	}
+
+	public FD getFieldDescriptorByTag(String tag, SimplTypesScope tScope) {
+		return getFieldDescriptorByTag(tag, tScope, null);
+	}
+
+	/**
+	 * Look up a tag that is in a buffer, without making a String of it.
+	 * 
+	 * @param text
+	 * @param start
+	 *            where the tag starts in text.
+	 * @param end
+	 *            where the tag ends in text.
+	 * @return The FieldDescriptor for the tag, or null if there isn't one.
+	 */
+	public FD getFieldDescriptorByTag(CharSequence text, int start, int end) {
+		return fieldDescriptorsByTagIndex().get(text, start, end);
+	}
+
+	public FD getFieldDescriptorByTag(char[] chars, int offset, int length) {
+		return fieldDescriptorsByTagIndex().get(chars, offset, length);
+	}
+
+	private TagIndex<FD> fieldDescriptorsByTagIndex() {
 		if (unresolvedScopeAnnotationFDs != null)
 			resolveUnresolvedScopeAnnotationFDs();
 
 		if (unresolvedClassesAnnotationFDs != null)
 			resolveUnresolvedClassesAnnotationFDs();
 
-		return allFieldDescriptorsByTagNames.get(tag);
-	}
-
-	public FD getFieldDescriptorByTag(String tag, SimplTypesScope tScope) {
-		return getFieldDescriptorByTag(tag, tScope, null);
+		TagIndex<FD> index = fieldDescriptorsByTagIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = fieldDescriptorsByTagIndex;
+				if (index == null) {
+					index = TagIndex.of(allFieldDescriptorsByTagNames);
+					fieldDescriptorsByTagIndex = index;
+				}
+			}
+		}
+		return index;
 	}
 
 	public FD getFieldDescriptorByTLVId(int tlvId) {
@@ -561,6 +684,30 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 		return fieldDescriptorsByFieldName.get(fieldName);
 	}
 
+	/**
+	 * @param fieldName
+	 * @return The position of the field in getFieldDescriptorsByFieldName(),
+	 *         which getFieldDescriptorsByFieldName().get(int) takes, or -1 if
+	 *         there is no such field.
+	 */
+	public int getFieldIndex(String fieldName) {
+		HashMap<String, Integer> indexes = fieldIndexesByFieldName;
+		if (indexes == null) {
+			synchronized (this) {
+				indexes = fieldIndexesByFieldName;
+				if (indexes == null) {
+					indexes = new HashMap<String, Integer>();
+					int i = 0;
+					for (FD fd : fieldDescriptorsByFieldName)
+						indexes.put(fd.getName(), i++);
+					fieldIndexesByFieldName = indexes;
+				}
+			}
+		}
+		Integer index = indexes.get(fieldName);
+		return index == null ? -1 : index;
+	}
+
 	@Override
 	public Iterator<FD> iterator() {
 		return fieldDescriptorsByFieldName.iterator();
@@ -662,6 +809,7 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 			
 			if (fieldDescriptor != null) {
 				fieldDescriptor.genericTypeVarsContextCD = this;
+				fieldDescriptor.deriveAccessor();
 			} else {
 				int isfdl = 1+3;
 				isfdl ++;
@@ -783,6 +931,7 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 					perhapsCloneGenericField(fieldDescriptorEntry.getValue(),
 							bookkeeper));
 		}
+		fieldDescriptorsByTagIndex = null;
 
 		for (Entry<Integer, FD> fieldDescriptorEntry : superClassDescriptor
 				.getAllFieldDescriptorsByTLVIds().entrySet()) {
@@ -974,8 +1123,12 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 	private void mapTagToFdForDeserialize(String tagName, FD fdToMap) {
 
 		if (!fdToMap.isWrapped()) {
-			FD previousMapping = allFieldDescriptorsByTagNames.put(tagName,
-					fdToMap);
+			FD previousMapping;
+			// this may be resolving a lazy annotation, during a lookup
+			synchronized (this) {
+				previousMapping = allFieldDescriptorsByTagNames.put(tagName, fdToMap);
+				fieldDescriptorsByTagIndex = null;
+			}
 			allFieldDescriptorsByTLVIds.put(tagName.hashCode(), fdToMap);
 			if (previousMapping != null && previousMapping != fdToMap) {
 				warning(" tag <" + tagName + ">:\tfield[" + fdToMap.getName()
@@ -1080,8 +1233,75 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 		return null;
 	}
 
+	/**
+	 * @return An instance of the described class, from its pool, if poolInstances() was called, or
+	 *         else a new one.
+	 */
 	public Object getInstance() throws SIMPLTranslationException {
-		return XMLTools.getInstance(describedClass);
+		ElementStatePool<?> pool = instancePool;
+		return pool != null ? pool.acquire() : newInstance();
+	}
+
+	/**
+	 * @return A new instance of the described class, made with its constructor that takes no
+	 *         arguments.
+	 */
+	public Object newInstance() throws SIMPLTranslationException {
+		Instantiator<?> instantiator = this.instantiator;
+		if (instantiator == null) {
+			instantiator = Instantiator.create(describedClass);
+			this.instantiator = instantiator;
+		}
+		try {
+			return instantiator.newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new SIMPLTranslationException("Instantiation ERROR for " + describedClass
+					+ ". Is there a public constructor with no arguments?", e);
+		}
+	}
+
+	/**
+	 * @return The serializer that SimplProcessor generated for the described
+	 *         class, for its fields as organized here, or null if there is
+	 *         none.
+	 */
+	public GeneratedSerializer getGeneratedSerializer() {
+		if (!generatedSerializerFound) {
+			generatedSerializer = GeneratedSerializer.forClass(this);
+			generatedSerializerFound = true;
+		}
+		return generatedSerializer;
+	}
+
+	/**
+	 * Have getInstance() take instances of the described class from a pool, to which
+	 * ElementStatePool.recycle() returns them, once the object tree they are in has been used.
+	 * <p/>
+	 * Only use this for ElementState subclasses whose recycle() resets every field, so that recycled
+	 * instances are as if new, and whose instances are not kept after the tree is recycled, such as
+	 * the RequestMessages of an OODSS server.
+	 * 
+	 * @param initialPoolSize
+	 * @param minimumPoolSize
+	 * @return The pool, or null if the described class is not an ElementState.
+	 */
+	public ElementStatePool<?> poolInstances(int initialPoolSize, int minimumPoolSize) {
+		if (!ElementState.class.isAssignableFrom(describedClass)) {
+			warning("Can't pool instances of " + describedClass + ", which is not an ElementState.");
+			return null;
+		}
+		synchronized (this) {
+			if (instancePool == null)
+				instancePool = new ElementStatePool<ElementState>(this, initialPoolSize, minimumPoolSize);
+			return instancePool;
+		}
+	}
+
+	/**
+	 * @return The pool that getInstance() takes instances from, or null if there is none.
+	 */
+	public ElementStatePool<?> getInstancePool() {
+		return instancePool;
 	}
 
 	public int numFields() {
@@ -1175,6 +1395,34 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 		resolveUnresolvedClassesAnnotationFDs();
 	}
 
+	/**
+	 * Do now the work that is otherwise done lazily, the first time that this
+	 * is used: resolve polymorphic annotations, and form the pseudo
+	 * FieldDescriptor.
+	 * 
+	 * @return The ClassDescriptors that this refers to, through its super
+	 *         class and its fields, so they can be prewarmed too.
+	 */
+	Set<ClassDescriptor<? extends FieldDescriptor>> prewarm() {
+		Set<ClassDescriptor<? extends FieldDescriptor>> result = new HashSet<ClassDescriptor<? extends FieldDescriptor>>();
+		resolvePolymorphicAnnotations();
+		pseudoFieldDescriptor();
+		if (superClass != null)
+			result.add(superClass);
+		for (FD fd : fieldDescriptorsByFieldName.values()) {
+			ClassDescriptor elementClassDescriptor = fd
+					.getElementClassDescriptor();
+			if (elementClassDescriptor != null)
+				result.add(elementClassDescriptor);
+			Collection<ClassDescriptor> polyClassDescriptors = fd
+					.getPolymorphicClassDescriptors();
+			if (polyClassDescriptors != null)
+				for (ClassDescriptor polyCd : polyClassDescriptors)
+					result.add(polyCd);
+		}
+		return result;
+	}
+
 	public void resolveUnresolvedScopeAnnotationFDs() {
 		if (unresolvedScopeAnnotationFDs != null) {
 			synchronized (SCOPE_ANNOTATION_LOCK) {
@@ -1196,14 +1444,19 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 	 */
 	public void resolveUnresolvedClassesAnnotationFDs() {
 		if (unresolvedClassesAnnotationFDs != null) {
-			for (int i = unresolvedClassesAnnotationFDs.size() - 1; i >= 0; i--) {
-				FieldDescriptor fd = unresolvedClassesAnnotationFDs.remove(i);
-				fd.resolveUnresolvedClassesAnnotation();
-				this.mapPolymorphicClassDescriptors((FD) fd);
-				this.mapPolymorphicClassDescriptors((FD) fd);
+			synchronized (SCOPE_ANNOTATION_LOCK) {
+				if (unresolvedClassesAnnotationFDs != null) {
+					for (int i = unresolvedClassesAnnotationFDs.size() - 1; i >= 0; i--) {
+						FieldDescriptor fd = unresolvedClassesAnnotationFDs
+								.remove(i);
+						fd.resolveUnresolvedClassesAnnotation();
+						this.mapPolymorphicClassDescriptors((FD) fd);
+						this.mapPolymorphicClassDescriptors((FD) fd);
+					}
+					unresolvedClassesAnnotationFDs = null;
+				}
 			}
 		}
-		unresolvedClassesAnnotationFDs = null;
 	}
 
 	/**
@@ -1257,6 +1510,29 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 		return this.strictObjectGraphRequired;
 	}
 
+	/**
+	 * @return true if the class was annotated with @simpl_cached.
+	 */
+	public boolean isSerializationCached() {
+		return serializationCached;
+	}
+
+	/**
+	 * @return The field that @simpl_cached names as the version of instances,
+	 *         or null if there is none.
+	 */
+	public FD getVersionFieldDescriptor() {
+		if (versionFieldName == null)
+			return null;
+		FD fd = fieldDescriptorsByFieldName.get(versionFieldName);
+		if (fd == null) {
+			warning("No field " + versionFieldName
+					+ ", for @simpl_cached(versionField)");
+			versionFieldName = null;
+		}
+		return fd;
+	}
+
 	/**
 	 * Find all the Collection fields in this. Assemble a Set of them, in order
 	 * to generate import statements.
@@ -1333,15 +1609,10 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 
 	@Override
 	public void deserializationPreHook(TranslationContext translationContext) {
-		synchronized (globalClassDescriptorsMap) {
-			String name = this.getName();
-			if (name != null) {
-				if (globalClassDescriptorsMap.containsKey(name))
-					error("Already a ClassDescriptor for " + name);
-				else {
-					globalClassDescriptorsMap.put(name, this);
-				}
-			}
+		String name = this.getName();
+		if (name != null) {
+			if (globalClassDescriptorsMap.putIfAbsent(name, this) != null)
+				error("Already a ClassDescriptor for " + name);
 		}
 	}
 
@@ -1420,14 +1691,19 @@ public class ClassDescriptor<FD extends FieldDescriptor> extends DescriptorBase
 	}
 
 	public void replace(FD oldFD, FD newFD) {
-		// for deserialization:
-		if (oldFD != null)
-			getAllFieldDescriptorsByTagNames().remove(oldFD.getTagName());
-		getAllFieldDescriptorsByTagNames().put(newFD.getTagName(), newFD);
+		// for deserialization, under the lock that fieldDescriptorsByTagIndex()
+		// rebuilds the index with, which is dropped once the map has changed
+		synchronized (this) {
+			if (oldFD != null)
+				getAllFieldDescriptorsByTagNames().remove(oldFD.getTagName());
+			getAllFieldDescriptorsByTagNames().put(newFD.getTagName(), newFD);
+			fieldDescriptorsByTagIndex = null;
+		}
 		// for serialization:
 		if (oldFD != null) {
 			replace(attributeFieldDescriptors, oldFD, newFD);
 			replace(elementFieldDescriptors, oldFD, newFD);
+			generatedSerializerFound = false;
 		}
 	}
 
@@ -0,0 +1,73 @@
+package ecologylab.serialization;
+
+/**
+ * Fast path for ClassDescriptor.getClassDescriptor(Class): a ClassValue that holds the
+ * ClassDescriptor for each class, once its fields have been derived and organized.
+ * <p/>
+ * Looking a Class up in a ClassValue is a read of a table hung off the Class itself, without the
+ * hashing of the class name and the lookup in the global registry. Descriptors are only put here
+ * when they are complete, so a hit never needs to take the registry lock.
+ * <p/>
+ * Not all platforms have java.lang.ClassValue (it is missing from most Androids), so get an
+ * instance with create(), which returns null if it can't be built.
+ */
+final class ClassDescriptorCache
+{
+	/**
+	 * Mutable holder, so that computeValue() can return right away, and the descriptor can be
+	 * published when it is complete, which may be much later, for classes in cycles.
+	 */
+	static final class Slot
+	{
+		volatile ClassDescriptor<? extends FieldDescriptor>	classDescriptor;
+	}
+
+	private final ClassValue<Slot>	slots;
+
+	private ClassDescriptorCache()
+	{
+		slots = new ClassValue<Slot>()
+		{
+			@Override
+			protected Slot computeValue(Class<?> type)
+			{
+				return new Slot();
+			}
+		};
+	}
+
+	/**
+	 * @return A new cache, or null, if this platform does not support java.lang.ClassValue.
+	 */
+	static ClassDescriptorCache create()
+	{
+		try
+		{
+			return new ClassDescriptorCache();
+		}
+		catch (LinkageError e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * @param thatClass
+	 * @return The complete ClassDescriptor for thatClass, or null if there is none yet.
+	 */
+	ClassDescriptor<? extends FieldDescriptor> get(Class<?> thatClass)
+	{
+		return slots.get(thatClass).classDescriptor;
+	}
+
+	/**
+	 * Publish a ClassDescriptor, after its fields have been derived and organized.
+	 *
+	 * @param thatClass
+	 * @param classDescriptor
+	 */
+	void put(Class<?> thatClass, ClassDescriptor<? extends FieldDescriptor> classDescriptor)
+	{
+		slots.get(thatClass).classDescriptor = classDescriptor;
+	}
+}
@@ -0,0 +1,26 @@
+package ecologylab.serialization;
+
+/**
+ * Receives the elements of one collection field as they are deserialized, instead of having them
+ * added to the collection, so that a document with a very large collection can be processed in
+ * constant memory. Pass one to SimplTypesScope.deserializeStreaming().
+ *
+ * @param <E>
+ *          the type of the elements of the streamed collection.
+ */
+public interface CollectionElementHandler<E>
+{
+	/**
+	 * Called once for each element of the streamed collection, after it is fully built, including
+	 * its own nested composites and collections. The deserializer does not keep a reference to
+	 * element after this returns.
+	 *
+	 * @param parent
+	 *          the object whose collection field element belongs to.
+	 * @param element
+	 * @return true to go on, or false to stop deserializing the rest of the document.
+	 * @throws SIMPLTranslationException
+	 *           to abort deserialization.
+	 */
+	boolean handleElement(Object parent, E element) throws SIMPLTranslationException;
+}
@@ -126,6 +126,8 @@ public class ElementState<PES extends ElementState> extends Debug implements Fie
 		else
 			parent = null;
 
+		parents = null;
+		isRoot = false;
 		elementByIdMap = null;
 		if (nestedNameSpaces != null)
 		{
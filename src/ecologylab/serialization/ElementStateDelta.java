@@ -0,0 +1,189 @@
+package ecologylab.serialization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import ecologylab.generic.HashMapArrayList;
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_composite;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_scope;
+import ecologylab.serialization.annotations.simpl_tag;
+
+/**
+ * The fields of an ObservableElementState that changed between two of its versions, as
+ * ObservableElementState.takeDelta() takes them, to bring replicas of the object, on the other end
+ * of a connection, up to date. It is an ElementState, so it goes out in XML, JSON or TLV, usually as
+ * a field of an UpdateMessage, at a cost that follows how much changed, rather than how big the
+ * object is.
+ * <p/>
+ * The changed fields ride in state, a new instance of the object's class with just those fields
+ * set. Fields that changed to their default value, or to null, are named in cleared instead, since
+ * serializers leave defaults out. The classes of the objects that deltas are taken of must be in
+ * the SimplTypesScope named STATE_TYPES_SCOPE, as well as in the scope that the deltas are
+ * deserialized with.
+ * <p/>
+ * Changed composite, collection and map fields are sent whole.
+ */
+@simpl_tag("delta")
+public class ElementStateDelta extends ElementState
+{
+	/**
+	 * Name of the SimplTypesScope of the classes that deltas are taken of.
+	 */
+	public static final String	STATE_TYPES_SCOPE	= "STATE_TYPES_SCOPE";
+
+	/**
+	 * baseVersion of a snapshot, which applies whatever the version of the replica.
+	 */
+	public static final long		ANY_VERSION				= -1;
+
+	/**
+	 * The version that this delta applies to.
+	 */
+	@simpl_scalar
+	long												baseVersion;
+
+	/**
+	 * The version that a replica is at, once this delta is applied.
+	 */
+	@simpl_scalar
+	long												version;
+
+	/**
+	 * Names of the fields whose values are in state.
+	 */
+	@simpl_collection("field")
+	ArrayList<String>						fields;
+
+	/**
+	 * Names of the fields that changed to their default value, or to null.
+	 */
+	@simpl_collection("cleared")
+	ArrayList<String>						cleared;
+
+	@simpl_composite
+	@simpl_scope(STATE_TYPES_SCOPE)
+	ElementState								state;
+
+	public ElementStateDelta()
+	{
+	}
+
+	/**
+	 * Copies the given fields out of source. Called by ObservableElementState, which holds source's
+	 * lock.
+	 *
+	 * @param source
+	 * @param changedFields
+	 *          indexes of the fields, in source's ClassDescriptor; may be null, for none.
+	 * @param baseVersion
+	 * @param version
+	 * @throws SIMPLTranslationException
+	 *           if source's class can't be instantiated.
+	 */
+	ElementStateDelta(ObservableElementState source, BitSet changedFields, long baseVersion,
+			long version) throws SIMPLTranslationException
+	{
+		this.baseVersion = baseVersion;
+		this.version = version;
+		if (changedFields == null)
+			return;
+
+		ClassDescriptor<?> classDescriptor = source.classDescriptor();
+		HashMapArrayList<String, ? extends FieldDescriptor> fieldDescriptors = classDescriptor
+				.getFieldDescriptorsByFieldName();
+		for (int i = changedFields.nextSetBit(0); i >= 0; i = changedFields.nextSetBit(i + 1))
+		{
+			FieldDescriptor fd = fieldDescriptors.get(i);
+			Object value = fd.getValue(source);
+			if (fd.isDefaultValue(value))
+			{
+				if (cleared == null)
+					cleared = new ArrayList<String>();
+				cleared.add(fd.getName());
+			}
+			else
+			{
+				if (state == null)
+					state = (ElementState) classDescriptor.newInstance();
+				fd.setField(state, value);
+				if (fields == null)
+					fields = new ArrayList<String>();
+				fields.add(fd.getName());
+			}
+		}
+	}
+
+	/**
+	 * Sets the fields of target that this delta carries, if target is at baseVersion, and moves it
+	 * to version. Then target's observers are notified, with this delta as the argument.
+	 *
+	 * @param target
+	 *          the replica, of the same class as the object that the delta was taken of.
+	 * @return true if the delta was applied; false if target is at another version, so that it
+	 *         needs a snapshot.
+	 * @throws SIMPLTranslationException
+	 *           if target's class is not the class of the object the delta was taken of.
+	 */
+	public boolean applyTo(ObservableElementState target) throws SIMPLTranslationException
+	{
+		if (state != null && state.getClass() != target.getClass())
+			throw new SIMPLTranslationException("Delta of " + state.getClass() + " can't be applied to "
+					+ target.getClass());
+
+		ClassDescriptor<?> classDescriptor = target.classDescriptor();
+		synchronized (target)
+		{
+			if (baseVersion != ANY_VERSION && baseVersion != target.getVersion())
+				return false;
+
+			if (fields != null)
+				for (String fieldName : fields)
+				{
+					FieldDescriptor fd = fieldDescriptor(classDescriptor, fieldName);
+					fd.setField(target, fd.getValue(state));
+				}
+			if (cleared != null)
+				for (String fieldName : cleared)
+				{
+					FieldDescriptor fd = fieldDescriptor(classDescriptor, fieldName);
+					if (fd.getField().getType().isPrimitive())
+						fd.setFieldToScalarDefault(target, null);
+					else
+						fd.setField(target, null);
+				}
+			target.setVersion(version);
+			target.setChanged();
+		}
+		target.notifyObservers(this);
+		return true;
+	}
+
+	private static FieldDescriptor fieldDescriptor(ClassDescriptor<?> classDescriptor,
+			String fieldName) throws SIMPLTranslationException
+	{
+		FieldDescriptor fd = classDescriptor.getFieldDescriptorByFieldName(fieldName);
+		if (fd == null)
+			throw new SIMPLTranslationException("No field " + fieldName + " in " + classDescriptor);
+		return fd;
+	}
+
+	public long getBaseVersion()
+	{
+		return baseVersion;
+	}
+
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return true if no field changed.
+	 */
+	public boolean isEmpty()
+	{
+		return fields == null && cleared == null;
+	}
+}
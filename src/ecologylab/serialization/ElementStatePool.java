@@ -0,0 +1,108 @@
+package ecologylab.serialization;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import ecologylab.generic.ResourcePool;
+
+/**
+ * ResourcePool of instances of one ElementState class, that ClassDescriptor.getInstance() takes
+ * from, when deserializing, once ClassDescriptor.poolInstances() has been called for it.
+ * <p/>
+ * Instances go back to their pool through recycle(Object), which is given the root of an object
+ * tree that is no longer used, such as a RequestMessage that an OODSS server has performed, and
+ * answered. Each pooled instance in the tree is recycle()d, and released, so the class's recycle()
+ * must leave it as if it had just been made.
+ */
+public class ElementStatePool<ES extends ElementState> extends ResourcePool<ES>
+{
+	/**
+	 * How many pools have been made, so that recycle() does nothing, cheaply, when there are none.
+	 */
+	private static volatile int				numPools;
+
+	private final ClassDescriptor<?>	classDescriptor;
+
+	ElementStatePool(ClassDescriptor<?> classDescriptor, int initialPoolSize, int minimumPoolSize)
+	{
+		super(false, initialPoolSize, minimumPoolSize, false);
+		this.classDescriptor = classDescriptor;
+		instantiateResourcesInPool();
+		synchronized (ElementStatePool.class)
+		{
+			numPools++;
+		}
+	}
+
+	@Override
+	protected ES generateNewResource()
+	{
+		try
+		{
+			return (ES) classDescriptor.newInstance();
+		}
+		catch (SIMPLTranslationException e)
+		{
+			throw new IllegalStateException("Can't fill the pool for " + classDescriptor, e);
+		}
+	}
+
+	/**
+	 * Instances are recycle()d when they are released, so there is nothing more to do.
+	 */
+	@Override
+	protected void clean(ES objectToClean)
+	{
+	}
+
+	/**
+	 * Return each object in the tree under root, root included, whose class has a pool, to that
+	 * pool, after calling its recycle(). The caller, and everything that the tree was passed to, must
+	 * be done with it, because its objects will be handed out again.
+	 *
+	 * @param root
+	 */
+	public static void recycle(Object root)
+	{
+		if (numPools > 0 && root != null)
+			recycle(root, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+	}
+
+	private static void recycle(Object object, Set<Object> visited)
+	{
+		if (!visited.add(object))
+			return;
+
+		ClassDescriptor<? extends FieldDescriptor> classDescriptor = ClassDescriptor
+				.getClassDescriptor(object);
+		for (FieldDescriptor childFd : classDescriptor.elementFieldDescriptors())
+		{
+			switch (childFd.getType())
+			{
+			case COMPOSITE_ELEMENT:
+				Object composite = childFd.getCompositeValue(object);
+				if (composite != null)
+					recycle(composite, visited);
+				break;
+			case COLLECTION_ELEMENT:
+			case MAP_ELEMENT:
+				Collection<?> elements = XMLTools.getCollection(childFd.getValue(object));
+				if (elements != null)
+					for (Object element : elements)
+						if (element != null)
+							recycle(element, visited);
+				break;
+			}
+		}
+
+		ElementStatePool pool = classDescriptor.getInstancePool();
+		if (pool != null)
+		{
+			ElementState elementState = (ElementState) object;
+			elementState.recycle();
+			pool.release(elementState);
+		}
+	}
+}
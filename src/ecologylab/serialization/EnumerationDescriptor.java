@@ -1,5 +1,8 @@
 package ecologylab.serialization;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -9,6 +12,7 @@ import java.util.List;
 
 import ecologylab.serialization.annotations.simpl_collection;
 import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.types.ScalarType;
 
 public class EnumerationDescriptor extends DescriptorBase implements ISimplStringMarshaller {
 	
@@ -286,7 +290,11 @@ public class EnumerationDescriptor extends DescriptorBase implements ISimplStrin
 	
 	public Enum<?> getEntryEnumFromValue(Integer value)
 	{
-		return this.getEntryEnumValue(this.fetchEnumValueToEnumName().get(value));
+		if(enumValueToEnumNameHash == null)
+		{
+			enumValueToEnumNameHash = fetchEnumValueToEnumName();
+		}
+		return this.getEntryEnumValue(enumValueToEnumNameHash.get(value));
 	}
 
 	/**
@@ -395,13 +403,79 @@ public class EnumerationDescriptor extends DescriptorBase implements ISimplStrin
 		}
 	}
 
+	private HashMap<String, Integer> enumNameToEnumIntegerValueHash = null;
+	private HashMap<Integer, String> enumValueToEnumNameHash = null;
+	private Boolean isCustomValued = null;
+
 	/**
 	 * Gets the integer value that corresponds to a custom-valued enumeration
 	 * @param string Entry name
  	 * @return Custom value
 	 */
 	public Integer getEntryEnumIntegerValue(String string) {
-		return fetchEnumNameToEnumIntegerValue().get(string);
+		if(enumNameToEnumIntegerValueHash == null)
+		{
+			enumNameToEnumIntegerValueHash = fetchEnumNameToEnumIntegerValue();
+		}
+		return enumNameToEnumIntegerValueHash.get(string);
+	}
+
+	/**
+	 * Determines if this describes a "Custom Valued" enumeration
+	 * @return True if the entries have custom integer values
+	 */
+	public boolean isCustomValued()
+	{
+		if(isCustomValued == null)
+		{
+			Class<?> enumClass = fetchEnumClass();
+			isCustomValued = enumClass != null && isCustomValuedEnum(enumClass);
+		}
+		return isCustomValued;
+	}
+
+	/**
+	 * Writes an entry in the binary form used by BinaryFormat.TLV2: its custom value as a varint, for
+	 * custom valued enumerations, otherwise the UTF-8 bytes of its name.
+	 * @param object The enumeration value to write
+	 * @param out
+	 */
+	public void writeBinary(Object object, DataOutput out) throws SIMPLTranslationException, IOException
+	{
+		String name = marshal(object);
+		if(isCustomValued())
+		{
+			ScalarType.writeVarInt(out, getEntryEnumIntegerValue(name));
+		}
+		else
+		{
+			out.write(name.getBytes(ScalarType.UTF8));
+		}
+	}
+
+	/**
+	 * Reads an entry written by writeBinary()
+	 * @param in
+	 * @param length Number of bytes in the value
+	 * @return The enumeration value
+	 */
+	public Object readBinary(DataInput in, int length) throws SIMPLTranslationException, IOException
+	{
+		Object value;
+		if(isCustomValued())
+		{
+			value = this.getEntryEnumFromValue(ScalarType.readVarInt(in));
+		}
+		else
+		{
+			value = this.getEntryEnumValue(ScalarType.readUTF8(in, length));
+		}
+
+		if(value == null)
+		{
+			throw new SIMPLTranslationException(new SimplIssue("No enumeration entry exists for binary value!", null, null));
+		}
+		return value;
 	}
 
 	@Override
@@ -4,6 +4,8 @@
 package ecologylab.serialization;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -29,6 +31,8 @@ import ecologylab.generic.StringBuilderBaseUtils;
 import ecologylab.generic.StringTools;
 import ecologylab.platformspecifics.FundamentalPlatformSpecifics;
 import ecologylab.serialization.MetaInformation.Argument;
+import ecologylab.serialization.accessors.FieldAccessor;
+import ecologylab.serialization.accessors.FieldAccessorFactory;
 import ecologylab.serialization.annotations.Hint;
 import ecologylab.serialization.annotations.simpl_classes;
 import ecologylab.serialization.annotations.simpl_collection;
@@ -50,6 +54,8 @@ import ecologylab.serialization.library.html.Div;
 import ecologylab.serialization.library.html.Input;
 import ecologylab.serialization.library.html.Td;
 import ecologylab.serialization.library.html.Tr;
+import ecologylab.serialization.serializers.stringformats.JSONFieldFragments;
+import ecologylab.serialization.serializers.stringformats.XMLFieldFragments;
 import ecologylab.serialization.simplstringformats.FormatRegistry;
 import ecologylab.serialization.types.CollectionType;
 import ecologylab.serialization.types.FundamentalTypes;
@@ -77,6 +83,12 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 	protected Field field;
 	// TODO
 
+	/**
+	 * Reads and writes the value of field. Built once, when the declaring ClassDescriptor derives
+	 * its fields.
+	 */
+	private FieldAccessor accessor;
+
 	/**
 	 * For nested elements, and collections or maps of nested elements. The class descriptor
 	 */
@@ -134,6 +146,20 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 	@simpl_map_key_field("tagName")
 	private HashMapArrayList<String, ClassDescriptor>	polymorphClassDescriptors;
 
+	/**
+	 * polymorphClassDescriptors, indexed for lookups by a run of chars. Built on first use, and
+	 * dropped whenever a class is registered. Both are done while holding this descriptor's lock,
+	 * and it is dropped after polymorphClassDescriptors is changed.
+	 */
+	private volatile TagIndex<ClassDescriptor>				polymorphTagIndex;
+
+	/**
+	 * Markup made from the tags of this field, by the first serialization that needs it.
+	 */
+	private volatile XMLFieldFragments								xmlFragments;
+
+	private volatile JSONFieldFragments								jsonFragments;
+
 	@simpl_map("polymorph_class")
 	private HashMap<String, Class>										polymorphClasses;
 
@@ -211,6 +237,11 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 	@simpl_scalar
 	private boolean	wrapped;
 
+	/**
+	 * Used for composite fields declared as a LazyComposite, which holds the composite object.
+	 */
+	private boolean	lazy;
+
 	private Method	setValueMethod;
 
 	private String	bibtexTag = "";
@@ -438,19 +469,24 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 			initPolymorphClassDescriptorsArrayList(1);
 
 		String classTag = classDescriptor.getTagName();
-		polymorphClassDescriptors.put(classTag, classDescriptor);
-		tlvClassDescriptors.put(classTag.hashCode(), classDescriptor);
+		synchronized (this)
+		{
+			polymorphClassDescriptors.put(classTag, classDescriptor);
+			tlvClassDescriptors.put(classTag.hashCode(), classDescriptor);
 
-		ArrayList<String> otherTags = classDescriptor.otherTags();
-		if (otherTags != null)
-			for (String otherTag : otherTags)
-			{
-				if ((otherTag != null) && (otherTag.length() > 0))
+			ArrayList<String> otherTags = classDescriptor.otherTags();
+			if (otherTags != null)
+				for (String otherTag : otherTags)
 				{
-					polymorphClassDescriptors.put(otherTag, classDescriptor);
-					tlvClassDescriptors.put(otherTag.hashCode(), classDescriptor);
+					if ((otherTag != null) && (otherTag.length() > 0))
+					{
+						polymorphClassDescriptors.put(otherTag, classDescriptor);
+						tlvClassDescriptors.put(otherTag.hashCode(), classDescriptor);
+					}
 				}
-			}
+			// only once the tags are in, so that no lookup caches an index without them
+			polymorphTagIndex = null;
+		}
 	}
 
 	/**
@@ -470,12 +506,16 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 			Collection<ClassDescriptor<? extends FieldDescriptor>> scopeClassDescriptors = scope
 					.getClassDescriptors();
 			initPolymorphClassDescriptorsArrayList(scopeClassDescriptors.size());
-			for (ClassDescriptor<? extends FieldDescriptor> classDescriptor : scopeClassDescriptors)
+			synchronized (this)
 			{
-				String tagName = classDescriptor.getTagName();
-				polymorphClassDescriptors.put(tagName, classDescriptor);
-				polymorphClasses.put(tagName, classDescriptor.getDescribedClass());
-				tlvClassDescriptors.put(tagName.hashCode(), classDescriptor);
+				for (ClassDescriptor<? extends FieldDescriptor> classDescriptor : scopeClassDescriptors)
+				{
+					String tagName = classDescriptor.getTagName();
+					polymorphClassDescriptors.put(tagName, classDescriptor);
+					polymorphClasses.put(tagName, classDescriptor.getDescribedClass());
+					tlvClassDescriptors.put(tagName.hashCode(), classDescriptor);
+				}
+				polymorphTagIndex = null;
 			}
 		}
 		else
@@ -706,6 +746,18 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		switch (annotationType)
 		{
 		case COMPOSITE_ELEMENT:
+			if (LazyComposite.class.isAssignableFrom(fieldClass))
+			{
+				lazy = true;
+				fieldClass = getTypeArgClass(field, 0);
+				if (fieldClass == null)
+				{
+					warning("In " + declaringClassDescriptor.getDescribedClass()
+							+ "\n\tCan't translate  @simpl_composite() " + field.getName()
+							+ " because the parameterized type argument for the LazyComposite is missing.");
+					return FieldType.IGNORED_ELEMENT;
+				}
+			}
 
 			String compositeTag = field.getAnnotation(simpl_composite.class).value();
 			Boolean isWrap = field.isAnnotationPresent(simpl_wrap.class);
@@ -950,6 +1002,25 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		return this.getType() == FieldType.COMPOSITE_ELEMENT;
 	}
 
+	/**
+	 * @return true for a composite field that holds its object in a LazyComposite.
+	 */
+	public boolean isLazy()
+	{
+		return lazy;
+	}
+
+	/**
+	 * @param context
+	 * @return The object in this composite field of context. For a lazy field, that is the object its
+	 *         LazyComposite holds, or null, if that has not been deserialized.
+	 */
+	public Object getCompositeValue(Object context)
+	{
+		Object value = getValue(context);
+		return lazy && value != null ? ((LazyComposite<?>) value).peek() : value;
+	}
+
 	public boolean isEnum()
 	{
 		return isEnum;
@@ -985,7 +1056,8 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		
 		if (context != null && isScalar())
 		{
-			result = scalarType.setField(context, field, valueString, null, scalarUnMarshallingContext);
+			result = scalarType.setField(context, getAccessor(), valueString, null,
+					scalarUnMarshallingContext);
 		}
 		
 		return result;
@@ -1011,29 +1083,19 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 	{
 		try
 		{
-			field.set(context, value);
+			getAccessor().set(context, value);
 		}
 		catch (IllegalArgumentException e)
 		{
 			e.printStackTrace();
 		}
-		catch (IllegalAccessException e)
-		{
-			try
-			{
-				field.setAccessible(true);
-				field.set(context, value);
-			}
-			catch(Exception ee)
-			{
-				ee.printStackTrace();
-			}
-		}
 	}
 	
 
 	public void setFieldToScalarDefault(Object context, ScalarUnmarshallingContext scalarContext)
 	{
+		if (this.type == FieldType.COLLECTION_SCALAR)
+			return;	// collections of scalars have no default to set
 		if(this.isScalar() && this.isEnum() == false)
 		{
 			if(this.scalarType == null)
@@ -1059,7 +1121,7 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		String result = NULL;
 		if (context != null && isScalar())
 		{
-			result = scalarType.toString(field, context);
+			result = scalarType.toString(getAccessor(), context);
 
 		}
 		return result;
@@ -1094,6 +1156,30 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		return field;
 	}
 
+	/**
+	 * @return The accessor used to get and set the value of the field, or null if this has no field.
+	 */
+	public FieldAccessor getAccessor()
+	{
+		FieldAccessor result = accessor;
+		if (result == null && field != null)
+		{
+			deriveAccessor();
+			result = accessor;
+		}
+		return result;
+	}
+
+	/**
+	 * Build the accessor for field. Called by the ClassDescriptor when it derives its fields, so that
+	 * the cost of building the accessor is paid up front, once per field.
+	 */
+	void deriveAccessor()
+	{
+		if (field != null)
+			accessor = FieldAccessorFactory.create(field);
+	}
+
 	/**
 	 * @return the class of the field
 	 */
@@ -1118,17 +1204,34 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 
 	public Object getNested(Object context)
 	{
-		return ReflectionTools.getFieldValue(context, field);
+		return getFieldValue(context);
 	}
 
 	public Map getMap(Object context)
 	{
-		return (Map) ReflectionTools.getFieldValue(context, field);
+		return (Map) getFieldValue(context);
 	}
 
 	public Collection getCollection(Object context)
 	{
-		return (Collection) ReflectionTools.getFieldValue(context, field);
+		return (Collection) getFieldValue(context);
+	}
+
+	/**
+	 * @return The value of the field in context, or ReflectionTools.BAD_ACCESS if it can't be
+	 *         accessed.
+	 */
+	private Object getFieldValue(Object context)
+	{
+		try
+		{
+			return getAccessor().get(context);
+		}
+		catch (IllegalArgumentException e)
+		{
+			e.printStackTrace();
+			return ReflectionTools.BAD_ACCESS;
+		}
 	}
 
 	public boolean isMixin()
@@ -1143,7 +1246,7 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		if (result == null)
 		{
 			result = ReflectionTools.getInstance(field.getType());
-			ReflectionTools.setFieldValue(context, field, result);
+			setField(context, result);
 		}
 		return result;
 	}
@@ -1169,7 +1272,7 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		{
 			if (context != null)
 			{
-				return scalarType.isDefaultValue(this.field, context);
+				return scalarType.isDefaultValue(getAccessor(), context);
 			}
 			return false;
 		}
@@ -1213,7 +1316,7 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 			FieldDescriptor navigatesFD, String schemaOrgItemProp) throws IllegalArgumentException,
 			IllegalAccessException, IOException
 	{
-		if (!scalarType.isDefaultValue(field, context))
+		if (!scalarType.isDefaultValue(getAccessor(), context))
 		{
 			Td labelTd = new Td();
 			Td valueTd = new Td();
@@ -1493,11 +1596,43 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 			}
 			else if (scalarType != null && !scalarType.isMarshallOnly())
 			{
-				scalarType.setField(context, field, value, format, scalarUnmarshallingContext);
+				scalarType.setField(context, getAccessor(), value, format, scalarUnmarshallingContext);
 			}
 		}
 	}
 
+	/**
+	 * Like setFieldToScalar(Object, String, ScalarUnmarshallingContext), for the chars between start
+	 * and end in value. When there is no filter, set method or enumeration in the way, and nothing to
+	 * unescape, the ScalarType reads the chars where they are, so numbers are set without making a
+	 * String.
+	 * 
+	 * @param context
+	 * @param value
+	 * @param start
+	 * @param end
+	 * @param scalarUnmarshallingContext
+	 */
+	public void setFieldToScalar(Object context, CharSequence value, int start, int end,
+			ScalarUnmarshallingContext scalarUnmarshallingContext)
+	{
+		if (filterRegex != null || isEnum || setValueMethod != null || scalarType == null
+				|| (!isCDATA && contains(value, start, end, '&')))
+			setFieldToScalar(context, value.subSequence(start, end).toString(),
+					scalarUnmarshallingContext);
+		else if (!scalarType.isMarshallOnly())
+			scalarType.setField(context, getAccessor(), value, start, end, format,
+					scalarUnmarshallingContext);
+	}
+
+	private static boolean contains(CharSequence value, int start, int end, char c)
+	{
+		for (int i = start; i < end; i++)
+			if (value.charAt(i) == c)
+				return true;
+		return false;
+	}
+
 	public void setRegexFilter(Pattern regex, int group, String replacement)
 	{
 		filterRegex = regex;
@@ -1655,11 +1790,12 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		Object collection = null;
 		try
 		{
-			collection = field.get(activeES);
+			FieldAccessor accessor = getAccessor();
+			collection = accessor.get(activeES);
 			if (collection == null)
 			{
 				collection = collectionType.getInstance();
-				field.set(activeES, collection);
+				accessor.set(activeES, collection);
 			}
 		}
 		catch (IllegalArgumentException e)
@@ -1669,13 +1805,6 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 			e.printStackTrace();
 			// return;
 		}
-		catch (IllegalAccessException e)
-		{
-			weird("Trying to addElementToCollection(). Can't access collection field " + field.getType()
-					+ " in " + activeES);
-			e.printStackTrace();
-			// return;
-		}
 		return collection;
 	}
 
@@ -1684,11 +1813,40 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		resolveUnresolvedClassesAnnotation();
 		resolveUnresolvedScopeAnnotation();
 		ClassDescriptor childClassDescriptor = !isPolymorphic() ? elementClassDescriptor
-				: polymorphClassDescriptors.get(tagName);
+				: polymorphTagIndex().get(tagName);
 
 		return childClassDescriptor;
 	}
 
+	/**
+	 * Like getChildClassDescriptor(String), for a tag held in text, from start to end, without
+	 * making a String of it.
+	 */
+	public ClassDescriptor getChildClassDescriptor(CharSequence text, int start, int end)
+	{
+		resolveUnresolvedClassesAnnotation();
+		resolveUnresolvedScopeAnnotation();
+		return !isPolymorphic() ? elementClassDescriptor : polymorphTagIndex().get(text, start, end);
+	}
+
+	private TagIndex<ClassDescriptor> polymorphTagIndex()
+	{
+		TagIndex<ClassDescriptor> index = polymorphTagIndex;
+		if (index == null)
+		{
+			synchronized (this)
+			{
+				index = polymorphTagIndex;
+				if (index == null)
+				{
+					index = TagIndex.of(polymorphClassDescriptors);
+					polymorphTagIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
 	public ClassDescriptor getChildClassDescriptor(int tlvId)
 	{
 		ClassDescriptor childClassDescriptor = !isPolymorphic() ? elementClassDescriptor
@@ -1725,7 +1883,7 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 	{
 		try
 		{
-			field.set(context, nestedObject);
+			getAccessor().set(context, nestedObject);
 		}
 		catch (Exception e)
 		{
@@ -1767,6 +1925,30 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		return isCollection() ? collectionOrMapTagName : isNested() ? compositeTagName : tagName;
 	}
 
+	/**
+	 * @return The tags and attribute name of this field, ready to be written as XML. They are made
+	 *         again if the tags of this have changed since they were last made.
+	 */
+	public XMLFieldFragments getXMLFragments()
+	{
+		XMLFieldFragments result = xmlFragments;
+		if (result == null || !result.describes(this))
+			xmlFragments = result = new XMLFieldFragments(this);
+		return result;
+	}
+
+	/**
+	 * @return The keys of this field, ready to be written as JSON. They are made again if the tags of
+	 *         this have changed since they were last made.
+	 */
+	public JSONFieldFragments getJSONFragments()
+	{
+		JSONFieldFragments result = jsonFragments;
+		if (result == null || !result.describes(this))
+			jsonFragments = result = new JSONFieldFragments(this);
+		return result;
+	}
+
 	/**
 	 * Most fields derive their tag from Field name for marshaling. However, some, such as those
 	 * annotated with @xml_class, @xml_classes, @xml_scope, derive their tag from the class of an
@@ -2174,27 +2356,7 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 
 	public Object getValue(Object context)
 	{
-		Object resultObject = null;
-		Field childField = this.getField();
-		try
-		{
-			resultObject = childField.get(context);
-		}
-		catch (IllegalAccessException e)
-		{
-			debugA("WARNING re-trying access! " + e.getStackTrace()[0]);
-			childField.setAccessible(true);
-			try
-			{
-				resultObject = childField.get(this);
-			}
-			catch (IllegalAccessException e1)
-			{
-				error("Can't access " + childField.getName());
-				e1.printStackTrace();
-			}
-		}
-		return resultObject;
+		return getAccessor().get(context);
 	}
 
 	public void appendValue(Appendable appendable, Object object,
@@ -2239,6 +2401,141 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		}
 	}
 
+	/**
+	 * Write the value of this scalar field, in context, in the native binary form used by
+	 * BinaryFormat.TLV2. Fields with a set method take their value as a String, so they are written
+	 * as text.
+	 * 
+	 * @param out
+	 * @param context
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 */
+	public void writeBinaryValue(DataOutput out, Object context,
+			TranslationContext translationContext) throws SIMPLTranslationException
+	{
+		try
+		{
+			if (this.isEnum)
+			{
+				EnumerationDescriptor ed = this.getEnumerationDescriptor();
+				if (ed == null)
+				{
+					throw new RuntimeException("Null enumerator descriptor; add rehydration code.");
+				}
+				ed.writeBinary(this.getValue(context), out);
+			}
+			else if (setValueMethod != null)
+			{
+				StringBuilder buffy = new StringBuilder();
+				appendValue(buffy, context, translationContext, Format.TLV);
+				out.write(buffy.toString().getBytes(ScalarType.UTF8));
+			}
+			else
+			{
+				scalarType.writeBinary(out, getAccessor(), context, translationContext);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new SIMPLTranslationException("writeBinaryValue exception. ", e);
+		}
+	}
+
+	/**
+	 * Write one element of this scalar collection in the native binary form used by
+	 * BinaryFormat.TLV2.
+	 * 
+	 * @param out
+	 * @param value
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 */
+	public void writeBinaryCollectionScalarValue(DataOutput out, Object value,
+			TranslationContext translationContext) throws SIMPLTranslationException
+	{
+		try
+		{
+			ScalarType scalarType = this.scalarType;
+			scalarType.writeBinary(value, out, translationContext);
+		}
+		catch (IOException e)
+		{
+			throw new SIMPLTranslationException("writeBinaryValue exception. ", e);
+		}
+	}
+
+	/**
+	 * Read a value written by writeBinaryValue(), and set our field in the context to it. Exactly
+	 * length bytes are consumed from in.
+	 * 
+	 * @param context
+	 * @param in
+	 * @param length
+	 * @param scalarUnmarshallingContext
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	public void setFieldFromBinary(Object context, DataInput in, int length,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws SIMPLTranslationException,
+			IOException
+	{
+		if (this.isEnum)
+		{
+			this.setField(context, this.getEnumerationDescriptor().readBinary(in, length));
+		}
+		else if (setValueMethod != null)
+		{
+			setFieldToScalar(context, ScalarType.readUTF8(in, length), scalarUnmarshallingContext);
+		}
+		else if (scalarType != null && !scalarType.isMarshallOnly())
+		{
+			scalarType.setFieldFromBinary(context, getAccessor(), in, length, format,
+					scalarUnmarshallingContext);
+		}
+		else
+		{
+			in.readFully(new byte[length]);
+		}
+	}
+
+	/**
+	 * Read a value written by writeBinaryCollectionScalarValue(), and add it to our collection in
+	 * the context. Exactly length bytes are consumed from in.
+	 * 
+	 * @param context
+	 * @param in
+	 * @param length
+	 * @param scalarUnmarshallingContext
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	public void addBinaryLeafToCollection(Object context, DataInput in, int length,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws SIMPLTranslationException,
+			IOException
+	{
+		if (scalarType == null)
+		{
+			in.readFully(new byte[length]);
+			reportFieldTypeError("binary value");
+			return;
+		}
+		Object typeConvertedValue = scalarType.readBinary(in, length, format,
+				scalarUnmarshallingContext);
+		if (typeConvertedValue != null)
+		{
+			try
+			{
+				Collection<Object> collection = (Collection<Object>) automaticLazyGetCollectionOrMap(context);
+				collection.add(typeConvertedValue);
+			}
+			catch (Exception e)
+			{
+				throw fieldAccessException(typeConvertedValue, e);
+			}
+		}
+	}
+
 	public boolean isBibtexKey()
 	{
 		return isBibtexKey;
@@ -2248,10 +2545,30 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 	{
 		resolveUnresolvedClassesAnnotation();
 		resolveUnresolvedScopeAnnotation();
-		return isPolymorphic() ? polymorphClassDescriptors.containsKey(tagName)
+		return isPolymorphic() ? polymorphTagIndex().get(tagName) != null
 				: collectionOrMapTagName.equals(tagName);
 	}
 
+	/**
+	 * Like isCollectionTag(String), for a tag held in text, from start to end, without making a
+	 * String of it.
+	 */
+	public boolean isCollectionTag(CharSequence text, int start, int end)
+	{
+		resolveUnresolvedClassesAnnotation();
+		resolveUnresolvedScopeAnnotation();
+		if (isPolymorphic())
+			return polymorphTagIndex().get(text, start, end) != null;
+		String tag = collectionOrMapTagName;
+		int length = end - start;
+		if (tag == null || tag.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (tag.charAt(i) != text.charAt(start + i))
+				return false;
+		return true;
+	}
+
 	/**
 	 * make a SHALLOW copy of this descriptor.
 	 */
@@ -2263,6 +2580,7 @@ public class FieldDescriptor extends DescriptorBase implements IMappable<String>
 		{
 			cloned = (FieldDescriptor) super.clone();
 			cloned.clonedFrom = this;
+			cloned.polymorphTagIndex = null;
 		}
 		catch (CloneNotSupportedException e)
 		{
@@ -0,0 +1,89 @@
+package ecologylab.serialization;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * The fields to deserialize, out of a document, given as paths of field names from the root. The
+ * deserializers skip the rest, without making objects for them, or setting them.
+ * <p/>
+ * Each path is a list of field names separated by '.', like those of deserializeStreaming(), e.g.
+ * "channel.items.title". Its last field is deserialized whole. The fields before it may be
+ * composite, collection or map fields; of those, only the fields on some path are deserialized.
+ * So, with just "channel.items.title", each item of the channel only gets its title.
+ * <p/>
+ * Skipped objects can't be referred to by simpl:ref, so projecting graphs leaves those references
+ * null.
+ * <p/>
+ * FieldProjections are immutable, and so can be shared between threads.
+ */
+public final class FieldProjection
+{
+	/**
+	 * The projections of the fields of the objects this applies to, by field name; or null, if all
+	 * of their fields are deserialized.
+	 */
+	private final HashMap<String, FieldProjection>	fields;
+
+	private FieldProjection(HashMap<String, FieldProjection> fields)
+	{
+		this.fields = fields;
+	}
+
+	/**
+	 * @param fieldPaths
+	 *          e.g. "channel.title", "channel.items.link".
+	 */
+	public static FieldProjection of(String... fieldPaths)
+	{
+		return of(Arrays.asList(fieldPaths));
+	}
+
+	public static FieldProjection of(Collection<String> fieldPaths)
+	{
+		FieldProjection root = new FieldProjection(new HashMap<String, FieldProjection>());
+		for (String fieldPath : fieldPaths)
+			root.add(fieldPath.split("\\."), 0);
+		return root;
+	}
+
+	private void add(String[] fieldNames, int index)
+	{
+		if (fields == null)
+			return;
+		String fieldName = fieldNames[index];
+		boolean last = index == fieldNames.length - 1;
+		FieldProjection projection = fields.get(fieldName);
+		if (projection == null || (last && projection.fields != null))
+		{
+			projection = new FieldProjection(last ? null : new HashMap<String, FieldProjection>());
+			fields.put(fieldName, projection);
+		}
+		if (!last)
+			projection.add(fieldNames, index + 1);
+	}
+
+	/**
+	 * @param fieldName
+	 * @return The projection of the objects in field fieldName, or null if it is not deserialized.
+	 */
+	public FieldProjection get(String fieldName)
+	{
+		return fields == null ? this : fields.get(fieldName);
+	}
+
+	/**
+	 * @return true if every field of the objects this applies to is deserialized.
+	 */
+	public boolean isWhole()
+	{
+		return fields == null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return fields == null ? "*" : fields.toString();
+	}
+}
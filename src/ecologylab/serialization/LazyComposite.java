@@ -0,0 +1,159 @@
+package ecologylab.serialization;
+
+import ecologylab.serialization.deserializers.pullhandlers.PullDeserializer;
+import ecologylab.serialization.formatenums.Format;
+
+/**
+ * Holds the object in a composite field that is deserialized only when it is first asked for.
+ * Declare the field as a LazyComposite of its class, with @simpl_composite as usual:
+ *
+ * <pre>
+ * &#064;simpl_composite
+ * LazyComposite&lt;Payload&gt; payload;
+ * </pre>
+ *
+ * While the document is read, the field's element (its XML, its JSON, or its TLV block) is passed
+ * over, and kept as it was. get() deserializes it. Until then, serializing the object, in the same
+ * format, copies the kept element out as it came in, so relaying a message whose bulk nobody looks
+ * at costs little more than reading and writing its bytes. Serializing in another format, like
+ * set(), deserializes it first.
+ * <p/>
+ * XML is only kept this way by parsers that can skip elements, such as SimplXMLParser, and JSON,
+ * when it is read from a CharSequence. Otherwise, the object is deserialized along with the rest of
+ * the document, and held here.
+ * <p/>
+ * The kept element is deserialized by itself, so simpl:refs in it, to objects outside of it, are
+ * left null, and a DeserializationHookStrategy is not called for its objects.
+ *
+ * @param <T>
+ *          the class of the object in the field.
+ */
+public class LazyComposite<T>
+{
+	private T									value;
+
+	/**
+	 * The element, as it was read: a CharSequence for XML and JSON, or a byte[] for TLV. null once it
+	 * is deserialized.
+	 */
+	private Object						raw;
+
+	private Format						format;
+
+	private FieldDescriptor		fieldDescriptor;
+
+	private SimplTypesScope		translationScope;
+
+	private Object						parent;
+
+	public LazyComposite()
+	{
+	}
+
+	public LazyComposite(T value)
+	{
+		this.value = value;
+	}
+
+	/**
+	 * Called by deserializers, to keep the element of a lazy field as it was read.
+	 *
+	 * @param format
+	 *          that raw is in.
+	 * @param raw
+	 *          the field's element, tag and all: a CharSequence for XML and JSON, or a byte[] for TLV.
+	 * @param fieldDescriptor
+	 *          of the lazy field.
+	 * @param translationScope
+	 *          to deserialize raw with.
+	 * @param parent
+	 *          the object whose field this is.
+	 */
+	public LazyComposite(Format format, Object raw, FieldDescriptor fieldDescriptor,
+			SimplTypesScope translationScope, Object parent)
+	{
+		this.format = format;
+		this.raw = raw;
+		this.fieldDescriptor = fieldDescriptor;
+		this.translationScope = translationScope;
+		this.parent = parent;
+	}
+
+	/**
+	 * @return The object in the field, deserializing it first, if it was kept as it was read.
+	 * @throws SIMPLTranslationException
+	 *           if the kept element can't be deserialized.
+	 */
+	public synchronized T get() throws SIMPLTranslationException
+	{
+		if (raw != null)
+		{
+			PullDeserializer deserializer = PullDeserializer.getDeserializer(translationScope,
+					new TranslationContext(), format);
+			value = (T) deserializer.parseLazy(raw, fieldDescriptor, parent);
+			drop();
+		}
+		return value;
+	}
+
+	/**
+	 * Replace the object in the field, and drop the kept element, if any.
+	 *
+	 * @param value
+	 */
+	public synchronized void set(T value)
+	{
+		this.value = value;
+		drop();
+	}
+
+	/**
+	 * @return true if there is no element kept to be deserialized.
+	 */
+	public synchronized boolean isDeserialized()
+	{
+		return raw == null;
+	}
+
+	/**
+	 * @return The object in the field, if it is deserialized; otherwise null. Never deserializes.
+	 */
+	public synchronized T peek()
+	{
+		return value;
+	}
+
+	/**
+	 * @return true if the field holds nothing: no object, and no element to deserialize.
+	 */
+	public synchronized boolean isEmpty()
+	{
+		return raw == null && value == null;
+	}
+
+	/**
+	 * @param format
+	 * @return The element, as it was read, if it is still kept, and was read in format; otherwise
+	 *         null. It is a CharSequence for XML and JSON, and a byte[] for TLV, and must not be
+	 *         modified.
+	 */
+	public synchronized Object getRaw(Format format)
+	{
+		return format == this.format ? raw : null;
+	}
+
+	private void drop()
+	{
+		raw = null;
+		format = null;
+		fieldDescriptor = null;
+		translationScope = null;
+		parent = null;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "LazyComposite[" + (raw != null ? format + " not deserialized" : value) + "]";
+	}
+}
@@ -3,6 +3,7 @@
  */
 package ecologylab.serialization;
 
+import java.util.BitSet;
 import java.util.Vector;
 
 import ecologylab.serialization.annotations.simpl_inherit;
@@ -18,6 +19,24 @@ public class ObservableElementState<P extends ElementState> extends ElementState
 	private boolean changed = false;
 	private Vector<ElementObserver> obs;
 
+	/**
+	 * The fields that fieldChanged() has been called for, since the last takeDelta(),
+	 * by their index in the ClassDescriptor. null until there is one.
+	 */
+	private BitSet changedFields;
+
+	/**
+	 * How many deltas have been taken, on the side that sends them, or the version of
+	 * the last delta applied, on the side that receives them.
+	 */
+	private long version;
+
+	/**
+	 * How many times setChanged() has been called, so that cached serialized forms of
+	 * this object can tell that they are out of date.
+	 */
+	private long modificationStamp;
+
 	/** Construct an Observable with zero Observers. */
 
 	public ObservableElementState() {
@@ -127,6 +146,15 @@ public class ObservableElementState<P extends ElementState> extends ElementState
 	 */
 	protected synchronized void setChanged() {
 		changed = true;
+		modificationStamp++;
+	}
+
+	/**
+	 * @return  a number that setChanged() advances, such as SerializationCache keys
+	 *          entries with.
+	 */
+	public synchronized long getModificationStamp() {
+		return modificationStamp;
 	}
 
 	/**
@@ -157,6 +185,71 @@ public class ObservableElementState<P extends ElementState> extends ElementState
 		return changed;
 	}
 
+	/**
+	 * Records that a field has been changed, so that the next delta carries it, and
+	 * marks this object as changed. Setters call it, after setting the field.
+	 *
+	 * @param fieldName  the name of the field, as declared.
+	 * @throws IllegalArgumentException  if this class has no such serialized field.
+	 */
+	protected synchronized void fieldChanged(String fieldName) {
+		int index = classDescriptor().getFieldIndex(fieldName);
+		if (index < 0)
+			throw new IllegalArgumentException("No serialized field " + fieldName + " in " + getClass());
+		if (changedFields == null)
+			changedFields = new BitSet();
+		changedFields.set(index);
+		setChanged();
+	}
+
+	/**
+	 * @return  <code>true</code> if fieldChanged() has been called for fieldName since
+	 *          the last takeDelta().
+	 */
+	public synchronized boolean isFieldChanged(String fieldName) {
+		int index = classDescriptor().getFieldIndex(fieldName);
+		return changedFields != null && index >= 0 && changedFields.get(index);
+	}
+
+	/**
+	 * @return  the version of this object, as ElementStateDelta counts them.
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	synchronized void setVersion(long version) {
+		this.version = version;
+	}
+
+	/**
+	 * Takes the fields changed since the last call, as a delta from this object's
+	 * version to the next one, and moves to the next version. Send the delta to the
+	 * replicas of this object, which apply it with ElementStateDelta.applyTo(). A replica
+	 * that has missed a delta rejects the rest, and needs a snapshot().
+	 *
+	 * @return  the delta, which may have no fields.
+	 * @throws SIMPLTranslationException  if the class can't be instantiated.
+	 */
+	public synchronized ElementStateDelta takeDelta() throws SIMPLTranslationException {
+		ElementStateDelta delta = new ElementStateDelta(this, changedFields, version, version + 1);
+		version++;
+		if (changedFields != null)
+			changedFields.clear();
+		return delta;
+	}
+
+	/**
+	 * @return  a delta with every field, which brings any replica to this version.
+	 *          The changed fields are left for the next takeDelta().
+	 * @throws SIMPLTranslationException  if the class can't be instantiated.
+	 */
+	public synchronized ElementStateDelta snapshot() throws SIMPLTranslationException {
+		BitSet allFields = new BitSet();
+		allFields.set(0, classDescriptor().getFieldDescriptorsByFieldName().size());
+		return new ElementStateDelta(this, allFields, ElementStateDelta.ANY_VERSION, version);
+	}
+
 	/**
 	 * Returns the number of observers of this <tt>Observable</tt> object.
 	 *
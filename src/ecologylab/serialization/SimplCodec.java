@@ -0,0 +1,239 @@
+package ecologylab.serialization;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import ecologylab.serialization.deserializers.pullhandlers.PullDeserializer;
+import ecologylab.serialization.deserializers.pullhandlers.binaryformats.BinaryPullDeserializer;
+import ecologylab.serialization.deserializers.pullhandlers.stringformats.StringPullDeserializer;
+import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.serializers.FormatSerializer;
+import ecologylab.serialization.serializers.stringformats.StringSerializer;
+
+/**
+ * Encoder and decoder for one SimplTypesScope and one Format. Get one from
+ * SimplTypesScope.codec(Format), hold on to it, and use it from any thread.
+ * <p/>
+ * The serializer is shared. Each thread gets its own PullDeserializer, which is reset and reused
+ * for every document that thread decodes, so small, frequent messages don't pay for constructing a
+ * deserializer and its parser each time. TranslationContexts come from the TranslationContextPool,
+ * unless one is passed in.
+ */
+public class SimplCodec
+{
+	private final SimplTypesScope									simplTypesScope;
+
+	private final Format													format;
+
+	private final FormatSerializer								serializer;
+
+	/**
+	 * The idle deserializer for each thread. It is taken out while in use, so that a hook that
+	 * decodes another document on the same thread gets a fresh one.
+	 */
+	private final ThreadLocal<PullDeserializer>	deserializers	= new ThreadLocal<PullDeserializer>();
+
+	SimplCodec(SimplTypesScope simplTypesScope, Format format) throws SIMPLTranslationException
+	{
+		this.simplTypesScope = simplTypesScope;
+		this.format = format;
+		this.serializer = FormatSerializer.getSerializer(format);
+	}
+
+	public SimplTypesScope getSimplTypesScope()
+	{
+		return simplTypesScope;
+	}
+
+	public Format getFormat()
+	{
+		return format;
+	}
+
+	public void serialize(Object object, OutputStream outputStream)
+			throws SIMPLTranslationException
+	{
+		serializer.serialize(object, outputStream);
+	}
+
+	public void serialize(Object object, OutputStream outputStream,
+			TranslationContext translationContext) throws SIMPLTranslationException
+	{
+		serializer.serialize(object, outputStream, translationContext);
+	}
+
+	/**
+	 * @param object
+	 * @return object, serialized to a new StringBuilder.
+	 * @throws SIMPLTranslationException
+	 *           if this codec's format is not a string format.
+	 */
+	public StringBuilder serialize(Object object) throws SIMPLTranslationException
+	{
+		return stringSerializer().serialize(object);
+	}
+
+	public void serialize(Object object, Appendable appendable) throws SIMPLTranslationException
+	{
+		TranslationContext translationContext = TranslationContextPool.get().acquire();
+		try
+		{
+			serialize(object, appendable, translationContext);
+		}
+		finally
+		{
+			TranslationContextPool.get().release(translationContext);
+		}
+	}
+
+	public void serialize(Object object, Appendable appendable,
+			TranslationContext translationContext) throws SIMPLTranslationException
+	{
+		stringSerializer().serialize(object, appendable, translationContext);
+	}
+
+	public Object deserialize(InputStream inputStream) throws SIMPLTranslationException
+	{
+		return deserialize(inputStream, null, null, null);
+	}
+
+	/**
+	 *
+	 * @param inputStream
+	 * @param charSet
+	 *          may be null, to use the format's default.
+	 * @param translationContext
+	 *          may be null, to use one from the TranslationContextPool.
+	 * @param deserializationHookStrategy
+	 *          may be null.
+	 * @return The root of the deserialized object graph.
+	 * @throws SIMPLTranslationException
+	 */
+	public Object deserialize(InputStream inputStream, Charset charSet,
+			TranslationContext translationContext,
+			DeserializationHookStrategy deserializationHookStrategy) throws SIMPLTranslationException
+	{
+		boolean pooledContext = translationContext == null;
+		if (pooledContext)
+			translationContext = TranslationContextPool.get().acquire();
+		PullDeserializer deserializer = acquireDeserializer(translationContext,
+				deserializationHookStrategy);
+		try
+		{
+			return charSet == null ? deserializer.parse(inputStream) : deserializer.parse(inputStream,
+					charSet);
+		}
+		finally
+		{
+			releaseDeserializer(deserializer);
+			if (pooledContext)
+				TranslationContextPool.get().release(translationContext);
+		}
+	}
+
+	public Object deserialize(CharSequence charSequence) throws SIMPLTranslationException
+	{
+		return deserialize(charSequence, null, null);
+	}
+
+	/**
+	 *
+	 * @param charSequence
+	 * @param translationContext
+	 *          may be null, to use one from the TranslationContextPool.
+	 * @param deserializationHookStrategy
+	 *          may be null.
+	 * @return The root of the deserialized object graph.
+	 * @throws SIMPLTranslationException
+	 *           if this codec's format is not a string format.
+	 */
+	public Object deserialize(CharSequence charSequence, TranslationContext translationContext,
+			DeserializationHookStrategy deserializationHookStrategy) throws SIMPLTranslationException
+	{
+		boolean pooledContext = translationContext == null;
+		if (pooledContext)
+			translationContext = TranslationContextPool.get().acquire();
+		PullDeserializer deserializer = acquireDeserializer(translationContext,
+				deserializationHookStrategy);
+		try
+		{
+			if (!(deserializer instanceof StringPullDeserializer))
+				throw new SIMPLTranslationException(format + " is not a string format");
+			return ((StringPullDeserializer) deserializer).parse(charSequence);
+		}
+		finally
+		{
+			releaseDeserializer(deserializer);
+			if (pooledContext)
+				TranslationContextPool.get().release(translationContext);
+		}
+	}
+
+	public Object deserialize(byte[] byteArray) throws SIMPLTranslationException
+	{
+		return deserialize(byteArray, null, null);
+	}
+
+	/**
+	 *
+	 * @param byteArray
+	 * @param translationContext
+	 *          may be null, to use one from the TranslationContextPool.
+	 * @param deserializationHookStrategy
+	 *          may be null.
+	 * @return The root of the deserialized object graph.
+	 * @throws SIMPLTranslationException
+	 *           if this codec's format is not a binary format.
+	 */
+	public Object deserialize(byte[] byteArray, TranslationContext translationContext,
+			DeserializationHookStrategy deserializationHookStrategy) throws SIMPLTranslationException
+	{
+		boolean pooledContext = translationContext == null;
+		if (pooledContext)
+			translationContext = TranslationContextPool.get().acquire();
+		PullDeserializer deserializer = acquireDeserializer(translationContext,
+				deserializationHookStrategy);
+		try
+		{
+			if (!(deserializer instanceof BinaryPullDeserializer))
+				throw new SIMPLTranslationException(format + " is not a binary format");
+			return ((BinaryPullDeserializer) deserializer).parse(byteArray);
+		}
+		finally
+		{
+			releaseDeserializer(deserializer);
+			if (pooledContext)
+				TranslationContextPool.get().release(translationContext);
+		}
+	}
+
+	private StringSerializer stringSerializer() throws SIMPLTranslationException
+	{
+		if (!(serializer instanceof StringSerializer))
+			throw new SIMPLTranslationException(format + " is not a string format");
+		return (StringSerializer) serializer;
+	}
+
+	private PullDeserializer acquireDeserializer(TranslationContext translationContext,
+			DeserializationHookStrategy deserializationHookStrategy) throws SIMPLTranslationException
+	{
+		PullDeserializer deserializer = deserializers.get();
+		if (deserializer == null)
+			return PullDeserializer.getDeserializer(simplTypesScope, translationContext,
+					deserializationHookStrategy, format);
+		deserializers.set(null);
+		deserializer.reset(translationContext, deserializationHookStrategy);
+		return deserializer;
+	}
+
+	/**
+	 * Put deserializer back for the next document on this thread, without holding on to the last
+	 * document's context and hooks.
+	 */
+	private void releaseDeserializer(PullDeserializer deserializer)
+	{
+		deserializer.reset(null, null);
+		deserializers.set(deserializer);
+	}
+}
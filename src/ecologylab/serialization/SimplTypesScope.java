@@ -11,7 +11,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import ecologylab.collections.Scope;
 import ecologylab.generic.HashMapArrayList;
@@ -21,7 +28,7 @@ import ecologylab.serialization.annotations.simpl_nowrap;
 import ecologylab.serialization.annotations.simpl_scalar;
 import ecologylab.serialization.annotations.simpl_tag;
 import ecologylab.serialization.deserializers.pullhandlers.PullDeserializer;
-import ecologylab.serialization.deserializers.pullhandlers.binaryformats.BinaryPullDeserializer;
+import ecologylab.serialization.deserializers.pullhandlers.stringformats.ParallelCollectionDeserializer;
 import ecologylab.serialization.deserializers.pullhandlers.stringformats.StringPullDeserializer;
 import ecologylab.serialization.formatenums.BinaryFormat;
 import ecologylab.serialization.formatenums.Format;
@@ -69,6 +76,13 @@ public final class SimplTypesScope extends ElementState
 	@simpl_map("class_descriptor")
 	private Scope<ClassDescriptor<? extends FieldDescriptor>> entriesByTag = new Scope<ClassDescriptor<? extends FieldDescriptor>>();
 
+	/**
+	 * entriesByTag, indexed for lookups by a run of chars. Built on first use, and dropped whenever
+	 * a translation is added or removed. Both are done while holding entriesByTag's lock, and it is
+	 * dropped after entriesByTag is changed, so an index built meanwhile never outlives the change.
+	 */
+	private volatile TagIndex<ClassDescriptor<? extends FieldDescriptor>> entriesByTagIndex;
+
 	private HashMap<Integer, ClassDescriptor<? extends FieldDescriptor>> entriesByTLVId = new HashMap<Integer, ClassDescriptor<? extends FieldDescriptor>>();
 
 	private Scope<ClassDescriptor<? extends FieldDescriptor>> entriesByBibTeXType = new Scope<ClassDescriptor<? extends FieldDescriptor>>();
@@ -89,6 +103,8 @@ public final class SimplTypesScope extends ElementState
 
 	private static HashMap<String, SimplTypesScope> allTypesScopes = new HashMap<String, SimplTypesScope>();
 
+	private final ConcurrentHashMap<Format, SimplCodec> codecs = new ConcurrentHashMap<Format, SimplCodec>();
+
 	/**
 	 * SimplTypesScope has some global static "AllTypesScopes" scopes which can
 	 *  interfere with idempotent execution of tests.
@@ -474,7 +490,11 @@ public final class SimplTypesScope extends ElementState
 					entriesByClassSimpleName, "classSimpleName");
 			updateMapWithValues(inheritedTypesScope.entriesByClassName, entriesByClassName,
 					"className");
-			updateMapWithValues(inheritedTypesScope.entriesByTag, entriesByTag, "tagName");
+			synchronized (entriesByTag)
+			{
+				updateMapWithValues(inheritedTypesScope.entriesByTag, entriesByTag, "tagName");
+				entriesByTagIndex = null;
+			}
 
 			HashMap<String, Class<?>> inheritedNameSpaceClassesByURN = inheritedTypesScope.nameSpaceClassesByURN;
 			if (inheritedNameSpaceClassesByURN != null)
@@ -592,24 +612,29 @@ public final class SimplTypesScope extends ElementState
 			ClassDescriptor entry = ClassDescriptor.getClassDescriptor(classObj);
 			String tagName = entry.getTagName();
 	
-			entriesByTag.put(entry.getTagName(), entry);
-			entriesByClassSimpleName.put(entry.getDescribedClassSimpleName(), entry);
-			entriesByClassName.put(classObj.getName(), entry);
+			synchronized (entriesByTag)
+			{
+				entriesByTag.put(entry.getTagName(), entry);
+				entriesByClassSimpleName.put(entry.getDescribedClassSimpleName(), entry);
+				entriesByClassName.put(classObj.getName(), entry);
 	
-			entriesByTLVId.put(entry.getTagName().hashCode(), entry);
-			entriesByBibTeXType.put(entry.getBibtexType(), entry);
+				entriesByTLVId.put(entry.getTagName().hashCode(), entry);
+				entriesByBibTeXType.put(entry.getBibtexType(), entry);
 	
-			ArrayList<String> otherTags = entry.otherTags();
-			if (otherTags != null)
-			{
-				for (String otherTag : otherTags)
+				ArrayList<String> otherTags = entry.otherTags();
+				if (otherTags != null)
 				{
-					if ((otherTag != null) && (otherTag.length() > 0))
+					for (String otherTag : otherTags)
 					{
-						entriesByTag.put(otherTag, entry);
-						entriesByTLVId.put(otherTag.hashCode(), entry);
+						if ((otherTag != null) && (otherTag.length() > 0))
+						{
+							entriesByTag.put(otherTag, entry);
+							entriesByTLVId.put(otherTag.hashCode(), entry);
+						}
 					}
 				}
+				// only once the tags are in, so that no lookup caches an index without them
+				entriesByTagIndex = null;
 			}
 		}
 	}
@@ -664,24 +689,28 @@ public final class SimplTypesScope extends ElementState
 	
 	private void removeTranslation(ClassDescriptor<?> entry, String className)
 	{
-		entriesByTag.remove(entry.getTagName());
-		entriesByClassSimpleName.remove(entry.getDescribedClassSimpleName());
-		entriesByClassName.remove(className);
+		synchronized (entriesByTag)
+		{
+			entriesByTag.remove(entry.getTagName());
+			entriesByClassSimpleName.remove(entry.getDescribedClassSimpleName());
+			entriesByClassName.remove(className);
 
-		entriesByTLVId.remove(entry.getTagName().hashCode());
-		entriesByBibTeXType.remove(entry.getBibtexType());
+			entriesByTLVId.remove(entry.getTagName().hashCode());
+			entriesByBibTeXType.remove(entry.getBibtexType());
 
-		ArrayList<String> otherTags = entry.otherTags();
-		if (otherTags != null)
-		{
-			for (String otherTag : otherTags)
+			ArrayList<String> otherTags = entry.otherTags();
+			if (otherTags != null)
 			{
-				if ((otherTag != null) && (otherTag.length() > 0))
+				for (String otherTag : otherTags)
 				{
-					entriesByTag.remove(otherTag);
-					entriesByTLVId.remove(otherTag.hashCode());
+					if ((otherTag != null) && (otherTag.length() > 0))
+					{
+						entriesByTag.remove(otherTag);
+						entriesByTLVId.remove(otherTag.hashCode());
+					}
 				}
 			}
+			entriesByTagIndex = null;
 		}
 	}
 	
@@ -699,23 +728,27 @@ public final class SimplTypesScope extends ElementState
 		ClassDescriptor entry = classObj;
 		String tagName = entry.getTagName();
 
-		entriesByTag.put(entry.getTagName(), entry);
-		entriesByClassSimpleName.put(entry.getDescribedClassSimpleName(), entry);
-		entriesByClassName.put(classObj.getName(), entry);
+		synchronized (entriesByTag)
+		{
+			entriesByTag.put(entry.getTagName(), entry);
+			entriesByClassSimpleName.put(entry.getDescribedClassSimpleName(), entry);
+			entriesByClassName.put(classObj.getName(), entry);
 
-		entriesByTLVId.put(entry.getTagName().hashCode(), entry);
-		entriesByBibTeXType.put(entry.getBibtexType(), entry);
+			entriesByTLVId.put(entry.getTagName().hashCode(), entry);
+			entriesByBibTeXType.put(entry.getBibtexType(), entry);
 
-		ArrayList<String> otherTags = entry.otherTags();
-		if (otherTags != null)
-			for (String otherTag : otherTags)
-			{
-				if ((otherTag != null) && (otherTag.length() > 0))
+			ArrayList<String> otherTags = entry.otherTags();
+			if (otherTags != null)
+				for (String otherTag : otherTags)
 				{
-					entriesByTag.put(otherTag, entry);
-					entriesByTLVId.put(otherTag.hashCode(), entry);
+					if ((otherTag != null) && (otherTag.length() > 0))
+					{
+						entriesByTag.put(otherTag, entry);
+						entriesByTLVId.put(otherTag.hashCode(), entry);
+					}
 				}
-			}
+			entriesByTagIndex = null;
+		}
 	}
 
 	/**
@@ -761,7 +794,35 @@ public final class SimplTypesScope extends ElementState
 
 	public ClassDescriptor<? extends FieldDescriptor> getClassDescriptorByTag(String tag)
 	{
-		return entriesByTag.get(tag);
+		return entriesByTagIndex().get(tag);
+	}
+
+	/**
+	 * Like getClassDescriptorByTag(String), for a tag held in text, from start to end, without making
+	 * a String of it.
+	 */
+	public ClassDescriptor<? extends FieldDescriptor> getClassDescriptorByTag(CharSequence text,
+			int start, int end)
+	{
+		return entriesByTagIndex().get(text, start, end);
+	}
+
+	private TagIndex<ClassDescriptor<? extends FieldDescriptor>> entriesByTagIndex()
+	{
+		TagIndex<ClassDescriptor<? extends FieldDescriptor>> index = entriesByTagIndex;
+		if (index == null)
+		{
+			synchronized (entriesByTag)
+			{
+				index = entriesByTagIndex;
+				if (index == null)
+				{
+					index = TagIndex.of(entriesByTag);
+					entriesByTagIndex = index;
+				}
+			}
+		}
+		return index;
 	}
 	
 	public ClassDescriptor<? extends FieldDescriptor> getClassDescriptorByTlvId(int id)
@@ -1214,6 +1275,83 @@ public final class SimplTypesScope extends ElementState
 		return result;
 	}
 
+	/**
+	 * Eagerly do the work that is otherwise done the first time each class in this is serialized or
+	 * deserialized: derive the ClassDescriptors of the classes in this, and of all of the classes
+	 * that their fields refer to, resolve polymorphic annotations, and form pseudo FieldDescriptors.
+	 * <p/>
+	 * Call this at startup, so that the first requests don't pay for that work, and don't wait for
+	 * one another while it is done.
+	 */
+	public void prewarm()
+	{
+		prewarm(null);
+	}
+
+	/**
+	 * Like prewarm(), but warms the ClassDescriptors in parallel, using executor. Blocks until they
+	 * are all done. The caller owns executor, and is responsible for shutting it down.
+	 * <p/>
+	 * New ClassDescriptors are still derived one at a time, so this helps most with scopes whose
+	 * classes have many polymorphic fields to resolve.
+	 * 
+	 * @param executor
+	 *          Runs the work, or null to do it all on the calling thread.
+	 */
+	public void prewarm(ExecutorService executor)
+	{
+		HashSet<ClassDescriptor<? extends FieldDescriptor>> prewarmed = new HashSet<ClassDescriptor<? extends FieldDescriptor>>();
+		Collection<ClassDescriptor<? extends FieldDescriptor>> toPrewarm = new ArrayList<ClassDescriptor<? extends FieldDescriptor>>(
+				entriesByClassName.values());
+		while (!toPrewarm.isEmpty())
+		{
+			ArrayList<ClassDescriptor<? extends FieldDescriptor>> referredTo = new ArrayList<ClassDescriptor<? extends FieldDescriptor>>();
+			if (executor == null)
+			{
+				for (ClassDescriptor<? extends FieldDescriptor> classDescriptor : toPrewarm)
+					if (prewarmed.add(classDescriptor))
+						referredTo.addAll(classDescriptor.prewarm());
+			}
+			else
+			{
+				ArrayList<Callable<Collection<ClassDescriptor<? extends FieldDescriptor>>>> tasks = new ArrayList<Callable<Collection<ClassDescriptor<? extends FieldDescriptor>>>>();
+				for (final ClassDescriptor<? extends FieldDescriptor> classDescriptor : toPrewarm)
+					if (prewarmed.add(classDescriptor))
+						tasks.add(new Callable<Collection<ClassDescriptor<? extends FieldDescriptor>>>()
+						{
+							@Override
+							public Collection<ClassDescriptor<? extends FieldDescriptor>> call()
+							{
+								return classDescriptor.prewarm();
+							}
+						});
+				try
+				{
+					List<Future<Collection<ClassDescriptor<? extends FieldDescriptor>>>> results = executor
+							.invokeAll(tasks);
+					for (Future<Collection<ClassDescriptor<? extends FieldDescriptor>>> result : results)
+						referredTo.addAll(result.get());
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new RuntimeException(cause);
+				}
+			}
+			referredTo.removeAll(prewarmed);
+			toPrewarm = referredTo;
+		}
+	}
+
 	/**
 	 * Get the Scalar Type corresponding to the Class.
 	 * 
@@ -1375,16 +1513,8 @@ public Object deserialize(InputStream inputStream, TranslationContext translatio
 		DeserializationHookStrategy deserializationHookStrategy, Format format, Charset charSet)
 		throws SIMPLTranslationException
 {
-	PullDeserializer pullDeserializer = PullDeserializer.getDeserializer(this, translationContext,
-			deserializationHookStrategy, format);
-	if(charSet != null)
-	{
-		return pullDeserializer.parse(inputStream, charSet);
-	}
-	else
-	{
-		return pullDeserializer.parse(inputStream);
-	}
+	return codec(format).deserialize(inputStream, charSet, translationContext,
+			deserializationHookStrategy);
 }
 
 	public Object deserialize(URL url, Format format) throws SIMPLTranslationException
@@ -1398,9 +1528,8 @@ public Object deserialize(InputStream inputStream, TranslationContext translatio
 			DeserializationHookStrategy deserializationHookStrategy, StringFormat stringFormat)
 			throws SIMPLTranslationException
 	{
-		StringPullDeserializer pullDeserializer = PullDeserializer.getStringDeserializer(this,
-				translationContext, deserializationHookStrategy, stringFormat);
-		return pullDeserializer.parse(charSequence);
+		return codec(stringFormat).deserialize(charSequence, translationContext,
+				deserializationHookStrategy);
 	}
 
 	public Object deserialize(CharSequence charSequence,
@@ -1408,9 +1537,8 @@ public Object deserialize(InputStream inputStream, TranslationContext translatio
 			throws SIMPLTranslationException
 	{
 		TranslationContext translationContext = new TranslationContext();
-		StringPullDeserializer pullDeserializer = PullDeserializer.getStringDeserializer(this,
-				translationContext, deserializationHookStrategy, stringFormat);
-		return pullDeserializer.parse(charSequence);
+		return deserialize(charSequence, translationContext, deserializationHookStrategy,
+				stringFormat);
 	}
 
 	public Object deserialize(CharSequence charSequence, TranslationContext translationContext,
@@ -1431,9 +1559,160 @@ public Object deserialize(InputStream inputStream, TranslationContext translatio
 			DeserializationHookStrategy deserializationHookStrategy, BinaryFormat binaryFormat)
 			throws SIMPLTranslationException
 	{
-		BinaryPullDeserializer binaryPullDeserializer = PullDeserializer.getBinaryDeserializer(this,
-				translationContext, deserializationHookStrategy, binaryFormat);
-		return binaryPullDeserializer.parse(byteArray);
+		return codec(binaryFormat).deserialize(byteArray, translationContext,
+				deserializationHookStrategy);
+	}
+
+	/**
+	 * Deserialize a document whose bulk is one big collection, handing each element of that
+	 * collection to handler as soon as it is built, instead of adding it to the collection. Memory
+	 * use stays bounded by the size of one element, however long the collection is.
+	 * <p/>
+	 * Elements referred to elsewhere in the document, by simpl:ref, are still kept by the
+	 * TranslationContext, so this only saves memory for documents that are not graphs.
+	 *
+	 * @param inputStream
+	 * @param format
+	 * @param fieldPath
+	 *          Names of the fields leading from the root to the collection, separated by '.', e.g.
+	 *          "channel.items". The last one is the collection field.
+	 * @param handler
+	 * @return The root, with the streamed collection left empty; or null, if handler stopped
+	 *         deserialization early, by returning false.
+	 * @throws SIMPLTranslationException
+	 */
+	public Object deserializeStreaming(InputStream inputStream, Format format, String fieldPath,
+			CollectionElementHandler<?> handler) throws SIMPLTranslationException
+	{
+		PullDeserializer pullDeserializer = PullDeserializer.getDeserializer(this,
+				new TranslationContext(), format);
+		pullDeserializer.setStreamedCollection(fieldPath.split("\\."), handler);
+		try
+		{
+			return pullDeserializer.parse(inputStream);
+		}
+		catch (SIMPLTranslationException e)
+		{
+			if (pullDeserializer.isStreamStopped())
+				return null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Deserialize charSequence, handing each element of the collection at fieldPath to handler, as
+	 * deserializeStreaming(InputStream, Format, String, CollectionElementHandler) does.
+	 */
+	public Object deserializeStreaming(CharSequence charSequence, StringFormat stringFormat,
+			String fieldPath, CollectionElementHandler<?> handler) throws SIMPLTranslationException
+	{
+		StringPullDeserializer pullDeserializer = PullDeserializer.getStringDeserializer(this,
+				new TranslationContext(), stringFormat);
+		pullDeserializer.setStreamedCollection(fieldPath.split("\\."), handler);
+		try
+		{
+			return pullDeserializer.parse(charSequence);
+		}
+		catch (SIMPLTranslationException e)
+		{
+			if (pullDeserializer.isStreamStopped())
+				return null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Deserialize only the fields of the document that projection selects. The others are skipped
+	 * without making objects for them, and keep their default values.
+	 *
+	 * @param inputStream
+	 * @param format
+	 * @param projection
+	 *          e.g. FieldProjection.of("channel.title", "channel.items.title")
+	 * @return The root, with only the projected fields set.
+	 * @throws SIMPLTranslationException
+	 */
+	public Object deserialize(InputStream inputStream, Format format, FieldProjection projection)
+			throws SIMPLTranslationException
+	{
+		PullDeserializer pullDeserializer = PullDeserializer.getDeserializer(this,
+				new TranslationContext(), format);
+		pullDeserializer.setProjection(projection);
+		return pullDeserializer.parse(inputStream);
+	}
+
+	/**
+	 * Deserialize only the fields of charSequence that projection selects, as
+	 * deserialize(InputStream, Format, FieldProjection) does.
+	 */
+	public Object deserialize(CharSequence charSequence, StringFormat stringFormat,
+			FieldProjection projection) throws SIMPLTranslationException
+	{
+		StringPullDeserializer pullDeserializer = PullDeserializer.getStringDeserializer(this,
+				new TranslationContext(), stringFormat);
+		pullDeserializer.setProjection(projection);
+		return pullDeserializer.parse(charSequence);
+	}
+
+	/**
+	 * Deserialize a document whose bulk is one collection field of the root, building the elements
+	 * of that collection on a ForkJoinPool, which makes large documents deserialize faster on
+	 * multiprocessors. Documents that may have simpl:ref cross-references are deserialized as usual.
+	 * See ParallelCollectionDeserializer.
+	 *
+	 * @param charSequence
+	 * @param stringFormat
+	 *          XML or JSON.
+	 * @param collectionFieldName
+	 *          name of a collection field of the root, whose elements are composites.
+	 * @param pool
+	 *          may be null, to use a shared pool with a thread per processor.
+	 * @return The root of the deserialized object graph.
+	 * @throws SIMPLTranslationException
+	 */
+	public Object deserializeParallel(CharSequence charSequence, StringFormat stringFormat,
+			String collectionFieldName, ForkJoinPool pool) throws SIMPLTranslationException
+	{
+		return new ParallelCollectionDeserializer(this, stringFormat, pool).deserialize(charSequence,
+				collectionFieldName);
+	}
+
+	public Object deserializeParallel(CharSequence charSequence, StringFormat stringFormat,
+			String collectionFieldName) throws SIMPLTranslationException
+	{
+		return deserializeParallel(charSequence, stringFormat, collectionFieldName, null);
+	}
+
+	/**
+	 * Get the encoder and decoder for this scope and format. It is created once, and then shared, so
+	 * callers can hold on to it, or just call this each time.
+	 * 
+	 * @param format
+	 * @return The SimplCodec for format.
+	 * @throws SIMPLTranslationException
+	 *           if format is not supported.
+	 */
+	public SimplCodec codec(Format format) throws SIMPLTranslationException
+	{
+		SimplCodec result = codecs.get(format);
+		if (result == null)
+		{
+			result = new SimplCodec(this, format);
+			SimplCodec existing = codecs.putIfAbsent(format, result);
+			if (existing != null)
+				result = existing;
+		}
+		return result;
+	}
+
+	public SimplCodec codec(StringFormat stringFormat) throws SIMPLTranslationException
+	{
+		return codec(Format.valueOf(stringFormat.name()));
+	}
+
+	public SimplCodec codec(BinaryFormat binaryFormat) throws SIMPLTranslationException
+	{
+		return codec(Format.valueOf(binaryFormat.name()));
 	}
 
 	public static SimplTypesScope getBasicTranslations()
@@ -1489,8 +1768,9 @@ public Object deserialize(InputStream inputStream, TranslationContext translatio
 			{
 				if (fieldDescriptor.isNested())
 				{
-					augmentSimplTypesScope(fieldDescriptor.getFieldType().asSubclass(ElementState.class),
-							augmentedClasses);
+					Class<?> compositeClass = fieldDescriptor.isLazy() ? fieldDescriptor
+							.getElementClassDescriptor().getDescribedClass() : fieldDescriptor.getFieldType();
+					augmentSimplTypesScope(compositeClass.asSubclass(ElementState.class), augmentedClasses);
 				}
 				else
 				{
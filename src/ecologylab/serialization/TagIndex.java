@@ -0,0 +1,192 @@
+package ecologylab.serialization;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * An immutable map from tags to descriptors, that can be queried with a String, or with a run of
+ * chars in a buffer, without making a String of it.
+ * <p/>
+ * Tags are hashed like String.hashCode(), so lookups with a String use its cached hash. The table
+ * is built once, from a snapshot of the map it indexes: if a multiplier can be found that gives
+ * every tag its own slot, a lookup takes a single comparison; otherwise it falls back to linear
+ * probing. Descriptors whose maps change drop their TagIndex, and build a new one on the next
+ * lookup.
+ */
+final class TagIndex<V>
+{
+	private static final int	MULTIPLIER				= 0x9e3779b9;
+
+	/**
+	 * How many table sizes, starting at twice the number of tags, to try to find a perfect hash for.
+	 */
+	private static final int	PERFECT_SIZES			= 3;
+
+	private static final int	PERFECT_ATTEMPTS	= 32;
+
+	private final String[]		keys;
+
+	private final int[]				hashes;
+
+	private final Object[]		values;
+
+	private final int					multiplier;
+
+	private final int					shift;
+
+	private final boolean			perfect;
+
+	private TagIndex(int size, int multiplier, boolean perfect)
+	{
+		this.keys = new String[size];
+		this.hashes = new int[size];
+		this.values = new Object[size];
+		this.multiplier = multiplier;
+		this.shift = 32 - Integer.numberOfTrailingZeros(size);
+		this.perfect = perfect;
+	}
+
+	static <V> TagIndex<V> of(Map<String, ? extends V> map)
+	{
+		String[] tags = new String[map.size()];
+		int count = 0;
+		for (String tag : map.keySet())
+			if (tag != null)
+				tags[count++] = tag;
+		tags = Arrays.copyOf(tags, count);
+		int minSize = Math.max(2, Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1);
+
+		int multiplier = MULTIPLIER;
+		for (int size = minSize, sizes = 0; sizes < PERFECT_SIZES; size <<= 1, sizes++)
+		{
+			int shift = 32 - Integer.numberOfTrailingZeros(size);
+			boolean[] used = new boolean[size];
+			for (int attempt = 0; attempt < PERFECT_ATTEMPTS; attempt++)
+			{
+				if (isPerfect(tags, multiplier, shift, used))
+					return fill(new TagIndex<V>(size, multiplier, true), map);
+				multiplier = multiplier * 0x5deece6d + 0x2f | 1;
+			}
+		}
+		return fill(new TagIndex<V>(minSize, MULTIPLIER, false), map);
+	}
+
+	private static boolean isPerfect(String[] tags, int multiplier, int shift, boolean[] used)
+	{
+		Arrays.fill(used, false);
+		for (String tag : tags)
+		{
+			int slot = (tag.hashCode() * multiplier) >>> shift;
+			if (used[slot])
+				return false;
+			used[slot] = true;
+		}
+		return true;
+	}
+
+	private static <V> TagIndex<V> fill(TagIndex<V> index, Map<String, ? extends V> map)
+	{
+		int mask = index.keys.length - 1;
+		for (Map.Entry<String, ? extends V> entry : map.entrySet())
+		{
+			String tag = entry.getKey();
+			if (tag == null)
+				continue;
+			int hash = tag.hashCode();
+			int slot = index.slot(hash);
+			while (index.keys[slot] != null)
+				slot = (slot + 1) & mask;
+			index.keys[slot] = tag;
+			index.hashes[slot] = hash;
+			index.values[slot] = entry.getValue();
+		}
+		return index;
+	}
+
+	private int slot(int hash)
+	{
+		return (hash * multiplier) >>> shift;
+	}
+
+	V get(String tag)
+	{
+		if (tag == null)
+			return null;
+		int hash = tag.hashCode();
+		int mask = keys.length - 1;
+		for (int slot = slot(hash);; slot = (slot + 1) & mask)
+		{
+			String key = keys[slot];
+			if (key == null)
+				return null;
+			if (hashes[slot] == hash && (key == tag || key.equals(tag)))
+				return value(slot);
+			if (perfect)
+				return null;
+		}
+	}
+
+	V get(CharSequence tag, int start, int end)
+	{
+		int hash = 0;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + tag.charAt(i);
+		int length = end - start;
+		int mask = keys.length - 1;
+		for (int slot = slot(hash);; slot = (slot + 1) & mask)
+		{
+			String key = keys[slot];
+			if (key == null)
+				return null;
+			if (hashes[slot] == hash && key.length() == length && matches(key, tag, start))
+				return value(slot);
+			if (perfect)
+				return null;
+		}
+	}
+
+	V get(char[] chars, int offset, int length)
+	{
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++)
+			hash = 31 * hash + chars[i];
+		int mask = keys.length - 1;
+		for (int slot = slot(hash);; slot = (slot + 1) & mask)
+		{
+			String key = keys[slot];
+			if (key == null)
+				return null;
+			if (hashes[slot] == hash && key.length() == length && matches(key, chars, offset))
+				return value(slot);
+			if (perfect)
+				return null;
+		}
+	}
+
+	private static boolean matches(String key, CharSequence tag, int start)
+	{
+		for (int i = 0; i < key.length(); i++)
+			if (key.charAt(i) != tag.charAt(start + i))
+				return false;
+		return true;
+	}
+
+	private static boolean matches(String key, char[] chars, int offset)
+	{
+		for (int i = 0; i < key.length(); i++)
+			if (key.charAt(i) != chars[offset + i])
+				return false;
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V value(int slot)
+	{
+		return (V) values[slot];
+	}
+
+	boolean isPerfect()
+	{
+		return perfect;
+	}
+}
@@ -1,12 +1,11 @@
 package ecologylab.serialization;
 
 import java.io.File;
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 
-import ecologylab.collections.MultiMap;
+import ecologylab.collections.IdentityIntMap;
 import ecologylab.generic.Debug;
 import ecologylab.net.ParsedURL;
 import ecologylab.serialization.SimplTypesScope.GRAPH_SWITCH;
@@ -35,11 +34,27 @@ public class TranslationContext extends Debug implements ScalarUnmarshallingCont
 
 	public static final String				JSON_SIMPL_REF	= "simpl.ref";
 
-	private MultiMap<Integer, Object>	marshalledObjects;
+	/**
+	 * Low bit of the values in graphObjects: set once the object has been serialized.
+	 */
+	private static final int					MARSHALLED			= 1;
 
-	private MultiMap<Integer, Object>	visitedElements;
+	/**
+	 * Objects reached while resolving the graph, and while serializing, compared by identity. The
+	 * value for each is its simpl:id shifted left one, or just 0 if it is not shared, with the
+	 * MARSHALLED bit.
+	 */
+	private IdentityIntMap						graphObjects;
 
-	private MultiMap<Integer, Object>	needsAttributeHashCode;
+	/**
+	 * Work stack for resolveGraph(), kept between uses.
+	 */
+	private ArrayList<Object>					graphStack;
+
+	/**
+	 * The number of objects that have been given a simpl:id. Ids are assigned in order, from 1.
+	 */
+	private int												sharedObjectCount;
 
 	private HashMap<String, Object>		unmarshalledObjects;
 
@@ -90,9 +105,8 @@ public class TranslationContext extends Debug implements ScalarUnmarshallingCont
 
 	public void initializeMultiMaps()
 	{
-		marshalledObjects = new MultiMap<Integer, Object>();
-		visitedElements = new MultiMap<Integer, Object>();
-		needsAttributeHashCode = new MultiMap<Integer, Object>();
+		graphObjects = new IdentityIntMap();
+		graphStack = new ArrayList<Object>();
 		unmarshalledObjects = new HashMap<String, Object>();
 	}
 
@@ -108,130 +122,87 @@ public class TranslationContext extends Debug implements ScalarUnmarshallingCont
 		this.unmarshalledObjects.put(value, elementState);
 	}
 
-	public void resolveGraph(Object object)
-	{
-		if (visitedElements == null)
-			initializeMultiMaps();
-
-		resolveGraphRecursvie(object);
-	}
-
 	/**
+	 * When SimplTypesScope.graphSwitch is ON, walk the composites reachable from object, and give a
+	 * simpl:id to each one that is reached more than once, so serializers know which objects to
+	 * label before they get to the references.
+	 * <p/>
+	 * Objects are compared by identity; their hashCode() and equals() are not called. The walk uses
+	 * an explicit stack, so deep graphs don't overflow the thread's stack.
 	 * 
-	 * @param elementState
+	 * @param object
 	 */
-	public void resolveGraphRecursvie(Object elementState)
+	public void resolveGraph(Object object)
 	{
-		if (SimplTypesScope.graphSwitch == GRAPH_SWITCH.ON)
-		{
-			// this.visitedElements.put(System.identityHashCode(elementState), elementState);
-			this.visitedElements.put(elementState.hashCode(), elementState);
+		if (SimplTypesScope.graphSwitch != GRAPH_SWITCH.ON)
+			return;
+		if (graphObjects == null)
+			initializeMultiMaps();
 
-			ClassDescriptor.getClassDescriptor(elementState);
+		ArrayList<Object> stack = graphStack;
+		visit(object, stack);
+		while (!stack.isEmpty())
+		{
+			Object elementState = stack.remove(stack.size() - 1);
 
 			ArrayList<? extends FieldDescriptor> elementFieldDescriptors = ClassDescriptor
 					.getClassDescriptor(elementState).elementFieldDescriptors();
 
 			for (FieldDescriptor elementFieldDescriptor : elementFieldDescriptors)
 			{
-				Object thatReferenceObject = null;
-				Field childField = elementFieldDescriptor.getField();
-				try
-				{
-					thatReferenceObject = childField.get(elementState);
-				}
-				catch (IllegalAccessException e)
-				{
-					debugA("WARNING re-trying access! " + e.getStackTrace()[0]);
-					childField.setAccessible(true);
-					try
-					{
-						thatReferenceObject = childField.get(elementState);
-					}
-					catch (IllegalAccessException e1)
-					{
-						error("Can't access " + childField.getName());
-						e1.printStackTrace();
-					}
-				}
-				catch (Exception e)
-				{
-					System.out.println(e);
-				}
-				// ignore null reference objects
-				if (thatReferenceObject == null)
-					continue;
-				
-				FieldType childFdType = elementFieldDescriptor.getType();
-
-				Collection thatCollection;
-				switch (childFdType)
+				switch (elementFieldDescriptor.getType())
 				{
+				case COMPOSITE_ELEMENT:
+					Object compositeElement = elementFieldDescriptor.getCompositeValue(elementState);
+					if (compositeElement != null)
+						visit(compositeElement, stack);
+					break;
 				case COLLECTION_ELEMENT:
-				case COLLECTION_SCALAR:
 				case MAP_ELEMENT:
-				case MAP_SCALAR:
-					thatCollection = XMLTools.getCollection(thatReferenceObject);
+					Collection<?> thatCollection = XMLTools.getCollection(elementFieldDescriptor
+							.getValue(elementState));
+					if (thatCollection != null)
+						for (Object next : thatCollection)
+							if (next != null)
+								visit(next, stack);
 					break;
 				default:
-					thatCollection = null;
 					break;
 				}
-
-				if (thatCollection != null && (thatCollection.size() > 0))
-				{
-					for (Object next : thatCollection)
-					{
-						if (next instanceof Object)
-						{
-							Object compositeElement = next;
-							
-							if (this.alreadyVisited(compositeElement))
-							{
-								// this.needsAttributeHashCode.put(System.identityHashCode(compositeElement),
-								// compositeElement);
-								this.needsAttributeHashCode.put(compositeElement.hashCode(), compositeElement);
-							}
-							else
-							{
-								this.resolveGraph(compositeElement);
-							}
-						}
-					}
-				}
-				else if (thatReferenceObject instanceof Object)
-				{
-					Object compositeElement = thatReferenceObject;
-
-					if (this.alreadyVisited(compositeElement))
-					{
-						// this.needsAttributeHashCode.put(System.identityHashCode(compositeElement),
-						// compositeElement);
-						this.needsAttributeHashCode.put(compositeElement.hashCode(), compositeElement);
-					}
-					else
-					{
-						resolveGraph(compositeElement);
-					}
-				}
 			}
 		}
 	}
 
+	/**
+	 * The first time object is reached, push it, to walk its fields. The second time, give it a
+	 * simpl:id.
+	 */
+	private void visit(Object object, ArrayList<Object> stack)
+	{
+		int state = graphObjects.get(object, -1);
+		if (state == -1)
+		{
+			graphObjects.put(object, 0);
+			stack.add(object);
+		}
+		else if (state >>> 1 == 0)
+		{
+			graphObjects.put(object, (++sharedObjectCount << 1) | state);
+		}
+	}
+
 	/**
 	 * 
 	 * @param elementState
-	 * @return
+	 * @return true if elementState was reached by resolveGraph().
 	 */
 	public boolean alreadyVisited(Object elementState)
 	{
-		if (unmarshalledObjects == null)
-			initializeMultiMaps();
-
-		return this.visitedElements.contains(elementState.hashCode(), elementState) != -1;
+		return graphObjects != null && graphObjects.containsKey(elementState);
 	}
 
 	/**
+	 * Record that object has been serialized, so later references to it are written as simpl:ref.
 	 * 
 	 * @param object
 	 */
@@ -240,7 +211,11 @@ public class TranslationContext extends Debug implements ScalarUnmarshallingCont
 		if (SimplTypesScope.graphSwitch == GRAPH_SWITCH.ON)
 		{
 			if (object != null)
-				this.marshalledObjects.put(object.hashCode(), object);
+			{
+				if (graphObjects == null)
+					initializeMultiMaps();
+				graphObjects.put(object, graphObjects.get(object, 0) | MARSHALLED);
+			}
 		}
 	}
 
@@ -251,29 +226,29 @@ public class TranslationContext extends Debug implements ScalarUnmarshallingCont
 	 */
 	public boolean alreadyMarshalled(Object compositeObject)
 	{
-		if (compositeObject == null)
+		if (compositeObject == null || graphObjects == null)
 			return false;
 
-		return this.marshalledObjects.contains(compositeObject.hashCode(), compositeObject) != -1;
+		return (graphObjects.get(compositeObject, 0) & MARSHALLED) != 0;
 	}
 
 	/**
 	 * 
 	 * @param elementState
-	 * @return
+	 * @return true if elementState is shared, so it needs a simpl:id.
 	 */
 	public boolean needsHashCode(Object elementState)
 	{
-		return this.needsAttributeHashCode.contains(elementState.hashCode(), elementState) != -1;
+		return graphObjects != null && graphObjects.get(elementState, 0) >>> 1 != 0;
 	}
 
 	/**
 	 * 
-	 * @return
+	 * @return true if any object is shared.
 	 */
 	public boolean isGraph()
 	{
-		return this.needsAttributeHashCode.size() > 0;
+		return sharedObjectCount > 0;
 	}
 
 	/**
@@ -299,13 +274,27 @@ public class TranslationContext extends Debug implements ScalarUnmarshallingCont
 
 	public String getSimplId(Object object)
 	{
-		Integer objectHashCode = object.hashCode();
-		Integer orderedIndex = marshalledObjects.contains(objectHashCode, object);
+		return Integer.toString(getSimplIdNumber(object));
+	}
 
-		if (orderedIndex > 0)
-			return objectHashCode.toString() + "," + orderedIndex.toString();
-		else
-			return objectHashCode.toString();
+	/**
+	 * 
+	 * @param object
+	 * @return The simpl:id of object, which is assigned now, if resolveGraph() did not find it
+	 *         shared.
+	 */
+	public int getSimplIdNumber(Object object)
+	{
+		if (graphObjects == null)
+			initializeMultiMaps();
+		int state = graphObjects.get(object, 0);
+		int id = state >>> 1;
+		if (id == 0)
+		{
+			id = ++sharedObjectCount;
+			graphObjects.put(object, (id << 1) | (state & MARSHALLED));
+		}
+		return id;
 	}
 
 	/**
@@ -328,14 +317,13 @@ public class TranslationContext extends Debug implements ScalarUnmarshallingCont
 
 	void clean()
 	{
-		if (marshalledObjects != null)
-			marshalledObjects.clear();
-		if (visitedElements != null)
-			visitedElements.clear();
-		if (needsAttributeHashCode != null)
-			needsAttributeHashCode.clear();
-		if (needsAttributeHashCode != null)
+		if (graphObjects != null)
+			graphObjects.clear();
+		if (graphStack != null)
+			graphStack.clear();
+		if (unmarshalledObjects != null)
 			unmarshalledObjects.clear();
+		sharedObjectCount = 0;
 
 		baseDirPurl = null;
 		baseDirFile = null;
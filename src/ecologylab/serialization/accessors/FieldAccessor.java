@@ -0,0 +1,138 @@
+package ecologylab.serialization.accessors;
+
+import java.lang.reflect.Field;
+
+/**
+ * Reads and writes the value of one Field, in objects of the class that declares it. An accessor is
+ * built once per FieldDescriptor, when the ClassDescriptor derives its fields, and is then used for
+ * every value that is serialized or deserialized through that field.
+ * <p/>
+ * The typed methods, such as getInt() and setInt(), let primitive ScalarTypes move values in and
+ * out of fields without boxing them. Calling a typed method on a field of another type, such as a
+ * boxed Integer, falls back to get() or set(), and unboxes or boxes the value.
+ * <p/>
+ * Accessors are immutable, and so can be shared between threads.
+ * <p/>
+ * Get instances from FieldAccessorFactory.
+ */
+public abstract class FieldAccessor
+{
+	protected final Field	field;
+
+	protected FieldAccessor(Field field)
+	{
+		this.field = field;
+	}
+
+	/**
+	 * @return The Field that this reads and writes.
+	 */
+	public Field getField()
+	{
+		return field;
+	}
+
+	/**
+	 * Get the value of the field in object. Primitive values are boxed.
+	 *
+	 * @param object
+	 * @return
+	 */
+	public abstract Object get(Object object);
+
+	/**
+	 * Set the field in object to value. Boxed values are unboxed for primitive fields.
+	 *
+	 * @param object
+	 * @param value
+	 * @throws IllegalArgumentException
+	 *           if value cannot be assigned to the field.
+	 */
+	public abstract void set(Object object, Object value);
+
+	public int getInt(Object object)
+	{
+		return (Integer) get(object);
+	}
+
+	public void setInt(Object object, int value)
+	{
+		set(object, value);
+	}
+
+	public long getLong(Object object)
+	{
+		return (Long) get(object);
+	}
+
+	public void setLong(Object object, long value)
+	{
+		set(object, value);
+	}
+
+	public float getFloat(Object object)
+	{
+		return (Float) get(object);
+	}
+
+	public void setFloat(Object object, float value)
+	{
+		set(object, value);
+	}
+
+	public double getDouble(Object object)
+	{
+		return (Double) get(object);
+	}
+
+	public void setDouble(Object object, double value)
+	{
+		set(object, value);
+	}
+
+	public boolean getBoolean(Object object)
+	{
+		return (Boolean) get(object);
+	}
+
+	public void setBoolean(Object object, boolean value)
+	{
+		set(object, value);
+	}
+
+	public short getShort(Object object)
+	{
+		return (Short) get(object);
+	}
+
+	public void setShort(Object object, short value)
+	{
+		set(object, value);
+	}
+
+	public byte getByte(Object object)
+	{
+		return (Byte) get(object);
+	}
+
+	public void setByte(Object object, byte value)
+	{
+		set(object, value);
+	}
+
+	public char getChar(Object object)
+	{
+		return (Character) get(object);
+	}
+
+	public void setChar(Object object, char value)
+	{
+		set(object, value);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + "[" + field + "]";
+	}
+}
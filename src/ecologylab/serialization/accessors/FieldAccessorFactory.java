@@ -0,0 +1,141 @@
+package ecologylab.serialization.accessors;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import ecologylab.generic.Debug;
+
+/**
+ * Builds the FieldAccessor for a field, using the fastest strategy that works for it. If the
+ * preferred strategy can't be used for a field, or on this platform, falls back to the next one,
+ * ending with reflection, which always works.
+ * <p/>
+ * The strategy can be chosen with the system property {@value #STRATEGY_PROPERTY}, set to one of
+ * unsafe, generated, method_handle, or reflection. The default is method_handle. Unsafe, which goes
+ * through sun.misc.Unsafe, must be asked for. Generated accessors are only there if the field's
+ * class was built with SimplProcessor; see GeneratedAccessors.
+ */
+public class FieldAccessorFactory
+{
+	public static final String	STRATEGY_PROPERTY	= "ecologylab.serialization.fieldAccessor";
+
+	public enum Strategy
+	{
+		UNSAFE, GENERATED, METHOD_HANDLE, REFLECTION
+	}
+
+	private static Strategy	strategy	= initialStrategy();
+
+	public static Strategy getStrategy()
+	{
+		return strategy;
+	}
+
+	/**
+	 * Change the strategy used for accessors built from here on. Accessors that have already been
+	 * built, by ClassDescriptors that have already been derived, are not affected.
+	 *
+	 * @param newStrategy
+	 */
+	public static void setStrategy(Strategy newStrategy)
+	{
+		strategy = newStrategy;
+	}
+
+	/**
+	 * Build a FieldAccessor for field, with the current strategy, or a slower one if that can't be
+	 * used for this field.
+	 *
+	 * @param field
+	 * @return
+	 */
+	@SuppressWarnings("fallthrough")
+	public static FieldAccessor create(Field field)
+	{
+		boolean isStatic = Modifier.isStatic(field.getModifiers());
+		switch (strategy)
+		{
+		case UNSAFE:
+			if (!isStatic && unsafeAvailable())
+			{
+				try
+				{
+					return new UnsafeFieldAccessor(field);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// volatile field: try a generated accessor
+				}
+			}
+		case GENERATED:
+			if (!isStatic)
+			{
+				GeneratedAccessors generatedAccessors = GeneratedAccessors.forClass(field
+						.getDeclaringClass());
+				if (generatedAccessors != null)
+				{
+					FieldAccessor accessor = generatedAccessors.getAccessor(field);
+					if (accessor != null)
+						return accessor;
+				}
+			}
+		case METHOD_HANDLE:
+			if (!isStatic)
+			{
+				try
+				{
+					return new MethodHandleFieldAccessor(field);
+				}
+				catch (IllegalAccessException e)
+				{
+					// final field: MethodHandles won't set it
+				}
+				catch (LinkageError e)
+				{
+					// no java.lang.invoke on this platform
+				}
+			}
+		case REFLECTION:
+		default:
+			return new ReflectionFieldAccessor(field);
+		}
+	}
+
+	private static Boolean	unsafeAvailable;
+
+	private static boolean unsafeAvailable()
+	{
+		Boolean result = unsafeAvailable;
+		if (result == null)
+		{
+			try
+			{
+				result = UnsafeFieldAccessor.isAvailable();
+			}
+			catch (LinkageError e)
+			{
+				result = false;
+			}
+			unsafeAvailable = result;
+		}
+		return result;
+	}
+
+	private static Strategy initialStrategy()
+	{
+		String value = System.getProperty(STRATEGY_PROPERTY);
+		if (value != null)
+		{
+			try
+			{
+				return Strategy.valueOf(value.trim().toUpperCase());
+			}
+			catch (IllegalArgumentException e)
+			{
+				Debug.warning(FieldAccessorFactory.class, "Unknown " + STRATEGY_PROPERTY + "=" + value
+						+ "; using " + Strategy.METHOD_HANDLE);
+			}
+		}
+		return Strategy.METHOD_HANDLE;
+	}
+}
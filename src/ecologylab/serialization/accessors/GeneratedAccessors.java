@@ -0,0 +1,172 @@
+package ecologylab.serialization.accessors;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ecologylab.generic.Debug;
+
+/**
+ * FieldAccessors for the serialized fields of one class, written at compile time by SimplProcessor.
+ * They read and write each field in plain Java, by name, so they need neither reflection, nor
+ * Unsafe, nor java.lang.invoke, and they honor volatile.
+ * <p/>
+ * When the tree is built with the processor (ant build-codegen), each class with simpl_scalar,
+ * simpl_composite, simpl_collection or simpl_map fields gets a subclass of this, named after the
+ * class's binary name plus {@value #SUFFIX}, in the same package. FieldAccessorFactory uses it when
+ * the generated strategy is chosen, and, with the unsafe strategy, for volatile fields. Classes built
+ * without the processor don't have one, and get the other kinds of accessor, as before.
+ */
+public abstract class GeneratedAccessors
+{
+	public static final String	SUFFIX	= "$SimplAccessors";
+
+	/**
+	 * Marks classes that have no generated accessors.
+	 */
+	private static final GeneratedAccessors	NONE	= new None();
+
+	private static final ConcurrentHashMap<Class<?>, GeneratedAccessors>	byClass	= new ConcurrentHashMap<Class<?>, GeneratedAccessors>();
+
+	private final String[]	fieldNames;
+
+	private final String[]	fieldTypeNames;
+
+	/**
+	 * @param fieldNames
+	 *          The non-static serialized fields declared by the class that have generated accessors,
+	 *          in the order they are declared. Private and final fields are left out.
+	 * @param fieldTypeNames
+	 *          The canonical name of the type of each of them, after erasure, so that accessors that
+	 *          are out of date with the class are not used.
+	 */
+	protected GeneratedAccessors(String[] fieldNames, String[] fieldTypeNames)
+	{
+		this.fieldNames = fieldNames;
+		this.fieldTypeNames = fieldTypeNames;
+	}
+
+	/**
+	 * @param thatClass
+	 * @return The GeneratedAccessors for thatClass, or null if it was built without them.
+	 */
+	public static GeneratedAccessors forClass(Class<?> thatClass)
+	{
+		GeneratedAccessors result = byClass.get(thatClass);
+		if (result == null)
+		{
+			result = load(thatClass);
+			GeneratedAccessors previous = byClass.putIfAbsent(thatClass, result);
+			if (previous != null)
+				result = previous;
+		}
+		return result == NONE ? null : result;
+	}
+
+	private static GeneratedAccessors load(Class<?> thatClass)
+	{
+		try
+		{
+			Class<?> generatedClass = Class.forName(thatClass.getName() + SUFFIX, true,
+					thatClass.getClassLoader());
+			if (GeneratedAccessors.class.isAssignableFrom(generatedClass))
+				return (GeneratedAccessors) generatedClass.newInstance();
+			Debug.warning(GeneratedAccessors.class, generatedClass + " is not GeneratedAccessors");
+		}
+		catch (ClassNotFoundException e)
+		{
+			// built without the processor
+		}
+		catch (InstantiationException e)
+		{
+			Debug.warning(GeneratedAccessors.class, "Can't instantiate " + thatClass.getName() + SUFFIX
+					+ ": " + e);
+		}
+		catch (IllegalAccessException e)
+		{
+			Debug.warning(GeneratedAccessors.class, "Can't instantiate " + thatClass.getName() + SUFFIX
+					+ ": " + e);
+		}
+		catch (LinkageError e)
+		{
+			Debug.warning(GeneratedAccessors.class, "Can't load " + thatClass.getName() + SUFFIX + ": "
+					+ e);
+		}
+		return NONE;
+	}
+
+	/**
+	 * @param field
+	 *          A field declared by the class these were generated from.
+	 * @return A generated accessor for field, or null if there is none, because the field is private
+	 *         or final, or its type can't be named outside of its class, or it has changed since
+	 *         these were generated. Only the last is warned about.
+	 */
+	public FieldAccessor getAccessor(Field field)
+	{
+		String name = field.getName();
+		for (int i = 0; i < fieldNames.length; i++)
+			if (fieldNames[i].equals(name))
+			{
+				int modifiers = field.getModifiers();
+				if (Modifier.isPrivate(modifiers) || Modifier.isFinal(modifiers)
+						|| !fieldTypeNames[i].equals(field.getType().getCanonicalName()))
+				{
+					Debug.warning(this, "Out of date with " + field + "; not using its accessor.");
+					return null;
+				}
+				return accessor(i, field);
+			}
+		return null;
+	}
+
+	/**
+	 * @return An Instantiator that calls the constructor without arguments of the class these were
+	 *         generated from, or null if it is abstract, or has no such constructor that can be
+	 *         called from its package.
+	 */
+	public Instantiator<?> getInstantiator()
+	{
+		return null;
+	}
+
+	/**
+	 * @param index
+	 *          The index of field, in the list these were made with.
+	 * @param field
+	 * @return The generated accessor for field, or null.
+	 */
+	protected abstract FieldAccessor accessor(int index, Field field);
+
+	/**
+	 * @param field
+	 * @param cause
+	 *          What a generated accessor caught, when passed an object of another class, or a value
+	 *          that can't be assigned to field.
+	 * @return The exception to throw instead, as other FieldAccessors do.
+	 */
+	protected static IllegalArgumentException cannotAccess(Field field, RuntimeException cause)
+	{
+		return new IllegalArgumentException("Can't access " + field + ": " + cause, cause);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName();
+	}
+
+	private static class None extends GeneratedAccessors
+	{
+		None()
+		{
+			super(new String[0], new String[0]);
+		}
+
+		@Override
+		protected FieldAccessor accessor(int index, Field field)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package ecologylab.serialization.accessors;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+/**
+ * Makes new instances of one class, through its constructor that takes no arguments. The
+ * constructor is looked up, and made accessible, once, when the Instantiator is created, rather
+ * than for every instance, as Class.newInstance() does.
+ * <p/>
+ * If the class was built with SimplProcessor, the generated factory is used instead, which calls
+ * the constructor directly.
+ * <p/>
+ * Instantiators are immutable, and so can be shared between threads.
+ */
+public abstract class Instantiator<T>
+{
+	protected final Class<T>	instantiatedClass;
+
+	protected Instantiator(Class<T> instantiatedClass)
+	{
+		this.instantiatedClass = instantiatedClass;
+	}
+
+	/**
+	 * @return A new instance of the class.
+	 * @throws ReflectiveOperationException
+	 *           if the class is abstract, or has no constructor without arguments, or if the
+	 *           constructor throws.
+	 */
+	public abstract T newInstance() throws ReflectiveOperationException;
+
+	/**
+	 * @param thatClass
+	 * @return An Instantiator for thatClass. If thatClass can't be instantiated, newInstance() will
+	 *         say why.
+	 */
+	public static <T> Instantiator<T> create(Class<T> thatClass)
+	{
+		Constructor<T> constructor;
+		try
+		{
+			constructor = thatClass.getDeclaredConstructor();
+		}
+		catch (NoSuchMethodException e)
+		{
+			return new Missing<T>(thatClass, e);
+		}
+		if (Modifier.isAbstract(thatClass.getModifiers()))
+			return new Missing<T>(thatClass, new InstantiationException(thatClass.getName()));
+
+		if (!Modifier.isPrivate(constructor.getModifiers()))
+		{
+			GeneratedAccessors generatedAccessors = GeneratedAccessors.forClass(thatClass);
+			if (generatedAccessors != null)
+			{
+				Instantiator<T> generated = (Instantiator<T>) generatedAccessors.getInstantiator();
+				if (generated != null)
+					return generated;
+			}
+		}
+
+		try
+		{
+			constructor.setAccessible(true);
+		}
+		catch (SecurityException e)
+		{
+			// newInstance() will throw IllegalAccessException, if it must
+		}
+		return new ConstructorInstantiator<T>(thatClass, constructor);
+	}
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName() + "[" + instantiatedClass.getName() + "]";
+	}
+
+	private static class ConstructorInstantiator<T> extends Instantiator<T>
+	{
+		private final Constructor<T>	constructor;
+
+		ConstructorInstantiator(Class<T> instantiatedClass, Constructor<T> constructor)
+		{
+			super(instantiatedClass);
+			this.constructor = constructor;
+		}
+
+		@Override
+		public T newInstance() throws ReflectiveOperationException
+		{
+			return constructor.newInstance();
+		}
+	}
+
+	/**
+	 * For classes that can't be instantiated.
+	 */
+	private static class Missing<T> extends Instantiator<T>
+	{
+		private final ReflectiveOperationException	reason;
+
+		Missing(Class<T> instantiatedClass, ReflectiveOperationException reason)
+		{
+			super(instantiatedClass);
+			this.reason = reason;
+		}
+
+		@Override
+		public T newInstance() throws ReflectiveOperationException
+		{
+			throw reason;
+		}
+	}
+}
@@ -0,0 +1,371 @@
+package ecologylab.serialization.accessors;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * FieldAccessor built from MethodHandles for the field's getter and setter. For primitive fields,
+ * a second pair of handles is typed to the primitive, so the typed methods never box.
+ * <p/>
+ * This is the default accessor; see FieldAccessorFactory. There is one per field, so the handles
+ * are held in instance fields, not static finals, and the JIT on Java 7 and 8 does not treat them as
+ * constants. Each access is a call through a handle, rather than an inlined field access. That costs
+ * more than UnsafeFieldAccessor, which must be asked for, and generated accessors, but it skips the
+ * access checks and, for primitives, the boxing, that reflection does on every call.
+ */
+public class MethodHandleFieldAccessor extends FieldAccessor
+{
+	private static final MethodType	GETTER_TYPE	= MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodType	SETTER_TYPE	= MethodType.methodType(void.class, Object.class,
+																									Object.class);
+
+	private final MethodHandle			getter;
+
+	private final MethodHandle			setter;
+
+	private final MethodHandle			typedGetter;
+
+	private final MethodHandle			typedSetter;
+
+	private final Class<?>					fieldType;
+
+	public MethodHandleFieldAccessor(Field field) throws IllegalAccessException
+	{
+		super(field);
+		field.setAccessible(true);
+		this.fieldType = field.getType();
+
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle rawGetter = lookup.unreflectGetter(field);
+		MethodHandle rawSetter = lookup.unreflectSetter(field);
+
+		this.getter = rawGetter.asType(GETTER_TYPE);
+		this.setter = rawSetter.asType(SETTER_TYPE);
+		if (fieldType.isPrimitive())
+		{
+			this.typedGetter = rawGetter.asType(MethodType.methodType(fieldType, Object.class));
+			this.typedSetter = rawSetter.asType(MethodType.methodType(void.class, Object.class,
+					fieldType));
+		}
+		else
+		{
+			this.typedGetter = null;
+			this.typedSetter = null;
+		}
+	}
+
+	@Override
+	public Object get(Object object)
+	{
+		try
+		{
+			return getter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void set(Object object, Object value)
+	{
+		try
+		{
+			setter.invokeExact(object, value);
+		}
+		catch (NullPointerException e)
+		{
+			// unboxing null into a primitive field
+			if (object != null)
+				throw new IllegalArgumentException("Can't set " + field + " to null", e);
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(value, e);
+		}
+	}
+
+	@Override
+	public int getInt(Object object)
+	{
+		if (fieldType != int.class)
+			return super.getInt(object);
+		try
+		{
+			return (int) typedGetter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void setInt(Object object, int value)
+	{
+		if (fieldType != int.class)
+		{
+			super.setInt(object, value);
+			return;
+		}
+		try
+		{
+			typedSetter.invokeExact(object, value);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public long getLong(Object object)
+	{
+		if (fieldType != long.class)
+			return super.getLong(object);
+		try
+		{
+			return (long) typedGetter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void setLong(Object object, long value)
+	{
+		if (fieldType != long.class)
+		{
+			super.setLong(object, value);
+			return;
+		}
+		try
+		{
+			typedSetter.invokeExact(object, value);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public float getFloat(Object object)
+	{
+		if (fieldType != float.class)
+			return super.getFloat(object);
+		try
+		{
+			return (float) typedGetter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void setFloat(Object object, float value)
+	{
+		if (fieldType != float.class)
+		{
+			super.setFloat(object, value);
+			return;
+		}
+		try
+		{
+			typedSetter.invokeExact(object, value);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public double getDouble(Object object)
+	{
+		if (fieldType != double.class)
+			return super.getDouble(object);
+		try
+		{
+			return (double) typedGetter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void setDouble(Object object, double value)
+	{
+		if (fieldType != double.class)
+		{
+			super.setDouble(object, value);
+			return;
+		}
+		try
+		{
+			typedSetter.invokeExact(object, value);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public boolean getBoolean(Object object)
+	{
+		if (fieldType != boolean.class)
+			return super.getBoolean(object);
+		try
+		{
+			return (boolean) typedGetter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void setBoolean(Object object, boolean value)
+	{
+		if (fieldType != boolean.class)
+		{
+			super.setBoolean(object, value);
+			return;
+		}
+		try
+		{
+			typedSetter.invokeExact(object, value);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public short getShort(Object object)
+	{
+		if (fieldType != short.class)
+			return super.getShort(object);
+		try
+		{
+			return (short) typedGetter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void setShort(Object object, short value)
+	{
+		if (fieldType != short.class)
+		{
+			super.setShort(object, value);
+			return;
+		}
+		try
+		{
+			typedSetter.invokeExact(object, value);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public byte getByte(Object object)
+	{
+		if (fieldType != byte.class)
+			return super.getByte(object);
+		try
+		{
+			return (byte) typedGetter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void setByte(Object object, byte value)
+	{
+		if (fieldType != byte.class)
+		{
+			super.setByte(object, value);
+			return;
+		}
+		try
+		{
+			typedSetter.invokeExact(object, value);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public char getChar(Object object)
+	{
+		if (fieldType != char.class)
+			return super.getChar(object);
+		try
+		{
+			return (char) typedGetter.invokeExact(object);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	@Override
+	public void setChar(Object object, char value)
+	{
+		if (fieldType != char.class)
+		{
+			super.setChar(object, value);
+			return;
+		}
+		try
+		{
+			typedSetter.invokeExact(object, value);
+		}
+		catch (Throwable e)
+		{
+			throw invokeException(object, e);
+		}
+	}
+
+	/**
+	 * Map what the handles throw onto what Field.get() and Field.set() would have thrown: a failed
+	 * cast becomes an IllegalArgumentException; other unchecked exceptions pass through.
+	 */
+	private RuntimeException invokeException(Object argument, Throwable e)
+	{
+		if (e instanceof ClassCastException)
+			return new IllegalArgumentException("Can't use " + argument + " with " + field, e);
+		if (e instanceof RuntimeException)
+			return (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		return new IllegalStateException("Can't access " + field, e);
+	}
+}
@@ -0,0 +1,321 @@
+package ecologylab.serialization.accessors;
+
+import java.lang.reflect.Field;
+
+/**
+ * FieldAccessor that goes through java.lang.reflect.Field. This always works, and so is the
+ * fallback when a faster accessor cannot be built for a field.
+ * <p/>
+ * The typed methods use the typed Field methods, such as Field.getInt(), so even here primitives
+ * are not boxed.
+ */
+public class ReflectionFieldAccessor extends FieldAccessor
+{
+	private final Class<?>	fieldType;
+
+	public ReflectionFieldAccessor(Field field)
+	{
+		super(field);
+		field.setAccessible(true);
+		this.fieldType = field.getType();
+	}
+
+	@Override
+	public Object get(Object object)
+	{
+		try
+		{
+			return field.get(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void set(Object object, Object value)
+	{
+		try
+		{
+			field.set(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public int getInt(Object object)
+	{
+		if (fieldType != int.class)
+			return super.getInt(object);
+		try
+		{
+			return field.getInt(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void setInt(Object object, int value)
+	{
+		if (fieldType != int.class)
+		{
+			super.setInt(object, value);
+			return;
+		}
+		try
+		{
+			field.setInt(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public long getLong(Object object)
+	{
+		if (fieldType != long.class)
+			return super.getLong(object);
+		try
+		{
+			return field.getLong(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void setLong(Object object, long value)
+	{
+		if (fieldType != long.class)
+		{
+			super.setLong(object, value);
+			return;
+		}
+		try
+		{
+			field.setLong(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public float getFloat(Object object)
+	{
+		if (fieldType != float.class)
+			return super.getFloat(object);
+		try
+		{
+			return field.getFloat(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void setFloat(Object object, float value)
+	{
+		if (fieldType != float.class)
+		{
+			super.setFloat(object, value);
+			return;
+		}
+		try
+		{
+			field.setFloat(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public double getDouble(Object object)
+	{
+		if (fieldType != double.class)
+			return super.getDouble(object);
+		try
+		{
+			return field.getDouble(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void setDouble(Object object, double value)
+	{
+		if (fieldType != double.class)
+		{
+			super.setDouble(object, value);
+			return;
+		}
+		try
+		{
+			field.setDouble(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public boolean getBoolean(Object object)
+	{
+		if (fieldType != boolean.class)
+			return super.getBoolean(object);
+		try
+		{
+			return field.getBoolean(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void setBoolean(Object object, boolean value)
+	{
+		if (fieldType != boolean.class)
+		{
+			super.setBoolean(object, value);
+			return;
+		}
+		try
+		{
+			field.setBoolean(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public short getShort(Object object)
+	{
+		if (fieldType != short.class)
+			return super.getShort(object);
+		try
+		{
+			return field.getShort(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void setShort(Object object, short value)
+	{
+		if (fieldType != short.class)
+		{
+			super.setShort(object, value);
+			return;
+		}
+		try
+		{
+			field.setShort(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public byte getByte(Object object)
+	{
+		if (fieldType != byte.class)
+			return super.getByte(object);
+		try
+		{
+			return field.getByte(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void setByte(Object object, byte value)
+	{
+		if (fieldType != byte.class)
+		{
+			super.setByte(object, value);
+			return;
+		}
+		try
+		{
+			field.setByte(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public char getChar(Object object)
+	{
+		if (fieldType != char.class)
+			return super.getChar(object);
+		try
+		{
+			return field.getChar(object);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	@Override
+	public void setChar(Object object, char value)
+	{
+		if (fieldType != char.class)
+		{
+			super.setChar(object, value);
+			return;
+		}
+		try
+		{
+			field.setChar(object, value);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw accessException(e);
+		}
+	}
+
+	/**
+	 * The field was made accessible when this was constructed, so this only happens if a
+	 * SecurityManager got in the way.
+	 */
+	private IllegalStateException accessException(IllegalAccessException e)
+	{
+		return new IllegalStateException("Can't access " + field, e);
+	}
+}
@@ -0,0 +1,384 @@
+package ecologylab.serialization.accessors;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import sun.misc.Unsafe;
+
+/**
+ * FieldAccessor that reads and writes the field directly at its offset within the object, through
+ * sun.misc.Unsafe. This is what the reflective accessors in the JDK end up doing, without the
+ * access checks and the boxing on every call.
+ * <p/>
+ * Because Unsafe does no checking of its own, this checks that the object is an instance of the
+ * declaring class, and that values set into reference fields are instances of the field's type.
+ * Those are the checks that keep a bad call from corrupting the heap; they throw the same
+ * exceptions that Field.get() and Field.set() would.
+ * <p/>
+ * Only used for non-static, non-volatile fields. Use isAvailable() to find out if this platform has
+ * a usable Unsafe.
+ */
+public class UnsafeFieldAccessor extends FieldAccessor
+{
+	private static final Unsafe	UNSAFE	= findUnsafe();
+
+	private static final int		OBJECT	= 0;
+
+	private static final int		INT			= 1;
+
+	private static final int		LONG		= 2;
+
+	private static final int		FLOAT		= 3;
+
+	private static final int		DOUBLE	= 4;
+
+	private static final int		BOOLEAN	= 5;
+
+	private static final int		SHORT		= 6;
+
+	private static final int		BYTE		= 7;
+
+	private static final int		CHAR		= 8;
+
+	private final Class<?>			declaringClass;
+
+	private final Class<?>			fieldType;
+
+	private final long					offset;
+
+	private final int						kind;
+
+	public UnsafeFieldAccessor(Field field)
+	{
+		super(field);
+		int modifiers = field.getModifiers();
+		if (UNSAFE == null || Modifier.isStatic(modifiers) || Modifier.isVolatile(modifiers))
+			throw new IllegalArgumentException("Can't access " + field + " through Unsafe.");
+
+		this.declaringClass = field.getDeclaringClass();
+		this.fieldType = field.getType();
+		this.offset = UNSAFE.objectFieldOffset(field);
+		this.kind = kindOf(fieldType);
+	}
+
+	/**
+	 * @return true if sun.misc.Unsafe, with all of the accessors that this uses, is present.
+	 */
+	public static boolean isAvailable()
+	{
+		return UNSAFE != null;
+	}
+
+	@Override
+	public Object get(Object object)
+	{
+		checkObject(object);
+		switch (kind)
+		{
+		case INT:
+			return UNSAFE.getInt(object, offset);
+		case LONG:
+			return UNSAFE.getLong(object, offset);
+		case FLOAT:
+			return UNSAFE.getFloat(object, offset);
+		case DOUBLE:
+			return UNSAFE.getDouble(object, offset);
+		case BOOLEAN:
+			return UNSAFE.getBoolean(object, offset);
+		case SHORT:
+			return UNSAFE.getShort(object, offset);
+		case BYTE:
+			return UNSAFE.getByte(object, offset);
+		case CHAR:
+			return UNSAFE.getChar(object, offset);
+		default:
+			return UNSAFE.getObject(object, offset);
+		}
+	}
+
+	@Override
+	public void set(Object object, Object value)
+	{
+		checkObject(object);
+		if (value == null && kind != OBJECT)
+			throw setException(value);
+		try
+		{
+			switch (kind)
+			{
+			case INT:
+				UNSAFE.putInt(object, offset, (Integer) value);
+				break;
+			case LONG:
+				UNSAFE.putLong(object, offset, (Long) value);
+				break;
+			case FLOAT:
+				UNSAFE.putFloat(object, offset, (Float) value);
+				break;
+			case DOUBLE:
+				UNSAFE.putDouble(object, offset, (Double) value);
+				break;
+			case BOOLEAN:
+				UNSAFE.putBoolean(object, offset, (Boolean) value);
+				break;
+			case SHORT:
+				UNSAFE.putShort(object, offset, (Short) value);
+				break;
+			case BYTE:
+				UNSAFE.putByte(object, offset, (Byte) value);
+				break;
+			case CHAR:
+				UNSAFE.putChar(object, offset, (Character) value);
+				break;
+			default:
+				if (value != null && !fieldType.isInstance(value))
+					throw setException(value);
+				UNSAFE.putObject(object, offset, value);
+			}
+		}
+		catch (ClassCastException e)
+		{
+			throw setException(value);
+		}
+	}
+
+	@Override
+	public int getInt(Object object)
+	{
+		if (kind != INT)
+			return super.getInt(object);
+		checkObject(object);
+		return UNSAFE.getInt(object, offset);
+	}
+
+	@Override
+	public void setInt(Object object, int value)
+	{
+		if (kind != INT)
+		{
+			super.setInt(object, value);
+			return;
+		}
+		checkObject(object);
+		UNSAFE.putInt(object, offset, value);
+	}
+
+	@Override
+	public long getLong(Object object)
+	{
+		if (kind != LONG)
+			return super.getLong(object);
+		checkObject(object);
+		return UNSAFE.getLong(object, offset);
+	}
+
+	@Override
+	public void setLong(Object object, long value)
+	{
+		if (kind != LONG)
+		{
+			super.setLong(object, value);
+			return;
+		}
+		checkObject(object);
+		UNSAFE.putLong(object, offset, value);
+	}
+
+	@Override
+	public float getFloat(Object object)
+	{
+		if (kind != FLOAT)
+			return super.getFloat(object);
+		checkObject(object);
+		return UNSAFE.getFloat(object, offset);
+	}
+
+	@Override
+	public void setFloat(Object object, float value)
+	{
+		if (kind != FLOAT)
+		{
+			super.setFloat(object, value);
+			return;
+		}
+		checkObject(object);
+		UNSAFE.putFloat(object, offset, value);
+	}
+
+	@Override
+	public double getDouble(Object object)
+	{
+		if (kind != DOUBLE)
+			return super.getDouble(object);
+		checkObject(object);
+		return UNSAFE.getDouble(object, offset);
+	}
+
+	@Override
+	public void setDouble(Object object, double value)
+	{
+		if (kind != DOUBLE)
+		{
+			super.setDouble(object, value);
+			return;
+		}
+		checkObject(object);
+		UNSAFE.putDouble(object, offset, value);
+	}
+
+	@Override
+	public boolean getBoolean(Object object)
+	{
+		if (kind != BOOLEAN)
+			return super.getBoolean(object);
+		checkObject(object);
+		return UNSAFE.getBoolean(object, offset);
+	}
+
+	@Override
+	public void setBoolean(Object object, boolean value)
+	{
+		if (kind != BOOLEAN)
+		{
+			super.setBoolean(object, value);
+			return;
+		}
+		checkObject(object);
+		UNSAFE.putBoolean(object, offset, value);
+	}
+
+	@Override
+	public short getShort(Object object)
+	{
+		if (kind != SHORT)
+			return super.getShort(object);
+		checkObject(object);
+		return UNSAFE.getShort(object, offset);
+	}
+
+	@Override
+	public void setShort(Object object, short value)
+	{
+		if (kind != SHORT)
+		{
+			super.setShort(object, value);
+			return;
+		}
+		checkObject(object);
+		UNSAFE.putShort(object, offset, value);
+	}
+
+	@Override
+	public byte getByte(Object object)
+	{
+		if (kind != BYTE)
+			return super.getByte(object);
+		checkObject(object);
+		return UNSAFE.getByte(object, offset);
+	}
+
+	@Override
+	public void setByte(Object object, byte value)
+	{
+		if (kind != BYTE)
+		{
+			super.setByte(object, value);
+			return;
+		}
+		checkObject(object);
+		UNSAFE.putByte(object, offset, value);
+	}
+
+	@Override
+	public char getChar(Object object)
+	{
+		if (kind != CHAR)
+			return super.getChar(object);
+		checkObject(object);
+		return UNSAFE.getChar(object, offset);
+	}
+
+	@Override
+	public void setChar(Object object, char value)
+	{
+		if (kind != CHAR)
+		{
+			super.setChar(object, value);
+			return;
+		}
+		checkObject(object);
+		UNSAFE.putChar(object, offset, value);
+	}
+
+	private void checkObject(Object object)
+	{
+		if (!declaringClass.isInstance(object))
+		{
+			if (object == null)
+				throw new NullPointerException("null object for " + field);
+			throw new IllegalArgumentException("Can't access " + field + " in "
+					+ object.getClass().getName());
+		}
+	}
+
+	private IllegalArgumentException setException(Object value)
+	{
+		return new IllegalArgumentException("Can not set " + fieldType.getName() + " field " + field
+				+ " to " + (value == null ? "null value" : value.getClass().getName()));
+	}
+
+	private static int kindOf(Class<?> type)
+	{
+		if (!type.isPrimitive())
+			return OBJECT;
+		if (type == int.class)
+			return INT;
+		if (type == long.class)
+			return LONG;
+		if (type == float.class)
+			return FLOAT;
+		if (type == double.class)
+			return DOUBLE;
+		if (type == boolean.class)
+			return BOOLEAN;
+		if (type == short.class)
+			return SHORT;
+		if (type == byte.class)
+			return BYTE;
+		return CHAR;
+	}
+
+	/**
+	 * Find the Unsafe singleton, and make sure that it has every accessor that this uses. Some
+	 * platforms (older Androids) have an Unsafe with only a few of them.
+	 *
+	 * @return The Unsafe, or null if it is not there or not complete.
+	 */
+	private static Unsafe findUnsafe()
+	{
+		try
+		{
+			// looked up by name, rather than through Unsafe.class, to keep warnings out of the build
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Object unsafe = theUnsafe.get(null);
+
+			Class<?>[] primitives = { int.class, long.class, float.class, double.class, boolean.class,
+					short.class, byte.class, char.class, Object.class };
+			String[] names = { "Int", "Long", "Float", "Double", "Boolean", "Short", "Byte", "Char",
+					"Object" };
+			for (int i = 0; i < names.length; i++)
+			{
+				unsafeClass.getMethod("get" + names[i], Object.class, long.class);
+				unsafeClass.getMethod("put" + names[i], Object.class, long.class, primitives[i]);
+			}
+			unsafeClass.getMethod("objectFieldOffset", Field.class);
+			return (Unsafe) unsafe;
+		}
+		catch (Throwable e)
+		{
+			return null;
+		}
+	}
+}
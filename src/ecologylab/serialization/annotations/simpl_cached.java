@@ -0,0 +1,32 @@
+package ecologylab.serialization.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Lets the serialized forms of instances of the class be kept in, and reused from, the
+ * SerializationCache, when one is installed, so that an object sent again and again is only
+ * serialized once per format, until it changes.
+ * <p/>
+ * An instance is taken to change when its version stamp does: the value of the field named by
+ * versionField, if there is one; else, for an ObservableElementState, its modification stamp, which
+ * setChanged() advances. Other instances are taken never to change once they have been serialized.
+ * The objects under an instance are serialized along with it, so a change to one of them must
+ * change the stamp of the instance too.
+ * <p/>
+ * Serialization hooks are not called for instances whose serialized forms are reused.
+ */
+@Inherited
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface simpl_cached
+{
+	/**
+	 * Name of a numeric field that is changed whenever the object is, such as a version, or a
+	 * modification time.
+	 */
+	String versionField() default "";
+}
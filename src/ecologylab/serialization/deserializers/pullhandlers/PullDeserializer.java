@@ -13,7 +13,10 @@ import ecologylab.generic.Debug;
 import ecologylab.net.ConnectionAdapter;
 import ecologylab.net.PURLConnection;
 import ecologylab.net.ParsedURL;
+import ecologylab.serialization.CollectionElementHandler;
 import ecologylab.serialization.DeserializationHookStrategy;
+import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.FieldProjection;
 import ecologylab.serialization.FieldType;
 import ecologylab.serialization.SIMPLTranslationException;
 import ecologylab.serialization.SimplTypesScope;
@@ -41,6 +44,32 @@ public abstract class PullDeserializer extends Debug
 
 	static final ConnectionAdapter				connectionAdapter	= new ConnectionAdapter();
 
+	/**
+	 * Names of the fields leading from the root to the streamed collection, the last one being the
+	 * collection field itself; or null, if no collection is streamed.
+	 */
+	private String[]											streamedPath;
+
+	private CollectionElementHandler			streamHandler;
+
+	/**
+	 * How many composites deep getSubRoot() is, below the root.
+	 */
+	private int														streamNesting;
+
+	/**
+	 * How many of those composites are on streamedPath. While this equals streamNesting, the object
+	 * being deserialized lies on the path.
+	 */
+	private int														streamMatched;
+
+	private boolean												streamStopped;
+
+	/**
+	 * The fields to deserialize, out of the object being deserialized; or null, for all of them.
+	 */
+	private FieldProjection								projection;
+
 	/**
 	 * Constructs that creates a JSON deserialization handler
 	 * 
@@ -72,6 +101,162 @@ public abstract class PullDeserializer extends Debug
 		this.deserializationHookStrategy = deserializationHookStrategy;
 	}
 
+	/**
+	 * Rebind this to a new TranslationContext and DeserializationHookStrategy, so that it can be
+	 * reused for another document, instead of constructing a new deserializer. A deserializer holds
+	 * the state of one parse at a time, so reuse it only on one thread.
+	 * 
+	 * @param translationContext
+	 *          used for graph handling
+	 * @param deserializationHookStrategy
+	 *          may be null
+	 */
+	public void reset(TranslationContext translationContext,
+			DeserializationHookStrategy deserializationHookStrategy)
+	{
+		this.translationContext = translationContext;
+		this.deserializationHookStrategy = deserializationHookStrategy;
+		setStreamedCollection(null, null);
+		setProjection(null);
+	}
+
+	/**
+	 * Only deserialize the fields that projection selects, for the following parse()s. The others are
+	 * skipped, as cheaply as the format allows, and left with their default values.
+	 * 
+	 * @param projection
+	 *          null to deserialize every field.
+	 */
+	public void setProjection(FieldProjection projection)
+	{
+		this.projection = projection == null || projection.isWhole() ? null : projection;
+	}
+
+	/**
+	 * @param fd
+	 *          a field of the object being deserialized.
+	 * @return true if fd is not to be deserialized, but skipped.
+	 */
+	protected boolean isProjectedOut(FieldDescriptor fd)
+	{
+		if (projection == null)
+			return false;
+		FieldDescriptor namedFd = fd.getType() == FieldType.WRAPPER ? fd.getWrappedFD() : fd;
+		return projection.get(namedFd.getName()) == null;
+	}
+
+	/**
+	 * Call before deserializing the fields of an object in fd, to apply the projection of fd to them.
+	 * 
+	 * @param fd
+	 * @return What to pass to exitProjection() when the object is done.
+	 */
+	protected FieldProjection enterProjection(FieldDescriptor fd)
+	{
+		FieldProjection outer = projection;
+		if (outer != null)
+		{
+			FieldProjection inner = outer.get(fd.getName());
+			projection = inner == null || inner.isWhole() ? null : inner;
+		}
+		return outer;
+	}
+
+	protected void exitProjection(FieldProjection outer)
+	{
+		projection = outer;
+	}
+
+	/**
+	 * Stream the elements of one collection field to handler as they are deserialized, instead of
+	 * adding them to the collection, for the following parse()s. The collection is left empty (or
+	 * null), and each element can be garbage collected once handler returns, so memory use does not
+	 * grow with the size of the collection.
+	 * <p/>
+	 * If handler returns false, parse() stops at that element, by throwing a
+	 * SIMPLTranslationException; isStreamStopped() tells that apart from an error.
+	 * 
+	 * @param fieldPath
+	 *          Names of the fields leading from the root to the collection, the last one being the
+	 *          collection field itself. Any of the others may be composite, collection or map fields.
+	 *          null to stop streaming.
+	 * @param handler
+	 */
+	public void setStreamedCollection(String[] fieldPath, CollectionElementHandler<?> handler)
+	{
+		this.streamedPath = fieldPath == null || fieldPath.length == 0 ? null : fieldPath;
+		this.streamHandler = handler;
+		this.streamNesting = 0;
+		this.streamMatched = 0;
+		this.streamStopped = false;
+	}
+
+	/**
+	 * @return true if the last parse() ended because the CollectionElementHandler returned false.
+	 */
+	public boolean isStreamStopped()
+	{
+		return streamStopped;
+	}
+
+	/**
+	 * Call before deserializing the composite object of fd, to track whether it lies on the path to
+	 * the streamed collection.
+	 * 
+	 * @param fd
+	 * @return What to pass to exitStreamedComposite() when the composite is done.
+	 */
+	protected boolean enterStreamedComposite(FieldDescriptor fd)
+	{
+		if (streamedPath == null)
+			return false;
+		boolean onPath = streamNesting == streamMatched && streamMatched < streamedPath.length - 1
+				&& streamedPath[streamMatched].equals(fd.getName());
+		streamNesting++;
+		if (onPath)
+			streamMatched++;
+		return onPath;
+	}
+
+	protected void exitStreamedComposite(boolean onPath)
+	{
+		if (streamedPath == null)
+			return;
+		streamNesting--;
+		if (onPath)
+			streamMatched--;
+	}
+
+	/**
+	 * @param fd
+	 *          a collection field of the object being deserialized.
+	 * @return true if the elements of fd are to be passed to streamElement(), instead of being added
+	 *         to the collection.
+	 */
+	protected boolean isStreamedCollection(FieldDescriptor fd)
+	{
+		return streamedPath != null && streamNesting == streamMatched
+				&& streamMatched == streamedPath.length - 1
+				&& streamedPath[streamMatched].equals(fd.getName());
+	}
+
+	/**
+	 * Hand element to the CollectionElementHandler.
+	 * 
+	 * @param parent
+	 * @param element
+	 * @throws SIMPLTranslationException
+	 *           to stop deserialization, if the handler returns false.
+	 */
+	protected void streamElement(Object parent, Object element) throws SIMPLTranslationException
+	{
+		if (!streamHandler.handleElement(parent, element))
+		{
+			streamStopped = true;
+			throw new SIMPLTranslationException("streaming stopped by " + streamHandler);
+		}
+	}
+
 	/**
 	 * 
 	 * @param file
@@ -149,7 +334,27 @@ public abstract class PullDeserializer extends Debug
 	public abstract Object parse(InputStream inputStream) throws SIMPLTranslationException;
 
 	/**
-	 * 
+	 * Deserialize the element of a lazy composite field, that was kept as it was read, by a
+	 * deserializer of the same format. See LazyComposite.
+	 *
+	 * @param raw
+	 *          the element, tag and all.
+	 * @param fd
+	 *          the lazy field.
+	 * @param parent
+	 *          the object whose field it is.
+	 * @return The object in the field.
+	 * @throws SIMPLTranslationException
+	 */
+	public Object parseLazy(Object raw, FieldDescriptor fd, Object parent)
+			throws SIMPLTranslationException
+	{
+		throw new SIMPLTranslationException(getClass().getSimpleName()
+				+ " can't deserialize lazy fields");
+	}
+
+	/**
+	 *
 	 * @param object
 	 * @param translationContext
 	 *          TODO
@@ -229,6 +434,9 @@ public abstract class PullDeserializer extends Debug
 		case TLV:
 			return new TLVPullDeserializer(translationScope, translationContext,
 					deserializationHookStrategy);
+		case TLV2:
+			return new TLVPullDeserializer(translationScope, translationContext,
+					deserializationHookStrategy, true);
 		case BIBTEX:
 			// TODO bibtex pull deserializer not implemented!
 //			return new BibTeXPullDeserializer(translationScope, translationContext);
@@ -314,6 +522,11 @@ public abstract class PullDeserializer extends Debug
 		switch (binaryFormat)
 		{
 		case TLV:
+			return new TLVPullDeserializer(translationScope, translationContext,
+					deserializationHookStrategy);
+		case TLV2:
+			return new TLVPullDeserializer(translationScope, translationContext,
+					deserializationHookStrategy, true);
 		default:
 			throw new SIMPLTranslationException(binaryFormat + " format not supported");
 		}
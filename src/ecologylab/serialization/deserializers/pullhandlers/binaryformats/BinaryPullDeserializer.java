@@ -1,5 +1,6 @@
 package ecologylab.serialization.deserializers.pullhandlers.binaryformats;
 
+import ecologylab.serialization.DeserializationHookStrategy;
 import ecologylab.serialization.SIMPLTranslationException;
 import ecologylab.serialization.SimplTypesScope;
 import ecologylab.serialization.TranslationContext;
@@ -14,5 +15,11 @@ public abstract class BinaryPullDeserializer extends PullDeserializer
 		super(translationScope, translationContext);
 	}
 
+	public BinaryPullDeserializer(SimplTypesScope translationScope,
+			TranslationContext translationContext, DeserializationHookStrategy deserializationHookStrategy)
+	{
+		super(translationScope, translationContext, deserializationHookStrategy);
+	}
+
 	public abstract Object parse(byte[] byteArray) throws SIMPLTranslationException;
 }
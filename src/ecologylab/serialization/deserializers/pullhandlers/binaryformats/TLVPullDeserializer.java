@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Map;
@@ -12,11 +13,14 @@ import ecologylab.serialization.ClassDescriptor;
 import ecologylab.serialization.DeserializationHookStrategy;
 import ecologylab.serialization.ElementState;
 import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.FieldProjection;
 import ecologylab.serialization.FieldType;
+import ecologylab.serialization.LazyComposite;
 import ecologylab.serialization.SIMPLTranslationException;
 import ecologylab.serialization.SimplTypesScope;
 import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.deserializers.pullhandlers.DeserializationProcedureState;
+import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.element.IMappable;
 
 /**
@@ -36,10 +40,32 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 
 	boolean										isEos				= false;
 
+	/**
+	 * When true, scalars are read in their native binary form (BinaryFormat.TLV2), rather than as
+	 * text.
+	 */
+	private final boolean			nativeScalars;
+
 	public TLVPullDeserializer(SimplTypesScope translationScope,
 			TranslationContext translationContext, DeserializationHookStrategy deserializationHookStrategy)
 	{
-		super(translationScope, translationContext);
+		this(translationScope, translationContext, deserializationHookStrategy, false);
+	}
+
+	/**
+	 * 
+	 * @param translationScope
+	 * @param translationContext
+	 * @param deserializationHookStrategy
+	 * @param nativeScalars
+	 *          true to read scalars in their native binary form, as BinaryFormat.TLV2.
+	 */
+	public TLVPullDeserializer(SimplTypesScope translationScope,
+			TranslationContext translationContext,
+			DeserializationHookStrategy deserializationHookStrategy, boolean nativeScalars)
+	{
+		super(translationScope, translationContext, deserializationHookStrategy);
+		this.nativeScalars = nativeScalars;
 	}
 
 	@Override
@@ -70,6 +96,22 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 		}
 	}
 
+	@Override
+	public Object parseLazy(Object raw, FieldDescriptor fd, Object parent)
+			throws SIMPLTranslationException
+	{
+		try
+		{
+			configure(new ByteArrayInputStream((byte[]) raw));
+			nextHeader();
+			return getSubRoot(fd, parent);
+		}
+		catch (IOException e)
+		{
+			throw new SIMPLTranslationException("exception occurred in deserialzation ", e);
+		}
+	}
+
 	/**
 	 * 
 	 * @return
@@ -142,41 +184,49 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 
 			FieldType fieldType = currentFieldDescriptor.getType();
 
-			switch (fieldType)
+			if (isProjectedOut(currentFieldDescriptor))
 			{
-			case SCALAR:
-				bytesRead += deserializeScalar(root, currentFieldDescriptor);
-				break;
-			case COLLECTION_SCALAR:
-				bytesRead += deserializeScalarCollectionElement(root, currentFieldDescriptor);
-				break;
-			case COMPOSITE_ELEMENT:
-				bytesRead += deserializeComposite(root, currentFieldDescriptor);
-				break;
-			case COLLECTION_ELEMENT:
-				bytesRead += deserializeCompositeCollectionElement(root, currentFieldDescriptor);
-				break;
-			case MAP_ELEMENT:
-				bytesRead += deserializeCompositeMapElement(root, currentFieldDescriptor);
-				break;
-			case WRAPPER:
-				currentFieldDescriptor = currentFieldDescriptor.getWrappedFD();
-				switch (currentFieldDescriptor.getType())
+				inputStream.skipBytes(length());
+				bytesRead += length();
+			}
+			else
+			{
+				switch (fieldType)
 				{
+				case SCALAR:
+					bytesRead += deserializeScalar(root, currentFieldDescriptor);
+					break;
 				case COLLECTION_SCALAR:
-					bytesRead += deserializeScalarCollection(root, currentFieldDescriptor);
+					bytesRead += deserializeScalarCollectionElement(root, currentFieldDescriptor);
+					break;
+				case COMPOSITE_ELEMENT:
+					bytesRead += deserializeComposite(root, currentFieldDescriptor);
 					break;
 				case COLLECTION_ELEMENT:
-					bytesRead += deserializeCompositeCollection(root, currentFieldDescriptor);
+					bytesRead += deserializeCompositeCollectionElement(root, currentFieldDescriptor);
 					break;
 				case MAP_ELEMENT:
-					bytesRead += deserializeCompositeMap(root, currentFieldDescriptor);
+					bytesRead += deserializeCompositeMapElement(root, currentFieldDescriptor);
 					break;
-				case COMPOSITE_ELEMENT:
-					//TODO: wrapped composites in tlv?
+				case WRAPPER:
+					currentFieldDescriptor = currentFieldDescriptor.getWrappedFD();
+					switch (currentFieldDescriptor.getType())
+					{
+					case COLLECTION_SCALAR:
+						bytesRead += deserializeScalarCollection(root, currentFieldDescriptor);
+						break;
+					case COLLECTION_ELEMENT:
+						bytesRead += deserializeCompositeCollection(root, currentFieldDescriptor);
+						break;
+					case MAP_ELEMENT:
+						bytesRead += deserializeCompositeMap(root, currentFieldDescriptor);
+						break;
+					case COMPOSITE_ELEMENT:
+						//TODO: wrapped composites in tlv?
+						break;
+					}
 					break;
 				}
-				break;
 			}
 			
 			state = nextDeserializationProcedureState(state, fieldType);
@@ -194,7 +244,7 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 		
 		deserializationPostHook(root, translationContext);
 		if (deserializationHookStrategy != null)
-			deserializationHookStrategy.deserializationPostHook(root, 
+			deserializationHookStrategy.deserializationPostHook(root, 
 					currentFieldDescriptor == null || currentFieldDescriptor.getType() == FieldType.IGNORED_ELEMENT
 					? null : currentFieldDescriptor);
 		
@@ -307,8 +357,15 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 		int length = length();
 
 		subRoot = getSubRoot(fd, root);
-		Collection collection = (Collection) fd.automaticLazyGetCollectionOrMap(root);
-		collection.add(subRoot);
+		if (isStreamedCollection(fd))
+		{
+			streamElement(root, subRoot);
+		}
+		else
+		{
+			Collection collection = (Collection) fd.automaticLazyGetCollectionOrMap(root);
+			collection.add(subRoot);
+		}
 		return length;
 	}
 
@@ -324,7 +381,18 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 			throws SIMPLTranslationException, IOException
 	{
 		int length = length();
-		Object subRoot = getSubRoot(currentFieldDescriptor, root);
+		Object subRoot;
+		if (currentFieldDescriptor.isLazy())
+		{
+			// keep the block, header and all, as it is
+			byte[] block = new byte[HEADER_SIZE + length];
+			ByteBuffer.wrap(block).putInt(type()).putInt(length);
+			inputStream.readFully(block, HEADER_SIZE, length);
+			subRoot = new LazyComposite<Object>(nativeScalars ? Format.TLV2 : Format.TLV, block,
+					currentFieldDescriptor, translationScope, root);
+		}
+		else
+			subRoot = getSubRoot(currentFieldDescriptor, root);
 		currentFieldDescriptor.setFieldToComposite(root, subRoot);
 		return length;
 	}
@@ -357,14 +425,19 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 			}
 		}
 
-		createObjectModel(subRoot, subRootClassDescriptor, type(), length());
+		// a simpl:ref block yields the object it refers to
+		FieldProjection outerProjection = enterProjection(currentFieldDescriptor);
+		boolean onStreamedPath = enterStreamedComposite(currentFieldDescriptor);
+		subRoot = createObjectModel(subRoot, subRootClassDescriptor, type(), length());
+		exitStreamedComposite(onStreamedPath);
+		exitProjection(outerProjection);
 		
-		if (deserializationHookStrategy != null && subRoot != null)
-		{
-			Object newSubRoot= deserializationHookStrategy.changeObjectIfNecessary(subRoot, currentFieldDescriptor);
-			if (newSubRoot != null)
-				subRoot = newSubRoot;
-		}
+		if (deserializationHookStrategy != null && subRoot != null)
+		{
+			Object newSubRoot= deserializationHookStrategy.changeObjectIfNecessary(subRoot, currentFieldDescriptor);
+			if (newSubRoot != null)
+				subRoot = newSubRoot;
+		}
 		
 		return subRoot;
 	}
@@ -380,8 +453,13 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 	private int deserializeScalarCollectionElement(Object root, FieldDescriptor fd)
 			throws SIMPLTranslationException, IOException
 	{
+		if (nativeScalars)
+		{
+			fd.addBinaryLeafToCollection(root, inputStream, length(), translationContext);
+			return length();
+		}
 		byte[] value = new byte[length()];
-		inputStream.read(value);
+		inputStream.readFully(value);
 		String stringValue = new String(value);
 		fd.addLeafNodeToCollection(root, stringValue, translationContext);
 		return length();
@@ -395,10 +473,15 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 	 * @throws IOException
 	 */
 	private int deserializeScalar(Object root, FieldDescriptor currentFieldDescriptor)
-			throws IOException
+			throws SIMPLTranslationException, IOException
 	{
+		if (nativeScalars)
+		{
+			currentFieldDescriptor.setFieldFromBinary(root, inputStream, length(), translationContext);
+			return length();
+		}
 		byte[] value = new byte[length()];
-		inputStream.read(value);
+		inputStream.readFully(value);
 		String stringValue = new String(value);
 		currentFieldDescriptor.setFieldToScalar(root, stringValue, translationContext);
 		return length();
@@ -411,6 +494,9 @@ public class TLVPullDeserializer extends BinaryPullDeserializer
 	private void configure(InputStream stream)
 	{
 		inputStream = new DataInputStream(stream);
+		blockType = 0;
+		blockLength = 0;
+		isEos = false;
 	}
 
 	/**
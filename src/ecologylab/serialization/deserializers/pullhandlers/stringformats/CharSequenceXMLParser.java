@@ -0,0 +1,18 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+/**
+ * An XMLParser that can hand out the text and attribute values of the current event as
+ * CharSequence views of its own buffer, instead of new Strings, so that callers only make Strings
+ * of what they keep.
+ * <p/>
+ * A view is only good until the next call to next() or nextTag().
+ */
+public interface CharSequenceXMLParser extends XMLParser
+{
+	/**
+	 * @return The text of the current CHARACTERS event, or null for other events.
+	 */
+	CharSequence getTextCharSequence();
+
+	CharSequence getAttributeValueCharSequence(int index);
+}
@@ -0,0 +1,203 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import java.util.Arrays;
+
+import ecologylab.serialization.ClassDescriptor;
+import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.FieldType;
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+
+/**
+ * Cuts the elements of one collection field of the root out of a serialized document, without
+ * deserializing them, so that they can be deserialized on other threads.
+ * <p/>
+ * split() finds the span of each element, and makes a skeleton: the document without the
+ * collection, which deserializes into the root with all of its other fields. chunkDocument() puts a
+ * run of elements back into a document of their own, framed as a root that holds just them in its
+ * collection, so that one parser deserializes the whole run.
+ */
+abstract class CollectionSplitter
+{
+	protected final CharSequence		text;
+
+	private final SimplTypesScope		simplTypesScope;
+
+	private final String						fieldName;
+
+	protected FieldDescriptor				collectionField;
+
+	private int[]										starts	= new int[16];
+
+	private int[]										ends		= new int[16];
+
+	private int											size;
+
+	private final StringBuilder			skeleton;
+
+	private int											copiedTo;
+
+	private String									chunkPrefix;
+
+	private String									elementSeparator;
+
+	private String									chunkSuffix;
+
+	CollectionSplitter(CharSequence text, SimplTypesScope simplTypesScope, String fieldName)
+	{
+		this.text = text;
+		this.simplTypesScope = simplTypesScope;
+		this.fieldName = fieldName;
+		this.skeleton = new StringBuilder(256);
+	}
+
+	/**
+	 * Find the elements, and build the skeleton.
+	 *
+	 * @throws SIMPLTranslationException
+	 *           if the document is malformed, or the root has no such collection field.
+	 */
+	abstract void split() throws SIMPLTranslationException;
+
+	/**
+	 * Look up the collection field, once the root tag is known.
+	 */
+	protected void resolveCollectionField(String rootTag) throws SIMPLTranslationException
+	{
+		ClassDescriptor<? extends FieldDescriptor> rootClassDescriptor = simplTypesScope
+				.getClassDescriptorByTag(rootTag);
+		if (rootClassDescriptor == null)
+			throw new SIMPLTranslationException("cannot find the class descriptor for root element <"
+					+ rootTag + ">; make sure if translation scope is correct.");
+		for (FieldDescriptor fd : rootClassDescriptor.allFieldDescriptors())
+		{
+			if (fieldName.equals(fd.getName()))
+			{
+				if (fd.getType() != FieldType.COLLECTION_ELEMENT)
+					throw new SIMPLTranslationException(fieldName + " is not a collection of composites");
+				collectionField = fd;
+				return;
+			}
+		}
+		throw new SIMPLTranslationException(rootClassDescriptor.getDescribedClassSimpleName()
+				+ " has no field " + fieldName);
+	}
+
+	FieldDescriptor getCollectionField()
+	{
+		return collectionField;
+	}
+
+	protected void addElement(int start, int end)
+	{
+		if (size == starts.length)
+		{
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+	}
+
+	/**
+	 * Leave text from start to end out of the skeleton. Ranges must be removed in order.
+	 */
+	protected void removeFromSkeleton(int start, int end)
+	{
+		skeleton.append(text, copiedTo, start);
+		copiedTo = end;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Set how chunkDocument() frames elements.
+	 *
+	 * @param chunkPrefix
+	 *          from the start of the document to the first element of the collection.
+	 * @param elementSeparator
+	 *          between elements.
+	 * @param chunkSuffix
+	 *          from the last element to the end of the document.
+	 */
+	protected void setChunkFraming(String chunkPrefix, String elementSeparator, String chunkSuffix)
+	{
+		this.chunkPrefix = chunkPrefix;
+		this.elementSeparator = elementSeparator;
+		this.chunkSuffix = chunkSuffix;
+	}
+
+	/**
+	 * @param start
+	 * @param end
+	 * @return A document whose root holds elements start to end - 1 in its collection, and nothing
+	 *         else, except maybe the root's attributes.
+	 */
+	CharSequence chunkDocument(int start, int end)
+	{
+		int length = chunkPrefix.length() + chunkSuffix.length();
+		for (int i = start; i < end; i++)
+			length += ends[i] - starts[i] + elementSeparator.length();
+
+		StringBuilder document = new StringBuilder(length);
+		document.append(chunkPrefix);
+		for (int i = start; i < end; i++)
+		{
+			if (i > start)
+				document.append(elementSeparator);
+			document.append(text, starts[i], ends[i]);
+		}
+		return document.append(chunkSuffix);
+	}
+
+	/**
+	 * @return The document, without the collection. Call after split().
+	 */
+	CharSequence skeleton()
+	{
+		if (copiedTo < text.length())
+		{
+			skeleton.append(text, copiedTo, text.length());
+			copiedTo = text.length();
+		}
+		return skeleton;
+	}
+
+	protected SIMPLTranslationException malformed(String what, int at)
+	{
+		return new SIMPLTranslationException(what + " at character " + at);
+	}
+
+	protected boolean startsWith(String prefix, int at)
+	{
+		int length = prefix.length();
+		if (at + length > text.length())
+			return false;
+		for (int i = 0; i < length; i++)
+			if (text.charAt(at + i) != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	protected int indexOf(char c, int from)
+	{
+		int length = text.length();
+		for (int i = from; i < length; i++)
+			if (text.charAt(i) == c)
+				return i;
+		return -1;
+	}
+
+	protected int indexOf(String s, int from)
+	{
+		char first = s.charAt(0);
+		for (int i = indexOf(first, from); i >= 0; i = indexOf(first, i + 1))
+			if (startsWith(s, i))
+				return i;
+		return -1;
+	}
+}
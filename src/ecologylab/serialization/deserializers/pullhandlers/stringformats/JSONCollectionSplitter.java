@@ -0,0 +1,170 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+
+/**
+ * CollectionSplitter for JSON, as written by JSONSerializer. It only matches up brackets and
+ * braces, skipping strings, and leaves everything else to the JsonParser that deserializes the
+ * pieces.
+ */
+class JSONCollectionSplitter extends CollectionSplitter
+{
+	JSONCollectionSplitter(CharSequence text, SimplTypesScope simplTypesScope, String fieldName)
+	{
+		super(text, simplTypesScope, fieldName);
+	}
+
+	@Override
+	void split() throws SIMPLTranslationException
+	{
+		int i = expect('{', skipWhitespace(0));
+		int rootTagEnd = stringEnd(i);
+		String rootTag = text.subSequence(i + 1, rootTagEnd - 1).toString();
+		resolveCollectionField(rootTag);
+		String rootStart = "{\"" + rootTag + "\":{";
+		i = skipWhitespace(expect('{', skipWhitespace(expect(':', skipWhitespace(rootTagEnd)))));
+
+		// the fields of the root
+		int lastValueEnd = -1;
+		while (text.charAt(i) != '}')
+		{
+			int keyStart = i;
+			int keyEnd = stringEnd(keyStart);
+			String key = text.subSequence(keyStart + 1, keyEnd - 1).toString();
+			int valueStart = skipWhitespace(expect(':', skipWhitespace(keyEnd)));
+			int valueEnd = valueEnd(valueStart);
+			i = skipWhitespace(valueEnd);
+			boolean more = text.charAt(i) == ',';
+			if (more)
+				i = skipWhitespace(i + 1);
+
+			if (addElements(rootStart, key, valueStart))
+			{
+				// remove the field, and one of the commas around it
+				if (more)
+					removeFromSkeleton(keyStart, i);
+				else if (lastValueEnd >= 0)
+					removeFromSkeleton(lastValueEnd, valueEnd);
+				else
+					removeFromSkeleton(keyStart, valueEnd);
+			}
+			lastValueEnd = valueEnd;
+		}
+	}
+
+	/**
+	 * If key is the collection field's, add the elements of its value.
+	 *
+	 * @return true if key is the collection field's.
+	 */
+	private boolean addElements(String rootStart, String key, int valueStart)
+			throws SIMPLTranslationException
+	{
+		// polymorphic collections are never wrapped
+		String tag = collectionField.isPolymorphic() ? collectionField.getTagName() : collectionField
+				.elementStart();
+		int arrayStart = valueStart;
+		if (collectionField.isWrapped() && !collectionField.isPolymorphic())
+		{
+			if (!key.equals(collectionField.getTagName()))
+				return false;
+			int i = skipWhitespace(expect('{', valueStart));
+			if (text.charAt(i) == '}')
+				return true;
+			arrayStart = skipWhitespace(expect(':', skipWhitespace(stringEnd(i))));
+			setChunkFraming(rootStart + "\"" + key + "\":{\"" + tag + "\":[", ",", "]}}}");
+		}
+		else if (key.equals(tag))
+			setChunkFraming(rootStart + "\"" + tag + "\":[", ",", "]}}");
+		else
+			return false;
+
+		int i = skipWhitespace(expect('[', arrayStart));
+		while (text.charAt(i) != ']')
+		{
+			int elementEnd = valueEnd(i);
+			addElement(i, elementEnd);
+			i = nextInArray(elementEnd);
+		}
+		return true;
+	}
+
+	private int nextInArray(int valueEnd) throws SIMPLTranslationException
+	{
+		int i = skipWhitespace(valueEnd);
+		if (text.charAt(i) == ',')
+			return skipWhitespace(i + 1);
+		if (text.charAt(i) != ']')
+			throw malformed("expected , or ]", i);
+		return i;
+	}
+
+	private int skipWhitespace(int from) throws SIMPLTranslationException
+	{
+		int length = text.length();
+		for (int i = from; i < length; i++)
+			if (!Character.isWhitespace(text.charAt(i)))
+				return i;
+		throw malformed("premature end of file", length);
+	}
+
+	/**
+	 * @return The position after c, which must be at at.
+	 */
+	private int expect(char c, int at) throws SIMPLTranslationException
+	{
+		if (text.charAt(at) != c)
+			throw malformed("expected " + c, at);
+		return at + 1;
+	}
+
+	/**
+	 * @return The position after the string that starts at at.
+	 */
+	private int stringEnd(int at) throws SIMPLTranslationException
+	{
+		expect('"', at);
+		int length = text.length();
+		for (int i = at + 1; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if (c == '\\')
+				i++;
+			else if (c == '"')
+				return i + 1;
+		}
+		throw malformed("unterminated string", at);
+	}
+
+	/**
+	 * @return The position after the value that starts at at.
+	 */
+	private int valueEnd(int at) throws SIMPLTranslationException
+	{
+		char first = text.charAt(at);
+		if (first == '"')
+			return stringEnd(at);
+		int length = text.length();
+		if (first != '{' && first != '[')
+		{
+			// number, true, false or null
+			int i = at;
+			while (i < length && ",}] \t\r\n".indexOf(text.charAt(i)) < 0)
+				i++;
+			return i;
+		}
+		int depth = 0;
+		for (int i = at; i < length; i++)
+		{
+			char c = text.charAt(i);
+			if (c == '"')
+				i = stringEnd(i) - 1;
+			else if (c == '{' || c == '[')
+				depth++;
+			else if ((c == '}' || c == ']') && --depth == 0)
+				return i + 1;
+		}
+		throw malformed("premature end of file", length);
+	}
+}
@@ -16,11 +16,14 @@ import org.codehaus.jackson.JsonToken;
 import ecologylab.serialization.ClassDescriptor;
 import ecologylab.serialization.DeserializationHookStrategy;
 import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.FieldProjection;
 import ecologylab.serialization.FieldType;
+import ecologylab.serialization.LazyComposite;
 import ecologylab.serialization.SIMPLTranslationException;
 import ecologylab.serialization.SimplTypesScope;
 import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.deserializers.pullhandlers.DeserializationProcedureState;
+import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.element.IMappable;
 
 /**
@@ -38,11 +41,22 @@ public class JSONPullDeserializer extends StringPullDeserializer
   @Deprecated
   StringBuilder debugContext;
   
+	/**
+	 * JsonFactory is thread-safe, and expensive to construct, so all deserializers share one.
+	 */
+	private static final JsonFactory	JSON_FACTORY	= new JsonFactory();
+
 	/**
 	 * JsonParser object from the Jackson JSON parsing library. Implements a pull API for parsing JSON
 	 */
 	JsonParser	jp	= null;
 
+	/**
+	 * The document, when it is parsed from a CharSequence, so that lazy composite fields can be kept
+	 * as they are; otherwise null.
+	 */
+	String			jsonText;
+
 	public JSONPullDeserializer(SimplTypesScope translationScope,
 			TranslationContext translationContext, DeserializationHookStrategy deserializationHookStrategy)
 	{
@@ -109,26 +123,46 @@ public class JSONPullDeserializer extends StringPullDeserializer
 		}
 	}
 
+	@Override
+	public Object parseLazy(Object raw, FieldDescriptor fd, Object parent)
+			throws SIMPLTranslationException
+	{
+		try
+		{
+			// raw is a field, name and all, so put it in an object of its own
+			configure("{" + raw + "}");
+			debugContext = new StringBuilder();
+			jp.nextToken();
+			jp.nextToken();
+			jp.nextToken();
+			return getSubRoot(fd, jp.getCurrentName());
+		}
+		catch (IOException e)
+		{
+			throw new SIMPLTranslationException("exception occurred in deserialzation ", e);
+		}
+	}
+
 	private void configure(InputStream inputStream, Charset charSet) throws IOException, JsonParseException
 	{
 		// configure the json parser
-		JsonFactory f = new JsonFactory();
 		InputStreamReader tmpReader = new InputStreamReader(inputStream, charSet);
-		jp = f.createJsonParser(tmpReader);
+		jp = JSON_FACTORY.createJsonParser(tmpReader);
+		jsonText = null;
 	}
 	
 	private void configure(InputStream inputStream) throws IOException, JsonParseException
 	{
 		// configure the json parser
-		JsonFactory f = new JsonFactory();
-		jp = f.createJsonParser(inputStream);
+		jp = JSON_FACTORY.createJsonParser(inputStream);
+		jsonText = null;
 	}
 
 	private void configure(CharSequence charSequence) throws IOException, JsonParseException
 	{
 		// configure the json parser
-		JsonFactory f = new JsonFactory();
-		jp = f.createJsonParser(charSequence.toString());
+		jsonText = charSequence.toString();
+		jp = JSON_FACTORY.createJsonParser(jsonText);
 	}
 
 	private Object parse() throws IOException, JsonParseException, SIMPLTranslationException
@@ -244,114 +278,160 @@ public class JSONPullDeserializer extends StringPullDeserializer
 				String message = debugContext.toString() + "processing field " + currentFieldDescriptor.getName();
         debug(message);
 
-				switch (fieldType)
+				if (path == 3 && isProjectedOut(currentFieldDescriptor))
 				{
-				case SCALAR:
-					jp.nextToken();
-					currentFieldDescriptor.setFieldToScalar(root, jp.getText(), translationContext);
-					break;
-				case COMPOSITE_ELEMENT:
+					// skip the value, and whatever is in it
 					jp.nextToken();
+					jp.skipChildren();
+					currentFieldDescriptor = null;
+				}
+				else
+				{
+					switch (fieldType)
+					{
+					case SCALAR:
+						jp.nextToken();
+						currentFieldDescriptor.setFieldToScalar(root, jp.getText(), translationContext);
+						break;
+					case COMPOSITE_ELEMENT:
+						if (currentFieldDescriptor.isLazy() && jsonText != null)
+						{
+							// keep the field, name and all, as it is
+							int start = (int) jp.getTokenLocation().getCharOffset();
+							// which is before the comma that separates the field from the one before
+							while (jsonText.charAt(start) != '"')
+								start++;
+							jp.nextToken();
+							jp.skipChildren();
+							int end = (int) jp.getTokenLocation().getCharOffset() + 1;
+							currentFieldDescriptor.setFieldToComposite(root, new LazyComposite<Object>(
+									Format.JSON, jsonText.substring(start, end), currentFieldDescriptor,
+									translationScope, root));
+							break;
+						}
+						jp.nextToken();
 
-					String tagName = jp.getCurrentName();
-					subRoot = getSubRoot(currentFieldDescriptor, tagName);
+						String tagName = jp.getCurrentName();
+						subRoot = getSubRoot(currentFieldDescriptor, tagName);
 
-					ClassDescriptor subRootClassDescriptor = currentFieldDescriptor
-							.getChildClassDescriptor(tagName);
+						ClassDescriptor subRootClassDescriptor = currentFieldDescriptor
+								.getChildClassDescriptor(tagName);
 
-					// if (subRoot != null)
-					// subRoot.setupInParent(root, subRootClassDescriptor);
+						// if (subRoot != null)
+						// subRoot.setupInParent(root, subRootClassDescriptor);
 
-					currentFieldDescriptor.setFieldToComposite(root, subRoot);
-					break;
-				case COLLECTION_ELEMENT:
-					jp.nextToken();
-
-					if (currentFieldDescriptor.isPolymorphic())
-					{
-						// ignore the wrapper tag
-						if (!currentFieldDescriptor.isWrapped())
-							jp.nextToken();
+						currentFieldDescriptor.setFieldToComposite(root, currentFieldDescriptor.isLazy()
+								? new LazyComposite<Object>(subRoot) : subRoot);
+						break;
+					case COLLECTION_ELEMENT:
+						jp.nextToken();
 
-						while (jp.getCurrentToken() != JsonToken.END_ARRAY)
+						if (currentFieldDescriptor.isPolymorphic())
 						{
-							jp.nextToken();
-							jp.nextToken();
-
-							subRoot = getSubRoot(currentFieldDescriptor, jp.getCurrentName());
-							Collection collection = (Collection) currentFieldDescriptor
-									.automaticLazyGetCollectionOrMap(root);
-							collection.add(subRoot);
+							// ignore the wrapper tag
+							if (!currentFieldDescriptor.isWrapped())
+								jp.nextToken();
 
-							jp.nextToken();
-							jp.nextToken();
-						}
-					}
-					else
-					{
-							while (jp.nextToken() != JsonToken.END_ARRAY)
+							while (jp.getCurrentToken() != JsonToken.END_ARRAY)
 							{
+								jp.nextToken();
+								jp.nextToken();
+
 								subRoot = getSubRoot(currentFieldDescriptor, jp.getCurrentName());
-								Collection collection = (Collection) currentFieldDescriptor
-										.automaticLazyGetCollectionOrMap(root);
-								collection.add(subRoot);
+								if (isStreamedCollection(currentFieldDescriptor))
+								{
+									streamElement(root, subRoot);
+								}
+								else
+								{
+									Collection collection = (Collection) currentFieldDescriptor
+											.automaticLazyGetCollectionOrMap(root);
+									collection.add(subRoot);
+								}
+
+								jp.nextToken();
+								jp.nextToken();
 							}
-					}
-					break;
-				case MAP_ELEMENT:
-					jp.nextToken();
-
-					if (currentFieldDescriptor.isPolymorphic())
-					{
-						// ignore the wrapper tag
-						if (!currentFieldDescriptor.isWrapped())
-							jp.nextToken();
+						}
+						else
+						{
+								while (jp.nextToken() != JsonToken.END_ARRAY)
+								{
+									subRoot = getSubRoot(currentFieldDescriptor, jp.getCurrentName());
+									if (isStreamedCollection(currentFieldDescriptor))
+									{
+										streamElement(root, subRoot);
+									}
+									else
+									{
+										Collection collection = (Collection) currentFieldDescriptor
+												.automaticLazyGetCollectionOrMap(root);
+										collection.add(subRoot);
+									}
+								}
+						}
+						break;
+					case MAP_ELEMENT:
+						jp.nextToken();
 
-						while (jp.getCurrentToken() != JsonToken.END_ARRAY)
+						if (currentFieldDescriptor.isPolymorphic())
 						{
-							jp.nextToken();
-							jp.nextToken();
+							// ignore the wrapper tag
+							if (!currentFieldDescriptor.isWrapped())
+								jp.nextToken();
 
-							subRoot = getSubRoot(currentFieldDescriptor, jp.getCurrentName());
-							if (subRoot instanceof IMappable)
+							while (jp.getCurrentToken() != JsonToken.END_ARRAY)
 							{
-								final Object key = ((IMappable) subRoot).key();
-								Map map = (Map) currentFieldDescriptor.automaticLazyGetCollectionOrMap(root);
-								map.put(key, subRoot);
+								jp.nextToken();
+								jp.nextToken();
+
+								subRoot = getSubRoot(currentFieldDescriptor, jp.getCurrentName());
+								if (subRoot instanceof IMappable)
+								{
+									final Object key = ((IMappable) subRoot).key();
+									Map map = (Map) currentFieldDescriptor.automaticLazyGetCollectionOrMap(root);
+									map.put(key, subRoot);
+								}
+
+								jp.nextToken();
+								jp.nextToken();
 							}
 
-							jp.nextToken();
-							jp.nextToken();
 						}
-
-					}
-					else
-					{
-						while (jp.nextToken() != JsonToken.END_ARRAY)
+						else
 						{
-							subRoot = getSubRoot(currentFieldDescriptor, jp.getCurrentName());
-							if (subRoot instanceof IMappable)
+							while (jp.nextToken() != JsonToken.END_ARRAY)
 							{
-								final Object key = ((IMappable) subRoot).key();
-								Map map = (Map) currentFieldDescriptor.automaticLazyGetCollectionOrMap(root);
-								map.put(key, subRoot);
+								subRoot = getSubRoot(currentFieldDescriptor, jp.getCurrentName());
+								if (subRoot instanceof IMappable)
+								{
+									final Object key = ((IMappable) subRoot).key();
+									Map map = (Map) currentFieldDescriptor.automaticLazyGetCollectionOrMap(root);
+									map.put(key, subRoot);
+								}
 							}
 						}
-					}
-					break;
-				case COLLECTION_SCALAR:
-					jp.nextToken();
+						break;
+					case COLLECTION_SCALAR:
+						jp.nextToken();
 
-					while (jp.nextToken() != JsonToken.END_ARRAY)
-					{
-						currentFieldDescriptor.addLeafNodeToCollection(root, jp.getText(), translationContext);
+						while (jp.nextToken() != JsonToken.END_ARRAY)
+						{
+							currentFieldDescriptor.addLeafNodeToCollection(root, jp.getText(), translationContext);
+						}
+						break;
+					case WRAPPER:
+
+						if (!currentFieldDescriptor.getWrappedFD().isPolymorphic())
+							jp.nextToken();
+						break;
 					}
-					break;
-				case WRAPPER:
 
-					if (!currentFieldDescriptor.getWrappedFD().isPolymorphic())
+					if (path == 2 && !currentFieldDescriptor.isPolymorphic())
+					{
+						// step onto the end of the wrapper object, so that it isn't taken for the end of root
 						jp.nextToken();
-					break;
+					}
 				}
 				
 				state = nextDeserializationProcedureState(state, fieldType);
@@ -372,7 +452,7 @@ public class JSONPullDeserializer extends StringPullDeserializer
 
 		deserializationPostHook(root, translationContext);
 		if (deserializationHookStrategy != null)
-			deserializationHookStrategy.deserializationPostHook(root, 
+			deserializationHookStrategy.deserializationPostHook(root, 
 					currentFieldDescriptor == null || currentFieldDescriptor.getType() == FieldType.IGNORED_ELEMENT
 					? null : currentFieldDescriptor);
 		
@@ -429,12 +509,16 @@ public class JSONPullDeserializer extends StringPullDeserializer
 				if (deserializationHookStrategy != null)
 					deserializationHookStrategy.deserializationPreHook(subRoot, currentFieldDescriptor);
 
+				FieldProjection outerProjection = enterProjection(currentFieldDescriptor);
+				boolean onStreamedPath = enterStreamedComposite(currentFieldDescriptor);
 				createObjectModel(subRoot, subRootClassDescriptor);
+				exitStreamedComposite(onStreamedPath);
+				exitProjection(outerProjection);
 			}
 		}
 
 		if (deserializationHookStrategy != null && subRoot != null)
-		{
+		{
 			Object newSubRoot= deserializationHookStrategy.changeObjectIfNecessary(subRoot, currentFieldDescriptor);
 			if (newSubRoot != null)
 				subRoot = newSubRoot;
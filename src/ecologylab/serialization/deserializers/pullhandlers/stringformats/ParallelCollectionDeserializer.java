@@ -0,0 +1,256 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ecologylab.serialization.ElementState;
+import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.formatenums.StringFormat;
+
+/**
+ * Deserializes a document whose bulk is one collection field of the root on several threads.
+ * <p/>
+ * The calling thread only finds where each element of the collection starts and ends in the text.
+ * The elements are then deserialized in chunks, by the tasks of a ForkJoinPool, while the calling
+ * thread deserializes the rest of the document. Each chunk is framed as a document of its own, with
+ * a root that holds just those elements, and deserialized with the SimplCodec, so that each thread
+ * reuses its own deserializer and TranslationContext. Finally, the elements are added to the real
+ * root's collection, in document order.
+ * <p/>
+ * Because elements are deserialized apart from each other, simpl:ref cannot refer across them.
+ * Documents that may hold references, or any document while SimplTypesScope.graphSwitch is on, are
+ * deserialized on the calling thread instead, as usual. The deserialization hooks of the elements
+ * run on the pool's threads, and before the post hook of the root. The hooks of the root also run
+ * for each chunk's root, which is then dropped.
+ */
+public class ParallelCollectionDeserializer
+{
+	/**
+	 * Used when no pool is passed in.
+	 */
+	private static ForkJoinPool						defaultPool;
+
+	/**
+	 * Split elements into about this many chunks per thread, so that threads that get quick ones can
+	 * steal more.
+	 */
+	private static final int							CHUNKS_PER_THREAD	= 4;
+
+	private final SimplTypesScope					simplTypesScope;
+
+	private final StringFormat						stringFormat;
+
+	private final ForkJoinPool						pool;
+
+	/**
+	 *
+	 * @param simplTypesScope
+	 * @param stringFormat
+	 *          XML or JSON.
+	 * @param pool
+	 *          may be null, to use a pool shared by all ParallelCollectionDeserializers, with a thread
+	 *          per processor.
+	 * @throws SIMPLTranslationException
+	 *           if stringFormat is not supported.
+	 */
+	public ParallelCollectionDeserializer(SimplTypesScope simplTypesScope,
+			StringFormat stringFormat, ForkJoinPool pool) throws SIMPLTranslationException
+	{
+		if (stringFormat != StringFormat.XML && stringFormat != StringFormat.JSON)
+			throw new SIMPLTranslationException(stringFormat
+					+ " format not supported for parallel deserialization");
+		this.simplTypesScope = simplTypesScope;
+		this.stringFormat = stringFormat;
+		this.pool = pool != null ? pool : defaultPool();
+	}
+
+	private static synchronized ForkJoinPool defaultPool()
+	{
+		if (defaultPool == null)
+			defaultPool = new ForkJoinPool();
+		return defaultPool;
+	}
+
+	/**
+	 *
+	 * @param charSequence
+	 * @param collectionFieldName
+	 *          name of a collection field of the root, whose elements are composites.
+	 * @return The root of the deserialized object graph.
+	 * @throws SIMPLTranslationException
+	 */
+	public Object deserialize(CharSequence charSequence, String collectionFieldName)
+			throws SIMPLTranslationException
+	{
+		if (SimplTypesScope.graphSwitch == SimplTypesScope.GRAPH_SWITCH.ON
+				|| mayHaveReferences(charSequence))
+			return simplTypesScope.deserialize(charSequence, stringFormat);
+
+		CollectionSplitter splitter = stringFormat == StringFormat.XML ? new XMLCollectionSplitter(
+				charSequence, simplTypesScope, collectionFieldName) : new JSONCollectionSplitter(
+				charSequence, simplTypesScope, collectionFieldName);
+		splitter.split();
+
+		int size = splitter.size();
+		Object[] elements = new Object[size];
+		int chunkSize = Math.max(1, size / (pool.getParallelism() * CHUNKS_PER_THREAD));
+		AtomicBoolean cancelled = new AtomicBoolean();
+		ChunkTask task = new ChunkTask(splitter, elements, 0, size, chunkSize, cancelled);
+		if (size > 0)
+			pool.execute(task);
+
+		Object root;
+		boolean deserialized = false;
+		try
+		{
+			root = simplTypesScope.deserialize(splitter.skeleton(), stringFormat);
+			deserialized = true;
+		}
+		finally
+		{
+			if (!deserialized && size > 0)
+			{
+				// the chunks are of no use now; drop those not yet started, and wait for the rest.
+				// task.cancel() would mark the task done while its subtasks still run.
+				cancelled.set(true);
+				task.quietlyJoin();
+			}
+		}
+
+		if (size > 0)
+		{
+			try
+			{
+				task.join();
+			}
+			catch (RuntimeException e)
+			{
+				throw translationException(e);
+			}
+			addElements(root, splitter.getCollectionField(), elements);
+		}
+		return root;
+	}
+
+	private boolean mayHaveReferences(CharSequence charSequence)
+	{
+		String reference = stringFormat == StringFormat.XML ? TranslationContext.SIMPL + ":"
+				+ TranslationContext.REF : TranslationContext.JSON_SIMPL_REF;
+		return contains(charSequence, reference);
+	}
+
+	/**
+	 * Look for target in text where it is, rather than in a String copy of it.
+	 */
+	static boolean contains(CharSequence text, String target)
+	{
+		char first = target.charAt(0);
+		int last = text.length() - target.length();
+		for (int i = 0; i <= last; i++)
+		{
+			if (text.charAt(i) != first)
+				continue;
+			int j = 1;
+			while (j < target.length() && text.charAt(i + j) == target.charAt(j))
+				j++;
+			if (j == target.length())
+				return true;
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addElements(Object root, FieldDescriptor collectionField, Object[] elements)
+	{
+		Collection<Object> collection = (Collection<Object>) collectionField.automaticLazyGetCollectionOrMap(root);
+		for (Object element : elements)
+		{
+			if (element instanceof ElementState && root instanceof ElementState)
+				((ElementState) element).setupInParent((ElementState) root);
+			collection.add(element);
+		}
+	}
+
+	/**
+	 * Get the SIMPLTranslationException a ChunkTask failed with back out of the RuntimeException that
+	 * carried it, which ForkJoinTask.join() may have wrapped again.
+	 */
+	private static SIMPLTranslationException translationException(RuntimeException e)
+	{
+		for (Throwable cause = e; cause != null; cause = cause.getCause())
+			if (cause instanceof SIMPLTranslationException)
+				return (SIMPLTranslationException) cause;
+		return new SIMPLTranslationException("exception occurred in deserialzation ", e);
+	}
+
+	/**
+	 * Deserializes elements from start to end, in halves, until there are no more than chunkSize.
+	 */
+	private class ChunkTask extends RecursiveAction
+	{
+		private static final long					serialVersionUID	= 1L;
+
+		private final CollectionSplitter	splitter;
+
+		private final Object[]						elements;
+
+		private final int									start;
+
+		private final int									end;
+
+		private final int									chunkSize;
+
+		/**
+		 * Shared by all the tasks of one document, each of which looks at it before it starts, since
+		 * ForkJoinTask.cancel() does not reach subtasks that have already been forked.
+		 */
+		private final AtomicBoolean				cancelled;
+
+		ChunkTask(CollectionSplitter splitter, Object[] elements, int start, int end, int chunkSize,
+				AtomicBoolean cancelled)
+		{
+			this.splitter = splitter;
+			this.elements = elements;
+			this.start = start;
+			this.end = end;
+			this.chunkSize = chunkSize;
+			this.cancelled = cancelled;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (cancelled.get())
+				return;
+			if (end - start > chunkSize)
+			{
+				int middle = (start + end) >>> 1;
+				invokeAll(new ChunkTask(splitter, elements, start, middle, chunkSize, cancelled),
+						new ChunkTask(splitter, elements, middle, end, chunkSize, cancelled));
+				return;
+			}
+			try
+			{
+				Object chunkRoot = simplTypesScope.deserialize(splitter.chunkDocument(start, end),
+						stringFormat);
+				Collection<?> chunk = (Collection<?>) splitter.getCollectionField()
+						.automaticLazyGetCollectionOrMap(chunkRoot);
+				if (chunk.size() != end - start)
+					throw new SIMPLTranslationException("expected " + (end - start) + " elements in chunk, got "
+							+ chunk.size());
+				int i = start;
+				for (Object element : chunk)
+					elements[i++] = element;
+			}
+			catch (SIMPLTranslationException e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
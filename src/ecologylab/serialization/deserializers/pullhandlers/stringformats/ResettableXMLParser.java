@@ -0,0 +1,22 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import ecologylab.serialization.SIMPLTranslationException;
+
+/**
+ * An XMLParser that can be pointed at a new document, discarding the state of the last one, so
+ * that its buffers and other internal structures can be reused.
+ * <p/>
+ * XMLParserFactory reuses a deserializer's parser when it implements this, and makes a new one for
+ * each document otherwise.
+ */
+public interface ResettableXMLParser extends XMLParser
+{
+	void reset(InputStream inputStream, Charset charSet) throws SIMPLTranslationException;
+
+	void reset(InputStream inputStream) throws SIMPLTranslationException;
+
+	void reset(CharSequence charSequence) throws SIMPLTranslationException;
+}
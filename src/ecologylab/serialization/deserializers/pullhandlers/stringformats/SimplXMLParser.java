@@ -0,0 +1,1376 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.XMLTools;
+
+/**
+ * A non-validating XMLParser for the documents S.IM.PL writes, that does not depend on the
+ * platform.
+ * <p/>
+ * UTF-8 (and ISO-8859-1) bytes, from an InputStream or a ByteBuffer, which may be a
+ * MappedByteBuffer, are decoded in chunks straight into one char buffer, which the parser scans.
+ * Other encodings go through an InputStreamReader. Text and attribute values have their references
+ * replaced in place, and are handed out as CharSequence views of that buffer; Strings are only made
+ * when asked for. Tag and attribute names are looked up in a symbol table that lives as long as the
+ * parser, so the same names give the same Strings, without allocating. The buffers are kept across
+ * reset()s, which makes a parser that is reused for many documents nearly allocation free.
+ * <p/>
+ * Like StAX, it reports an empty element as a START_ELEMENT followed by an END_ELEMENT. Unlike
+ * StAX, it never splits a run of text into more than one CHARACTERS event, reports CDATA sections
+ * as CHARACTERS, skips comments, processing instructions and the DOCTYPE, which is not read, and
+ * does not report xmlns attributes or resolve namespaces, though it keeps the declarations in scope,
+ * for elements that are kept apart from their document. Only the predefined entities and character
+ * references are understood.
+ * <p/>
+ * skipElement() passes over a whole element looking only for the '<'s that start markup, so that
+ * elements nobody wants cost little more than reading them in. It can hand back the text it passed
+ * over, for elements that are kept as they are, to be read later.
+ */
+public class SimplXMLParser implements ResettableXMLParser, CharSequenceXMLParser,
+		SkippingXMLParser
+{
+	private static final int		BUFFER_SIZE						= 8192;
+
+	/**
+	 * Buffers that grew bigger than this for a document are dropped when the parser is reset.
+	 */
+	private static final int		MAX_RETAINED_BUFFER		= 1 << 20;
+
+	private static final Charset	UTF_8								= Charset.forName("UTF-8");
+
+	private static final Charset	US_ASCII						= Charset.forName("US-ASCII");
+
+	private static final Charset	ISO_8859_1					= Charset.forName("ISO-8859-1");
+
+	private static final String	XMLNS								= "xmlns";
+
+	private char[]							buf										= new char[BUFFER_SIZE];
+
+	/**
+	 * The start of the current event in buf. Offsets of names and text are relative to this, so that
+	 * compacting the buffer only has to move it.
+	 */
+	private int									mark;
+
+	private int									pos;
+
+	private int									limit;
+
+	/**
+	 * Where text goes as references are replaced, while scanning text or an attribute value.
+	 */
+	private int									write;
+
+	// input
+	private final byte[]				ownBytes							= new byte[BUFFER_SIZE];
+
+	private byte[]							bytes;
+
+	private int									bytePos;
+
+	private int									byteLimit;
+
+	private InputStream					inputStream;
+
+	private ByteBuffer					byteBuffer;
+
+	private Reader							reader;
+
+	private boolean							latin1;
+
+	private boolean							inputEnded;
+
+	// current event
+	private int									eventType;
+
+	private Symbol							symbol;
+
+	private int									textStart;
+
+	private int									textLength;
+
+	private boolean							textWhitespace;
+
+	private int									attributeCount;
+
+	private Symbol[]						attributeNames				= new Symbol[8];
+
+	private int[]								attributeValueStarts	= new int[8];
+
+	private int[]								attributeValueLengths	= new int[8];
+
+	private Span[]							attributeValueSpans		= new Span[8];
+
+	private final Span					textSpan							= new Span();
+
+	private boolean							pendingEnd;
+
+	private Symbol[]						elementStack					= new Symbol[16];
+
+	private int									depth;
+
+	private boolean							rootEnded;
+
+	/**
+	 * The namespace declarations in scope, outermost first: the prefix, which is "" for the default
+	 * namespace, the URI, and the depth of the element that declared it.
+	 */
+	private String[]						namespacePrefixes			= new String[4];
+
+	private String[]						namespaceURIs					= new String[4];
+
+	private int[]								namespaceDepths				= new int[4];
+
+	private int									namespaceCount;
+
+	private final SymbolTable		symbols								= new SymbolTable();
+
+	/**
+	 * While skipElement(StringBuilder) runs, where the skipped text goes, and where in buf the text
+	 * that is not there yet starts.
+	 */
+	private StringBuilder				capture;
+
+	private int									captureStart;
+
+	public SimplXMLParser()
+	{
+	}
+
+	@Override
+	public void reset(InputStream inputStream, Charset charSet) throws SIMPLTranslationException
+	{
+		clear();
+		this.inputStream = inputStream;
+		this.bytes = ownBytes;
+		readBytes();
+		if (charSet == null)
+			detectEncoding();
+		else if (UTF_8.equals(charSet) || US_ASCII.equals(charSet))
+			skipUtf8ByteOrderMark();
+		else if (ISO_8859_1.equals(charSet))
+			latin1 = true;
+		else
+			readThrough(charSet);
+	}
+
+	@Override
+	public void reset(InputStream inputStream) throws SIMPLTranslationException
+	{
+		clear();
+		this.inputStream = inputStream;
+		this.bytes = ownBytes;
+		readBytes();
+		detectEncoding();
+	}
+
+	/**
+	 * Parse the bytes from byteBuffer's position to its limit. The bytes of a heap buffer are decoded
+	 * where they are; a direct or mapped buffer is read in chunks. The encoding is detected as in
+	 * reset(InputStream).
+	 *
+	 * @param byteBuffer
+	 * @throws SIMPLTranslationException
+	 */
+	public void reset(ByteBuffer byteBuffer) throws SIMPLTranslationException
+	{
+		clear();
+		if (byteBuffer.hasArray())
+		{
+			bytes = byteBuffer.array();
+			bytePos = byteBuffer.arrayOffset() + byteBuffer.position();
+			byteLimit = byteBuffer.arrayOffset() + byteBuffer.limit();
+			inputEnded = true;
+		}
+		else
+		{
+			this.byteBuffer = byteBuffer.duplicate();
+			bytes = ownBytes;
+			readBytes();
+		}
+		detectEncoding();
+	}
+
+	@Override
+	public void reset(CharSequence charSequence) throws SIMPLTranslationException
+	{
+		clear();
+		int length = charSequence.length();
+		if (buf.length < length)
+			buf = new char[Math.max(length, BUFFER_SIZE)];
+		if (charSequence instanceof String)
+			((String) charSequence).getChars(0, length, buf, 0);
+		else if (charSequence instanceof StringBuilder)
+			((StringBuilder) charSequence).getChars(0, length, buf, 0);
+		else
+			for (int i = 0; i < length; i++)
+				buf[i] = charSequence.charAt(i);
+		limit = length;
+		inputEnded = true;
+	}
+
+	private void clear()
+	{
+		if (buf.length > MAX_RETAINED_BUFFER)
+			buf = new char[BUFFER_SIZE];
+		mark = pos = limit = write = 0;
+		bytes = null;
+		bytePos = byteLimit = 0;
+		inputStream = null;
+		byteBuffer = null;
+		reader = null;
+		latin1 = false;
+		inputEnded = false;
+		eventType = START_DOCUMENT;
+		symbol = null;
+		attributeCount = 0;
+		pendingEnd = false;
+		depth = 0;
+		rootEnded = false;
+		Arrays.fill(namespaceURIs, 0, namespaceCount, null);
+		namespaceCount = 0;
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// input
+
+	/**
+	 * Look for a byte order mark, or an encoding declaration, at the start of the bytes, and switch
+	 * away from UTF-8 if they call for it.
+	 */
+	private void detectEncoding() throws SIMPLTranslationException
+	{
+		int available = byteLimit - bytePos;
+		if (available >= 2)
+		{
+			int b0 = bytes[bytePos] & 0xff;
+			int b1 = bytes[bytePos + 1] & 0xff;
+			if ((b0 == 0xfe && b1 == 0xff) || (b0 == 0xff && b1 == 0xfe))
+			{
+				readThrough(Charset.forName("UTF-16"));
+				return;
+			}
+		}
+		if (skipUtf8ByteOrderMark())
+			return;
+
+		String encoding = declaredEncoding();
+		if (encoding == null)
+			return;
+		Charset charset;
+		try
+		{
+			charset = Charset.forName(encoding);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new SIMPLTranslationException("unsupported encoding " + encoding);
+		}
+		if (ISO_8859_1.equals(charset))
+			latin1 = true;
+		else if (!UTF_8.equals(charset) && !US_ASCII.equals(charset))
+			readThrough(charset);
+	}
+
+	private boolean skipUtf8ByteOrderMark()
+	{
+		if (byteLimit - bytePos >= 3 && (bytes[bytePos] & 0xff) == 0xef
+				&& (bytes[bytePos + 1] & 0xff) == 0xbb && (bytes[bytePos + 2] & 0xff) == 0xbf)
+		{
+			bytePos += 3;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The encoding in the XML declaration at the start of the bytes that have been read, if
+	 *         any.
+	 */
+	private String declaredEncoding()
+	{
+		if (!bytesStartWith("<?xml", bytePos))
+			return null;
+		int end = bytePos;
+		while (end < byteLimit - 1 && !(bytes[end] == '?' && bytes[end + 1] == '>'))
+			end++;
+		for (int i = bytePos; i < end; i++)
+		{
+			if (bytesStartWith("encoding", i))
+			{
+				int j = i + "encoding".length();
+				while (j < end && (bytes[j] == ' ' || bytes[j] == '='))
+					j++;
+				if (j == end || (bytes[j] != '"' && bytes[j] != '\''))
+					return null;
+				byte quote = bytes[j];
+				int start = ++j;
+				while (j < end && bytes[j] != quote)
+					j++;
+				return new String(bytes, start, j - start, ISO_8859_1);
+			}
+		}
+		return null;
+	}
+
+	private boolean bytesStartWith(String prefix, int at)
+	{
+		if (at + prefix.length() > byteLimit)
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (bytes[at + i] != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Decode the rest of the input with charset, which this parser can't do itself.
+	 */
+	private void readThrough(Charset charset) throws SIMPLTranslationException
+	{
+		if (inputStream != null)
+		{
+			final byte[] head = Arrays.copyOfRange(bytes, bytePos, byteLimit);
+			final InputStream tail = inputStream;
+			InputStream rest = new InputStream()
+			{
+				int	i;
+
+				@Override
+				public int read() throws IOException
+				{
+					return i < head.length ? head[i++] & 0xff : tail.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException
+				{
+					if (i == head.length)
+						return tail.read(b, off, len);
+					int n = Math.min(len, head.length - i);
+					System.arraycopy(head, i, b, off, n);
+					i += n;
+					return n;
+				}
+			};
+			reader = new InputStreamReader(rest, charset);
+		}
+		else
+		{
+			ByteBuffer rest = ByteBuffer.wrap(bytes, bytePos, byteLimit - bytePos);
+			CharBuffer head = charset.decode(rest);
+			CharBuffer tail = byteBuffer == null ? CharBuffer.allocate(0) : charset.decode(byteBuffer);
+			CharBuffer chars = CharBuffer.allocate(head.remaining() + tail.remaining());
+			chars.put(head).put(tail).flip();
+			reset(chars);
+		}
+	}
+
+	/**
+	 * Read more bytes, after those that have not been decoded yet.
+	 *
+	 * @return false if there are no more.
+	 */
+	private boolean readBytes() throws SIMPLTranslationException
+	{
+		if (inputEnded)
+			return false;
+		int left = byteLimit - bytePos;
+		System.arraycopy(bytes, bytePos, bytes, 0, left);
+		bytePos = 0;
+		byteLimit = left;
+		int n;
+		if (byteBuffer != null)
+		{
+			n = Math.min(bytes.length - left, byteBuffer.remaining());
+			byteBuffer.get(bytes, left, n);
+			if (n == 0)
+				n = -1;
+		}
+		else
+		{
+			try
+			{
+				n = inputStream.read(bytes, left, bytes.length - left);
+			}
+			catch (IOException e)
+			{
+				throw new SIMPLTranslationException("IOException reading XML", e);
+			}
+		}
+		if (n <= 0)
+		{
+			inputEnded = true;
+			return false;
+		}
+		byteLimit += n;
+		return true;
+	}
+
+	/**
+	 * Add more characters to buf, after dropping those before the current event.
+	 *
+	 * @return false at the end of the input.
+	 */
+	private boolean more() throws SIMPLTranslationException
+	{
+		if (reader == null && bytes == null)
+			return false;
+		if (capture != null)
+		{
+			capture.append(buf, captureStart, limit - captureStart);
+			captureStart = limit - mark;
+		}
+		if (mark > 0)
+		{
+			System.arraycopy(buf, mark, buf, 0, limit - mark);
+			pos -= mark;
+			limit -= mark;
+			write -= mark;
+			mark = 0;
+		}
+		if (buf.length - limit < 2)
+			buf = Arrays.copyOf(buf, buf.length * 2);
+
+		if (reader != null)
+		{
+			try
+			{
+				int n = reader.read(buf, limit, buf.length - limit);
+				if (n <= 0)
+					return false;
+				limit += n;
+				return true;
+			}
+			catch (IOException e)
+			{
+				throw new SIMPLTranslationException("IOException reading XML", e);
+			}
+		}
+
+		for (;;)
+		{
+			int n = latin1 ? decodeLatin1() : decodeUtf8();
+			if (n > 0)
+			{
+				limit += n;
+				return true;
+			}
+			if (!readBytes())
+			{
+				if (bytePos < byteLimit)
+					throw new SIMPLTranslationException("truncated UTF-8 sequence at the end of the input");
+				return false;
+			}
+		}
+	}
+
+	private int decodeLatin1()
+	{
+		int n = Math.min(byteLimit - bytePos, buf.length - limit);
+		for (int i = 0; i < n; i++)
+			buf[limit + i] = (char) (bytes[bytePos + i] & 0xff);
+		bytePos += n;
+		return n;
+	}
+
+	/**
+	 * Decode as many whole UTF-8 sequences as fit into buf.
+	 *
+	 * @return The number of chars decoded.
+	 */
+	private int decodeUtf8() throws SIMPLTranslationException
+	{
+		final byte[] b = bytes;
+		final char[] d = buf;
+		int p = bytePos;
+		final int end = byteLimit;
+		int o = limit;
+		final int oEnd = d.length;
+		while (p < end && o < oEnd)
+		{
+			int c = b[p];
+			if (c >= 0)
+			{
+				d[o++] = (char) c;
+				p++;
+			}
+			else if ((c & 0xe0) == 0xc0)
+			{
+				if (p + 1 >= end)
+					break;
+				d[o++] = (char) (((c & 0x1f) << 6) | continuation(b[p + 1]));
+				p += 2;
+			}
+			else if ((c & 0xf0) == 0xe0)
+			{
+				if (p + 2 >= end)
+					break;
+				d[o++] = (char) (((c & 0x0f) << 12) | (continuation(b[p + 1]) << 6) | continuation(b[p + 2]));
+				p += 3;
+			}
+			else if ((c & 0xf8) == 0xf0)
+			{
+				if (p + 3 >= end || o + 1 >= oEnd)
+					break;
+				int codePoint = ((c & 0x07) << 18) | (continuation(b[p + 1]) << 12)
+						| (continuation(b[p + 2]) << 6) | continuation(b[p + 3]);
+				d[o++] = Character.highSurrogate(codePoint);
+				d[o++] = Character.lowSurrogate(codePoint);
+				p += 4;
+			}
+			else
+				throw new SIMPLTranslationException("malformed UTF-8 byte " + (c & 0xff));
+		}
+		bytePos = p;
+		return o - limit;
+	}
+
+	private static int continuation(byte b) throws SIMPLTranslationException
+	{
+		if ((b & 0xc0) != 0x80)
+			throw new SIMPLTranslationException("malformed UTF-8 continuation byte " + (b & 0xff));
+		return b & 0x3f;
+	}
+
+	/**
+	 * Make sure that there are at least n chars from pos on.
+	 *
+	 * @return false if the input ends first.
+	 */
+	private boolean ensure(int n) throws SIMPLTranslationException
+	{
+		while (limit - pos < n)
+			if (!more())
+				return false;
+		return true;
+	}
+
+	private char nextChar() throws SIMPLTranslationException
+	{
+		if (pos == limit && !more())
+			throw prematureEnd();
+		return buf[pos++];
+	}
+
+	private boolean startsWith(String prefix) throws SIMPLTranslationException
+	{
+		if (!ensure(prefix.length()))
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+			if (buf[pos + i] != prefix.charAt(i))
+				return false;
+		return true;
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// scanning
+
+	@Override
+	public int next() throws SIMPLTranslationException
+	{
+		attributeCount = 0;
+		if (pendingEnd)
+		{
+			pendingEnd = false;
+			return endElement();
+		}
+		if (eventType == END_DOCUMENT)
+			return END_DOCUMENT;
+
+		for (;;)
+		{
+			mark = pos;
+			if (pos == limit && !more())
+			{
+				if (depth > 0 || !rootEnded)
+					throw prematureEnd();
+				return eventType = END_DOCUMENT;
+			}
+			if (buf[pos] != '<')
+			{
+				if (depth > 0)
+				{
+					scanText();
+					return eventType = CHARACTERS;
+				}
+				skipWhitespaceOutsideRoot();
+				continue;
+			}
+			if (!ensure(2))
+				throw prematureEnd();
+			char c = buf[pos + 1];
+			if (c == '/')
+			{
+				scanEndTag();
+				return endElement();
+			}
+			if (c == '?')
+				skipPast("?>");
+			else if (c == '!')
+			{
+				if (startsWith("<!--"))
+					skipPast("-->");
+				else if (startsWith("<![CDATA["))
+				{
+					if (depth == 0)
+						throw malformed("CDATA outside of the root element");
+					scanCData();
+					return eventType = CHARACTERS;
+				}
+				else if (startsWith("<!DOCTYPE"))
+					skipDoctype();
+				else
+					throw malformed("unexpected <!");
+			}
+			else
+			{
+				if (rootEnded)
+					throw malformed("a second root element");
+				scanStartTag();
+				return eventType = START_ELEMENT;
+			}
+		}
+	}
+
+	private int endElement()
+	{
+		symbol = elementStack[--depth];
+		elementStack[depth] = null;
+		while (namespaceCount > 0 && namespaceDepths[namespaceCount - 1] > depth)
+			namespaceURIs[--namespaceCount] = null;
+		if (depth == 0)
+			rootEnded = true;
+		return eventType = END_ELEMENT;
+	}
+
+	@Override
+	public int nextTag() throws SIMPLTranslationException
+	{
+		int event = next();
+		while (event == CHARACTERS && textWhitespace)
+			event = next();
+		if (event != START_ELEMENT && event != END_ELEMENT)
+			throw malformed("expected a start or end tag");
+		return event;
+	}
+
+	@Override
+	public int skipElement() throws SIMPLTranslationException
+	{
+		return skipElement(null);
+	}
+
+	@Override
+	public int skipElement(StringBuilder content) throws SIMPLTranslationException
+	{
+		if (eventType != START_ELEMENT)
+			throw new IllegalStateException("skipElement() at event " + eventType);
+		attributeCount = 0;
+		if (pendingEnd)
+		{
+			pendingEnd = false;
+			return endElement();
+		}
+
+		capture = content;
+		captureStart = pos;
+		try
+		{
+			return skipContent();
+		}
+		finally
+		{
+			capture = null;
+		}
+	}
+
+	/**
+	 * Move past the end tag of the current element, appending what comes before it to capture, if
+	 * that is set.
+	 */
+	private int skipContent() throws SIMPLTranslationException
+	{
+		int nesting = 0;
+		for (;;)
+		{
+			int p = pos;
+			final int end = limit;
+			final char[] b = buf;
+			while (p < end && b[p] != '<')
+				p++;
+			pos = p;
+			if (p == end)
+			{
+				mark = pos;
+				if (!more())
+					throw prematureEnd();
+				continue;
+			}
+			mark = pos;
+			if (!ensure(2))
+				throw prematureEnd();
+			char c = buf[pos + 1];
+			if (c == '/')
+			{
+				if (nesting == 0)
+				{
+					if (capture != null)
+						capture.append(buf, captureStart, pos - captureStart);
+					scanEndTag();
+					return endElement();
+				}
+				nesting--;
+				skipPast(">");
+			}
+			else if (c == '?')
+				skipPast("?>");
+			else if (c == '!')
+			{
+				if (startsWith("<!--"))
+					skipPast("-->");
+				else if (startsWith("<![CDATA["))
+					skipPast("]]>");
+				else
+					throw malformed("unexpected <!");
+			}
+			else if (!skipStartTag())
+				nesting++;
+		}
+	}
+
+	/**
+	 * Pass over a start tag, without looking at its name or attributes.
+	 *
+	 * @return true if it was an empty element tag, that has no end tag.
+	 */
+	private boolean skipStartTag() throws SIMPLTranslationException
+	{
+		pos++;
+		char quote = 0;
+		char last = 0;
+		for (;;)
+		{
+			char c = nextChar();
+			if (quote != 0)
+			{
+				if (c == quote)
+					quote = 0;
+			}
+			else if (c == '"' || c == '\'')
+				quote = c;
+			else if (c == '>')
+				return last == '/';
+			last = c;
+		}
+	}
+
+	private void skipWhitespaceOutsideRoot() throws SIMPLTranslationException
+	{
+		while (pos < limit || more())
+		{
+			char c = buf[pos];
+			if (c == '<')
+				return;
+			if (c > ' ')
+				throw malformed("content outside of the root element");
+			pos++;
+		}
+	}
+
+	private void skipPast(String terminator) throws SIMPLTranslationException
+	{
+		char last = terminator.charAt(terminator.length() - 1);
+		pos += 2;
+		for (;;)
+		{
+			if (nextChar() == last && pos - mark >= terminator.length() + 2)
+			{
+				boolean matched = true;
+				for (int i = 0; i < terminator.length() - 1 && matched; i++)
+					matched = buf[pos - terminator.length() + i] == terminator.charAt(i);
+				if (matched)
+					return;
+			}
+		}
+	}
+
+	private void skipDoctype() throws SIMPLTranslationException
+	{
+		pos += 2;
+		int brackets = 0;
+		char quote = 0;
+		for (;;)
+		{
+			char c = nextChar();
+			if (quote != 0)
+			{
+				if (c == quote)
+					quote = 0;
+			}
+			else if (c == '"' || c == '\'')
+				quote = c;
+			else if (c == '[')
+				brackets++;
+			else if (c == ']')
+				brackets--;
+			else if (c == '>' && brackets == 0)
+				return;
+		}
+	}
+
+	private void scanStartTag() throws SIMPLTranslationException
+	{
+		pos++;
+		Symbol name = scanName();
+		if (depth == elementStack.length)
+			elementStack = Arrays.copyOf(elementStack, depth * 2);
+		elementStack[depth++] = name;
+		symbol = name;
+
+		for (;;)
+		{
+			skipWhitespace();
+			char c = nextChar();
+			if (c == '>')
+				return;
+			if (c == '/')
+			{
+				if (nextChar() != '>')
+					throw malformed("expected >");
+				pendingEnd = true;
+				return;
+			}
+			pos--;
+			Symbol attributeName = scanName();
+			skipWhitespace();
+			if (nextChar() != '=')
+				throw malformed("expected = after " + attributeName.name);
+			skipWhitespace();
+			char quote = nextChar();
+			if (quote != '"' && quote != '\'')
+				throw malformed("expected a quoted value for " + attributeName.name);
+			int valueStart = pos - mark;
+			int valueLength = scanAttributeValue(quote);
+			if (attributeName.name == XMLNS || attributeName.prefix == XMLNS)
+			{
+				declareNamespace(attributeName.name == XMLNS ? "" : attributeName.localName, new String(
+						buf, mark + valueStart, valueLength));
+				continue;
+			}
+			if (attributeCount == attributeNames.length)
+			{
+				int length = attributeCount * 2;
+				attributeNames = Arrays.copyOf(attributeNames, length);
+				attributeValueStarts = Arrays.copyOf(attributeValueStarts, length);
+				attributeValueLengths = Arrays.copyOf(attributeValueLengths, length);
+				attributeValueSpans = Arrays.copyOf(attributeValueSpans, length);
+			}
+			attributeNames[attributeCount] = attributeName;
+			attributeValueStarts[attributeCount] = valueStart;
+			attributeValueLengths[attributeCount] = valueLength;
+			attributeCount++;
+		}
+	}
+
+	private void declareNamespace(String prefix, String uri)
+	{
+		if (namespaceCount == namespaceURIs.length)
+		{
+			int length = namespaceCount * 2;
+			namespacePrefixes = Arrays.copyOf(namespacePrefixes, length);
+			namespaceURIs = Arrays.copyOf(namespaceURIs, length);
+			namespaceDepths = Arrays.copyOf(namespaceDepths, length);
+		}
+		namespacePrefixes[namespaceCount] = prefix;
+		namespaceURIs[namespaceCount] = uri;
+		namespaceDepths[namespaceCount] = depth;
+		namespaceCount++;
+	}
+
+	@Override
+	public void appendNamespaceDeclarations(StringBuilder tag)
+	{
+		declarations: for (int i = 0; i < namespaceCount; i++)
+		{
+			String prefix = namespacePrefixes[i];
+			// an inner declaration of the same prefix hides this one
+			for (int j = i + 1; j < namespaceCount; j++)
+				if (namespacePrefixes[j].equals(prefix))
+					continue declarations;
+			tag.append(' ').append(XMLNS);
+			if (prefix.length() > 0)
+				tag.append(':').append(prefix);
+			tag.append('=').append('"');
+			XMLTools.escapeXML(tag, namespaceURIs[i]);
+			tag.append('"');
+		}
+	}
+
+	private void scanEndTag() throws SIMPLTranslationException
+	{
+		pos += 2;
+		Symbol name = scanName();
+		if (depth == 0)
+			throw malformed("end tag </" + name.name + "> with no start tag");
+		if (name != elementStack[depth - 1] && !name.name.equals(elementStack[depth - 1].name))
+			throw malformed("end tag </" + name.name + "> does not match <" + elementStack[depth - 1].name
+					+ ">");
+		skipWhitespace();
+		if (nextChar() != '>')
+			throw malformed("expected >");
+	}
+
+	private Symbol scanName() throws SIMPLTranslationException
+	{
+		int start = pos - mark;
+		for (;;)
+		{
+			int p = pos;
+			final int end = limit;
+			final char[] b = buf;
+			while (p < end)
+			{
+				char c = b[p];
+				if (c <= ' ' || c == '/' || c == '>' || c == '=')
+					break;
+				p++;
+			}
+			pos = p;
+			if (p < end)
+				break;
+			if (!more())
+				throw prematureEnd();
+		}
+		int length = pos - mark - start;
+		if (length == 0)
+			throw malformed("expected a name");
+		return symbols.lookup(buf, mark + start, length);
+	}
+
+	private void skipWhitespace() throws SIMPLTranslationException
+	{
+		while (pos < limit || more())
+		{
+			if (buf[pos] > ' ')
+				return;
+			pos++;
+		}
+	}
+
+	/**
+	 * Scan text up to the next tag, or the end of the input, replacing references, and normalizing
+	 * line ends.
+	 */
+	private void scanText() throws SIMPLTranslationException
+	{
+		textStart = 0;
+		write = pos;
+		boolean whitespace = true;
+		for (;;)
+		{
+			int p = pos;
+			int w = write;
+			final int end = limit;
+			final char[] b = buf;
+			while (p < end)
+			{
+				char c = b[p];
+				if (c == '<' || c == '&' || c == '\r')
+					break;
+				if (c > ' ')
+					whitespace = false;
+				b[w++] = c;
+				p++;
+			}
+			pos = p;
+			write = w;
+			if (p == end)
+			{
+				if (!more())
+					break;
+				continue;
+			}
+			char c = b[p];
+			if (c == '<')
+				break;
+			if (c == '&')
+			{
+				whitespace = false;
+				scanReference();
+			}
+			else
+				scanCarriageReturn('\n');
+		}
+		textLength = write - mark;
+		textWhitespace = whitespace;
+	}
+
+	/**
+	 * Scan an attribute value up to quote, replacing references, and normalizing whitespace.
+	 *
+	 * @return The length of the value, which starts where pos was.
+	 */
+	private int scanAttributeValue(char quote) throws SIMPLTranslationException
+	{
+		write = pos;
+		int start = pos - mark;
+		for (;;)
+		{
+			int p = pos;
+			int w = write;
+			final int end = limit;
+			final char[] b = buf;
+			while (p < end)
+			{
+				char c = b[p];
+				if (c == quote || c == '&' || c == '\r')
+					break;
+				if (c == '\n' || c == '\t')
+					c = ' ';
+				b[w++] = c;
+				p++;
+			}
+			pos = p;
+			write = w;
+			if (p == end)
+			{
+				if (!more())
+					throw prematureEnd();
+				continue;
+			}
+			char c = b[p];
+			if (c == quote)
+			{
+				pos++;
+				return write - mark - start;
+			}
+			if (c == '&')
+				scanReference();
+			else
+				scanCarriageReturn(' ');
+		}
+	}
+
+	private void scanCarriageReturn(char replacement) throws SIMPLTranslationException
+	{
+		pos++;
+		buf[write++] = replacement;
+		if ((pos < limit || more()) && buf[pos] == '\n')
+			pos++;
+	}
+
+	/**
+	 * Replace the reference at pos with its character(s), at write.
+	 */
+	private void scanReference() throws SIMPLTranslationException
+	{
+		pos++;
+		char c = nextChar();
+		if (c == '#')
+		{
+			int radix = 10;
+			c = nextChar();
+			if (c == 'x')
+			{
+				radix = 16;
+				c = nextChar();
+			}
+			int codePoint = 0;
+			do
+			{
+				int digit = Character.digit(c, radix);
+				if (digit < 0)
+					throw malformed("bad character reference");
+				codePoint = codePoint * radix + digit;
+				if (codePoint > Character.MAX_CODE_POINT)
+					throw malformed("bad character reference");
+				c = nextChar();
+			}
+			while (c != ';');
+			if (Character.isSupplementaryCodePoint(codePoint))
+			{
+				buf[write++] = Character.highSurrogate(codePoint);
+				buf[write++] = Character.lowSurrogate(codePoint);
+			}
+			else
+				buf[write++] = (char) codePoint;
+			return;
+		}
+
+		int start = pos - 1 - mark;
+		while (c != ';')
+		{
+			if (pos - mark - start > 8)
+				throw malformed("unterminated entity reference");
+			c = nextChar();
+		}
+		buf[write++] = entity(mark + start, pos - 1 - mark - start);
+	}
+
+	private char entity(int start, int length) throws SIMPLTranslationException
+	{
+		if (entityIs("amp", start, length))
+			return '&';
+		if (entityIs("lt", start, length))
+			return '<';
+		if (entityIs("gt", start, length))
+			return '>';
+		if (entityIs("quot", start, length))
+			return '"';
+		if (entityIs("apos", start, length))
+			return '\'';
+		throw malformed("undeclared entity &" + new String(buf, start, length) + ";");
+	}
+
+	private boolean entityIs(String name, int start, int length)
+	{
+		if (name.length() != length)
+			return false;
+		for (int i = 0; i < length; i++)
+			if (buf[start + i] != name.charAt(i))
+				return false;
+		return true;
+	}
+
+	private void scanCData() throws SIMPLTranslationException
+	{
+		pos += "<![CDATA[".length();
+		textStart = pos - mark;
+		for (;;)
+		{
+			if (nextChar() == '>' && pos - mark - textStart >= 3 && buf[pos - 2] == ']'
+					&& buf[pos - 3] == ']')
+				break;
+		}
+		textLength = pos - mark - textStart - 3;
+		textWhitespace = false;
+	}
+
+	private SIMPLTranslationException prematureEnd()
+	{
+		return new SIMPLTranslationException("premature end of XML input");
+	}
+
+	private SIMPLTranslationException malformed(String message)
+	{
+		return new SIMPLTranslationException("malformed XML: " + message);
+	}
+
+	// ---------------------------------------------------------------------------------------------
+	// XMLParser
+
+	@Override
+	public int getEventType()
+	{
+		return eventType;
+	}
+
+	@Override
+	public String getText()
+	{
+		return eventType == CHARACTERS ? new String(buf, mark + textStart, textLength) : null;
+	}
+
+	@Override
+	public CharSequence getTextCharSequence()
+	{
+		if (eventType != CHARACTERS)
+			return null;
+		textSpan.start = textStart;
+		textSpan.length = textLength;
+		return textSpan;
+	}
+
+	@Override
+	public String getName()
+	{
+		return symbol == null ? null : symbol.name;
+	}
+
+	@Override
+	public String getPrefix()
+	{
+		return symbol == null ? null : symbol.prefix;
+	}
+
+	@Override
+	public String getLocalName()
+	{
+		return symbol == null ? null : symbol.localName;
+	}
+
+	@Override
+	public int getAttributeCount()
+	{
+		return attributeCount;
+	}
+
+	@Override
+	public String getAttributeLocalName(int index)
+	{
+		return attributeNames[index].localName;
+	}
+
+	@Override
+	public String getAttributePrefix(int index)
+	{
+		return attributeNames[index].prefix;
+	}
+
+	@Override
+	public String getAttributeValue(int index)
+	{
+		return new String(buf, mark + attributeValueStarts[index], attributeValueLengths[index]);
+	}
+
+	@Override
+	public CharSequence getAttributeValueCharSequence(int index)
+	{
+		Span span = attributeValueSpans[index];
+		if (span == null)
+			attributeValueSpans[index] = span = new Span();
+		span.start = attributeValueStarts[index];
+		span.length = attributeValueLengths[index];
+		return span;
+	}
+
+	/**
+	 * A view of part of the current event in buf.
+	 */
+	private final class Span implements CharSequence
+	{
+		int	start;
+
+		int	length;
+
+		@Override
+		public int length()
+		{
+			return length;
+		}
+
+		@Override
+		public char charAt(int index)
+		{
+			if (index < 0 || index >= length)
+				throw new IndexOutOfBoundsException(Integer.toString(index));
+			return buf[mark + start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end)
+		{
+			if (start < 0 || end > length || start > end)
+				throw new IndexOutOfBoundsException(start + ", " + end);
+			return new String(buf, mark + this.start + start, end - start);
+		}
+
+		@Override
+		public String toString()
+		{
+			return new String(buf, mark + start, length);
+		}
+	}
+
+	private static final class Symbol
+	{
+		final String	name;
+
+		final String	prefix;
+
+		final String	localName;
+
+		final int			hash;
+
+		Symbol(String name, int hash)
+		{
+			this.name = name;
+			this.hash = hash;
+			int colon = name.indexOf(':');
+			if (colon < 0)
+			{
+				prefix = "";
+				localName = name;
+			}
+			else
+			{
+				String p = name.substring(0, colon);
+				prefix = XMLNS.equals(p) ? XMLNS : p;
+				localName = name.substring(colon + 1);
+			}
+		}
+	}
+
+	/**
+	 * Names seen by this parser, so that repeated names become the same String without allocating.
+	 * Stops growing at MAX_SIZE, after which new names are made each time they are seen.
+	 */
+	private static final class SymbolTable
+	{
+		private static final int	MAX_SIZE	= 4096;
+
+		private Symbol[]					table			= new Symbol[256];
+
+		private int								size;
+
+		Symbol lookup(char[] chars, int start, int length)
+		{
+			int hash = 0;
+			for (int i = 0; i < length; i++)
+				hash = 31 * hash + chars[start + i];
+
+			int mask = table.length - 1;
+			int i = (hash ^ (hash >>> 16)) & mask;
+			for (Symbol symbol = table[i]; symbol != null; symbol = table[i = (i + 1) & mask])
+				if (symbol.hash == hash && matches(symbol.name, chars, start, length))
+					return symbol;
+
+			String name = new String(chars, start, length);
+			Symbol symbol = new Symbol(XMLNS.equals(name) ? XMLNS : name, hash);
+			if (size < MAX_SIZE)
+			{
+				table[i] = symbol;
+				if (++size * 4 > table.length * 3)
+					rehash();
+			}
+			return symbol;
+		}
+
+		private static boolean matches(String name, char[] chars, int start, int length)
+		{
+			if (name.length() != length)
+				return false;
+			for (int i = 0; i < length; i++)
+				if (name.charAt(i) != chars[start + i])
+					return false;
+			return true;
+		}
+
+		private void rehash()
+		{
+			Symbol[] old = table;
+			table = new Symbol[old.length * 2];
+			int mask = table.length - 1;
+			for (Symbol symbol : old)
+			{
+				if (symbol != null)
+				{
+					int i = (symbol.hash ^ (symbol.hash >>> 16)) & mask;
+					while (table[i] != null)
+						i = (i + 1) & mask;
+					table[i] = symbol;
+				}
+			}
+		}
+	}
+}
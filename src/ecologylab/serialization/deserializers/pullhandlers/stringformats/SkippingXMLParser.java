@@ -0,0 +1,38 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import ecologylab.serialization.SIMPLTranslationException;
+
+/**
+ * An XMLParser that can skip a whole element, by matching up its tags, without scanning its text,
+ * attributes or names into events.
+ * <p/>
+ * XMLPullDeserializer skips unknown elements, and those left out by a FieldProjection, this way
+ * when it can, and by reading their events otherwise.
+ */
+public interface SkippingXMLParser extends XMLParser
+{
+	/**
+	 * From a START_ELEMENT, move to the END_ELEMENT of the same element.
+	 * 
+	 * @return END_ELEMENT
+	 */
+	int skipElement() throws SIMPLTranslationException;
+
+	/**
+	 * Like skipElement(), but also append the text between the start and end tags of the element,
+	 * unchanged, with its markup, references and all, to content.
+	 * 
+	 * @param content
+	 * @return END_ELEMENT
+	 */
+	int skipElement(StringBuilder content) throws SIMPLTranslationException;
+
+	/**
+	 * Append the namespace declarations in scope at the current START_ELEMENT, its own included, to
+	 * tag, as xmlns attributes that each start with a space, so that the element still means the
+	 * same when it is kept apart from the rest of the document.
+	 * 
+	 * @param tag
+	 */
+	void appendNamespaceDeclarations(StringBuilder tag);
+}
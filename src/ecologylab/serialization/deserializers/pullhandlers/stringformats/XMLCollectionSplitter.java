@@ -0,0 +1,239 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+
+/**
+ * CollectionSplitter for XML. It only matches up tags, skipping comments, CDATA sections and
+ * processing instructions, and leaves everything else to the XMLParser that deserializes the
+ * pieces. Chunks are framed by the root's start tag, as written, so that they keep its namespace
+ * declarations.
+ */
+class XMLCollectionSplitter extends CollectionSplitter
+{
+	XMLCollectionSplitter(CharSequence text, SimplTypesScope simplTypesScope, String fieldName)
+	{
+		super(text, simplTypesScope, fieldName);
+	}
+
+	@Override
+	void split() throws SIMPLTranslationException
+	{
+		int root = skipProlog(0);
+		String rootTag = tagName(root);
+		resolveCollectionField(rootTag);
+		String rootStartTag = text.subSequence(root, startTagEnd(root)).toString();
+		String rootEndTag = "</" + rootTag + ">";
+		setChunkFraming(rootStartTag, "", rootEndTag);
+
+		int child = firstChild(root);
+		while (child >= 0)
+		{
+			int tagEnd = tagNameEnd(child);
+			int end = elementEnd(child);
+			if (collectionField.isWrapped())
+			{
+				if (regionEquals(collectionField.getTagName(), child + 1, tagEnd))
+				{
+					setChunkFraming(rootStartTag + text.subSequence(child, startTagEnd(child)), "", "</"
+							+ text.subSequence(child + 1, tagEnd) + ">" + rootEndTag);
+					int element = firstChild(child);
+					while (element >= 0)
+					{
+						int elementEnd = elementEnd(element);
+						if (collectionField.isCollectionTag(text, element + 1, tagNameEnd(element)))
+							addElement(element, elementEnd);
+						element = nextElement(elementEnd);
+					}
+					removeFromSkeleton(child, end);
+				}
+			}
+			else if (collectionField.isCollectionTag(text, child + 1, tagEnd))
+			{
+				addElement(child, end);
+				removeFromSkeleton(child, end);
+			}
+			child = nextElement(end);
+		}
+	}
+
+	/**
+	 * @return The position of the root element's start tag.
+	 */
+	private int skipProlog(int from) throws SIMPLTranslationException
+	{
+		int at = from;
+		while (true)
+		{
+			at = indexOf('<', at);
+			if (at < 0)
+				throw malformed("no root element", text.length());
+			int next = skipMarkup(at);
+			if (next == at)
+				return at;
+			at = next;
+		}
+	}
+
+	/**
+	 * @return If at starts a comment, CDATA section, processing instruction or DOCTYPE, the position
+	 *         after it; otherwise at.
+	 */
+	private int skipMarkup(int at) throws SIMPLTranslationException
+	{
+		int end;
+		if (startsWith("<!--", at))
+			end = skipPast("-->", at + 4);
+		else if (startsWith("<![CDATA[", at))
+			end = skipPast("]]>", at + 9);
+		else if (startsWith("<?", at))
+			end = skipPast("?>", at + 2);
+		else if (startsWith("<!", at))
+			end = skipDeclaration(at);
+		else
+			return at;
+		return end;
+	}
+
+	private int skipPast(String terminator, int from) throws SIMPLTranslationException
+	{
+		int at = indexOf(terminator, from);
+		if (at < 0)
+			throw malformed("unterminated " + terminator, from);
+		return at + terminator.length();
+	}
+
+	/**
+	 * Skip a DOCTYPE, which may hold an internal subset in brackets.
+	 */
+	private int skipDeclaration(int at) throws SIMPLTranslationException
+	{
+		int depth = 0;
+		for (int i = at + 2; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '[')
+				depth++;
+			else if (c == ']')
+				depth--;
+			else if (c == '>' && depth == 0)
+				return i + 1;
+		}
+		throw malformed("unterminated declaration", at);
+	}
+
+	private String tagName(int at)
+	{
+		return text.subSequence(at + 1, tagNameEnd(at)).toString();
+	}
+
+	/**
+	 * @return The position after the name in the start tag at at.
+	 */
+	private int tagNameEnd(int at)
+	{
+		int end = at + 1;
+		int length = text.length();
+		while (end < length)
+		{
+			char c = text.charAt(end);
+			if (c == '>' || c == '/' || Character.isWhitespace(c))
+				break;
+			end++;
+		}
+		return end;
+	}
+
+	private boolean regionEquals(String tag, int start, int end)
+	{
+		return tag != null && tag.length() == end - start && startsWith(tag, start);
+	}
+
+	/**
+	 * @return The position after the '>' of the start tag at at, skipping quoted attribute values.
+	 */
+	private int startTagEnd(int at) throws SIMPLTranslationException
+	{
+		char quote = 0;
+		for (int i = at + 1; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (quote != 0)
+			{
+				if (c == quote)
+					quote = 0;
+			}
+			else if (c == '"' || c == '\'')
+				quote = c;
+			else if (c == '>')
+				return i + 1;
+		}
+		throw malformed("unterminated tag", at);
+	}
+
+	private boolean isEmptyElement(int startTagEnd)
+	{
+		return text.charAt(startTagEnd - 2) == '/';
+	}
+
+	/**
+	 * @return The position after the end of the element whose start tag is at at.
+	 */
+	private int elementEnd(int at) throws SIMPLTranslationException
+	{
+		int i = startTagEnd(at);
+		if (isEmptyElement(i))
+			return i;
+		int depth = 1;
+		while (true)
+		{
+			int next = indexOf('<', i);
+			if (next < 0)
+				throw malformed("premature end of file", text.length());
+			i = skipMarkup(next);
+			if (i != next)
+				continue;
+			if (text.charAt(next + 1) == '/')
+			{
+				i = indexOf('>', next);
+				if (i < 0)
+					throw malformed("unterminated end tag", next);
+				i++;
+				if (--depth == 0)
+					return i;
+			}
+			else
+			{
+				i = startTagEnd(next);
+				if (!isEmptyElement(i))
+					depth++;
+			}
+		}
+	}
+
+	/**
+	 * @return The position of the first child element of the element at at, or -1 if it has none.
+	 */
+	private int firstChild(int at) throws SIMPLTranslationException
+	{
+		int i = startTagEnd(at);
+		return isEmptyElement(i) ? -1 : nextElement(i);
+	}
+
+	/**
+	 * @return The position of the next start tag from from, or -1 if an end tag comes first.
+	 */
+	private int nextElement(int from) throws SIMPLTranslationException
+	{
+		int i = from;
+		while (true)
+		{
+			int next = indexOf('<', i);
+			if (next < 0)
+				throw malformed("premature end of file", text.length());
+			i = skipMarkup(next);
+			if (i == next)
+				return text.charAt(next + 1) == '/' ? -1 : next;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import ecologylab.generic.Debug;
+import ecologylab.platformspecifics.FundamentalPlatformSpecifics;
+import ecologylab.serialization.SIMPLTranslationException;
+
+/**
+ * Gets the XMLParser for a document: either the one the platform provides through
+ * FundamentalPlatformSpecifics, or S.IM.PL's own SimplXMLParser. Parsers that can be reset are
+ * reused for the next document.
+ * <p/>
+ * The implementation can be chosen with the system property {@value #IMPLEMENTATION_PROPERTY}, set
+ * to platform or simpl, or with setImplementation(). The default is platform. SimplXMLParser does
+ * not validate, report xmlns attributes, or resolve namespaces, so only choose it for documents
+ * that don't need those.
+ */
+public class XMLParserFactory
+{
+	public static final String	IMPLEMENTATION_PROPERTY	= "ecologylab.serialization.xmlParser";
+
+	public enum Implementation
+	{
+		SIMPL, PLATFORM
+	}
+
+	private static volatile Implementation	implementation	= initialImplementation();
+
+	public static Implementation getImplementation()
+	{
+		return implementation;
+	}
+
+	/**
+	 * Change the implementation used for documents from here on. Deserializers holding a parser of
+	 * the other implementation replace it with their next document.
+	 *
+	 * @param newImplementation
+	 */
+	public static void setImplementation(Implementation newImplementation)
+	{
+		implementation = newImplementation;
+	}
+
+	/**
+	 * @param previous
+	 *          the parser used for the last document, which is reset if it can be, or null.
+	 * @return A parser, positioned at the start of the document in inputStream.
+	 * @throws SIMPLTranslationException
+	 */
+	public static XMLParser get(XMLParser previous, InputStream inputStream, Charset charSet)
+			throws SIMPLTranslationException
+	{
+		ResettableXMLParser parser = reusable(previous);
+		if (parser != null)
+			parser.reset(inputStream, charSet);
+		else if (implementation == Implementation.SIMPL)
+			(parser = new SimplXMLParser()).reset(inputStream, charSet);
+		else
+			return FundamentalPlatformSpecifics.get().getXMLParser(inputStream, charSet);
+		return parser;
+	}
+
+	public static XMLParser get(XMLParser previous, InputStream inputStream)
+			throws SIMPLTranslationException
+	{
+		ResettableXMLParser parser = reusable(previous);
+		if (parser != null)
+			parser.reset(inputStream);
+		else if (implementation == Implementation.SIMPL)
+			(parser = new SimplXMLParser()).reset(inputStream);
+		else
+			return FundamentalPlatformSpecifics.get().getXMLParser(inputStream);
+		return parser;
+	}
+
+	public static XMLParser get(XMLParser previous, CharSequence charSequence)
+			throws SIMPLTranslationException
+	{
+		ResettableXMLParser parser = reusable(previous);
+		if (parser != null)
+			parser.reset(charSequence);
+		else if (implementation == Implementation.SIMPL)
+			(parser = new SimplXMLParser()).reset(charSequence);
+		else
+			return FundamentalPlatformSpecifics.get().getXMLParser(charSequence);
+		return parser;
+	}
+
+	/**
+	 * @return previous, if it is a ResettableXMLParser of the current implementation.
+	 */
+	private static ResettableXMLParser reusable(XMLParser previous)
+	{
+		if (!(previous instanceof ResettableXMLParser))
+			return null;
+		boolean simpl = previous instanceof SimplXMLParser;
+		return simpl == (implementation == Implementation.SIMPL) ? (ResettableXMLParser) previous
+				: null;
+	}
+
+	private static Implementation initialImplementation()
+	{
+		String value = System.getProperty(IMPLEMENTATION_PROPERTY);
+		if (value != null)
+		{
+			try
+			{
+				return Implementation.valueOf(value.trim().toUpperCase());
+			}
+			catch (IllegalArgumentException e)
+			{
+				Debug.warning(XMLParserFactory.class, "Unknown " + IMPLEMENTATION_PROPERTY + "=" + value
+						+ "; using " + Implementation.PLATFORM);
+			}
+		}
+		return Implementation.PLATFORM;
+	}
+}
@@ -2,6 +2,7 @@ package ecologylab.serialization.deserializers.pullhandlers.stringformats;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Map;
@@ -10,15 +11,18 @@ import javax.xml.stream.XMLStreamException;
 
 import org.codehaus.jackson.JsonParseException;
 
-import ecologylab.platformspecifics.FundamentalPlatformSpecifics;
 import ecologylab.serialization.ClassDescriptor;
 import ecologylab.serialization.DeserializationHookStrategy;
 import ecologylab.serialization.ElementState;
 import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.FieldProjection;
 import ecologylab.serialization.FieldType;
+import ecologylab.serialization.LazyComposite;
 import ecologylab.serialization.SIMPLTranslationException;
 import ecologylab.serialization.SimplTypesScope;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.XMLTools;
+import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.element.IMappable;
 
 /**
@@ -33,6 +37,11 @@ public class XMLPullDeserializer extends StringPullDeserializer
 	// private CharSequence test;
 
 	XMLParser xmlParser;
+
+	/**
+	 * Holds the text of a scalar while it is put together from CHARACTERS events.
+	 */
+	private final StringBuilder	scalarText	= new StringBuilder();
 	
 	/**
 	 * 
@@ -103,6 +112,39 @@ public class XMLPullDeserializer extends StringPullDeserializer
 		}
 	}
 
+	/**
+	 * Parses the XML document in byteBuffer, from its position to its limit, which may be a
+	 * MappedByteBuffer of a file. This always uses SimplXMLParser, whatever XMLParserFactory is set
+	 * to.
+	 * 
+	 * @param byteBuffer
+	 * @return
+	 * @throws SIMPLTranslationException
+	 */
+	public Object parse(ByteBuffer byteBuffer) throws SIMPLTranslationException
+	{
+		Object result = null;
+		try
+		{
+			SimplXMLParser simplXMLParser = xmlParser instanceof SimplXMLParser ? (SimplXMLParser) xmlParser
+					: new SimplXMLParser();
+			simplXMLParser.reset(byteBuffer);
+			xmlParser = simplXMLParser;
+			result = parse();
+			return result;
+		}
+		catch(SIMPLTranslationException ex) 
+		{
+			throw ex; 
+		}
+		catch (Exception ex)
+		{
+			SIMPLTranslationException ste = new SIMPLTranslationException("exception occurred in deserialzation ", ex);
+			ste.setRemnantObject(result);
+			throw ste;
+		}
+	}
+
 	/**
 	 * Parses a charsequence of the XML document and returns the corresponding object model.
 	 * 
@@ -137,6 +179,22 @@ public class XMLPullDeserializer extends StringPullDeserializer
 		}
 	}
 
+	@Override
+	public Object parseLazy(Object raw, FieldDescriptor fd, Object parent)
+			throws SIMPLTranslationException
+	{
+		try
+		{
+			configure((CharSequence) raw);
+			nextEvent();
+			return getSubRoot(fd, getTagName(), parent);
+		}
+		catch (IOException e)
+		{
+			throw new SIMPLTranslationException("exception occurred in deserialzation ", e);
+		}
+	}
+
 	/**
 	 * Configures the input stream. Creates an instance of XMLStreamReader on the input stream.
 	 * 
@@ -147,7 +205,7 @@ public class XMLPullDeserializer extends StringPullDeserializer
 	 */
 	private void configure(InputStream inputStream, Charset charSet) throws SIMPLTranslationException
 	{
-		xmlParser = FundamentalPlatformSpecifics.get().getXMLParser(inputStream, charSet);
+		xmlParser = XMLParserFactory.get(xmlParser, inputStream, charSet);
 	}
 	
 	/**
@@ -158,7 +216,7 @@ public class XMLPullDeserializer extends StringPullDeserializer
 	 */
 	private void configure(InputStream inputStream) throws SIMPLTranslationException
 	{
-		xmlParser = FundamentalPlatformSpecifics.get().getXMLParser(inputStream);
+		xmlParser = XMLParserFactory.get(xmlParser, inputStream);
 	}
 
 	/**
@@ -169,7 +227,7 @@ public class XMLPullDeserializer extends StringPullDeserializer
 	 */
 	private void configure(CharSequence charSequence) throws SIMPLTranslationException
 	{
-		xmlParser = FundamentalPlatformSpecifics.get().getXMLParser(charSequence);
+		xmlParser = XMLParserFactory.get(xmlParser, charSequence);
 	}
 
 	/**
@@ -258,16 +316,17 @@ public class XMLPullDeserializer extends StringPullDeserializer
 			
 			FieldDescriptor currentFieldDescriptor = null; // new FieldDescriptor();
 
-			String xmlText = "";
+			// only collected for classes with a text field
+			StringBuilder xmlText = rootClassDescriptor.hasScalarFD() ? new StringBuilder() : null;
 
 			while ( event!= XMLParser.END_DOCUMENT
 					&& (event != XMLParser.END_ELEMENT || !rootTag.equals(getTagName())))
 			{
 				if (event != XMLParser.START_ELEMENT)
 				{
-					if (event == XMLParser.CHARACTERS)
+					if (event == XMLParser.CHARACTERS && xmlText != null)
 					{
-						xmlText += xmlParser.getText();
+						appendText(xmlText);
 					}
 					else if (event == XMLParser.END_ELEMENT && currentFieldDescriptor != null && currentFieldDescriptor.getType() == FieldType.WRAPPER)
 					{
@@ -288,6 +347,12 @@ public class XMLPullDeserializer extends StringPullDeserializer
 				{
 					currentFieldDescriptor = FieldDescriptor.makeIgnoredFieldDescriptor(tag);
 				}
+				else if (isProjectedOut(currentFieldDescriptor))
+				{
+					event = skipElement();
+					currentFieldDescriptor = null;
+					continue;
+				}
 
 				
 					FieldType fieldType = currentFieldDescriptor.getType();
@@ -338,9 +403,10 @@ public class XMLPullDeserializer extends StringPullDeserializer
 				}
 			}
 
-			if (rootClassDescriptor.hasScalarFD())
+			if (xmlText != null)
 			{
-				rootClassDescriptor.getScalarTextFD().setFieldToScalar(root, xmlText, translationContext);
+				rootClassDescriptor.getScalarTextFD().setFieldToScalar(root, xmlText, 0, xmlText.length(),
+						translationContext);
 			}
 			
 			deserializationPostHook(root, translationContext);
@@ -383,12 +449,13 @@ public class XMLPullDeserializer extends StringPullDeserializer
 
 				if (event == XMLParser.CHARACTERS && event != XMLParser.END_ELEMENT)
 				{
-					StringBuilder text = new StringBuilder();
-					text.append(xmlParser.getText());
+					StringBuilder text = scalarText;
+					text.setLength(0);
+					appendText(text);
 					while (xmlParser.next() != XMLParser.END_ELEMENT)
 					{
 						if (xmlParser.getEventType() == XMLParser.CHARACTERS)
-							text.append(xmlParser.getText());
+							appendText(text);
 					}
 
 					String value = text.toString();
@@ -416,12 +483,59 @@ public class XMLPullDeserializer extends StringPullDeserializer
 			throws SIMPLTranslationException, IOException
 	{
 		String tagName = getTagName();
-		Object subRoot = getSubRoot(currentFieldDescriptor, tagName, root);
+		Object subRoot = currentFieldDescriptor.isLazy() ? lazyComposite(root,
+				currentFieldDescriptor, tagName) : getSubRoot(currentFieldDescriptor, tagName, root);
 		currentFieldDescriptor.setFieldToComposite(root, subRoot);
 
 		return nextEvent();
 	}
 
+	/**
+	 * Keep the element of a lazy composite field as it is, to be deserialized when it is asked for,
+	 * if the parser can skip it; otherwise, deserialize it now.
+	 * 
+	 * @param root
+	 * @param fd
+	 *          the lazy field.
+	 * @param tagName
+	 * @return The LazyComposite for the field.
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	private LazyComposite<?> lazyComposite(Object root, FieldDescriptor fd, String tagName)
+			throws SIMPLTranslationException, IOException
+	{
+		if (!(xmlParser instanceof SkippingXMLParser))
+			return new LazyComposite<Object>(getSubRoot(fd, tagName, root));
+
+		// the start tag is written back from its attributes, and the namespaces declared for it here,
+		// which it may need wherever it ends up; the rest is kept as it came
+		StringBuilder element = new StringBuilder();
+		element.append('<').append(tagName);
+		((SkippingXMLParser) xmlParser).appendNamespaceDeclarations(element);
+		for (int i = 0; i < xmlParser.getAttributeCount(); i++)
+		{
+			element.append(' ');
+			String prefix = xmlParser.getAttributePrefix(i);
+			if (prefix != null && prefix.length() > 0)
+				element.append(prefix).append(':');
+			element.append(xmlParser.getAttributeLocalName(i)).append('=').append('"');
+			XMLTools.escapeXML(element, xmlParser instanceof CharSequenceXMLParser
+					? ((CharSequenceXMLParser) xmlParser).getAttributeValueCharSequence(i)
+					: xmlParser.getAttributeValue(i));
+			element.append('"');
+		}
+		element.append('>');
+		int contentStart = element.length();
+		((SkippingXMLParser) xmlParser).skipElement(element);
+		if (element.length() == contentStart)
+			element.insert(contentStart - 1, '/');
+		else
+			element.append('<').append('/').append(tagName).append('>');
+
+		return new LazyComposite<Object>(Format.XML, element.toString(), fd, translationScope, root);
+	}
+
 	/**
 	 * 
 	 * @param root
@@ -490,10 +604,16 @@ public class XMLPullDeserializer extends StringPullDeserializer
 				}
 
 				subRoot = getSubRoot(fd, tagName, root);
-				
-				
-				Collection collection = (Collection) fd.automaticLazyGetCollectionOrMap(root);
-				collection.add(subRoot);
+
+				if (isStreamedCollection(fd))
+				{
+					streamElement(root, subRoot);
+				}
+				else
+				{
+					Collection collection = (Collection) fd.automaticLazyGetCollectionOrMap(root);
+					collection.add(subRoot);
+				}
 
 				event 	= xmlParser.nextTag();
 				tagName = getTagName();
@@ -513,18 +633,17 @@ public class XMLPullDeserializer extends StringPullDeserializer
 	private int deserializeScalar(Object root, FieldDescriptor currentFieldDescriptor)
 			throws SIMPLTranslationException
 	{
-		StringBuilder text = new StringBuilder();
+		StringBuilder text = scalarText;
+		text.setLength(0);
 
 		do
 		{
 			if (xmlParser.getEventType() == XMLParser.CHARACTERS)
-				text.append(xmlParser.getText());
+				appendText(text);
 		}
 		while (nextEvent() != XMLParser.END_ELEMENT);
 
-		String value = text.toString();
-		
-		currentFieldDescriptor.setFieldToScalar(root, value, translationContext);
+		currentFieldDescriptor.setFieldToScalar(root, text, 0, text.length(), translationContext);
 
 		return nextEvent();
 	}
@@ -537,12 +656,41 @@ public class XMLPullDeserializer extends StringPullDeserializer
 	 */
 	private int ignoreTag(String tag) throws SIMPLTranslationException
 	{
-		int event = -1;
 		println("ignoring tag: " + tag);
 
-		while (event != XMLParser.END_ELEMENT || !getTagName().equals(tag))
-			event = nextEvent();
+		return skipElement();
+	}
 
+	/**
+	 * Skip the element that starts at the current START_ELEMENT, and everything in it, without
+	 * deserializing any of it.
+	 * 
+	 * @return The event after the end of the element.
+	 * @throws SIMPLTranslationException
+	 */
+	private int skipElement() throws SIMPLTranslationException
+	{
+		if (xmlParser instanceof SkippingXMLParser)
+			((SkippingXMLParser) xmlParser).skipElement();
+		else
+		{
+			int nesting = 1;
+			while (nesting > 0)
+			{
+				switch (xmlParser.next())
+				{
+				case XMLParser.START_ELEMENT:
+					nesting++;
+					break;
+				case XMLParser.END_ELEMENT:
+					nesting--;
+					break;
+				case XMLParser.END_DOCUMENT:
+					throw new SIMPLTranslationException(
+							"premature end of file: check XML file for consistency");
+				}
+			}
+		}
 		return nextEvent();
 	}
 
@@ -599,13 +747,17 @@ public class XMLPullDeserializer extends StringPullDeserializer
 				}
 			}
 
+			FieldProjection outerProjection = enterProjection(currentFieldDescriptor);
 			deserializeAttributes(subRoot, subRootClassDescriptor);
 			
 			deserializationInHook(subRoot, translationContext);
 			if (deserializationHookStrategy != null)
 				deserializationHookStrategy.deserializationInHook(subRoot, currentFieldDescriptor);
 			
+			boolean onStreamedPath = enterStreamedComposite(currentFieldDescriptor);
 			createObjectModel(subRoot, subRootClassDescriptor, tagName);
+			exitStreamedComposite(onStreamedPath);
+			exitProjection(outerProjection);
 		}
 		
 		if (deserializationHookStrategy != null && subRoot != null)
@@ -630,13 +782,12 @@ public class XMLPullDeserializer extends StringPullDeserializer
 		{
 			String attributePrefix = xmlParser.getAttributePrefix(i);
 			String tag = xmlParser.getAttributeLocalName(i);
-			String value = xmlParser.getAttributeValue(i);
 
 			if (TranslationContext.SIMPL.equals(attributePrefix))
 			{
 				if (tag.equals(TranslationContext.REF))
 				{
-					simplReference = value;
+					simplReference = xmlParser.getAttributeValue(i);
 				}
 			}
 		}
@@ -657,7 +808,6 @@ public class XMLPullDeserializer extends StringPullDeserializer
 		{
 			String attributePrefix = xmlParser.getAttributePrefix(i);
 			String tag = xmlParser.getAttributeLocalName(i);
-			String value = xmlParser.getAttributeValue(i);
 
 			// If a tag is simpl:...
 			if (TranslationContext.SIMPL.equals(attributePrefix))
@@ -665,7 +815,7 @@ public class XMLPullDeserializer extends StringPullDeserializer
 				// Handle simpl:id's
 				if (tag.equals(TranslationContext.ID))
 				{
-					translationContext.markAsUnmarshalled(value, root);
+					translationContext.markAsUnmarshalled(xmlParser.getAttributeValue(i), root);
 				}
 			}
 			else
@@ -675,7 +825,17 @@ public class XMLPullDeserializer extends StringPullDeserializer
 
 				if (attributeFieldDescriptor != null)
 				{
-					attributeFieldDescriptor.setFieldToScalar(root, value, translationContext);
+					if (isProjectedOut(attributeFieldDescriptor))
+						continue;
+					if (xmlParser instanceof CharSequenceXMLParser)
+					{
+						CharSequence value = ((CharSequenceXMLParser) xmlParser).getAttributeValueCharSequence(i);
+						attributeFieldDescriptor.setFieldToScalar(root, value, 0, value.length(),
+								translationContext);
+					}
+					else
+						attributeFieldDescriptor.setFieldToScalar(root, xmlParser.getAttributeValue(i),
+								translationContext);
 				}
 				else
 				{
@@ -687,6 +847,20 @@ public class XMLPullDeserializer extends StringPullDeserializer
 		return true;
 	}
 
+	/**
+	 * Append the text of the current CHARACTERS event, without making a String of it if the parser
+	 * can hand out a view.
+	 * 
+	 * @param text
+	 */
+	private void appendText(StringBuilder text)
+	{
+		if (xmlParser instanceof CharSequenceXMLParser)
+			text.append(((CharSequenceXMLParser) xmlParser).getTextCharSequence());
+		else
+			text.append(xmlParser.getText());
+	}
+
 	/**
 	 * 
 	 * @return
@@ -2,5 +2,9 @@ package ecologylab.serialization.formatenums;
 
 public enum BinaryFormat
 {
-	TLV;
+	TLV,
+	/**
+	 * TLV, with scalars written in native binary form: varints, fixed width numbers, UTF-8 text.
+	 */
+	TLV2;
 }
@@ -2,5 +2,5 @@ package ecologylab.serialization.formatenums;
 
 public enum Format
 {
-	XML, JSON, TLV, YAML, BIBTEX;
+	XML, JSON, TLV, YAML, BIBTEX, TLV2;
 }
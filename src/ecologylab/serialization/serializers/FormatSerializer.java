@@ -6,6 +6,7 @@ import java.io.OutputStream;
 
 import ecologylab.serialization.ClassDescriptor;
 import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.LazyComposite;
 import ecologylab.serialization.SIMPLTranslationException;
 import ecologylab.serialization.SimplTypesScope;
 import ecologylab.serialization.TranslationContextPool;
@@ -32,6 +33,20 @@ import ecologylab.serialization.serializers.stringformats.XMLSerializer;
  */
 public abstract class FormatSerializer
 {
+	/*
+	 * Serializers keep all per-call state on the stack and in the TranslationContext, so one instance
+	 * of each can be shared by every thread.
+	 */
+	private static final XMLSerializer			XML_SERIALIZER		= new XMLSerializer();
+
+	private static final JSONSerializer			JSON_SERIALIZER		= new JSONSerializer();
+
+	private static final BibtexSerializer		BIBTEX_SERIALIZER	= new BibtexSerializer();
+
+	private static final TLVSerializer			TLV_SERIALIZER		= new TLVSerializer();
+
+	private static final TLVSerializer			TLV2_SERIALIZER		= new TLVSerializer(true);
+
 	/**
 	 * 
 	 * @param object
@@ -101,6 +116,73 @@ public abstract class FormatSerializer
 		}
 	}
 
+	/**
+	 * 
+	 * @param object
+	 * @param fd
+	 *          a composite field of object.
+	 * @return The object in fd. For a lazy field, it is deserialized first, if it hasn't been.
+	 * @throws SIMPLTranslationException
+	 */
+	protected Object getComposite(Object object, FieldDescriptor fd)
+			throws SIMPLTranslationException
+	{
+		return composite(fd.getValue(object), fd);
+	}
+
+	/**
+	 * 
+	 * @param value
+	 *          what is in the composite field fd.
+	 * @param fd
+	 * @return The object in value, deserialized first if fd is lazy, and it hasn't been.
+	 * @throws SIMPLTranslationException
+	 */
+	protected Object composite(Object value, FieldDescriptor fd) throws SIMPLTranslationException
+	{
+		return fd.isLazy() && value != null ? ((LazyComposite<?>) value).get() : value;
+	}
+
+	/**
+	 * 
+	 * @param object
+	 * @param fd
+	 *          a composite field of object.
+	 * @param format
+	 * @return If fd is lazy, and holds an element that was read in format, and not deserialized, that
+	 *         element, to be written out as it is; otherwise null.
+	 */
+	protected Object getRawComposite(Object object, FieldDescriptor fd, Format format)
+	{
+		return fd.isLazy() ? rawComposite(fd.getValue(object), fd, format) : null;
+	}
+
+	/**
+	 * 
+	 * @param value
+	 *          what is in the composite field fd.
+	 * @param fd
+	 * @param format
+	 * @return As getRawComposite(), for the field's value.
+	 */
+	protected Object rawComposite(Object value, FieldDescriptor fd, Format format)
+	{
+		return fd.isLazy() && value != null ? ((LazyComposite<?>) value).getRaw(format) : null;
+	}
+
+	/**
+	 * 
+	 * @param classDescriptor
+	 * @return The SerializationCache to reuse the bodies of instances of classDescriptor's class from,
+	 *         and keep them in; or null if they are serialized each time.
+	 */
+	protected SerializationCache serializationCache(ClassDescriptor<?> classDescriptor)
+	{
+		SerializationCache cache = SerializationCache.get();
+		return cache != null && classDescriptor.isSerializationCached()
+				&& SimplTypesScope.graphSwitch != GRAPH_SWITCH.ON ? cache : null;
+	}
+
 	/**
 	 * 
 	 * @param object
@@ -114,7 +196,8 @@ public abstract class FormatSerializer
 	}
 
 	/**
-	 * returns the specific type of serializer based on the input format
+	 * returns the specific type of serializer based on the input format. The serializer is shared, and
+	 * safe to use from any thread.
 	 * 
 	 * @param format
 	 * @return FormatSerializer
@@ -125,13 +208,15 @@ public abstract class FormatSerializer
 		switch (format)
 		{
 		case XML:
-			return new XMLSerializer();
+			return XML_SERIALIZER;
 		case JSON:
-			return new JSONSerializer();
+			return JSON_SERIALIZER;
 		case TLV:
-			return new TLVSerializer();
+			return TLV_SERIALIZER;
+		case TLV2:
+			return TLV2_SERIALIZER;
 		case BIBTEX:
-			return new BibtexSerializer();
+			return BIBTEX_SERIALIZER;
 		default:
 			throw new SIMPLTranslationException(format + " format not supported");
 		}
@@ -150,11 +235,11 @@ public abstract class FormatSerializer
 		switch (format)
 		{
 		case XML:
-			return new XMLSerializer();
+			return XML_SERIALIZER;
 		case JSON:
-			return new JSONSerializer();
+			return JSON_SERIALIZER;
 		case BIBTEX:
-			return new BibtexSerializer();
+			return BIBTEX_SERIALIZER;
 		default:
 			throw new SIMPLTranslationException(format + " format not supported");
 		}
@@ -173,7 +258,9 @@ public abstract class FormatSerializer
 		switch (format)
 		{
 		case TLV:
-			return new TLVSerializer();
+			return TLV_SERIALIZER;
+		case TLV2:
+			return TLV2_SERIALIZER;
 		default:
 			throw new SIMPLTranslationException(format + " format not supported");
 		}
@@ -0,0 +1,230 @@
+package ecologylab.serialization.serializers;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.List;
+
+import ecologylab.generic.Debug;
+import ecologylab.serialization.ClassDescriptor;
+import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.FieldType;
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.serializers.output.SerializationOutput;
+
+/**
+ * Straight-line serialization of the fields of one class, written at compile time by
+ * SimplProcessor. Where the interpreting serializers loop over a ClassDescriptor's field
+ * descriptors, and switch on the type of each, the generated code has one call per field, to the
+ * FieldWriter method for its type, and reads composite, collection and map fields that its package
+ * can reach directly, by name.
+ * <p/>
+ * When the tree is built with the processor (ant build-codegen), each class with simpl_scalar,
+ * simpl_composite, simpl_collection or simpl_map fields gets a subclass of this, named after the
+ * class's binary name plus {@value #SUFFIX}, in the same package. The XML and JSON serializers use
+ * it, through ClassDescriptor.getGeneratedSerializer(), for the fields that their loops would
+ * otherwise write. The rest, such as hooks, graph handling, tags, and the values of scalars, stays
+ * with them, so the output is the same.
+ * <p/>
+ * The processor can only predict how a ClassDescriptor will organize the fields, so each generated
+ * serializer names the fields it expects, in order, and is only used for a ClassDescriptor whose
+ * field descriptors match. Classes built without the processor, or whose descriptors are organized
+ * differently, are serialized by the loops, as before.
+ */
+public abstract class GeneratedSerializer
+{
+	public static final String	SUFFIX	= "$SimplSerializer";
+
+	/**
+	 * Writes one field, in the format of the serializer that implements it. Each method is passed the
+	 * number of fields written so far, and returns it, counting the field if it was written.
+	 */
+	public interface FieldWriter
+	{
+		int attribute(Object object, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException;
+
+		int leaf(Object object, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException;
+
+		/**
+		 * @param value
+		 *          What is in the composite field fd of the object being serialized.
+		 */
+		int composite(Object value, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException;
+
+		/**
+		 * @param value
+		 *          What is in the collection or map field fd of the object being serialized.
+		 */
+		int collection(Object value, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException;
+	}
+
+	private final String[]		attributeFields;
+
+	private final String[]		elementFields;
+
+	private final FieldType[]	elementTypes;
+
+	/**
+	 * @param attributeFields
+	 *          The fields expected in ClassDescriptor.attributeFieldDescriptors(), each as the binary
+	 *          name of the class that declares it, a '.', and its name.
+	 * @param elementFields
+	 *          The fields expected in ClassDescriptor.elementFieldDescriptors(), in the same form.
+	 * @param elementTypes
+	 *          SCALAR, COMPOSITE_ELEMENT or COLLECTION_ELEMENT for each of elementFields, the last
+	 *          standing for any collection or map.
+	 */
+	protected GeneratedSerializer(String[] attributeFields, String[] elementFields,
+			FieldType[] elementTypes)
+	{
+		this.attributeFields = attributeFields;
+		this.elementFields = elementFields;
+		this.elementTypes = elementTypes;
+	}
+
+	/**
+	 * @param classDescriptor
+	 * @return The GeneratedSerializer for the described class, or null if it was built without one, or
+	 *         the one it has doesn't match classDescriptor's field descriptors.
+	 */
+	public static GeneratedSerializer forClass(ClassDescriptor<? extends FieldDescriptor> classDescriptor)
+	{
+		Class<?> describedClass = classDescriptor.getDescribedClass();
+		if (describedClass == null)
+			return null;
+		GeneratedSerializer result = load(describedClass);
+		return result != null && result.matches(classDescriptor) ? result : null;
+	}
+
+	private static GeneratedSerializer load(Class<?> thatClass)
+	{
+		String name = thatClass.getName() + SUFFIX;
+		try
+		{
+			Class<?> generatedClass = Class.forName(name, true, thatClass.getClassLoader());
+			if (GeneratedSerializer.class.isAssignableFrom(generatedClass))
+				return (GeneratedSerializer) generatedClass.newInstance();
+			Debug.warning(GeneratedSerializer.class, generatedClass + " is not a GeneratedSerializer");
+		}
+		catch (ClassNotFoundException e)
+		{
+			// built without the processor
+		}
+		catch (InstantiationException e)
+		{
+			Debug.warning(GeneratedSerializer.class, "Can't instantiate " + name + ": " + e);
+		}
+		catch (IllegalAccessException e)
+		{
+			Debug.warning(GeneratedSerializer.class, "Can't instantiate " + name + ": " + e);
+		}
+		catch (LinkageError e)
+		{
+			Debug.warning(GeneratedSerializer.class, "Can't load " + name + ": " + e);
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if classDescriptor has the fields this was generated for, in the same order, and of
+	 *         the same types.
+	 */
+	boolean matches(ClassDescriptor<? extends FieldDescriptor> classDescriptor)
+	{
+		List<? extends FieldDescriptor> attributes = classDescriptor.attributeFieldDescriptors();
+		List<? extends FieldDescriptor> elements = classDescriptor.elementFieldDescriptors();
+		if (attributes.size() != attributeFields.length || elements.size() != elementFields.length)
+			return false;
+		for (int i = 0; i < attributeFields.length; i++)
+		{
+			FieldDescriptor fd = attributes.get(i);
+			if (!isField(fd, attributeFields[i]) || fd.getType() != FieldType.SCALAR)
+				return false;
+		}
+		for (int i = 0; i < elementFields.length; i++)
+		{
+			FieldDescriptor fd = elements.get(i);
+			if (!isField(fd, elementFields[i]) || typeOf(fd) != elementTypes[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isField(FieldDescriptor fd, String expected)
+	{
+		Field field = fd.getField();
+		if (field == null)
+			return false;
+		String className = field.getDeclaringClass().getName();
+		String name = field.getName();
+		return expected.length() == className.length() + 1 + name.length()
+				&& expected.startsWith(className) && expected.charAt(className.length()) == '.'
+				&& expected.endsWith(name);
+	}
+
+	/**
+	 * @return fd's type, with collections and maps of all kinds as COLLECTION_ELEMENT.
+	 */
+	private static FieldType typeOf(FieldDescriptor fd)
+	{
+		switch (fd.getType())
+		{
+		case COLLECTION_SCALAR:
+		case MAP_ELEMENT:
+		case MAP_SCALAR:
+			return FieldType.COLLECTION_ELEMENT;
+		default:
+			return fd.getType();
+		}
+	}
+
+	/**
+	 * Write the fields of object that are in attributes, with writer.attribute().
+	 *
+	 * @param writer
+	 * @param object
+	 * @param attributes
+	 *          The attributeFieldDescriptors() of a ClassDescriptor that this matches.
+	 * @param output
+	 * @param translationContext
+	 * @param numOfFields
+	 *          How many fields of object have been written already.
+	 * @return numOfFields, plus the number of fields written.
+	 */
+	public abstract int serializeAttributes(FieldWriter writer, Object object,
+			List<? extends FieldDescriptor> attributes, SerializationOutput output,
+			TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+			IOException;
+
+	/**
+	 * Write the fields of object that are in elements, with the writer method for the type of each.
+	 *
+	 * @param writer
+	 * @param object
+	 * @param elements
+	 *          The elementFieldDescriptors() of a ClassDescriptor that this matches.
+	 * @param output
+	 * @param translationContext
+	 * @param numOfFields
+	 *          How many fields of object have been written already.
+	 * @return numOfFields, plus the number of fields written.
+	 */
+	public abstract int serializeElements(FieldWriter writer, Object object,
+			List<? extends FieldDescriptor> elements, SerializationOutput output,
+			TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+			IOException;
+
+	@Override
+	public String toString()
+	{
+		return getClass().getSimpleName();
+	}
+}
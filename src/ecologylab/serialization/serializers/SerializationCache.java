@@ -0,0 +1,278 @@
+package ecologylab.serialization.serializers;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import ecologylab.serialization.ClassDescriptor;
+import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.ObservableElementState;
+import ecologylab.serialization.formatenums.Format;
+
+/**
+ * Serialized forms of objects of @simpl_cached classes, by object and format, for the serializers
+ * to write out again, as long as the object's version stamp is the same. The objects may be roots,
+ * or composites inside other objects.
+ * <p/>
+ * What is kept is the object's body, without the tag or key of the field it is in: for XML, its
+ * attributes and content; for JSON, its members; and for TLV, its fields' blocks. So it is reused in
+ * any field. Nothing is kept, or reused, while graph handling is on, since simpl:ids depend on the
+ * rest of the graph.
+ * <p/>
+ * The bodies are held in least recently used order, and the oldest are dropped when the total
+ * number of chars and bytes in the cache goes over its limit. The objects are held too, until their
+ * entries are dropped.
+ * <p/>
+ * Serializers use the cache installed with set(). It is safe to use from any thread.
+ */
+public class SerializationCache
+{
+	/**
+	 * What an entry is taken to weigh, on top of its chars or bytes.
+	 */
+	static final int													ENTRY_OVERHEAD	= 64;
+
+	private static volatile SerializationCache	installed;
+
+	private final long													maxWeight;
+
+	private long																weight;
+
+	private final LinkedHashMap<Key, Entry>			entries					= new LinkedHashMap<Key, Entry>(
+																																	16, 0.75f, true);
+
+	private long																hits;
+
+	private long																misses;
+
+	private long																evictions;
+
+	/**
+	 *
+	 * @param maxWeight
+	 *          how many chars and bytes, in all, the cache may hold.
+	 */
+	public SerializationCache(long maxWeight)
+	{
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * @return The cache that the serializers use, or null, if there is none.
+	 */
+	public static SerializationCache get()
+	{
+		return installed;
+	}
+
+	/**
+	 * Install the cache that the serializers use.
+	 *
+	 * @param cache
+	 *          null to stop caching.
+	 */
+	public static void set(SerializationCache cache)
+	{
+		installed = cache;
+	}
+
+	/**
+	 * @param object
+	 * @param classDescriptor
+	 *          of object.
+	 * @return The version stamp of object: the value of its @simpl_cached versionField, if it has one;
+	 *         else its modification stamp, if it is an ObservableElementState; else 0.
+	 */
+	public static long stamp(Object object, ClassDescriptor<?> classDescriptor)
+	{
+		FieldDescriptor versionFd = classDescriptor.getVersionFieldDescriptor();
+		if (versionFd != null)
+		{
+			Object version = versionFd.getValue(object);
+			if (version instanceof Number)
+				return ((Number) version).longValue();
+			if (version instanceof Date)
+				return ((Date) version).getTime();
+			return version == null ? 0 : version.hashCode();
+		}
+		if (object instanceof ObservableElementState)
+			return ((ObservableElementState) object).getModificationStamp();
+		return 0;
+	}
+
+	/**
+	 *
+	 * @param object
+	 * @param format
+	 * @param stamp
+	 *          object's current version stamp.
+	 * @return The body of object, as serialized in format, at version stamp: a String for string
+	 *         formats, and a byte[] for binary ones; or null if it is not in the cache.
+	 */
+	public synchronized Object get(Object object, Format format, long stamp)
+	{
+		Entry entry = entries.get(new Key(object, format));
+		if (entry == null || entry.stamp != stamp)
+		{
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.body;
+	}
+
+	/**
+	 * Keep the body of object, as serialized in format at version stamp, replacing any other version
+	 * of it, then drop the least recently used entries, until the cache is within its limit.
+	 *
+	 * @param object
+	 * @param format
+	 * @param stamp
+	 * @param body
+	 *          a String for string formats, and a byte[] for binary ones.
+	 */
+	public synchronized void put(Object object, Format format, long stamp, Object body)
+	{
+		Key key = new Key(object, format);
+		Entry entry = new Entry(stamp, body);
+		Entry previous;
+		if (entry.weight > maxWeight)
+		{
+			// too big to keep; just drop the old version
+			previous = entries.remove(key);
+		}
+		else
+		{
+			previous = entries.put(key, entry);
+			weight += entry.weight;
+		}
+		if (previous != null)
+			weight -= previous.weight;
+
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (weight > maxWeight)
+		{
+			weight -= iterator.next().weight;
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Drop every serialized form of object.
+	 *
+	 * @param object
+	 */
+	public synchronized void remove(Object object)
+	{
+		for (Format format : Format.values())
+		{
+			Entry entry = entries.remove(new Key(object, format));
+			if (entry != null)
+				weight -= entry.weight;
+		}
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		weight = 0;
+	}
+
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+	public synchronized long getEvictionCount()
+	{
+		return evictions;
+	}
+
+	/**
+	 * @return The fraction of lookups that found the object, or 0 before there are any.
+	 */
+	public synchronized double getHitRatio()
+	{
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * @return The chars and bytes held, plus ENTRY_OVERHEAD for each entry.
+	 */
+	public synchronized long getWeight()
+	{
+		return weight;
+	}
+
+	public long getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "SerializationCache[" + entries.size() + " entries, " + weight + "/" + maxWeight
+				+ ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+	}
+
+	/**
+	 * An object, compared by identity, and a format.
+	 */
+	private static final class Key
+	{
+		final Object	object;
+
+		final Format	format;
+
+		Key(Object object, Format format)
+		{
+			this.object = object;
+			this.format = format;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode(object) * 31 + format.ordinal();
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof Key))
+				return false;
+			Key that = (Key) other;
+			return this.object == that.object && this.format == that.format;
+		}
+	}
+
+	private static final class Entry
+	{
+		final long		stamp;
+
+		final Object	body;
+
+		final long		weight;
+
+		Entry(long stamp, Object body)
+		{
+			this.stamp = stamp;
+			this.body = body;
+			this.weight = ENTRY_OVERHEAD
+					+ (body instanceof byte[] ? ((byte[]) body).length : ((CharSequence) body).length());
+		}
+	}
+}
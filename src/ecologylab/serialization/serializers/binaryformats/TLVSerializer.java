@@ -1,10 +1,7 @@
 package ecologylab.serialization.serializers.binaryformats;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -18,6 +15,8 @@ import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.XMLTools;
 import ecologylab.serialization.annotations.FieldUsage;
 import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.serializers.SerializationCache;
+import ecologylab.serialization.serializers.output.ByteBufferOutput;
 
 /**
  * 
@@ -26,10 +25,36 @@ import ecologylab.serialization.formatenums.Format;
  */
 public class TLVSerializer extends BinarySerializer implements FieldTypes
 {
+	/**
+	 * When true, scalars are written in their native binary form (BinaryFormat.TLV2), rather than as
+	 * text.
+	 */
+	private final boolean																nativeScalars;
+
+	/**
+	 * Outputs bigger than this are not kept for reuse, so one huge message doesn't pin its buffer.
+	 */
+	private static final int														MAX_RETAINED_CAPACITY	= 1024 * 1024;
+
+	/**
+	 * The idle output for each thread. It is taken out while in use, so that a hook that serializes
+	 * another object on the same thread gets a fresh one.
+	 */
+	private static final ThreadLocal<ByteBufferOutput>	outputs								= new ThreadLocal<ByteBufferOutput>();
 
 	public TLVSerializer()
 	{
+		this(false);
+	}
 
+	/**
+	 * 
+	 * @param nativeScalars
+	 *          true to write scalars in their native binary form, as BinaryFormat.TLV2.
+	 */
+	public TLVSerializer(boolean nativeScalars)
+	{
+		this.nativeScalars = nativeScalars;
 	}
 
 	/**
@@ -45,161 +70,247 @@ public class TLVSerializer extends BinarySerializer implements FieldTypes
 	public void serialize(Object object, DataOutputStream dataOutputStream,
 			TranslationContext translationContext) throws SIMPLTranslationException
 	{
-		translationContext.resolveGraph(object);
-
-		ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor = ClassDescriptor
-				.getClassDescriptor(object.getClass());
-
+		ByteBufferOutput output = acquireOutput();
 		try
 		{
-			serialize(object, rootObjectClassDescriptor.pseudoFieldDescriptor(), dataOutputStream,
-					translationContext);
+			serialize(object, output, translationContext);
+			output.writeTo(dataOutputStream);
 		}
 		catch (IOException e)
 		{
 			throw new SIMPLTranslationException("IO Exception occurred", e);
 		}
+		finally
+		{
+			releaseOutput(output);
+		}
+	}
+
+	/**
+	 * Serialize object into output, in a single pass. The length of each block is back-patched when
+	 * the block closes, so nothing is copied from a child block into its parent. When this returns,
+	 * output.byteBuffer() can be handed straight to a channel.
+	 * 
+	 * @param object
+	 * @param output
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 */
+	public void serialize(Object object, ByteBufferOutput output,
+			TranslationContext translationContext) throws SIMPLTranslationException
+	{
+		translationContext.resolveGraph(object);
+
+		ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor = ClassDescriptor
+				.getClassDescriptor(object.getClass());
+
+		serialize(object, rootObjectClassDescriptor.pseudoFieldDescriptor(), output,
+				translationContext);
+	}
+
+	/**
+	 * Take this thread's idle output, or make a new one, if it is in use by an outer serialization.
+	 */
+	private static ByteBufferOutput acquireOutput()
+	{
+		ByteBufferOutput output = outputs.get();
+		if (output == null)
+			return new ByteBufferOutput();
+		outputs.set(null);
+		return output;
+	}
+
+	private static void releaseOutput(ByteBufferOutput output)
+	{
+		if (output.capacity() <= MAX_RETAINED_CAPACITY)
+		{
+			output.clear();
+			outputs.set(output);
+		}
 	}
 
 	/**
 	 * 
 	 * @param object
 	 * @param rootObjectFieldDescriptor
-	 * @param dataOutputStream
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
-	 * @throws IOException
-	 * @throws IOException
 	 */
 	private void serialize(Object object, FieldDescriptor rootObjectFieldDescriptor,
-			DataOutputStream dataOutputStream, TranslationContext translationContext)
-			throws SIMPLTranslationException, IOException
+			ByteBufferOutput output, TranslationContext translationContext)
+			throws SIMPLTranslationException
 	{
 
 		if (alreadySerialized(object, translationContext))
 		{
-			writeSimplRef(object, rootObjectFieldDescriptor, dataOutputStream);
+			writeSimplRef(object, rootObjectFieldDescriptor, output, translationContext);
 			return;
 		}
 
 		translationContext.mapObject(object);
 
-		serializationPreHook(object, translationContext);
-
 		ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor = getClassDescriptor(object);
 
-		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-		DataOutputStream outputBuffer = new DataOutputStream(byteArrayOutputStream);
+		int lengthPosition = openBlock(output, rootObjectFieldDescriptor.getTLVId());
+
+		SerializationCache cache = serializationCache(rootObjectClassDescriptor);
+		if (cache == null)
+		{
+			serializeBody(object, output, translationContext, rootObjectClassDescriptor);
+		}
+		else
+		{
+			Format format = nativeScalars ? Format.TLV2 : Format.TLV;
+			long stamp = SerializationCache.stamp(object, rootObjectClassDescriptor);
+			byte[] body = (byte[]) cache.get(object, format, stamp);
+			if (body != null)
+			{
+				output.write(body);
+			}
+			else
+			{
+				int bodyPosition = output.position();
+				serializeBody(object, output, translationContext, rootObjectClassDescriptor);
+				cache.put(object, format, stamp, output.toByteArray(bodyPosition));
+			}
+		}
 
-		int id = rootObjectFieldDescriptor.getTLVId();
+		closeBlock(output, lengthPosition);
+	}
 
-		serializeFields(object, outputBuffer, translationContext, rootObjectClassDescriptor);
+	/**
+	 * Write the blocks of the fields of object, inside its own block.
+	 * 
+	 * @param object
+	 * @param output
+	 * @param translationContext
+	 * @param classDescriptor
+	 * @throws SIMPLTranslationException
+	 */
+	private void serializeBody(Object object, ByteBufferOutput output,
+			TranslationContext translationContext,
+			ClassDescriptor<? extends FieldDescriptor> classDescriptor) throws SIMPLTranslationException
+	{
+		serializationPreHook(object, translationContext);
 
-		writeHeader(dataOutputStream, byteArrayOutputStream, id);
+		serializeFields(object, output, translationContext, classDescriptor);
 
 		serializationPostHook(object, translationContext);
-
 	}
 
 	/**
+	 * Write the type of a block, and reserve room for its length.
 	 * 
-	 * @param dataOutputStream
-	 * @param buffer
+	 * @param output
 	 * @param tlvId
-	 * @throws SIMPLTranslationException
+	 * @return The position of the length, for closeBlock().
 	 */
-	private void writeHeader(DataOutputStream dataOutputStream, ByteArrayOutputStream buffer,
-			int tlvId) throws SIMPLTranslationException
+	private static int openBlock(ByteBufferOutput output, int tlvId)
 	{
-		try
-		{
-			dataOutputStream.writeInt(tlvId);
+		output.writeInt(tlvId);
+		return output.reserveInt();
+	}
 
-			dataOutputStream.writeInt(buffer.size());
-			buffer.writeTo(dataOutputStream);
-		}
-		catch (IOException e)
-		{
-			throw new SIMPLTranslationException("IOException", e);
-		}
+	/**
+	 * Fill in the length of the block opened at lengthPosition, which ends here.
+	 * 
+	 * @param output
+	 * @param lengthPosition
+	 */
+	private static void closeBlock(ByteBufferOutput output, int lengthPosition)
+	{
+		output.patchInt(lengthPosition, output.position() - lengthPosition - 4);
 	}
 
 	/**
 	 * 
 	 * @param object
-	 * @param dataOutputStream
+	 * @param output
 	 * @param translationContext
-	 * @param allFieldDescriptors
-	 * @throws IOException
+	 * @param classDescriptor
 	 * @throws SIMPLTranslationException
-	 * @throws IOException
 	 */
-	private void serializeFields(Object object, DataOutputStream outputBuffer,
+	private void serializeFields(Object object, ByteBufferOutput output,
 			TranslationContext translationContext,
-			ClassDescriptor<? extends FieldDescriptor> classDescriptor) throws SIMPLTranslationException,
-			IOException
+			ClassDescriptor<? extends FieldDescriptor> classDescriptor) throws SIMPLTranslationException
 	{
 		if (SimplTypesScope.graphSwitch == GRAPH_SWITCH.ON)
 		{
 			if (translationContext.needsHashCode(object))
 			{
-				writeSimplIdAttribute(object, outputBuffer);
+				writeSimplIdAttribute(object, output, translationContext);
 			}
 		}
 
 		ArrayList<? extends FieldDescriptor> attributeFieldDescriptors = classDescriptor.attributeFieldDescriptors();
-		serializeFieldsHelper(outputBuffer, object, translationContext, attributeFieldDescriptors);
+		serializeFieldsHelper(output, object, translationContext, attributeFieldDescriptors);
 		ArrayList<? extends FieldDescriptor> elementFieldDescriptors = classDescriptor.elementFieldDescriptors();
-		serializeFieldsHelper(outputBuffer, object, translationContext, elementFieldDescriptors);
+		serializeFieldsHelper(output, object, translationContext, elementFieldDescriptors);
 	}
 
-	private void serializeFieldsHelper(DataOutputStream outputBuffer, Object object,
+	private void serializeFieldsHelper(ByteBufferOutput output, Object object,
 			TranslationContext translationContext, ArrayList<? extends FieldDescriptor> fieldDescriptors)
-			throws SIMPLTranslationException, IOException
+			throws SIMPLTranslationException
 	{
 		for (FieldDescriptor childFd : fieldDescriptors)
 		{
-			ByteArrayOutputStream byteArrayOutputStreamCollection = new ByteArrayOutputStream();
-			DataOutputStream collectionBuffer = new DataOutputStream(byteArrayOutputStreamCollection);
-
 			switch (childFd.getType())
 			{
 			case SCALAR:
-				writeValue(object, childFd, outputBuffer, translationContext);
+				writeValue(object, childFd, output, translationContext);
 				break;
 			case COMPOSITE_ELEMENT:
-				Object compositeObject = childFd.getValue(object);
-					
+				Object rawComposite = getRawComposite(object, childFd, nativeScalars ? Format.TLV2
+						: Format.TLV);
+				if (rawComposite != null)
+				{
+					writeEmptyWrap(childFd, output);
+					output.write((byte[]) rawComposite);
+					writeEmptyWrap(childFd, output);
+					break;
+				}
+				Object compositeObject = getComposite(object, childFd);
+				if (compositeObject == null)
+					break;
+
 				FieldDescriptor compositeObjectFieldDescriptor = childFd.isPolymorphic() ? getClassDescriptor(
 						compositeObject).pseudoFieldDescriptor()
 						: childFd;
-				writeWrap(childFd, outputBuffer, byteArrayOutputStreamCollection);
-				serialize(compositeObject, compositeObjectFieldDescriptor, outputBuffer, translationContext);
-				writeWrap(childFd, outputBuffer, byteArrayOutputStreamCollection);
+				// wrapped composites are bracketed by empty wrappers
+				writeEmptyWrap(childFd, output);
+				serialize(compositeObject, compositeObjectFieldDescriptor, output, translationContext);
+				writeEmptyWrap(childFd, output);
 				break;
 			case COLLECTION_SCALAR:
 			case MAP_SCALAR:
-				Object scalarCollectionObject = childFd.getValue(object);
-				Collection<?> scalarCollection = XMLTools.getCollection(scalarCollectionObject);
+				Collection<?> scalarCollection = XMLTools.getCollection(childFd.getValue(object));
+				if (scalarCollection == null || scalarCollection.isEmpty())
+					break;
+
+				int scalarWrapPosition = openWrap(childFd, output);
 				for (Object collectionObject : scalarCollection)
 				{
-					writeScalarCollectionLeaf(collectionObject, childFd, collectionBuffer, translationContext);
+					writeScalarCollectionLeaf(collectionObject, childFd, output, translationContext);
 				}
-				writeWrap(childFd, outputBuffer, byteArrayOutputStreamCollection);
+				closeWrap(output, scalarWrapPosition);
 				break;
 			case COLLECTION_ELEMENT:
 			case MAP_ELEMENT:
-				Object compositeCollectionObject = childFd.getValue(object);
-				Collection<?> compositeCollection = XMLTools.getCollection(compositeCollectionObject);
+				Collection<?> compositeCollection = XMLTools.getCollection(childFd.getValue(object));
+				if (compositeCollection == null || compositeCollection.isEmpty())
+					break;
+
+				int compositeWrapPosition = openWrap(childFd, output);
 				for (Object collectionComposite : compositeCollection)
 				{
 					FieldDescriptor collectionObjectFieldDescriptor = childFd.isPolymorphic() ? getClassDescriptor(
 							collectionComposite).pseudoFieldDescriptor()
 							: childFd;
-					serialize(collectionComposite, collectionObjectFieldDescriptor, collectionBuffer,
+					serialize(collectionComposite, collectionObjectFieldDescriptor, output,
 							translationContext);
 				}
-				writeWrap(childFd, outputBuffer, byteArrayOutputStreamCollection);
+				closeWrap(output, compositeWrapPosition);
 				break;
 			}
 		}
@@ -208,41 +319,45 @@ public class TLVSerializer extends BinarySerializer implements FieldTypes
 	/**
 	 * 
 	 * @param object
-	 * @param outputBuffer
-	 * @throws IOException
+	 * @param output
 	 */
-	private void writeSimplIdAttribute(Object object, DataOutputStream outputBuffer)
-			throws IOException
+	private void writeSimplIdAttribute(Object object, ByteBufferOutput output,
+			TranslationContext translationContext)
 	{
-		outputBuffer.writeInt(TranslationContext.SIMPL_ID.hashCode());
-		outputBuffer.writeInt(4);
-		outputBuffer.writeInt(object.hashCode());
+		output.writeInt(TranslationContext.SIMPL_ID.hashCode());
+		output.writeInt(4);
+		output.writeInt(translationContext.getSimplIdNumber(object));
 	}
 
 	/**
+	 * Open a wrapper block, if fd is wrapped.
 	 * 
 	 * @param fd
-	 * @param outputBuffer
-	 * @param collectionBuffy
-	 * @throws SIMPLTranslationException
+	 * @param output
+	 * @return The position of the wrapper's length, or -1 if fd is not wrapped.
 	 */
-	private void writeWrap(FieldDescriptor fd, DataOutputStream outputBuffer,
-			ByteArrayOutputStream collectionBuffy) throws SIMPLTranslationException
+	private static int openWrap(FieldDescriptor fd, ByteBufferOutput output)
 	{
-		try
-		{
-			if (fd.isWrapped())
-			{
-				outputBuffer.writeInt(fd.getWrappedTLVId());
-				outputBuffer.writeInt(collectionBuffy.size());
-				collectionBuffy.writeTo(outputBuffer);
-			}
-			else
-				collectionBuffy.writeTo(outputBuffer);
-		}
-		catch (IOException e)
+		return fd.isWrapped() ? openBlock(output, fd.getWrappedTLVId()) : -1;
+	}
+
+	private static void closeWrap(ByteBufferOutput output, int wrapPosition)
+	{
+		if (wrapPosition >= 0)
+			closeBlock(output, wrapPosition);
+	}
+
+	/**
+	 * 
+	 * @param fd
+	 * @param output
+	 */
+	private static void writeEmptyWrap(FieldDescriptor fd, ByteBufferOutput output)
+	{
+		if (fd.isWrapped())
 		{
-			throw new SIMPLTranslationException("IOException", e);
+			output.writeInt(fd.getWrappedTLVId());
+			output.writeInt(0);
 		}
 	}
 
@@ -250,45 +365,30 @@ public class TLVSerializer extends BinarySerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param outputBuffer
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 */
 	private void writeScalarCollectionLeaf(Object object, FieldDescriptor fd,
-			DataOutputStream outputBuffer, TranslationContext translationContext)
+			ByteBufferOutput output, TranslationContext translationContext)
 			throws SIMPLTranslationException
 	{
-		try
+		if (!fd.isDefaultValue(object.toString()))
 		{
-			if (!fd.isDefaultValue(object.toString()))
-			{
-				outputBuffer.writeInt(fd.getTLVId());
+			int lengthPosition = openBlock(output, fd.getTLVId());
 
-				// TODO appendValue in scalar types should be able to append bytes to DataOutputStream.
-				final StringBuilder buffy = new StringBuilder();
-				OutputStream outputStream = new OutputStream()
-				{
-					@Override
-					public void write(int b) throws IOException
-					{
-						buffy.append((char) b);
-					}
-				};
-
-				fd.appendCollectionScalarValue(new PrintStream(outputStream), object, translationContext,
-						Format.TLV);
-
-				ByteArrayOutputStream temp = new ByteArrayOutputStream();
-				DataOutputStream tempStream = new DataOutputStream(temp);
-				tempStream.writeBytes(buffy.toString());
-
-				outputBuffer.writeInt(tempStream.size());
-				temp.writeTo(outputBuffer);
+			if (nativeScalars)
+			{
+				fd.writeBinaryCollectionScalarValue(output, object, translationContext);
 			}
-		}
-		catch (IOException e)
-		{
-			throw new SIMPLTranslationException("IOException", e);
+			else
+			{
+				StringBuilder buffy = new StringBuilder();
+				fd.appendCollectionScalarValue(buffy, object, translationContext, Format.TLV);
+				output.write(buffy.toString().getBytes());
+			}
+
+			closeBlock(output, lengthPosition);
 		}
 	}
 
@@ -296,63 +396,46 @@ public class TLVSerializer extends BinarySerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param outputBuffer
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 */
-	private void writeValue(Object object, FieldDescriptor fd, DataOutputStream outputBuffer,
+	private void writeValue(Object object, FieldDescriptor fd, ByteBufferOutput output,
 			TranslationContext translationContext) throws SIMPLTranslationException
 	{
-		try
+		if (!fd.isDefaultValueFromContext(object))
 		{
-			if (!fd.isDefaultValueFromContext(object))
-			{
-				outputBuffer.writeInt(fd.getTLVId());
-
-				// TODO appendValue in scalar types should be able to append bytes to DataOutputStream.
-				final StringBuilder buffy = new StringBuilder();
-				OutputStream outputStream = new OutputStream()
-				{
-					@Override
-					public void write(int b) throws IOException
-					{
-						buffy.append((char) b);
-					}
-				};
-
-				fd.appendValue(new PrintStream(outputStream), object, translationContext, Format.TLV);
-
-				ByteArrayOutputStream temp = new ByteArrayOutputStream();
-				DataOutputStream tempStream = new DataOutputStream(temp);
-				tempStream.writeBytes(buffy.toString());
+			int lengthPosition = openBlock(output, fd.getTLVId());
 
-				outputBuffer.writeInt(tempStream.size());
-				temp.writeTo(outputBuffer);
+			if (nativeScalars)
+			{
+				fd.writeBinaryValue(output, object, translationContext);
 			}
-		}
-		catch (IOException e)
-		{
-			throw new SIMPLTranslationException("IOException", e);
+			else
+			{
+				StringBuilder buffy = new StringBuilder();
+				fd.appendValue(buffy, object, translationContext, Format.TLV);
+				output.write(buffy.toString().getBytes());
+			}
+
+			closeBlock(output, lengthPosition);
 		}
 	}
 
 	/**
 	 * 
 	 * @param object
-	 * @param rootObjectFieldDescriptor
-	 * @param dataOutputStream
-	 * @throws IOException
-	 * @throws SIMPLTranslationException
+	 * @param fd
+	 * @param output
+	 * @param translationContext
 	 */
-	private void writeSimplRef(Object object, FieldDescriptor fd, DataOutputStream outputStream)
-			throws IOException, SIMPLTranslationException
+	private void writeSimplRef(Object object, FieldDescriptor fd, ByteBufferOutput output,
+			TranslationContext translationContext)
 	{
-		ByteArrayOutputStream simplRefData = new ByteArrayOutputStream();
-		DataOutputStream outputBuffer = new DataOutputStream(simplRefData);
-		outputBuffer.writeInt(TranslationContext.SIMPL_REF.hashCode());
-		outputBuffer.writeInt(4);
-		outputBuffer.writeInt(object.hashCode());
-
-		writeHeader(outputStream, simplRefData, fd.getTLVId());
+		output.writeInt(fd.getTLVId());
+		output.writeInt(12);
+		output.writeInt(TranslationContext.SIMPL_REF.hashCode());
+		output.writeInt(4);
+		output.writeInt(translationContext.getSimplIdNumber(object));
 	}
 }
@@ -0,0 +1,46 @@
+package ecologylab.serialization.serializers.output;
+
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * SerializationOutput that passes everything on to an arbitrary Appendable, such as a Writer. Used
+ * when the caller hands us a target that we have no faster path for.
+ */
+public class AppendableOutput extends SerializationOutput
+{
+	private final Appendable	appendable;
+
+	public AppendableOutput(Appendable appendable)
+	{
+		this.appendable = appendable;
+	}
+
+	@Override
+	public AppendableOutput append(char c) throws IOException
+	{
+		appendable.append(c);
+		return this;
+	}
+
+	@Override
+	public AppendableOutput append(CharSequence csq) throws IOException
+	{
+		appendable.append(csq);
+		return this;
+	}
+
+	@Override
+	public AppendableOutput append(CharSequence csq, int start, int end) throws IOException
+	{
+		appendable.append(csq, start, end);
+		return this;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		if (appendable instanceof Flushable)
+			((Flushable) appendable).flush();
+	}
+}
@@ -0,0 +1,302 @@
+package ecologylab.serialization.serializers.output;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+/**
+ * DataOutput that writes big-endian, as DataOutputStream does, into a single ByteBuffer, which is
+ * grown by doubling when it runs out of room.
+ * <p/>
+ * Binary serializers use it to write length-prefixed blocks in one pass: reserveInt() leaves room
+ * for the length when a block opens, and patchInt() fills it in when the block closes, so nothing
+ * is buffered per block and copied into its parent. When done, hand byteBuffer() to a channel, or
+ * call writeTo() for a stream. clear() readies the output for reuse, keeping its buffer.
+ * <p/>
+ * Instances are not thread safe; each one is used by a single serialization at a time.
+ */
+public class ByteBufferOutput implements DataOutput
+{
+	public static final int	DEFAULT_CAPACITY	= 1024;
+
+	private static final int	COPY_CHUNK_SIZE		= 8 * 1024;
+
+	private ByteBuffer				buffer;
+
+	private final boolean			direct;
+
+	public ByteBufferOutput()
+	{
+		this(DEFAULT_CAPACITY, false);
+	}
+
+	/**
+	 *
+	 * @param initialCapacity
+	 * @param direct
+	 *          true to allocate direct buffers, which channels can write without copying.
+	 */
+	public ByteBufferOutput(int initialCapacity, boolean direct)
+	{
+		this.direct = direct;
+		this.buffer = allocate(Math.max(initialCapacity, 16));
+	}
+
+	private ByteBuffer allocate(int capacity)
+	{
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * Make sure there is room for count more bytes.
+	 */
+	private void ensureRoom(int count)
+	{
+		if (buffer.remaining() < count)
+		{
+			int needed = buffer.position() + count;
+			int capacity = buffer.capacity();
+			while (capacity < needed)
+				capacity <<= 1;
+			ByteBuffer bigger = allocate(capacity);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+	}
+
+	/**
+	 * @return The number of bytes written.
+	 */
+	public int position()
+	{
+		return buffer.position();
+	}
+
+	public int capacity()
+	{
+		return buffer.capacity();
+	}
+
+	/**
+	 * Skip over 4 bytes, to be filled in later, with patchInt().
+	 *
+	 * @return The position of the reserved bytes.
+	 */
+	public int reserveInt()
+	{
+		ensureRoom(4);
+		int position = buffer.position();
+		buffer.position(position + 4);
+		return position;
+	}
+
+	/**
+	 * Fill in 4 bytes reserved by reserveInt().
+	 *
+	 * @param position
+	 * @param value
+	 */
+	public void patchInt(int position, int value)
+	{
+		buffer.putInt(position, value);
+	}
+
+	/**
+	 * Discard what has been written, keeping the buffer.
+	 */
+	public void clear()
+	{
+		buffer.clear();
+	}
+
+	/**
+	 * @return A view of the bytes written so far, from position 0 to position(). It shares content
+	 *         with this, so use it before writing anything else.
+	 */
+	public ByteBuffer byteBuffer()
+	{
+		ByteBuffer result = buffer.duplicate();
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Write all of the bytes written so far to outputStream.
+	 *
+	 * @param outputStream
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream outputStream) throws IOException
+	{
+		if (buffer.hasArray())
+		{
+			outputStream.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+			return;
+		}
+		ByteBuffer bytes = byteBuffer();
+		byte[] chunk = new byte[Math.min(COPY_CHUNK_SIZE, bytes.remaining())];
+		while (bytes.hasRemaining())
+		{
+			int length = Math.min(chunk.length, bytes.remaining());
+			bytes.get(chunk, 0, length);
+			outputStream.write(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * @return A copy of the bytes written so far.
+	 */
+	public byte[] toByteArray()
+	{
+		return toByteArray(0);
+	}
+
+	/**
+	 * @param from
+	 *          a position of this, up to position().
+	 * @return A copy of the bytes written from position from on.
+	 */
+	public byte[] toByteArray(int from)
+	{
+		ByteBuffer bytes = byteBuffer();
+		bytes.position(from);
+		byte[] result = new byte[bytes.remaining()];
+		bytes.get(result);
+		return result;
+	}
+
+	@Override
+	public void write(int b)
+	{
+		ensureRoom(1);
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b)
+	{
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len)
+	{
+		ensureRoom(len);
+		buffer.put(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v)
+	{
+		write(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v)
+	{
+		write(v);
+	}
+
+	@Override
+	public void writeShort(int v)
+	{
+		ensureRoom(2);
+		buffer.putShort((short) v);
+	}
+
+	@Override
+	public void writeChar(int v)
+	{
+		ensureRoom(2);
+		buffer.putChar((char) v);
+	}
+
+	@Override
+	public void writeInt(int v)
+	{
+		ensureRoom(4);
+		buffer.putInt(v);
+	}
+
+	@Override
+	public void writeLong(long v)
+	{
+		ensureRoom(8);
+		buffer.putLong(v);
+	}
+
+	@Override
+	public void writeFloat(float v)
+	{
+		ensureRoom(4);
+		buffer.putFloat(v);
+	}
+
+	@Override
+	public void writeDouble(double v)
+	{
+		ensureRoom(8);
+		buffer.putDouble(v);
+	}
+
+	/**
+	 * Write the low byte of each char in s, as DataOutputStream does.
+	 */
+	@Override
+	public void writeBytes(String s)
+	{
+		int length = s.length();
+		ensureRoom(length);
+		for (int i = 0; i < length; i++)
+			buffer.put((byte) s.charAt(i));
+	}
+
+	@Override
+	public void writeChars(String s)
+	{
+		int length = s.length();
+		ensureRoom(length * 2);
+		for (int i = 0; i < length; i++)
+			buffer.putChar(s.charAt(i));
+	}
+
+	/**
+	 * Write s in modified UTF-8, preceded by its length in 2 bytes, as DataOutputStream does.
+	 */
+	@Override
+	public void writeUTF(String s) throws UTFDataFormatException
+	{
+		int length = s.length();
+		int utfLength = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = s.charAt(i);
+			utfLength += (c >= 0x0001 && c <= 0x007F) ? 1 : (c <= 0x07FF ? 2 : 3);
+		}
+		if (utfLength > 0xFFFF)
+			throw new UTFDataFormatException("encoded string too long: " + utfLength + " bytes");
+
+		ensureRoom(2 + utfLength);
+		buffer.putShort((short) utfLength);
+		for (int i = 0; i < length; i++)
+		{
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F)
+				buffer.put((byte) c);
+			else if (c <= 0x07FF)
+			{
+				buffer.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+			else
+			{
+				buffer.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+				buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+}
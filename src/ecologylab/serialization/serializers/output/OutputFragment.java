@@ -0,0 +1,60 @@
+package ecologylab.serialization.serializers.output;
+
+import java.nio.charset.Charset;
+
+/**
+ * A fixed run of output text, such as an opening tag or a JSON key, kept as a String, as chars and
+ * as UTF-8 bytes, so that each SerializationOutput can copy it in whichever form it writes, in one
+ * go.
+ * <p/>
+ * Fragments are immutable, and are meant to be made once, and written many times.
+ */
+public final class OutputFragment
+{
+	private static final Charset	UTF8	= Charset.forName("UTF-8");
+
+	private final String					text;
+
+	private final char[]					chars;
+
+	private final byte[]					utf8;
+
+	private OutputFragment(String text)
+	{
+		this.text = text;
+		this.chars = text.toCharArray();
+		this.utf8 = text.getBytes(UTF8);
+	}
+
+	public static OutputFragment of(String text)
+	{
+		return new OutputFragment(text);
+	}
+
+	public int length()
+	{
+		return chars.length;
+	}
+
+	/**
+	 * @return The chars of this fragment. The array is shared, and must not be modified.
+	 */
+	char[] chars()
+	{
+		return chars;
+	}
+
+	/**
+	 * @return The UTF-8 encoding of this fragment. The array is shared, and must not be modified.
+	 */
+	byte[] utf8()
+	{
+		return utf8;
+	}
+
+	@Override
+	public String toString()
+	{
+		return text;
+	}
+}
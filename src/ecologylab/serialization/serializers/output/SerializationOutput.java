@@ -0,0 +1,75 @@
+package ecologylab.serialization.serializers.output;
+
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * The character sink that string serializers write into. Implementations either append straight
+ * into a StringBuilder, or encode into bytes on the way to a stream, channel or buffer, so the
+ * serializers never have to bridge through a PrintStream.
+ * <p/>
+ * SerializationOutput is an Appendable, so ScalarTypes keep appending their values to it without
+ * knowing what the final target is.
+ * <p/>
+ * Instances are not thread safe; each one is used by a single serialization at a time.
+ */
+public abstract class SerializationOutput implements Appendable, Flushable
+{
+
+	@Override
+	public abstract SerializationOutput append(char c) throws IOException;
+
+	@Override
+	public abstract SerializationOutput append(CharSequence csq, int start, int end)
+			throws IOException;
+
+	@Override
+	public SerializationOutput append(CharSequence csq) throws IOException
+	{
+		if (csq == null)
+			csq = "null";
+		return append(csq, 0, csq.length());
+	}
+
+	/**
+	 * Write a precomputed fragment. Outputs that can copy its chars or bytes in one go override this.
+	 */
+	public SerializationOutput append(OutputFragment fragment) throws IOException
+	{
+		return append(fragment.toString());
+	}
+
+	/**
+	 * Push anything buffered in this through to the underlying target. The underlying target itself
+	 * is not closed.
+	 */
+	@Override
+	public void flush() throws IOException
+	{
+	}
+
+	/**
+	 * Flush, and give back any pooled resources that this holds. The underlying target is not
+	 * closed. This must not be used after it has been released.
+	 */
+	public void release() throws IOException
+	{
+		flush();
+	}
+
+	/**
+	 * Get a SerializationOutput that writes into the Appendable passed in. If the Appendable already
+	 * is a SerializationOutput, it is used as is.
+	 *
+	 * @param appendable
+	 * @return
+	 */
+	public static SerializationOutput wrap(Appendable appendable)
+	{
+		if (appendable instanceof SerializationOutput)
+			return (SerializationOutput) appendable;
+		if (appendable instanceof StringBuilder)
+			return new StringBuilderOutput((StringBuilder) appendable);
+		return new AppendableOutput(appendable);
+	}
+}
@@ -0,0 +1,54 @@
+package ecologylab.serialization.serializers.output;
+
+/**
+ * SerializationOutput that appends chars straight into a StringBuilder. Nothing is encoded, so
+ * non-ASCII text survives unchanged.
+ */
+public class StringBuilderOutput extends SerializationOutput
+{
+	private final StringBuilder	stringBuilder;
+
+	public StringBuilderOutput(StringBuilder stringBuilder)
+	{
+		this.stringBuilder = stringBuilder;
+	}
+
+	@Override
+	public StringBuilderOutput append(char c)
+	{
+		stringBuilder.append(c);
+		return this;
+	}
+
+	@Override
+	public StringBuilderOutput append(CharSequence csq)
+	{
+		stringBuilder.append(csq);
+		return this;
+	}
+
+	@Override
+	public StringBuilderOutput append(CharSequence csq, int start, int end)
+	{
+		stringBuilder.append(csq, start, end);
+		return this;
+	}
+
+	@Override
+	public StringBuilderOutput append(OutputFragment fragment)
+	{
+		stringBuilder.append(fragment.chars());
+		return this;
+	}
+
+	public StringBuilder getStringBuilder()
+	{
+		return stringBuilder;
+	}
+
+	@Override
+	public String toString()
+	{
+		return stringBuilder.toString();
+	}
+}
@@ -0,0 +1,257 @@
+package ecologylab.serialization.serializers.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import ecologylab.io.ByteBufferPool;
+
+/**
+ * SerializationOutput that encodes chars as UTF-8, directly into a ByteBuffer.
+ * <p/>
+ * When writing to an OutputStream or a WritableByteChannel, a staging buffer is borrowed from a
+ * pool, and drained to the target whenever it fills up, and on flush(). When writing to a
+ * ByteBuffer, the bytes are encoded straight into it, with no staging; an IOException is thrown if
+ * it runs out of room.
+ * <p/>
+ * Surrogate pairs are combined into 4 byte sequences, even when the two halves arrive in separate
+ * append() calls. Unpaired surrogates are written as '?', as String.getBytes() does.
+ */
+public class Utf8Output extends SerializationOutput
+{
+	public static final int							STAGING_BUFFER_SIZE	= 8 * 1024;
+
+	private static final ByteBufferPool	STAGING_BUFFER_POOL	= new ByteBufferPool(4, 4,
+																																STAGING_BUFFER_SIZE);
+
+	private static final byte						REPLACEMENT					= (byte) '?';
+
+	private final OutputStream					outputStream;
+
+	private final WritableByteChannel		channel;
+
+	private ByteBuffer									buffer;
+
+	private final boolean								staging;
+
+	/**
+	 * High surrogate waiting for its low surrogate, or 0.
+	 */
+	private char												pendingHighSurrogate;
+
+	/**
+	 * Encode into a pooled staging buffer, which is written to the OutputStream when it fills up.
+	 *
+	 * @param outputStream
+	 */
+	public Utf8Output(OutputStream outputStream)
+	{
+		this(outputStream, null, STAGING_BUFFER_POOL.acquire(), true);
+	}
+
+	/**
+	 * Encode into a pooled staging buffer, which is written to the channel when it fills up. The
+	 * channel should be in blocking mode; for non-blocking writes, encode into a ByteBuffer instead,
+	 * and hand that to the selector.
+	 *
+	 * @param channel
+	 */
+	public Utf8Output(WritableByteChannel channel)
+	{
+		this(null, channel, STAGING_BUFFER_POOL.acquire(), true);
+	}
+
+	/**
+	 * Encode straight into target, starting at its current position.
+	 *
+	 * @param target
+	 */
+	public Utf8Output(ByteBuffer target)
+	{
+		this(null, null, target, false);
+	}
+
+	private Utf8Output(OutputStream outputStream, WritableByteChannel channel, ByteBuffer buffer,
+			boolean staging)
+	{
+		this.outputStream = outputStream;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.staging = staging;
+	}
+
+	@Override
+	public Utf8Output append(char c) throws IOException
+	{
+		encode(c);
+		return this;
+	}
+
+	@Override
+	public Utf8Output append(CharSequence csq) throws IOException
+	{
+		if (csq == null)
+			csq = "null";
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public Utf8Output append(CharSequence csq, int start, int end) throws IOException
+	{
+		ByteBuffer buffer = this.buffer;
+		for (int i = start; i < end; i++)
+		{
+			char c = csq.charAt(i);
+			if (c < 0x80 && pendingHighSurrogate == 0)
+			{
+				if (!buffer.hasRemaining())
+				{
+					drain();
+					buffer = this.buffer;
+				}
+				buffer.put((byte) c);
+			}
+			else
+				encode(c);
+		}
+		return this;
+	}
+
+	/**
+	 * Copy the fragment's UTF-8 bytes, draining the staging buffer as often as it fills up.
+	 */
+	@Override
+	public Utf8Output append(OutputFragment fragment) throws IOException
+	{
+		if (pendingHighSurrogate != 0)
+			return append(fragment.toString());
+
+		byte[] bytes = fragment.utf8();
+		int offset = 0;
+		while (true)
+		{
+			int length = Math.min(bytes.length - offset, buffer.remaining());
+			buffer.put(bytes, offset, length);
+			offset += length;
+			if (offset == bytes.length)
+				return this;
+			drain();
+		}
+	}
+
+	private void encode(char c) throws IOException
+	{
+		if (pendingHighSurrogate != 0)
+		{
+			char high = pendingHighSurrogate;
+			pendingHighSurrogate = 0;
+			if (Character.isLowSurrogate(c))
+			{
+				int codePoint = Character.toCodePoint(high, c);
+				ensureRoom(4);
+				buffer.put((byte) (0xF0 | (codePoint >> 18)));
+				buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+				return;
+			}
+			ensureRoom(1);
+			buffer.put(REPLACEMENT);
+		}
+
+		if (c < 0x80)
+		{
+			ensureRoom(1);
+			buffer.put((byte) c);
+		}
+		else if (c < 0x800)
+		{
+			ensureRoom(2);
+			buffer.put((byte) (0xC0 | (c >> 6)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+		}
+		else if (Character.isHighSurrogate(c))
+		{
+			pendingHighSurrogate = c;
+		}
+		else if (Character.isLowSurrogate(c))
+		{
+			ensureRoom(1);
+			buffer.put(REPLACEMENT);
+		}
+		else
+		{
+			ensureRoom(3);
+			buffer.put((byte) (0xE0 | (c >> 12)));
+			buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+		}
+	}
+
+	private void ensureRoom(int numBytes) throws IOException
+	{
+		if (buffer.remaining() < numBytes)
+			drain();
+	}
+
+	/**
+	 * Write the staging buffer out to the target, making room for more.
+	 */
+	private void drain() throws IOException
+	{
+		if (!staging)
+			throw new IOException("Not enough room in target ByteBuffer: " + buffer);
+
+		if (outputStream != null)
+		{
+			outputStream.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+			buffer.clear();
+		}
+		else
+		{
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		if (staging)
+		{
+			if (buffer.position() > 0)
+				drain();
+			if (outputStream != null)
+				outputStream.flush();
+		}
+	}
+
+	/**
+	 * Write out any dangling high surrogate, flush, and return the staging buffer to its pool.
+	 */
+	@Override
+	public void release() throws IOException
+	{
+		if (buffer == null)
+			return;
+		try
+		{
+			if (pendingHighSurrogate != 0)
+			{
+				pendingHighSurrogate = 0;
+				ensureRoom(1);
+				buffer.put(REPLACEMENT);
+			}
+			flush();
+		}
+		finally
+		{
+			if (staging)
+				STAGING_BUFFER_POOL.release(buffer);
+			buffer = null;
+		}
+	}
+}
@@ -12,6 +12,7 @@ import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.XMLTools;
 import ecologylab.serialization.annotations.FieldUsage;
 import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.serializers.output.SerializationOutput;
 
 /**
  * 
@@ -28,6 +29,8 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 	public void serialize(Object object, Appendable appendable, TranslationContext translationContext)
 			throws SIMPLTranslationException
 	{
+		SerializationOutput output = SerializationOutput.wrap(appendable);
+
 		translationContext.resolveGraph(object);
 
 		ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor = ClassDescriptor
@@ -35,7 +38,7 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 
 		try
 		{
-			serialize(object, rootObjectClassDescriptor.pseudoFieldDescriptor(), appendable,
+			serialize(object, rootObjectClassDescriptor.pseudoFieldDescriptor(), output,
 					translationContext);
 		}
 		catch (IOException e)
@@ -48,25 +51,25 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param rootObjectFieldDescriptor
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
 	private void serialize(Object object, FieldDescriptor rootObjectFieldDescriptor,
-			Appendable appendable, TranslationContext translationContext)
+			SerializationOutput output, TranslationContext translationContext)
 			throws SIMPLTranslationException, IOException
 	{
 		serializationPreHook(object, translationContext);
 
-		writeObjectStart(rootObjectFieldDescriptor, appendable);
+		writeObjectStart(rootObjectFieldDescriptor, output);
 
 		ArrayList<? extends FieldDescriptor> allFieldDescriptors = getClassDescriptor(object)
 				.allFieldDescriptors();
 
-		serializeFields(object, appendable, translationContext, allFieldDescriptors);
+		serializeFields(object, output, translationContext, allFieldDescriptors);
 
-		writeClose(appendable);
+		writeClose(output);
 
 		serializationPostHook(object, translationContext);
 	}
@@ -74,13 +77,13 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 	/**
 	 * 
 	 * @param object
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @param allFieldDescriptors
 	 * @throws IOException
 	 * @throws SIMPLTranslationException
 	 */
-	private void serializeFields(Object object, Appendable appendable,
+	private void serializeFields(Object object, SerializationOutput output,
 			TranslationContext translationContext,
 			ArrayList<? extends FieldDescriptor> allFieldDescriptors) throws IOException,
 			SIMPLTranslationException
@@ -92,24 +95,24 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 			switch (childFd.getType())
 			{
 			case SCALAR:
-				serializeScalar(object, childFd, appendable, translationContext);
+				serializeScalar(object, childFd, output, translationContext);
 				break;
 			case COMPOSITE_ELEMENT:
-				serializeComposite(object, appendable, translationContext, childFd);
+				serializeComposite(object, output, translationContext, childFd);
 				break;
 			case COLLECTION_SCALAR:
 			case MAP_SCALAR:
-				serializeScalarCollection(object, appendable, translationContext, childFd);
+				serializeScalarCollection(object, output, translationContext, childFd);
 				break;
 			case COLLECTION_ELEMENT:
 			case MAP_ELEMENT:
 				if (!childFd.isPolymorphic())
-					serializeCompositeCollection(object, appendable, translationContext, childFd);
+					serializeCompositeCollection(object, output, translationContext, childFd);
 				break;
 			}
 
 			if (++numOfFields < allFieldDescriptors.size())
-				appendable.append(',');
+				output.append(',');
 		}
 	}
 
@@ -117,38 +120,38 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void serializeScalar(Object object, FieldDescriptor fd, Appendable appendable,
+	private void serializeScalar(Object object, FieldDescriptor fd, SerializationOutput output,
 			TranslationContext translationContext) throws SIMPLTranslationException, IOException
 	{
-		writeBibtexAttribute(object, fd, appendable, translationContext);
+		writeBibtexAttribute(object, fd, output, translationContext);
 	}
 
-	private void serializeComposite(Object object, Appendable appendable,
+	private void serializeComposite(Object object, SerializationOutput output,
 			TranslationContext translationContext, FieldDescriptor fd) throws SIMPLTranslationException,
 			IOException
 	{
-		Object compositeObject = fd.getValue(object);
+		Object compositeObject = getComposite(object, fd);
 		
 		FieldDescriptor compositeAsScalarFD = getClassDescriptor(compositeObject)
 				.getScalarValueFieldDescripotor();
 
 		if (compositeAsScalarFD != null)
 		{
-			writeScalarBibtexAttribute(compositeObject, compositeAsScalarFD, appendable, translationContext);
+			writeScalarBibtexAttribute(compositeObject, compositeAsScalarFD, output, translationContext);
 		}
 	}
 
-	private void writeScalarBibtexAttribute(Object object, FieldDescriptor fd, Appendable appendable,
+	private void writeScalarBibtexAttribute(Object object, FieldDescriptor fd, SerializationOutput output,
 			TranslationContext translationContext) throws SIMPLTranslationException
 	{
 		if (!fd.isDefaultValueFromContext(object))
 		{
-			fd.appendValue(appendable, object, translationContext, Format.BIBTEX);
+			fd.appendValue(output, object, translationContext, Format.BIBTEX);
 		}
 	}
 
@@ -156,40 +159,40 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void writeBibtexAttribute(Object object, FieldDescriptor fd, Appendable appendable,
+	private void writeBibtexAttribute(Object object, FieldDescriptor fd, SerializationOutput output,
 			TranslationContext translationContext) throws SIMPLTranslationException, IOException
 	{
 		if (!fd.isDefaultValueFromContext(object))
 		{
 			if (!fd.isBibtexKey())
 			{
-				appendable.append(fd.getBibtexTagName());
-				appendable.append('=');
-				appendable.append('{');
+				output.append(fd.getBibtexTagName());
+				output.append('=');
+				output.append('{');
 			}
 		}
 
-		fd.appendValue(appendable, object, translationContext, Format.BIBTEX);
+		fd.appendValue(output, object, translationContext, Format.BIBTEX);
 
 		if (!fd.isBibtexKey())
-			appendable.append('}');
+			output.append('}');
 	}
 
 	/**
 	 * 
 	 * @param object
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @param fd
 	 * @throws IOException
 	 * @throws SIMPLTranslationException
 	 */
-	private void serializeCompositeCollection(Object object, Appendable appendable,
+	private void serializeCompositeCollection(Object object, SerializationOutput output,
 			TranslationContext translationContext, FieldDescriptor fd) throws IOException,
 			SIMPLTranslationException
 	{
@@ -203,7 +206,7 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 		{
 			int numberOfItems = 0;
 
-			writeCollectionStart(fd, appendable);
+			writeCollectionStart(fd, output);
 			for (Object collectionObject : scalarCollection)
 			{
 				FieldDescriptor compositeAsScalarFD = getClassDescriptor(collectionObject)
@@ -211,27 +214,27 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 
 				if (compositeAsScalarFD != null)
 				{
-					writeScalarBibtexAttribute(collectionObject, compositeAsScalarFD, appendable,
+					writeScalarBibtexAttribute(collectionObject, compositeAsScalarFD, output,
 							translationContext);
 				}
 
 				if (++numberOfItems < scalarCollection.size())
-					appendable.append(delim);
+					output.append(delim);
 			}
-			writeCollectionEnd(appendable);
+			writeCollectionEnd(output);
 		}
 	}
 
 	/**
 	 * 
 	 * @param object
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @param fd
 	 * @throws IOException
 	 * @throws SIMPLTranslationException
 	 */
-	private void serializeScalarCollection(Object object, Appendable appendable,
+	private void serializeScalarCollection(Object object, SerializationOutput output,
 			TranslationContext translationContext, FieldDescriptor fd) throws IOException,
 			SIMPLTranslationException
 	{
@@ -245,75 +248,75 @@ public class BibtexSerializer extends StringSerializer implements FieldTypes
 		{
 			int numberOfItems = 0;
 
-			writeCollectionStart(fd, appendable);
+			writeCollectionStart(fd, output);
 			for (Object collectionObject : scalarCollection)
 			{
-				writeCollectionScalar(collectionObject, fd, appendable, translationContext);
+				writeCollectionScalar(collectionObject, fd, output, translationContext);
 				if (++numberOfItems < scalarCollection.size())
-					appendable.append(delim);
+					output.append(delim);
 			}
-			writeCollectionEnd(appendable);
+			writeCollectionEnd(output);
 		}
 	}
 
 	/**
 	 * 
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeCollectionStart(FieldDescriptor fd, Appendable appendable) throws IOException
+	private void writeCollectionStart(FieldDescriptor fd, SerializationOutput output) throws IOException
 	{
-		appendable.append(fd.getTagName());
-		appendable.append('=');
-		appendable.append("{");
+		output.append(fd.getTagName());
+		output.append('=');
+		output.append("{");
 	}
 
 	/**
 	 * 
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeCollectionEnd(Appendable appendable) throws IOException
+	private void writeCollectionEnd(SerializationOutput output) throws IOException
 	{
-		appendable.append("}");
+		output.append("}");
 	}
 
 	/**
 	 * 
 	 * @param collectionObject
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 */
 	private void writeCollectionScalar(Object collectionObject, FieldDescriptor fd,
-			Appendable appendable, TranslationContext translationContext)
+			SerializationOutput output, TranslationContext translationContext)
 			throws SIMPLTranslationException
 	{
-		fd.appendCollectionScalarValue(appendable, collectionObject, translationContext, Format.BIBTEX);
+		fd.appendCollectionScalarValue(output, collectionObject, translationContext, Format.BIBTEX);
 	}
 
 	/**
 	 * 
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeClose(Appendable appendable) throws IOException
+	private void writeClose(SerializationOutput output) throws IOException
 	{
-		appendable.append('}');
+		output.append('}');
 	}
 
 	/**
 	 * 
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeObjectStart(FieldDescriptor fd, Appendable appendable) throws IOException
+	private void writeObjectStart(FieldDescriptor fd, SerializationOutput output) throws IOException
 	{
-		appendable.append('@');
-		appendable.append(fd.getBibtexTagName());
-		appendable.append('{');
+		output.append('@');
+		output.append(fd.getBibtexTagName());
+		output.append('{');
 	}
 }
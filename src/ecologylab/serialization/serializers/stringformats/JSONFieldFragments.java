@@ -0,0 +1,86 @@
+package ecologylab.serialization.serializers.stringformats;
+
+import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.serializers.output.OutputFragment;
+
+/**
+ * The fixed keys that JSONSerializer writes in front of the values of one field, each with the
+ * punctuation that follows it. Made once per FieldDescriptor, by FieldDescriptor.getJSONFragments(),
+ * instead of on every serialization.
+ */
+public final class JSONFieldFragments
+{
+	private final String					tagName;
+
+	private final String					elementStart;
+
+	private final OutputFragment	scalarStart;
+
+	private final OutputFragment	objectStart;
+
+	private final OutputFragment	collectionStart;
+
+	private final OutputFragment	polymorphicCollectionStart;
+
+	private final OutputFragment	wrapStart;
+
+	public JSONFieldFragments(FieldDescriptor fd)
+	{
+		this.tagName = fd.getTagName();
+		this.elementStart = fd.elementStart();
+
+		scalarStart = OutputFragment.of("\"" + tagName + "\":\"");
+		objectStart = OutputFragment.of("\"" + elementStart + "\":{");
+		collectionStart = OutputFragment.of("\"" + elementStart + "\":[");
+		polymorphicCollectionStart = OutputFragment.of("\"" + tagName + "\":[");
+		wrapStart = OutputFragment.of("\"" + tagName + "\":{");
+	}
+
+	/**
+	 * @return true if these were made from the tags that fd has now.
+	 */
+	public boolean describes(FieldDescriptor fd)
+	{
+		return tagName == fd.getTagName() && elementStart == fd.elementStart();
+	}
+
+	/**
+	 * @return "tagName":" to be followed by a scalar value.
+	 */
+	public OutputFragment scalarStart()
+	{
+		return scalarStart;
+	}
+
+	/**
+	 * @return "elementStart":{
+	 */
+	public OutputFragment objectStart()
+	{
+		return objectStart;
+	}
+
+	/**
+	 * @return "elementStart":[
+	 */
+	public OutputFragment collectionStart()
+	{
+		return collectionStart;
+	}
+
+	/**
+	 * @return "tagName":[ for a collection whose elements each carry their own class tag.
+	 */
+	public OutputFragment polymorphicCollectionStart()
+	{
+		return polymorphicCollectionStart;
+	}
+
+	/**
+	 * @return "tagName":{ which opens the wrapper of a wrapped collection.
+	 */
+	public OutputFragment wrapStart()
+	{
+		return wrapStart;
+	}
+}
@@ -7,6 +7,7 @@ import java.util.Collection;
 import ecologylab.serialization.ClassDescriptor;
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.FieldTypes;
+import ecologylab.serialization.LazyComposite;
 import ecologylab.serialization.SIMPLTranslationException;
 import ecologylab.serialization.SimplTypesScope;
 import ecologylab.serialization.SimplTypesScope.GRAPH_SWITCH;
@@ -14,6 +15,11 @@ import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.XMLTools;
 import ecologylab.serialization.annotations.FieldUsage;
 import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.serializers.GeneratedSerializer;
+import ecologylab.serialization.serializers.GeneratedSerializer.FieldWriter;
+import ecologylab.serialization.serializers.SerializationCache;
+import ecologylab.serialization.serializers.output.OutputFragment;
+import ecologylab.serialization.serializers.output.SerializationOutput;
 
 /***
  * JSONSerializaton. Guides serialization of data in JSON. Contains code that is specific to
@@ -24,7 +30,16 @@ import ecologylab.serialization.formatenums.Format;
  */
 public class JSONSerializer extends StringSerializer implements FieldTypes
 {
-	private int	numOfFields;
+	private static final OutputFragment	SIMPL_REF_START	= OutputFragment.of("\""
+			+ TranslationContext.JSON_SIMPL_REF + "\":\"");
+
+	private static final OutputFragment	SIMPL_ID_START	= OutputFragment.of("\""
+			+ TranslationContext.JSON_SIMPL_ID + "\":\"");
+
+	/**
+	 * Writes fields for GeneratedSerializers, as serializeFieldsHelper() does.
+	 */
+	private final FieldWriter	fieldWriter	= new JSONFieldWriter();
 
 	public JSONSerializer()
 	{
@@ -35,6 +50,8 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 	public void serialize(Object object, Appendable appendable, TranslationContext translationContext)
 			throws SIMPLTranslationException
 	{
+		SerializationOutput output = SerializationOutput.wrap(appendable);
+
 		translationContext.resolveGraph(object);
 
 		ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor = ClassDescriptor
@@ -42,12 +59,12 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 
 		try
 		{
-			writeStart(appendable);
+			writeStart(output);
 
-			serialize(object, rootObjectClassDescriptor.pseudoFieldDescriptor(), appendable,
+			serialize(object, rootObjectClassDescriptor.pseudoFieldDescriptor(), output,
 					translationContext, true);
 
-			writeClose(appendable);
+			writeClose(output);
 		}
 		catch (IOException e)
 		{
@@ -59,35 +76,71 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param rootObjectFieldDescriptor
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @param withTag
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
 	private void serialize(Object object, FieldDescriptor rootObjectFieldDescriptor,
-			Appendable appendable, TranslationContext translationContext, boolean withTag)
+			SerializationOutput output, TranslationContext translationContext, boolean withTag)
 			throws SIMPLTranslationException, IOException
 	{
 		if (alreadySerialized(object, translationContext))
 		{
-			writeSimplRef(object, rootObjectFieldDescriptor, withTag, appendable, translationContext);
+			writeSimplRef(object, rootObjectFieldDescriptor, withTag, output, translationContext);
 			return;
 		}
 
 		translationContext.mapObject(object);
 
-		serializationPreHook(object, translationContext);
-
-		writeObjectStart(rootObjectFieldDescriptor, appendable, withTag);
+		writeObjectStart(rootObjectFieldDescriptor, output, withTag);
 
 		//numOfFields = 0;
 		
 		ClassDescriptor<? extends FieldDescriptor> classDescriptor = getClassDescriptor(object);
 		
-		serializeFields(object, appendable, translationContext, classDescriptor);
+		SerializationCache cache = serializationCache(classDescriptor);
+		if (cache == null)
+		{
+			serializeBody(object, output, translationContext, classDescriptor);
+		}
+		else
+		{
+			long stamp = SerializationCache.stamp(object, classDescriptor);
+			String body = (String) cache.get(object, Format.JSON, stamp);
+			if (body == null)
+			{
+				StringBuilder bodyBuilder = new StringBuilder();
+				serializeBody(object, SerializationOutput.wrap(bodyBuilder), translationContext,
+						classDescriptor);
+				body = bodyBuilder.toString();
+				cache.put(object, Format.JSON, stamp, body);
+			}
+			output.append(body);
+		}
+
+		writeClose(output);
+	}
+
+	/**
+	 * Write the members of object, between its braces.
+	 * 
+	 * @param object
+	 * @param output
+	 * @param translationContext
+	 * @param classDescriptor
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	private void serializeBody(Object object, SerializationOutput output,
+			TranslationContext translationContext,
+			ClassDescriptor<? extends FieldDescriptor> classDescriptor) throws SIMPLTranslationException,
+			IOException
+	{
+		serializationPreHook(object, translationContext);
 
-		writeClose(appendable);
+		serializeFields(object, output, translationContext, classDescriptor);
 
 		serializationPostHook(object, translationContext);
 	}
@@ -95,13 +148,13 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 	/**
 	 * 
 	 * @param object
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @param allFieldDescriptors
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void serializeFields(Object object, Appendable appendable,
+	private void serializeFields(Object object, SerializationOutput output,
 			TranslationContext translationContext,
 			ClassDescriptor<? extends FieldDescriptor> classDescriptor) throws SIMPLTranslationException,
 			IOException
@@ -112,17 +165,26 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 		{
 			if (translationContext.needsHashCode(object))
 			{
-				writeSimplIdAttribute(object, appendable, allFieldDescriptors.size() <= 0);
+				writeSimplIdAttribute(object, output, translationContext, allFieldDescriptors.size() <= 0);
 			}
 		}
 			
 		ArrayList<? extends FieldDescriptor> attributeFieldDescriptors = classDescriptor.attributeFieldDescriptors();
-		int numOfFields = serializeFieldsHelper(appendable, object, translationContext, attributeFieldDescriptors, 0);
 		ArrayList<? extends FieldDescriptor> elementFieldDescriptors = classDescriptor.elementFieldDescriptors();
-		serializeFieldsHelper(appendable, object, translationContext, elementFieldDescriptors,numOfFields);
+		GeneratedSerializer generated = classDescriptor.getGeneratedSerializer();
+		if (generated != null)
+		{
+			int numOfFields = generated.serializeAttributes(fieldWriter, object,
+					attributeFieldDescriptors, output, translationContext, 0);
+			generated.serializeElements(fieldWriter, object, elementFieldDescriptors, output,
+					translationContext, numOfFields);
+			return;
+		}
+		int numOfFields = serializeFieldsHelper(output, object, translationContext, attributeFieldDescriptors, 0);
+		serializeFieldsHelper(output, object, translationContext, elementFieldDescriptors,numOfFields);
 	}
 
-	private int serializeFieldsHelper(Appendable appendable, Object object,
+	private int serializeFieldsHelper(SerializationOutput output, Object object,
 			TranslationContext translationContext,
 			ArrayList<? extends FieldDescriptor> fieldDescriptorList, int numOfFields) throws SIMPLTranslationException,
 			IOException
@@ -133,26 +195,19 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 			if (isSerializable(childFd, object))
 			{				
 				if (numOfFields++ > 0)
-					appendable.append(',');
+					output.append(',');
 
 				switch (childFd.getType())
 				{
 				case SCALAR:
-					serializeScalar(object, childFd, appendable, translationContext);
+					serializeScalar(object, childFd, output, translationContext);
 					break;
 				case COMPOSITE_ELEMENT:
-					serializeComposite(object, appendable, translationContext, childFd);
-					break;
 				case COLLECTION_SCALAR:
 				case MAP_SCALAR:
-					serializeScalarCollection(object, appendable, translationContext, childFd);
-					break;
 				case COLLECTION_ELEMENT:
 				case MAP_ELEMENT:
-					if (childFd.isPolymorphic())
-						serializePolymorphicCollection(object, appendable, translationContext, childFd);
-					else
-						serializeCompositeCollection(object, appendable, translationContext, childFd);
+					serializeValue(childFd.getValue(object), output, translationContext, childFd);
 					break;
 				}
 			}
@@ -180,147 +235,198 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 		case COMPOSITE_ELEMENT:
 		case COLLECTION_ELEMENT:
 		case MAP_ELEMENT:
-			Object obj = childFd.getValue(object);
-			if (obj == null)
-				return false;
-			break;
 		case COLLECTION_SCALAR:
 		case MAP_SCALAR:
-			Object scalarCollectionObject = childFd.getValue(object);
-			Collection<?> scalarCollection = XMLTools.getCollection(scalarCollectionObject);
-			if (scalarCollection == null || scalarCollection.size() <= 0)
-				return false;
-			break;
+			return isSerializableValue(childFd, childFd.getValue(object));
 		}
 
 		return true;
 	}
 
 	/**
+	 * check if value, in the composite, collection or map field childFd, is null or empty. we don't
+	 * have to serialize it then.
 	 * 
-	 * @param object
-	 * @param appendable
+	 * @param childFd
+	 * @param value
+	 * @return
+	 */
+	private boolean isSerializableValue(FieldDescriptor childFd, Object value)
+	{
+		switch (childFd.getType())
+		{
+		case COLLECTION_SCALAR:
+		case MAP_SCALAR:
+			Collection<?> scalarCollection = XMLTools.getCollection(value);
+			return scalarCollection != null && scalarCollection.size() > 0;
+		default:
+			return value != null && !(childFd.isLazy() && ((LazyComposite<?>) value).isEmpty());
+		}
+	}
+
+	/**
+	 * 
+	 * @param value
+	 *          what is in the composite, collection or map field childFd.
+	 * @param output
+	 * @param translationContext
+	 * @param childFd
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	private void serializeValue(Object value, SerializationOutput output,
+			TranslationContext translationContext, FieldDescriptor childFd)
+			throws SIMPLTranslationException, IOException
+	{
+		switch (childFd.getType())
+		{
+		case COMPOSITE_ELEMENT:
+			serializeComposite(value, output, translationContext, childFd);
+			break;
+		case COLLECTION_SCALAR:
+		case MAP_SCALAR:
+			serializeScalarCollection(value, output, translationContext, childFd);
+			break;
+		default:
+			if (childFd.isPolymorphic())
+				serializePolymorphicCollection(value, output, translationContext, childFd);
+			else
+				serializeCompositeCollection(value, output, translationContext, childFd);
+		}
+	}
+
+	/**
+	 * 
+	 * @param value
+	 *          what is in the composite field childFd.
+	 * @param output
 	 * @param translationContext
 	 * @param childFd
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void serializeComposite(Object object, Appendable appendable,
+	private void serializeComposite(Object value, SerializationOutput output,
 			TranslationContext translationContext, FieldDescriptor childFd)
 			throws SIMPLTranslationException, IOException
 	{
-		Object compositeObject = childFd.getValue(object);
+		Object rawComposite = rawComposite(value, childFd, Format.JSON);
+		if (rawComposite != null)
+		{
+			output.append((CharSequence) rawComposite);
+			return;
+		}
+		Object compositeObject = composite(value, childFd);
 		FieldDescriptor compositeObjectFieldDescriptor = childFd.isPolymorphic() ? getClassDescriptor(
 				compositeObject).pseudoFieldDescriptor() : childFd;
-		serialize(compositeObject, compositeObjectFieldDescriptor, appendable, translationContext, true);
+		serialize(compositeObject, compositeObjectFieldDescriptor, output, translationContext, true);
 	}
 
 	/**
 	 * 
-	 * @param object
-	 * @param appendable
+	 * @param collectionObject
+	 *          what is in the field childFd.
+	 * @param output
 	 * @param translationContext
 	 * @param childFd
 	 * @throws IOException
 	 * @throws SIMPLTranslationException
 	 */
-	private void serializeCompositeCollection(Object object, Appendable appendable,
+	private void serializeCompositeCollection(Object collectionObject, SerializationOutput output,
 			TranslationContext translationContext, FieldDescriptor childFd) throws IOException,
 			SIMPLTranslationException
 	{
-		Object collectionObject = childFd.getValue(object);
 		Collection<?> compositeCollection = XMLTools.getCollection(collectionObject);
 		
 		if(compositeCollection != null)
 		{
 			int numberOfItems = 0;
 	
-			writeWrap(childFd, appendable, false);
-			writeCollectionStart(childFd, appendable);
+			writeWrap(childFd, output, false);
+			writeCollectionStart(childFd, output);
 			for (Object collectionComposite : compositeCollection)
 			{
 				FieldDescriptor collectionObjectFieldDescriptor = childFd.isPolymorphic() ? getClassDescriptor(
 						collectionComposite).pseudoFieldDescriptor()
 						: childFd;
 	
-				serialize(collectionComposite, collectionObjectFieldDescriptor, appendable,
+				serialize(collectionComposite, collectionObjectFieldDescriptor, output,
 						translationContext, false);
 	
 				if (++numberOfItems < compositeCollection.size())
-					appendable.append(',');
+					output.append(',');
 			}
-			writeCollectionEnd(appendable);
-			writeWrap(childFd, appendable, true);
+			writeCollectionEnd(output);
+			writeWrap(childFd, output, true);
 		}
 	}
 
 	/**
 	 * 
-	 * @param object
-	 * @param appendable
+	 * @param collectionObject
+	 *          what is in the field childFd.
+	 * @param output
 	 * @param translationContext
 	 * @param childFd
 	 * @throws IOException
 	 * @throws SIMPLTranslationException
 	 */
-	private void serializePolymorphicCollection(Object object, Appendable appendable,
+	private void serializePolymorphicCollection(Object collectionObject, SerializationOutput output,
 			TranslationContext translationContext, FieldDescriptor childFd) throws IOException,
 			SIMPLTranslationException
 	{
-		Object collectionObject = childFd.getValue(object);
 		Collection<?> compositeCollection = XMLTools.getCollection(collectionObject);
 		int numberOfItems = 0;
 
 		if(compositeCollection != null)
 		{		
-			writePolymorphicCollectionStart(childFd, appendable);
+			writePolymorphicCollectionStart(childFd, output);
 			for (Object collectionComposite : compositeCollection)
 			{
 				FieldDescriptor collectionObjectFieldDescriptor = childFd.isPolymorphic() ? getClassDescriptor(
 						collectionComposite).pseudoFieldDescriptor()
 						: childFd;
 	
-				writeStart(appendable);
-				serialize(collectionComposite, collectionObjectFieldDescriptor, appendable,
+				writeStart(output);
+				serialize(collectionComposite, collectionObjectFieldDescriptor, output,
 						translationContext, true);
-				writeClose(appendable);
+				writeClose(output);
 	
 				if (++numberOfItems < compositeCollection.size())
-					appendable.append(',');
+					output.append(',');
 			}
-			writeCollectionEnd(appendable);
+			writeCollectionEnd(output);
 		}
 	}
 
 	/**
 	 * 
-	 * @param object
-	 * @param appendable
+	 * @param scalarCollectionObject
+	 *          what is in the field childFd.
+	 * @param output
 	 * @param translationContext
 	 * @param childFd
 	 * @throws IOException
 	 * @throws SIMPLTranslationException
 	 */
-	private void serializeScalarCollection(Object object, Appendable appendable,
+	private void serializeScalarCollection(Object scalarCollectionObject, SerializationOutput output,
 			TranslationContext translationContext, FieldDescriptor childFd) throws IOException,
 			SIMPLTranslationException
 	{
-		Object scalarCollectionObject = childFd.getValue(object);
 		Collection<?> scalarCollection = XMLTools.getCollection(scalarCollectionObject);
 		int numberOfItems = 0;
 
 		if(scalarCollection != null)
 		{
-			writeWrap(childFd, appendable, false);
-			writeCollectionStart(childFd, appendable);
+			writeWrap(childFd, output, false);
+			writeCollectionStart(childFd, output);
 			for (Object collectionObject : scalarCollection)
 			{
-				writeCollectionScalar(collectionObject, childFd, appendable, translationContext);
+				writeCollectionScalar(collectionObject, childFd, output, translationContext);
 				if (++numberOfItems < scalarCollection.size())
-					appendable.append(',');
+					output.append(',');
 			}
-			writeCollectionEnd(appendable);
-			writeWrap(childFd, appendable, true);
+			writeCollectionEnd(output);
+			writeWrap(childFd, output, true);
 		}
 	}
 
@@ -328,77 +434,65 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws IOException
 	 * @throws SIMPLTranslationException
 	 */
-	private void serializeScalar(Object object, FieldDescriptor fd, Appendable appendable,
+	private void serializeScalar(Object object, FieldDescriptor fd, SerializationOutput output,
 			TranslationContext translationContext) throws IOException, SIMPLTranslationException
 	{
-		appendable.append('"');
-		appendable.append(fd.getTagName());
-		appendable.append('"');
-		appendable.append(':');
-		appendable.append('"');
-		fd.appendValue(appendable, object, translationContext, Format.JSON);
-		appendable.append('"');
+		output.append(fd.getJSONFragments().scalarStart());
+		fd.appendValue(output, object, translationContext, Format.JSON);
+		output.append('"');
 	}
 
 	/**
 	 * 
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeCollectionEnd(Appendable appendable) throws IOException
+	private void writeCollectionEnd(SerializationOutput output) throws IOException
 	{
-		appendable.append(']');
+		output.append(']');
 	}
 
-	private void writeCollectionStart(FieldDescriptor fd, Appendable appendable) throws IOException
+	private void writeCollectionStart(FieldDescriptor fd, SerializationOutput output) throws IOException
 	{
-		appendable.append('"').append(fd.elementStart()).append('"');
-		appendable.append(':');
-		appendable.append('[');
+		output.append(fd.getJSONFragments().collectionStart());
 	}
 
 	/**
 	 * 
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writePolymorphicCollectionStart(FieldDescriptor fd, Appendable appendable)
+	private void writePolymorphicCollectionStart(FieldDescriptor fd, SerializationOutput output)
 			throws IOException
 	{
-		appendable.append('"').append(fd.getTagName()).append('"');
-		appendable.append(':');
-		appendable.append('[');
-
+		output.append(fd.getJSONFragments().polymorphicCollectionStart());
 	}
 
 	/**
 	 * 
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param close
 	 * @throws IOException
 	 */
-	private void writeWrap(FieldDescriptor fd, Appendable appendable, boolean close)
+	private void writeWrap(FieldDescriptor fd, SerializationOutput output, boolean close)
 			throws IOException
 	{
 		if (fd.isWrapped())
 		{
 			if (!close)
 			{
-				appendable.append('"');
-				appendable.append(fd.getTagName());
-				appendable.append('"').append(':');
-				appendable.append('{');
+				output.append(fd.getJSONFragments().wrapStart());
 			}
 			else
 			{
-				appendable.append('}');
+				output.append('}');
 			}
 		}
 	}
@@ -407,97 +501,132 @@ public class JSONSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws IOException
 	 * @throws SIMPLTranslationException
 	 */
-	private void writeCollectionScalar(Object object, FieldDescriptor fd, Appendable appendable,
+	private void writeCollectionScalar(Object object, FieldDescriptor fd, SerializationOutput output,
 			TranslationContext translationContext) throws IOException, SIMPLTranslationException
 	{
-		appendable.append('"');
-		fd.appendCollectionScalarValue(appendable, object, translationContext, Format.JSON);
-		appendable.append('"');
+		output.append('"');
+		fd.appendCollectionScalarValue(output, object, translationContext, Format.JSON);
+		output.append('"');
 	}
 
 	/**
 	 * 
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param withTag
 	 * @throws IOException
 	 */
-	private void writeObjectStart(FieldDescriptor fd, Appendable appendable, boolean withTag)
+	private void writeObjectStart(FieldDescriptor fd, SerializationOutput output, boolean withTag)
 			throws IOException
 	{
 		if (withTag)
-		{
-			appendable.append('"').append(fd.elementStart()).append('"');
-			appendable.append(':');
-		}
-		appendable.append('{');
+			output.append(fd.getJSONFragments().objectStart());
+		else
+			output.append('{');
 	}
 
 	/**
 	 * 
 	 * @param object
 	 * @param rootObjectFieldDescriptor
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
 	private void writeSimplRef(Object object, FieldDescriptor fd, boolean withTag,
-			Appendable appendable, TranslationContext translationContext) throws IOException
+			SerializationOutput output, TranslationContext translationContext) throws IOException
 	{
-		writeObjectStart(fd, appendable, withTag);
-		writeSimplRefAttribute(object, appendable, translationContext);
-		writeClose(appendable);
+		writeObjectStart(fd, output, withTag);
+		writeSimplRefAttribute(object, output, translationContext);
+		writeClose(output);
 	}
 
-	private void writeSimplRefAttribute(Object object, Appendable appendable, TranslationContext translationContext) throws IOException
+	private void writeSimplRefAttribute(Object object, SerializationOutput output, TranslationContext translationContext) throws IOException
 	{
-		appendable.append('"');
-		appendable.append(TranslationContext.JSON_SIMPL_REF);
-		appendable.append('"');
-		appendable.append(':');
-		appendable.append('"');
-		appendable.append(translationContext.getSimplId(object));
-		appendable.append('"');
+		output.append(SIMPL_REF_START);
+		output.append(translationContext.getSimplId(object));
+		output.append('"');
 	}
 
-	private void writeSimplIdAttribute(Object object, Appendable appendable, boolean last)
-			throws IOException
+	private void writeSimplIdAttribute(Object object, SerializationOutput output,
+			TranslationContext translationContext, boolean last) throws IOException
 	{
-		appendable.append('"');
-		appendable.append(TranslationContext.JSON_SIMPL_ID);
-		appendable.append('"');
-		appendable.append(':');
-		appendable.append('"');
-		appendable.append(((Integer) object.hashCode()).toString());
-		appendable.append('"');
+		output.append(SIMPL_ID_START);
+		output.append(translationContext.getSimplId(object));
+		output.append('"');
 
 		if (!last)
 		{
-			appendable.append(',');
+			output.append(',');
 		}
 	}
 
 	/**
 	 * 
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeStart(Appendable appendable) throws IOException
+	private void writeStart(SerializationOutput output) throws IOException
 	{
-		appendable.append('{');
+		output.append('{');
 	}
 
 	/**
 	 * 
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeClose(Appendable appendable) throws IOException
+	private void writeClose(SerializationOutput output) throws IOException
+	{
+		output.append('}');
+	}
+
+	private class JSONFieldWriter implements FieldWriter
 	{
-		appendable.append('}');
+		@Override
+		public int attribute(Object object, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException
+		{
+			return leaf(object, fd, output, translationContext, numOfFields);
+		}
+
+		@Override
+		public int leaf(Object object, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException
+		{
+			if (fd.isDefaultValueFromContext(object))
+				return numOfFields;
+			if (numOfFields++ > 0)
+				output.append(',');
+			serializeScalar(object, fd, output, translationContext);
+			return numOfFields;
+		}
+
+		@Override
+		public int composite(Object value, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException
+		{
+			return collection(value, fd, output, translationContext, numOfFields);
+		}
+
+		@Override
+		public int collection(Object value, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException
+		{
+			if (!isSerializableValue(fd, value))
+				return numOfFields;
+			if (numOfFields++ > 0)
+				output.append(',');
+			serializeValue(value, output, translationContext, fd);
+			return numOfFields;
+		}
 	}
 }
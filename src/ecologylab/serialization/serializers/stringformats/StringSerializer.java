@@ -1,35 +1,89 @@
 package ecologylab.serialization.serializers.stringformats;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import ecologylab.serialization.SIMPLTranslationException;
 import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.TranslationContextPool;
 import ecologylab.serialization.XMLTools;
 import ecologylab.serialization.serializers.FormatSerializer;
+import ecologylab.serialization.serializers.output.StringBuilderOutput;
+import ecologylab.serialization.serializers.output.Utf8Output;
 
 public abstract class StringSerializer extends FormatSerializer
 {
 
+	/**
+	 * Serialize as UTF-8 bytes into the OutputStream. The bytes are buffered, and flushed when
+	 * serialization is complete. The stream is not closed.
+	 */
 	@Override
 	public void serialize(Object object, OutputStream outputStream,
 			TranslationContext translationContext) throws SIMPLTranslationException
 	{
-//		serialize(object, (Appendable) new PrintStream(outputStream), translationContext);
+		serialize(object, new Utf8Output(outputStream), translationContext);
+	}
+
+	/**
+	 * Serialize as UTF-8 bytes into the channel, which should be in blocking mode. The channel is not
+	 * closed.
+	 * 
+	 * @param object
+	 * @param channel
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 */
+	public void serialize(Object object, WritableByteChannel channel,
+			TranslationContext translationContext) throws SIMPLTranslationException
+	{
+		serialize(object, new Utf8Output(channel), translationContext);
+	}
+
+	/**
+	 * Serialize as UTF-8 bytes straight into byteBuffer, starting at its current position. Throws an
+	 * exception if the serialized form does not fit.
+	 * 
+	 * @param object
+	 * @param byteBuffer
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 */
+	public void serialize(Object object, ByteBuffer byteBuffer, TranslationContext translationContext)
+			throws SIMPLTranslationException
+	{
+		serialize(object, new Utf8Output(byteBuffer), translationContext);
+	}
+
+	/**
+	 * Serialize into output, then flush it, and release any pooled resources it holds.
+	 * 
+	 * @param object
+	 * @param output
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 */
+	private void serialize(Object object, Utf8Output output, TranslationContext translationContext)
+			throws SIMPLTranslationException
+	{
 		try
 		{
-			serialize(object, (Appendable) new PrintStream(outputStream, true, "utf-8"), translationContext);
+			serialize(object, (Appendable) output, translationContext);
 		}
-		catch (UnsupportedEncodingException e)
+		finally
 		{
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			try
+			{
+				output.release();
+			}
+			catch (IOException e)
+			{
+				throw new SIMPLTranslationException("IO Exception: ", e);
+			}
 		}
 	}
 
@@ -44,10 +98,15 @@ public abstract class StringSerializer extends FormatSerializer
 			if (outputFile.getParentFile() != null)
 				translationContext.setBaseDirFile(outputFile.getParentFile());
 
-			BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(outputFile));
-			serialize(object, bufferedWriter, translationContext);
-
-			bufferedWriter.close();
+			FileOutputStream fileOutputStream = new FileOutputStream(outputFile);
+			try
+			{
+				serialize(object, fileOutputStream, translationContext);
+			}
+			finally
+			{
+				fileOutputStream.close();
+			}
 		}
 		catch (IOException e)
 		{
@@ -97,20 +156,12 @@ public abstract class StringSerializer extends FormatSerializer
 	public void serialize(Object object, final StringBuilder stringBuilder,
 			TranslationContext translationContext) throws SIMPLTranslationException
 	{
-		OutputStream outputStream = new OutputStream()
-		{
-			@Override
-			public void write(int b) throws IOException
-			{
-				stringBuilder.append((char) b);
-			}
-		};
-
-		serialize(object, (Appendable) new PrintStream(outputStream), translationContext);
+		serialize(object, new StringBuilderOutput(stringBuilder), translationContext);
 	}
 
 	/**
-	 * All methods will eventually call this method which is overridden by derived classes
+	 * All methods will eventually call this method which is overridden by derived classes. Derived
+	 * classes write through SerializationOutput.wrap(appendable).
 	 * 
 	 * @param object
 	 * @param appendable
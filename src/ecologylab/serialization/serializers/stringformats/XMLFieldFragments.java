@@ -0,0 +1,97 @@
+package ecologylab.serialization.serializers.stringformats;
+
+import ecologylab.serialization.FieldDescriptor;
+import ecologylab.serialization.serializers.output.OutputFragment;
+
+/**
+ * The fixed markup that XMLSerializer writes around the values of one field: its opening and
+ * closing tags, its attribute name, and the tags of its collection wrapper. Made once per
+ * FieldDescriptor, by FieldDescriptor.getXMLFragments(), instead of on every serialization.
+ */
+public final class XMLFieldFragments
+{
+	private final String					tagName;
+
+	private final String					elementStart;
+
+	private final OutputFragment	openStart;
+
+	private final OutputFragment	open;
+
+	private final OutputFragment	close;
+
+	private final OutputFragment	attributeStart;
+
+	private final OutputFragment	wrapOpen;
+
+	private final OutputFragment	wrapClose;
+
+	public XMLFieldFragments(FieldDescriptor fd)
+	{
+		this.tagName = fd.getTagName();
+		this.elementStart = fd.elementStart();
+
+		openStart = OutputFragment.of("<" + elementStart);
+		open = OutputFragment.of("<" + elementStart + ">");
+		close = OutputFragment.of("</" + elementStart + ">");
+		attributeStart = OutputFragment.of(" " + tagName + "=\"");
+		wrapOpen = OutputFragment.of("<" + tagName + ">");
+		wrapClose = OutputFragment.of("</" + tagName + ">");
+	}
+
+	/**
+	 * @return true if these were made from the tags that fd has now.
+	 */
+	public boolean describes(FieldDescriptor fd)
+	{
+		return tagName == fd.getTagName() && elementStart == fd.elementStart();
+	}
+
+	/**
+	 * @return &lt;elementStart, to be followed by attributes.
+	 */
+	public OutputFragment openStart()
+	{
+		return openStart;
+	}
+
+	/**
+	 * @return &lt;elementStart&gt;
+	 */
+	public OutputFragment open()
+	{
+		return open;
+	}
+
+	/**
+	 * @return &lt;/elementStart&gt;
+	 */
+	public OutputFragment close()
+	{
+		return close;
+	}
+
+	/**
+	 * @return A space, tagName, and =", to be followed by the value.
+	 */
+	public OutputFragment attributeStart()
+	{
+		return attributeStart;
+	}
+
+	/**
+	 * @return &lt;tagName&gt;, which opens the wrapper of a wrapped collection or composite.
+	 */
+	public OutputFragment wrapOpen()
+	{
+		return wrapOpen;
+	}
+
+	/**
+	 * @return &lt;/tagName&gt;
+	 */
+	public OutputFragment wrapClose()
+	{
+		return wrapClose;
+	}
+}
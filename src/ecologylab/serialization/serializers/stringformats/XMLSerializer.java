@@ -14,6 +14,11 @@ import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.XMLTools;
 import ecologylab.serialization.annotations.FieldUsage;
 import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.serializers.GeneratedSerializer;
+import ecologylab.serialization.serializers.GeneratedSerializer.FieldWriter;
+import ecologylab.serialization.serializers.SerializationCache;
+import ecologylab.serialization.serializers.output.OutputFragment;
+import ecologylab.serialization.serializers.output.SerializationOutput;
 
 /**
  * XML Specific serializer. contains functionalities specific to ouput syntax for XML from an objet
@@ -27,7 +32,16 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 
 	private static final String	END_CDATA		= "]]>";
 
-	private boolean							isRoot			= true;
+	private static final OutputFragment	SIMPL_REF_START	= OutputFragment.of(" "
+			+ TranslationContext.SIMPL_REF + "=\"");
+
+	private static final OutputFragment	SIMPL_ID_START	= OutputFragment.of(" "
+			+ TranslationContext.SIMPL_ID + "=\"");
+
+	/**
+	 * Writes fields for GeneratedSerializers, as the loops here do.
+	 */
+	private final FieldWriter	fieldWriter	= new XMLFieldWriter();
 
 	public XMLSerializer()
 	{
@@ -37,6 +51,8 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 	public void serialize(Object object, Appendable appendable, TranslationContext translationContext)
 			throws SIMPLTranslationException
 	{
+		SerializationOutput output = SerializationOutput.wrap(appendable);
+
 		translationContext.resolveGraph(object);
 
 		ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor = ClassDescriptor
@@ -44,8 +60,8 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 
 		try
 		{
-			serialize(object, rootObjectClassDescriptor.pseudoFieldDescriptor(), appendable,
-					translationContext);
+			serialize(object, rootObjectClassDescriptor.pseudoFieldDescriptor(), output,
+					translationContext, true);
 		}
 		catch (IOException e)
 		{
@@ -57,13 +73,15 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param rootObjectFieldDescriptor
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
+	 * @param isRoot
+	 *          true for the object passed to the public serialize().
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
 	private void serialize(Object object, FieldDescriptor rootObjectFieldDescriptor,
-			Appendable appendable, TranslationContext translationContext)
+			SerializationOutput output, TranslationContext translationContext, boolean isRoot)
 			throws SIMPLTranslationException, IOException
 	{
 
@@ -72,88 +90,153 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 
 		if (alreadySerialized(object, translationContext))
 		{
-			writeSimplRef(object, rootObjectFieldDescriptor, appendable, translationContext);
+			writeSimplRef(object, rootObjectFieldDescriptor, output, translationContext);
 			return;
 		}
 
 		translationContext.mapObject(object);
 
-		serializationPreHook(object, translationContext);
-
 		ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor = getClassDescriptor(object);
 
-		writeObjectStart(rootObjectFieldDescriptor, appendable);
+		writeObjectStart(rootObjectFieldDescriptor, output);
 
-		serializeAttributes(object, appendable, translationContext, rootObjectClassDescriptor);
+		SerializationCache cache = serializationCache(rootObjectClassDescriptor);
+		if (cache == null)
+		{
+			serializeBody(object, output, translationContext, rootObjectClassDescriptor, isRoot);
+		}
+		else
+		{
+			long stamp = SerializationCache.stamp(object, rootObjectClassDescriptor);
+			String body = (String) cache.get(object, Format.XML, stamp);
+			if (body == null)
+			{
+				StringBuilder bodyBuilder = new StringBuilder();
+				serializeBody(object, SerializationOutput.wrap(bodyBuilder), translationContext,
+						rootObjectClassDescriptor, isRoot);
+				body = bodyBuilder.toString();
+				cache.put(object, Format.XML, stamp, body);
+			}
+			output.append(body);
+		}
 
-		ArrayList<? extends FieldDescriptor> elementFieldDescriptors = rootObjectClassDescriptor
-				.elementFieldDescriptors();
+		if (hasContent(rootObjectClassDescriptor))
+			writeObjectClose(rootObjectFieldDescriptor, output);
+	}
 
-		boolean hasXMLText = rootObjectClassDescriptor.hasScalarFD();
-		boolean hasElements = elementFieldDescriptors.size() > 0;
+	/**
+	 * Write the attributes and content of object, after the start of its tag, but not its close tag,
+	 * if it has one.
+	 * 
+	 * @param object
+	 * @param output
+	 * @param translationContext
+	 * @param rootObjectClassDescriptor
+	 * @param isRoot
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	private void serializeBody(Object object, SerializationOutput output,
+			TranslationContext translationContext,
+			ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor, boolean isRoot)
+			throws SIMPLTranslationException, IOException
+	{
+		serializationPreHook(object, translationContext);
+
+		serializeAttributes(object, output, translationContext, rootObjectClassDescriptor, isRoot);
 
-		if (!hasElements && !hasXMLText)
+		if (!hasContent(rootObjectClassDescriptor))
 		{
 			// close tag no more elements
-			writeCompleteClose(appendable);
+			writeCompleteClose(output);
 		}
 		else
 		{
-			writeClose(appendable);
+			writeClose(output);
 
-			if (hasXMLText)
+			if (rootObjectClassDescriptor.hasScalarFD())
 			{
-				writeValueAsText(object, rootObjectClassDescriptor.getScalarTextFD(), appendable);
+				writeValueAsText(object, rootObjectClassDescriptor.getScalarTextFD(), output);
 			}
 
-			serializeFields(object, appendable, translationContext, elementFieldDescriptors);
-
-			writeObjectClose(rootObjectFieldDescriptor, appendable);
+			GeneratedSerializer generated = rootObjectClassDescriptor.getGeneratedSerializer();
+			if (generated != null)
+				generated.serializeElements(fieldWriter, object,
+						rootObjectClassDescriptor.elementFieldDescriptors(), output, translationContext, 0);
+			else
+				serializeFields(object, output, translationContext,
+						rootObjectClassDescriptor.elementFieldDescriptors());
 		}
 
 		serializationPostHook(object, translationContext);
 	}
 
+	/**
+	 * @param classDescriptor
+	 * @return true if instances are written with a close tag, because the class has element fields, or
+	 *         text.
+	 */
+	private static boolean hasContent(ClassDescriptor<? extends FieldDescriptor> classDescriptor)
+	{
+		return classDescriptor.elementFieldDescriptors().size() > 0 || classDescriptor.hasScalarFD();
+	}
+
 	/**
 	 * 
 	 * @param object
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @param rootObjectClassDescriptor
+	 * @param isRoot
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void serializeAttributes(Object object, Appendable appendable,
+	private void serializeAttributes(Object object, SerializationOutput output,
 			TranslationContext translationContext,
-			ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor)
+			ClassDescriptor<? extends FieldDescriptor> rootObjectClassDescriptor, boolean isRoot)
 			throws SIMPLTranslationException, IOException
 	{
 		ArrayList<? extends FieldDescriptor> attributeFieldDescriptors = rootObjectClassDescriptor
 				.attributeFieldDescriptors();
 
-		for (FieldDescriptor childFd : attributeFieldDescriptors)
+		GeneratedSerializer generated = rootObjectClassDescriptor.getGeneratedSerializer();
+		if (generated != null)
 		{
 			try
 			{
-				writeValueAsAtrribute(object, childFd, appendable, translationContext);
+				generated.serializeAttributes(fieldWriter, object, attributeFieldDescriptors, output,
+						translationContext, 0);
 			}
 			catch (Exception ex)
 			{
 				throw new SIMPLTranslationException("serialize for attribute " + object, ex);
 			}
 		}
+		else
+		{
+			for (FieldDescriptor childFd : attributeFieldDescriptors)
+			{
+				try
+				{
+					writeValueAsAtrribute(object, childFd, output, translationContext);
+				}
+				catch (Exception ex)
+				{
+					throw new SIMPLTranslationException("serialize for attribute " + object, ex);
+				}
+			}
+		}
 
 		if (SimplTypesScope.graphSwitch == GRAPH_SWITCH.ON)
 		{
 			if (translationContext.needsHashCode(object))
 			{
-				writeSimplIdAttribute(object, appendable, translationContext);
+				writeSimplIdAttribute(object, output, translationContext);
 			}
 
 			if (isRoot && translationContext.isGraph())
 			{
-				writeSimplNameSpace(appendable);
-				isRoot = false;
+				writeSimplNameSpace(output);
 			}
 		}
 	}
@@ -161,13 +244,13 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 	/**
 	 * 
 	 * @param object
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @param elementFieldDescriptors
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void serializeFields(Object object, Appendable appendable,
+	private void serializeFields(Object object, SerializationOutput output,
 			TranslationContext translationContext,
 			ArrayList<? extends FieldDescriptor> elementFieldDescriptors)
 			throws SIMPLTranslationException, IOException
@@ -177,120 +260,171 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 			switch (childFd.getType())
 			{
 			case SCALAR:
-				writeValueAsLeaf(object, childFd, appendable, translationContext);
+				writeValueAsLeaf(object, childFd, output, translationContext);
 				break;
 			case COMPOSITE_ELEMENT:
-				Object compositeObject = childFd.getValue(object);
-				if (compositeObject != null)
-				{
-					FieldDescriptor compositeObjectFieldDescriptor = childFd.isPolymorphic() ? getClassDescriptor(
-							compositeObject).pseudoFieldDescriptor()
-							: childFd;
-					writeWrap(childFd, appendable, false);
-					serialize(compositeObject, compositeObjectFieldDescriptor, appendable, translationContext);
-					writeWrap(childFd, appendable, true);
-				}
+				writeComposite(childFd.getValue(object), childFd, output, translationContext);
 				break;
 			case COLLECTION_SCALAR:
 			case MAP_SCALAR:
-				Object scalarCollectionObject = childFd.getValue(object);
-				Collection<?> scalarCollection = XMLTools.getCollection(scalarCollectionObject);
-				if (scalarCollection != null && scalarCollection.size() > 0)
-				{
-					writeWrap(childFd, appendable, false);
-
-					for (Object collectionScalar : scalarCollection)
-					{
-						writeScalarCollectionLeaf(collectionScalar, childFd, appendable, translationContext);
-					}
-					writeWrap(childFd, appendable, true);
-				}
+				writeScalarCollection(childFd.getValue(object), childFd, output, translationContext);
 				break;
 			case COLLECTION_ELEMENT:
 			case MAP_ELEMENT:
-				Object compositeCollectionObject = childFd.getValue(object);
-				Collection<?> compositeCollection = XMLTools.getCollection(compositeCollectionObject);
-				if (compositeCollection != null && compositeCollection.size() > 0)
-				{
-					writeWrap(childFd, appendable, false);
-					for (Object collectionComposite : compositeCollection)
-					{
-						FieldDescriptor collectionObjectFieldDescriptor = childFd.isPolymorphic() ? getClassDescriptor(
-								collectionComposite).pseudoFieldDescriptor()
-								: childFd;
-						serialize(collectionComposite, collectionObjectFieldDescriptor, appendable,
-								translationContext);
-					}
-					writeWrap(childFd, appendable, true);
-				}
+				writeCompositeCollection(childFd.getValue(object), childFd, output, translationContext);
 				break;
 			}
 		}
 	}
 
+	/**
+	 * 
+	 * @param value
+	 *          what is in the composite field fd.
+	 * @param fd
+	 * @param output
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	private void writeComposite(Object value, FieldDescriptor fd, SerializationOutput output,
+			TranslationContext translationContext) throws SIMPLTranslationException, IOException
+	{
+		Object rawComposite = rawComposite(value, fd, Format.XML);
+		if (rawComposite != null)
+		{
+			writeWrap(fd, output, false);
+			output.append((CharSequence) rawComposite);
+			writeWrap(fd, output, true);
+			return;
+		}
+		Object compositeObject = composite(value, fd);
+		if (compositeObject != null)
+		{
+			FieldDescriptor compositeObjectFieldDescriptor = fd.isPolymorphic() ? getClassDescriptor(
+					compositeObject).pseudoFieldDescriptor() : fd;
+			writeWrap(fd, output, false);
+			serialize(compositeObject, compositeObjectFieldDescriptor, output, translationContext, false);
+			writeWrap(fd, output, true);
+		}
+	}
+
+	/**
+	 * 
+	 * @param value
+	 *          what is in the scalar collection or map field fd.
+	 * @param fd
+	 * @param output
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	private void writeScalarCollection(Object value, FieldDescriptor fd, SerializationOutput output,
+			TranslationContext translationContext) throws SIMPLTranslationException, IOException
+	{
+		Collection<?> scalarCollection = XMLTools.getCollection(value);
+		if (scalarCollection != null && scalarCollection.size() > 0)
+		{
+			writeWrap(fd, output, false);
+
+			for (Object collectionScalar : scalarCollection)
+			{
+				writeScalarCollectionLeaf(collectionScalar, fd, output, translationContext);
+			}
+			writeWrap(fd, output, true);
+		}
+	}
+
+	/**
+	 * 
+	 * @param value
+	 *          what is in the composite collection or map field fd.
+	 * @param fd
+	 * @param output
+	 * @param translationContext
+	 * @throws SIMPLTranslationException
+	 * @throws IOException
+	 */
+	private void writeCompositeCollection(Object value, FieldDescriptor fd,
+			SerializationOutput output, TranslationContext translationContext)
+			throws SIMPLTranslationException, IOException
+	{
+		Collection<?> compositeCollection = XMLTools.getCollection(value);
+		if (compositeCollection != null && compositeCollection.size() > 0)
+		{
+			writeWrap(fd, output, false);
+			for (Object collectionComposite : compositeCollection)
+			{
+				FieldDescriptor collectionObjectFieldDescriptor = fd.isPolymorphic() ? getClassDescriptor(
+						collectionComposite).pseudoFieldDescriptor() : fd;
+				serialize(collectionComposite, collectionObjectFieldDescriptor, output,
+						translationContext, false);
+			}
+			writeWrap(fd, output, true);
+		}
+	}
+
 	/**
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeSimplRef(Object object, FieldDescriptor fd, Appendable appendable, TranslationContext translationContext)
+	private void writeSimplRef(Object object, FieldDescriptor fd, SerializationOutput output, TranslationContext translationContext)
 			throws IOException
 	{
-		writeObjectStart(fd, appendable);
-		writeSimplRefAttribute(object, appendable, translationContext);
-		writeCompleteClose(appendable);
+		writeObjectStart(fd, output);
+		writeSimplRefAttribute(object, output, translationContext);
+		writeCompleteClose(output);
 	}
 
 	/**
 	 * 
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeObjectStart(FieldDescriptor fd, Appendable appendable) throws IOException
+	private void writeObjectStart(FieldDescriptor fd, SerializationOutput output) throws IOException
 	{
-		appendable.append('<').append(fd.elementStart());
+		output.append(fd.getXMLFragments().openStart());
 	}
 
 	/**
 	 * 
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeObjectClose(FieldDescriptor fd, Appendable appendable) throws IOException
+	private void writeObjectClose(FieldDescriptor fd, SerializationOutput output) throws IOException
 	{
-		appendable.append('<').append('/').append(fd.elementStart()).append('>');
+		output.append(fd.getXMLFragments().close());
 	}
 
 	/**
 	 * 
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeCompleteClose(Appendable appendable) throws IOException
+	private void writeCompleteClose(SerializationOutput output) throws IOException
 	{
-		appendable.append('/').append('>');
+		output.append('/').append('>');
 	}
 
 	/**
 	 * 
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param close
 	 * @throws IOException
 	 */
-	private void writeWrap(FieldDescriptor fd, Appendable appendable, boolean close)
+	private void writeWrap(FieldDescriptor fd, SerializationOutput output, boolean close)
 			throws IOException
 	{
 		if (fd.isWrapped())
 		{
-			appendable.append('<');
-			if (close)
-				appendable.append('/');
-			appendable.append(fd.getTagName()).append('>');
+			XMLFieldFragments fragments = fd.getXMLFragments();
+			output.append(close ? fragments.wrapClose() : fragments.wrapOpen());
 		}
 	}
 
@@ -298,19 +432,20 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void writeValueAsLeaf(Object object, FieldDescriptor fd, Appendable appendable,
+	private void writeValueAsLeaf(Object object, FieldDescriptor fd, SerializationOutput output,
 			TranslationContext translationContext) throws SIMPLTranslationException, IOException
 	{
 		if (!fd.isDefaultValueFromContext(object))
 		{
-			appendable.append('<').append(fd.elementStart()).append('>');
-			fd.appendValue(appendable, object, translationContext, Format.XML);
-			appendable.append('<').append('/').append(fd.elementStart()).append('>');
+			XMLFieldFragments fragments = fd.getXMLFragments();
+			output.append(fragments.open());
+			fd.appendValue(output, object, translationContext, Format.XML);
+			output.append(fragments.close());
 		}
 	}
 
@@ -318,118 +453,156 @@ public class XMLSerializer extends StringSerializer implements FieldTypes
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void writeScalarCollectionLeaf(Object object, FieldDescriptor fd, Appendable appendable,
+	private void writeScalarCollectionLeaf(Object object, FieldDescriptor fd, SerializationOutput output,
 			TranslationContext translationContext) throws SIMPLTranslationException, IOException
 	{
-		appendable.append('<').append(fd.elementStart()).append('>');
-		fd.appendCollectionScalarValue(appendable, object, translationContext, Format.XML);
-		appendable.append('<').append('/').append(fd.elementStart()).append('>');
+		XMLFieldFragments fragments = fd.getXMLFragments();
+		output.append(fragments.open());
+		fd.appendCollectionScalarValue(output, object, translationContext, Format.XML);
+		output.append(fragments.close());
 	}
 
 	/**
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void writeValueAsText(Object object, FieldDescriptor fd, Appendable appendable)
+	private void writeValueAsText(Object object, FieldDescriptor fd, SerializationOutput output)
 			throws SIMPLTranslationException, IOException
 	{
 		if (!fd.isDefaultValueFromContext(object))
 		{
 			if (fd.isCDATA())
-				appendable.append(START_CDATA);
-			fd.appendValue(appendable, object, null, Format.XML);
+				output.append(START_CDATA);
+			fd.appendValue(output, object, null, Format.XML);
 			if (fd.isCDATA())
-				appendable.append(END_CDATA);
+				output.append(END_CDATA);
 		}
 	}
 
 	/**
 	 * 
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeClose(Appendable appendable) throws IOException
+	private void writeClose(SerializationOutput output) throws IOException
 	{
-		appendable.append('>');
+		output.append('>');
 	}
 
 	/**
 	 * 
 	 * @param object
 	 * @param fd
-	 * @param appendable
+	 * @param output
 	 * @param translationContext
 	 * @throws SIMPLTranslationException
 	 * @throws IOException
 	 */
-	private void writeValueAsAtrribute(Object object, FieldDescriptor fd, Appendable appendable,
+	private void writeValueAsAtrribute(Object object, FieldDescriptor fd, SerializationOutput output,
 			TranslationContext translationContext) throws SIMPLTranslationException, IOException
 	{
 		if (object != null)
 		{
 			if (!fd.isDefaultValueFromContext(object))
 			{
-				appendable.append(' ');
-				appendable.append(fd.getTagName());
-				appendable.append('=');
-				appendable.append('"');
+				output.append(fd.getXMLFragments().attributeStart());
 
-				fd.appendValue(appendable, object, translationContext, Format.XML);
+				fd.appendValue(output, object, translationContext, Format.XML);
 
-				appendable.append('"');
+				output.append('"');
 			}
 		}
 	}
 
 	/**
 	 * 
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeSimplNameSpace(Appendable appendable) throws IOException
+	private void writeSimplNameSpace(SerializationOutput output) throws IOException
 	{
-		appendable.append(TranslationContext.SIMPL_NAMESPACE);
+		output.append(TranslationContext.SIMPL_NAMESPACE);
 	}
 
 	/**
 	 * 
 	 * @param object
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeSimplRefAttribute(Object object, Appendable appendable, TranslationContext translationContext) throws IOException
+	private void writeSimplRefAttribute(Object object, SerializationOutput output, TranslationContext translationContext) throws IOException
 	{
-		appendable.append(' ');
-		appendable.append(TranslationContext.SIMPL_REF);
-		appendable.append('=');
-		appendable.append('"');
-		appendable.append(translationContext.getSimplId(object));
-		appendable.append('"');
+		output.append(SIMPL_REF_START);
+		output.append(translationContext.getSimplId(object));
+		output.append('"');
 	}
 
 	/**
 	 * 
 	 * @param object
-	 * @param appendable
+	 * @param output
 	 * @throws IOException
 	 */
-	private void writeSimplIdAttribute(Object object, Appendable appendable, TranslationContext translationContext) throws IOException
+	private void writeSimplIdAttribute(Object object, SerializationOutput output, TranslationContext translationContext) throws IOException
 	{
-		appendable.append(' ');
-		appendable.append(TranslationContext.SIMPL_ID);
-		appendable.append('=');
-		appendable.append('"');
-		appendable.append(translationContext.getSimplId(object));
-		appendable.append('"');
+		output.append(SIMPL_ID_START);
+		output.append(translationContext.getSimplId(object));
+		output.append('"');
 	}
 
+	private class XMLFieldWriter implements FieldWriter
+	{
+		@Override
+		public int attribute(Object object, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException
+		{
+			writeValueAsAtrribute(object, fd, output, translationContext);
+			return numOfFields;
+		}
+
+		@Override
+		public int leaf(Object object, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException
+		{
+			writeValueAsLeaf(object, fd, output, translationContext);
+			return numOfFields;
+		}
+
+		@Override
+		public int composite(Object value, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException
+		{
+			writeComposite(value, fd, output, translationContext);
+			return numOfFields;
+		}
+
+		@Override
+		public int collection(Object value, FieldDescriptor fd, SerializationOutput output,
+				TranslationContext translationContext, int numOfFields) throws SIMPLTranslationException,
+				IOException
+		{
+			switch (fd.getType())
+			{
+			case COLLECTION_SCALAR:
+			case MAP_SCALAR:
+				writeScalarCollection(value, fd, output, translationContext);
+				break;
+			default:
+				writeCompositeCollection(value, fd, output, translationContext);
+			}
+			return numOfFields;
+		}
+	}
 }
@@ -3,13 +3,18 @@
  */
 package ecologylab.serialization.types;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.Charset;
 import java.util.regex.Pattern;
 
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.accessors.FieldAccessor;
+import ecologylab.serialization.accessors.ReflectionFieldAccessor;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.annotations.simpl_scalar;
 import ecologylab.serialization.formatenums.Format;
@@ -126,6 +131,31 @@ implements CrossLanguageTypeConstants
 	 */
 	public boolean setField(Object context, Field field, String valueString, String[] format,
 			ScalarUnmarshallingContext scalarUnmarshallingContext)
+	{
+		return setField(context, new ReflectionFieldAccessor(field), valueString, format,
+				scalarUnmarshallingContext);
+	}
+
+	/**
+	 * Set the field in the context, using the valueString, converting it to the appropriate type
+	 * using a subclass of this. The value is set through the accessor.
+	 * <p/>
+	 * Primitive types override this, to convert and set the value without boxing it.
+	 * 
+	 * @param context
+	 *          The object whose field should be modified.
+	 * @param accessor
+	 *          Accessor for the field to be set.
+	 * @param valueString
+	 *          String representation of the value to set the field to.
+	 * @param format
+	 * @param scalarUnmarshallingContext
+	 * @return true if the field is set properly, or if the parameter value that is passed in is null.
+	 *         false if the field cannot be accessed, or if value cannot be converted to the
+	 *         appropriate type.
+	 */
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
 		if (valueString == null)
 			return true;
@@ -138,17 +168,55 @@ implements CrossLanguageTypeConstants
 			referenceObject = getInstance(valueString, format, scalarUnmarshallingContext);
 			if (referenceObject != null)
 			{
-				field.set(context, referenceObject);
+				accessor.set(context, referenceObject);
 				result = true;
 			}
 		}
 		catch (Exception e)
 		{
-			setFieldError(field, valueString, e);
+			setFieldError(accessor.getField(), valueString, e);
 		}
 		return result;
 	}
 
+	/**
+	 * Set the field in the context, from the chars between start and end in value. The default makes
+	 * a String of them, for setField(Object, FieldAccessor, String, String[],
+	 * ScalarUnmarshallingContext).
+	 * <p/>
+	 * Numeric types override this, to parse the chars where they are.
+	 * 
+	 * @param context
+	 *          The object whose field should be modified.
+	 * @param accessor
+	 *          Accessor for the field to be set.
+	 * @param value
+	 *          Holds the representation of the value to set the field to.
+	 * @param start
+	 * @param end
+	 * @param format
+	 * @param scalarUnmarshallingContext
+	 * @return true if the field is set properly. false if the field cannot be accessed, or if value
+	 *         cannot be converted to the appropriate type.
+	 */
+	public boolean setField(Object context, FieldAccessor accessor, CharSequence value, int start,
+			int end, String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
+	{
+		return setField(context, accessor, value.subSequence(start, end).toString(), format,
+				scalarUnmarshallingContext);
+	}
+
+	/**
+	 * @return true if the chars between start and end in value spell null, in any case, which
+	 *         setField() takes to mean no value.
+	 */
+	protected static boolean isNull(CharSequence value, int start, int end)
+	{
+		return end - start == 4 && (value.charAt(start) | 0x20) == 'n'
+				&& (value.charAt(start + 1) | 0x20) == 'u' && (value.charAt(start + 2) | 0x20) == 'l'
+				&& (value.charAt(start + 3) | 0x20) == 'l';
+	}
+
 	/**
 	 * Set the field in the context, using the valueString, converting it to the appropriate type
 	 * using a subclass of this.
@@ -192,6 +260,158 @@ implements CrossLanguageTypeConstants
 		error("Got " + e + " while trying to set field " + field + " to " + value);
 	}
 
+	/**
+	 * Charset for scalars that are written as text in binary formats.
+	 */
+	public static final Charset	UTF8	= Charset.forName("UTF-8");
+
+	/**
+	 * Write the value of the field read through accessor, in context, in the native binary form of
+	 * this type, as used by BinaryFormat.TLV2.
+	 * <p/>
+	 * Primitive types override this, to write the value without boxing it.
+	 * 
+	 * @param out
+	 * @param accessor
+	 * @param context
+	 * @param serializationContext
+	 * @throws IOException
+	 */
+	public void writeBinary(DataOutput out, FieldAccessor accessor, Object context,
+			TranslationContext serializationContext) throws IOException
+	{
+		writeBinary((T) accessor.get(context), out, serializationContext);
+	}
+
+	/**
+	 * Write instance in the native binary form of this type. The length of the value is carried by
+	 * the format, so variable length values need no terminator.
+	 * <p/>
+	 * The default writes the UTF-8 bytes of marshall(instance). Types with a more compact fixed-width
+	 * or varint form override this, together with readBinary().
+	 * 
+	 * @param instance
+	 * @param out
+	 * @param serializationContext
+	 * @throws IOException
+	 */
+	public void writeBinary(T instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
+	{
+		out.write(marshall(instance, serializationContext).getBytes(UTF8));
+	}
+
+	/**
+	 * Read a value written by writeBinary().
+	 * 
+	 * @param in
+	 * @param length
+	 *          Number of bytes in the value.
+	 * @param formatStrings
+	 * @param scalarUnmarshallingContext
+	 * @return The value, or null if it could not be converted.
+	 * @throws IOException
+	 */
+	public T readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return getInstance(readUTF8(in, length), formatStrings, scalarUnmarshallingContext);
+	}
+
+	/**
+	 * Read a value written by writeBinary(), and set the field in the context to it, through the
+	 * accessor.
+	 * <p/>
+	 * Primitive types override this, to set the value without boxing it.
+	 * 
+	 * @param context
+	 * @param accessor
+	 * @param in
+	 * @param length
+	 *          Number of bytes in the value.
+	 * @param formatStrings
+	 * @param scalarUnmarshallingContext
+	 * @return true if the field was set.
+	 * @throws IOException
+	 */
+	public boolean setFieldFromBinary(Object context, FieldAccessor accessor, DataInput in,
+			int length, String[] formatStrings, ScalarUnmarshallingContext scalarUnmarshallingContext)
+			throws IOException
+	{
+		T value = readBinary(in, length, formatStrings, scalarUnmarshallingContext);
+		if (value == null)
+			return false;
+		accessor.set(context, value);
+		return true;
+	}
+
+	/**
+	 * Read length bytes of UTF-8 from in.
+	 */
+	public static String readUTF8(DataInput in, int length) throws IOException
+	{
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Write value as a zigzag varint: 7 bits per byte, low bits first, so that small magnitudes,
+	 * positive or negative, take 1 or 2 bytes.
+	 */
+	public static void writeVarInt(DataOutput out, int value) throws IOException
+	{
+		int zigzag = (value << 1) ^ (value >> 31);
+		while ((zigzag & ~0x7F) != 0)
+		{
+			out.writeByte((zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+		}
+		out.writeByte(zigzag);
+	}
+
+	public static int readVarInt(DataInput in) throws IOException
+	{
+		int zigzag = 0;
+		for (int shift = 0; shift < 35; shift += 7)
+		{
+			byte b = in.readByte();
+			zigzag |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+		throw new IOException("malformed varint");
+	}
+
+	/**
+	 * Write value as a zigzag varint.
+	 * 
+	 * @see #writeVarInt(DataOutput, int)
+	 */
+	public static void writeVarLong(DataOutput out, long value) throws IOException
+	{
+		long zigzag = (value << 1) ^ (value >> 63);
+		while ((zigzag & ~0x7FL) != 0)
+		{
+			out.writeByte((int) (zigzag & 0x7F) | 0x80);
+			zigzag >>>= 7;
+		}
+		out.writeByte((int) zigzag);
+	}
+
+	public static long readVarLong(DataInput in) throws IOException
+	{
+		long zigzag = 0;
+		for (int shift = 0; shift < 70; shift += 7)
+		{
+			byte b = in.readByte();
+			zigzag |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+		throw new IOException("malformed varint");
+	}
+
 	/**
 	 * @return Returns the integer index associated with this type.
 	 */
@@ -237,11 +457,21 @@ implements CrossLanguageTypeConstants
 	 * override.
 	 */
 	public String toString(Field field, Object context)
+	{
+		return toString(new ReflectionFieldAccessor(field), context);
+	}
+
+	/**
+	 * The string representation for the field read through accessor, in context.
+	 * 
+	 * @see #toString(Field, Object)
+	 */
+	public String toString(FieldAccessor accessor, Object context)
 	{
 		String result = "COULDNT CONVERT!";
 		try
 		{
-			T instance = (T) field.get(context);
+			T instance = (T) accessor.get(context);
 			if (instance == null)
 				result = DEFAULT_VALUE_STRING;
 			else
@@ -306,7 +536,7 @@ implements CrossLanguageTypeConstants
 	{
 		try
 		{
-			Object instance = fieldDescriptor.getField().get(context);
+			Object instance = fieldDescriptor.getValue(context);
 
 			appendValue((T) instance, buffy, !fieldDescriptor.isCDATA(), null);
 		}
@@ -362,7 +592,20 @@ implements CrossLanguageTypeConstants
 	public boolean isDefaultValue(Field field, Object context) throws IllegalArgumentException,
 			IllegalAccessException
 	{
-		Object fieldValue = field.get(context);
+		return isDefaultValue(new ReflectionFieldAccessor(field), context);
+	}
+
+	/**
+	 * True if the value of the field read through accessor, in context, is the default value for this
+	 * type, and so need not be serialized.
+	 * 
+	 * @param accessor
+	 * @param context
+	 * @return
+	 */
+	public boolean isDefaultValue(FieldAccessor accessor, Object context)
+	{
+		Object fieldValue = accessor.get(context);
 		return fieldValue == null || DEFAULT_VALUE_STRING.equals(fieldValue.toString());
 	}
 
@@ -523,7 +766,7 @@ implements CrossLanguageTypeConstants
 	protected static String getNullStringIfNull(FieldDescriptor fieldDescriptor, Object context) 
 	throws IllegalArgumentException, IllegalAccessException
 	{
-		return (fieldDescriptor.getField() == null || fieldDescriptor.getField().get(context) == null) ? "null" : null;
+		return (fieldDescriptor.getField() == null || fieldDescriptor.getValue(context) == null) ? "null" : null;
 	}
 	
 	/**
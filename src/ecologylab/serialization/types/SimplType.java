@@ -3,7 +3,7 @@
  */
 package ecologylab.serialization.types;
 
-import ecologylab.generic.ReflectionTools;
+import ecologylab.serialization.accessors.Instantiator;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.annotations.simpl_scalar;
 
@@ -19,6 +19,11 @@ public abstract class SimplType<T> extends SimplBaseType
 implements CrossLanguageTypeConstants
 {
 	private Class<? extends T>	javaClass;
+
+	/**
+	 * Makes instances of javaClass, for getInstance(). Created on first use.
+	 */
+	private transient volatile Instantiator<? extends T>	instantiator;
 	
 	/**
 	 * Short name of the type: without package.
@@ -208,9 +213,28 @@ implements CrossLanguageTypeConstants
 		return getSimpleName() + ": crossPlatform=" + getName() + "\tjava=" + javaTypeName + "\tsimple=" + simpleName;
 	}
 	
+	/**
+	 * @return A new instance of the Java type, or null if it can't be instantiated.
+	 */
 	public T getInstance()
 	{
-		return ReflectionTools.getInstance(javaClass);
+		if (javaClass == null)
+			return null;
+		Instantiator<? extends T> instantiator = this.instantiator;
+		if (instantiator == null)
+		{
+			instantiator = Instantiator.create(javaClass);
+			this.instantiator = instantiator;
+		}
+		try
+		{
+			return instantiator.newInstance();
+		}
+		catch (ReflectiveOperationException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
 	}
 
 	public Class getJavaClass()
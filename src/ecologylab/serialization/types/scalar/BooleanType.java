@@ -3,12 +3,14 @@
  */
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Field;
 
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.accessors.FieldAccessor;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
@@ -71,21 +73,25 @@ public class BooleanType extends ScalarType<Boolean> implements CrossLanguageTyp
 	/**
 	 * This is a primitive type, so we set it specially.
 	 * 
-	 * @see ecologylab.serialization.types.ScalarType#setField(java.lang.Object,
-	 *      java.lang.reflect.Field, java.lang.String)
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, String,
+	 *      String[], ScalarUnmarshallingContext)
 	 */
 	@Override
-	public boolean setField(Object object, Field field, String value)
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
+		if (!isPrimitive() || valueString == null || "null".equalsIgnoreCase(valueString))
+			return super.setField(context, accessor, valueString, format, scalarUnmarshallingContext);
+
 		boolean result = false;
 		try
 		{
-			field.setBoolean(object, getValue(value));
+			accessor.setBoolean(context, getValue(valueString));
 			result = true;
 		}
 		catch (Exception e)
 		{
-			setFieldError(field, value, e);
+			setFieldError(accessor.getField(), valueString, e);
 		}
 		return result;
 	}
@@ -94,12 +100,15 @@ public class BooleanType extends ScalarType<Boolean> implements CrossLanguageTyp
 	 * The string representation for a Field of this type
 	 */
 	@Override
-	public String toString(Field field, Object object)
+	public String toString(FieldAccessor accessor, Object context)
 	{
+		if (!isPrimitive())
+			return super.toString(accessor, context);
+
 		String result = "COULDN'T CONVERT!";
 		try
 		{
-			result = Boolean.toString(field.getBoolean(object));
+			result = Boolean.toString(accessor.getBoolean(context));
 		}
 		catch (Exception e)
 		{
@@ -152,21 +161,29 @@ public class BooleanType extends ScalarType<Boolean> implements CrossLanguageTyp
 	public static String getValueToAppend(FieldDescriptor fieldDescriptor, Object context)
 			throws IllegalArgumentException, IllegalAccessException
 	{
-		String result	= getNullStringIfNull(fieldDescriptor, context);
-		if (result == null)
+		FieldAccessor accessor = fieldDescriptor.getAccessor();
+		if (accessor == null)
+			return "null";
+
+		boolean value;
+		if (accessor.getField().getType() == boolean.class)
+			value = accessor.getBoolean(context);
+		else
 		{
-			boolean value = (Boolean) fieldDescriptor.getField().get(context);
-
-			if (fieldDescriptor.getFormat() != null)
-			{
-				return (value ? SHORT_TRUE : SHORT_FALSE);
-			}
-			else
-			{
-				return (value ? TRUE : FALSE);
-			}
+			Boolean boxed = (Boolean) accessor.get(context);
+			if (boxed == null)
+				return "null";
+			value = boxed;
+		}
+
+		if (fieldDescriptor.getFormat() != null)
+		{
+			return (value ? SHORT_TRUE : SHORT_FALSE);
+		}
+		else
+		{
+			return (value ? TRUE : FALSE);
 		}
-		return result;
 	}
 
 	/**
@@ -194,10 +211,62 @@ public class BooleanType extends ScalarType<Boolean> implements CrossLanguageTyp
 	 * @return
 	 */
 	@Override
-	public boolean isDefaultValue(Field field, Object context) throws IllegalArgumentException,
-			IllegalAccessException
+	public boolean isDefaultValue(FieldAccessor accessor, Object context)
+	{
+		if (context == null)
+			return true;
+		if (!isPrimitive())
+		{
+			Boolean value = (Boolean) accessor.get(context);
+			return value == null || value == DEFAULT_VALUE;
+		}
+		return accessor.getBoolean(context) == DEFAULT_VALUE;
+	}
+
+	/**
+	 * Written in BinaryFormat.TLV2 as 1 byte.
+	 */
+	@Override
+	public void writeBinary(Boolean instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
 	{
-		return (Boolean) field.get(context) == DEFAULT_VALUE;
+		out.writeBoolean(instance);
 	}
 
+	@Override
+	public Boolean readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return in.readBoolean();
+	}
+
+	/**
+	 * This is a primitive type, so we write it without boxing it.
+	 */
+	@Override
+	public void writeBinary(DataOutput out, FieldAccessor accessor, Object context,
+			TranslationContext serializationContext) throws IOException
+	{
+		if (!isPrimitive())
+		{
+			super.writeBinary(out, accessor, context, serializationContext);
+			return;
+		}
+		out.writeBoolean(accessor.getBoolean(context));
+	}
+
+	/**
+	 * This is a primitive type, so we set it without boxing it.
+	 */
+	@Override
+	public boolean setFieldFromBinary(Object context, FieldAccessor accessor, DataInput in,
+			int length, String[] formatStrings, ScalarUnmarshallingContext scalarUnmarshallingContext)
+			throws IOException
+	{
+		if (!isPrimitive())
+			return super.setFieldFromBinary(context, accessor, in, length, formatStrings,
+					scalarUnmarshallingContext);
+		accessor.setBoolean(context, in.readBoolean());
+		return true;
+	}
 }
@@ -3,12 +3,14 @@
  */
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Field;
 
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.accessors.FieldAccessor;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
@@ -62,19 +64,25 @@ implements CrossLanguageTypeConstants
 	/**
 	 * This is a primitive type, so we set it specially.
 	 * 
-	 * @see ecologylab.serialization.types.ScalarType#setField(java.lang.Object, java.lang.reflect.Field, java.lang.String)
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, String,
+	 *      String[], ScalarUnmarshallingContext)
 	 */
 	@Override
-	public boolean setField(Object object, Field field, String value) 
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
-		boolean result	= false;
+		if (valueString == null || "null".equalsIgnoreCase(valueString))
+			return super.setField(context, accessor, valueString, format, scalarUnmarshallingContext);
+
+		boolean result = false;
 		try
 		{
-			field.setByte(object, getValue(value));
-			result		= true;
-		} catch (Exception e)
+			accessor.setByte(context, getValue(valueString));
+			result = true;
+		}
+		catch (Exception e)
 		{
-            setFieldError(field, value, e);
+			setFieldError(accessor.getField(), valueString, e);
 		}
 		return result;
 	}
@@ -82,12 +90,12 @@ implements CrossLanguageTypeConstants
  * The string representation for a Field of this type
  */
 	@Override
-	public String toString(Field field, Object object)
+	public String toString(FieldAccessor accessor, Object object)
 	{
 	   String result	= "COULDN'T CONVERT!";
 	   try
 	   {
-		  result		= Byte.toString(field.getByte(object));
+		  result		= Byte.toString(accessor.getByte(object));
 	   } catch (Exception e)
 	   {
 		  e.printStackTrace();
@@ -120,10 +128,9 @@ implements CrossLanguageTypeConstants
 	 * @return
 	 */
 	@Override
-	public boolean isDefaultValue(Field field, Object context) 
-    throws IllegalArgumentException, IllegalAccessException
+	public boolean isDefaultValue(FieldAccessor accessor, Object context)
     {
-    	return field.getByte(context) == DEFAULT_VALUE;
+    	return accessor.getByte(context) == DEFAULT_VALUE;
     }
 
     /**
@@ -140,7 +147,7 @@ implements CrossLanguageTypeConstants
     public void appendValue(StringBuilder buffy, FieldDescriptor f2xo, Object context) 
     throws IllegalArgumentException, IllegalAccessException
     {
-        byte value = f2xo.getField().getByte(context);
+        byte value = f2xo.getAccessor().getByte(context);
            
 		buffy.append(value);
     }
@@ -159,8 +166,47 @@ implements CrossLanguageTypeConstants
     public void appendValue(Appendable buffy, FieldDescriptor fieldDescriptor, Object context, TranslationContext serializationContext, Format format) 
     throws IllegalArgumentException, IllegalAccessException, IOException
     {
-        byte value = fieldDescriptor.getField().getByte(context);
+        byte value = fieldDescriptor.getAccessor().getByte(context);
            
 		buffy.append(Byte.toString(value));
     }
+
+	/**
+	 * Written in BinaryFormat.TLV2 as 1 byte.
+	 */
+	@Override
+	public void writeBinary(Byte instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
+	{
+		out.writeByte(instance);
+	}
+
+	@Override
+	public Byte readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return in.readByte();
+	}
+
+	/**
+	 * This is a primitive type, so we write it without boxing it.
+	 */
+	@Override
+	public void writeBinary(DataOutput out, FieldAccessor accessor, Object context,
+			TranslationContext serializationContext) throws IOException
+	{
+		out.writeByte(accessor.getByte(context));
+	}
+
+	/**
+	 * This is a primitive type, so we set it without boxing it.
+	 */
+	@Override
+	public boolean setFieldFromBinary(Object context, FieldAccessor accessor, DataInput in,
+			int length, String[] formatStrings, ScalarUnmarshallingContext scalarUnmarshallingContext)
+			throws IOException
+	{
+		accessor.setByte(context, in.readByte());
+		return true;
+	}
 }
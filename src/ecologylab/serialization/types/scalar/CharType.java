@@ -3,12 +3,14 @@
  */
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Field;
 
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.accessors.FieldAccessor;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
@@ -63,21 +65,25 @@ public class CharType extends ScalarType<Character> implements CrossLanguageType
 	/**
 	 * This is a primitive type, so we set it specially.
 	 * 
-	 * @see ecologylab.serialization.types.ScalarType#setField(java.lang.Object,
-	 *      java.lang.reflect.Field, java.lang.String)
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, String,
+	 *      String[], ScalarUnmarshallingContext)
 	 */
 	@Override
-	public boolean setField(Object object, Field field, String value)
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
+		if (valueString == null || "null".equalsIgnoreCase(valueString))
+			return super.setField(context, accessor, valueString, format, scalarUnmarshallingContext);
+
 		boolean result = false;
 		try
 		{
-			field.setChar(object, getValue(value));
+			accessor.setChar(context, getValue(valueString));
 			result = true;
 		}
 		catch (Exception e)
 		{
-			setFieldError(field, value, e);
+			setFieldError(accessor.getField(), valueString, e);
 		}
 		return result;
 	}
@@ -86,12 +92,12 @@ public class CharType extends ScalarType<Character> implements CrossLanguageType
 	 * The string representation for a Field of this type
 	 */
 	@Override
-	public String toString(Field field, Object object)
+	public String toString(FieldAccessor accessor, Object object)
 	{
 		String result = "COULDN'T CONVERT!";
 		try
 		{
-			result = Character.toString(field.getChar(object));
+			result = Character.toString(accessor.getChar(object));
 		}
 		catch (Exception e)
 		{
@@ -125,10 +131,9 @@ public class CharType extends ScalarType<Character> implements CrossLanguageType
 	 * @return
 	 */
 	@Override
-	public boolean isDefaultValue(Field field, Object context) throws IllegalArgumentException,
-			IllegalAccessException
+	public boolean isDefaultValue(FieldAccessor accessor, Object context)
 	{
-		return field.getChar(context) == DEFAULT_VALUE;
+		return accessor.getChar(context) == DEFAULT_VALUE;
 	}
 
 	/**
@@ -144,7 +149,7 @@ public class CharType extends ScalarType<Character> implements CrossLanguageType
 	public void appendValue(StringBuilder buffy, FieldDescriptor f2xo, Object context)
 			throws IllegalArgumentException, IllegalAccessException
 	{
-		char value = f2xo.getField().getChar(context);
+		char value = f2xo.getAccessor().getChar(context);
 
 		buffy.append(value);
 	}
@@ -163,8 +168,47 @@ public class CharType extends ScalarType<Character> implements CrossLanguageType
 			TranslationContext serializationContext, Format format) throws IllegalArgumentException,
 			IllegalAccessException, IOException
 	{
-		char value = fieldDescriptor.getField().getChar(context);
+		char value = fieldDescriptor.getAccessor().getChar(context);
 
 		buffy.append(Character.toString(value));
 	}
+
+	/**
+	 * Written in BinaryFormat.TLV2 as 2 bytes, UTF-16.
+	 */
+	@Override
+	public void writeBinary(Character instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
+	{
+		out.writeChar(instance);
+	}
+
+	@Override
+	public Character readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return in.readChar();
+	}
+
+	/**
+	 * This is a primitive type, so we write it without boxing it.
+	 */
+	@Override
+	public void writeBinary(DataOutput out, FieldAccessor accessor, Object context,
+			TranslationContext serializationContext) throws IOException
+	{
+		out.writeChar(accessor.getChar(context));
+	}
+
+	/**
+	 * This is a primitive type, so we set it without boxing it.
+	 */
+	@Override
+	public boolean setFieldFromBinary(Object context, FieldAccessor accessor, DataInput in,
+			int length, String[] formatStrings, ScalarUnmarshallingContext scalarUnmarshallingContext)
+			throws IOException
+	{
+		accessor.setChar(context, in.readChar());
+		return true;
+	}
 }
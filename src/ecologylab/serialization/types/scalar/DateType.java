@@ -3,11 +3,15 @@
  */
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import ecologylab.serialization.ScalarUnmarshallingContext;
+import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
 
@@ -85,4 +89,22 @@ public class DateType extends ReferenceType<Date> implements CrossLanguageTypeCo
 		error("Failed to parse date: " + value);
 		return null;
 	}
+
+	/**
+	 * Written in BinaryFormat.TLV2 as 8 bytes of milliseconds since the epoch, so no patterns are
+	 * needed to read it back, and no precision is lost.
+	 */
+	@Override
+	public void writeBinary(Date instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
+	{
+		out.writeLong(instance.getTime());
+	}
+
+	@Override
+	public Date readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return new Date(in.readLong());
+	}
 }
@@ -3,14 +3,17 @@
  */
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
-import ecologylab.generic.text.EfficientDecimalFormat;
+import ecologylab.generic.text.CompiledDecimalFormat;
+import ecologylab.generic.text.NumberCodec;
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.accessors.FieldAccessor;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
@@ -28,8 +31,8 @@ public class DoubleType extends ScalarType<Double> implements CrossLanguageTypeC
 
 	public static final String																		DEFAULT_VALUE_STRING	= "0.0";
 
-	/** The map of format Strings to their associated decimal formats. */
-	private static final HashMap<String, EfficientDecimalFormat>	formatMap							= new HashMap<String, EfficientDecimalFormat>();
+	/** The map of format Strings to their compiled decimal formats. */
+	private static final ConcurrentHashMap<String, CompiledDecimalFormat>	formatMap			= new ConcurrentHashMap<String, CompiledDecimalFormat>();
 
 	/**
 	 * This constructor should only be called once per session, through a static initializer,
@@ -54,7 +57,7 @@ public class DoubleType extends ScalarType<Double> implements CrossLanguageTypeC
 	 */
 	public double getValue(String valueString)
 	{
-		return Double.parseDouble(valueString);
+		return NumberCodec.parseDouble(valueString, 0, valueString.length());
 	}
 
 	/**
@@ -67,35 +70,87 @@ public class DoubleType extends ScalarType<Double> implements CrossLanguageTypeC
 	public Double getInstance(String value, String[] formatStrings,
 			ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
-		return "null".equalsIgnoreCase(value) ? null : (value != null && value.contains("/")) ?  rationalToDouble(value) : new Double(value);
+		return "null".equalsIgnoreCase(value) ? null : parse(value, 0, value.length());
 	}
 	
 	public static double rationalToDouble(String rationalString)
 	{
-		String[] stringD	= rationalString.split("/", 2);
-		double d0 				= Double.parseDouble(stringD[0]);
-		double d1					= Double.parseDouble(stringD[1]);
-		
-		return d0 / d1;
+		return parse(rationalString, 0, rationalString.length());
+	}
+
+	/**
+	 * Parse a double, or a rational, like 1/3, from the chars between start and end in value.
+	 */
+	public static double parse(CharSequence value, int start, int end)
+	{
+		int slash = indexOfSlash(value, start, end);
+		if (slash < 0)
+			return NumberCodec.parseDouble(value, start, end);
+		return NumberCodec.parseDouble(value, start, slash)
+				/ NumberCodec.parseDouble(value, slash + 1, end);
+	}
+
+	static int indexOfSlash(CharSequence value, int start, int end)
+	{
+		for (int i = start; i < end; i++)
+			if (value.charAt(i) == '/')
+				return i;
+		return -1;
 	}
 
 	/**
 	 * This is a primitive type, so we set it specially.
 	 * 
-	 * @see ecologylab.serialization.types.ScalarType#setField(Object, Field, String)
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, String,
+	 *      String[], ScalarUnmarshallingContext)
+	 */
+	@Override
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
+	{
+		if (!isPrimitive() || valueString == null || "null".equalsIgnoreCase(valueString))
+			return super.setField(context, accessor, valueString, format, scalarUnmarshallingContext);
+
+		boolean result = false;
+		try
+		{
+			accessor.setDouble(context, parse(valueString, 0, valueString.length()));
+			result = true;
+		}
+		catch (Exception e)
+		{
+			setFieldError(accessor.getField(), valueString, e);
+		}
+		return result;
+	}
+
+	/**
+	 * This is a primitive type, so we parse the chars where they are, without making a String.
+	 * 
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, CharSequence,
+	 *      int, int, String[], ScalarUnmarshallingContext)
 	 */
 	@Override
-	public boolean setField(Object object, Field field, String value)
+	public boolean setField(Object context, FieldAccessor accessor, CharSequence value, int start,
+			int end, String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
+		if (isNull(value, start, end))
+			return super.setField(context, accessor, value, start, end, format,
+					scalarUnmarshallingContext);
+
 		boolean result = false;
 		try
 		{
-			field.setDouble(object, getValue(value));
+			double parsed = parse(value, start, end);
+			if (isPrimitive())
+				accessor.setDouble(context, parsed);
+			else
+				accessor.set(context, Double.valueOf(parsed));
 			result = true;
 		}
 		catch (Exception e)
 		{
-			setFieldError(field, value, e);
+			setFieldError(accessor.getField(), value.subSequence(start, end).toString(), e);
 		}
 		return result;
 	}
@@ -104,12 +159,15 @@ public class DoubleType extends ScalarType<Double> implements CrossLanguageTypeC
 	 * The string representation for a Field of this type
 	 */
 	@Override
-	public String toString(Field field, Object context)
+	public String toString(FieldAccessor accessor, Object context)
 	{
+		if (!isPrimitive())
+			return super.toString(accessor, context);
+
 		String result = "COULDN'T CONVERT!";
 		try
 		{
-			result = Double.toString((Double) field.get(context));
+			result = Double.toString(accessor.getDouble(context));
 		}
 		catch (Exception e)
 		{
@@ -148,10 +206,16 @@ public class DoubleType extends ScalarType<Double> implements CrossLanguageTypeC
 	 * @return
 	 */
 	@Override
-	public boolean isDefaultValue(Field field, Object context) throws IllegalArgumentException,
-			IllegalAccessException
+	public boolean isDefaultValue(FieldAccessor accessor, Object context)
 	{
-		return (Double) field.get(context) == DEFAULT_VALUE;
+		if (context == null)
+			return true;
+		if (!isPrimitive())
+		{
+			Double value = (Double) accessor.get(context);
+			return value == null || value == DEFAULT_VALUE;
+		}
+		return accessor.getDouble(context) == DEFAULT_VALUE;
 	}
 
 	/**
@@ -189,57 +253,128 @@ public class DoubleType extends ScalarType<Double> implements CrossLanguageTypeC
 			TranslationContext serializationContext, Format format) throws IllegalArgumentException,
 			IllegalAccessException, IOException
 	{
-		buffy.append(getValueToAppend(fieldDescriptor, context));
+		append(buffy, fieldDescriptor, context);
+	}
+
+	/**
+	 * Append a value, from a collection or map, without making a String of it.
+	 */
+	@Override
+	public void appendValue(Double instance, Appendable appendable, boolean needsEscaping,
+			TranslationContext serializationContext, Format format) throws IOException
+	{
+		NumberCodec.append(appendable, instance.doubleValue());
 	}
 
 	public static String getValueToAppend(FieldDescriptor fieldDescriptor, Object context)
 			throws IllegalArgumentException, IllegalAccessException
 	{
-  	if (fieldDescriptor.getField() == null || fieldDescriptor.getField().get(context) == null)
-  		return "null";
-
-  	double value = (Double) fieldDescriptor.getField().get(context);
-		String[] formatStrings = fieldDescriptor.getFormat();
 		StringBuilder res = new StringBuilder();
+		try
+		{
+			append(res, fieldDescriptor, context);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		return res.toString();
+	}
 
-		if (formatStrings != null)
+	/**
+	 * Append the value of the field in context, with the field's @simpl_format pattern, if it has
+	 * one, without boxing it, or making a String of it.
+	 */
+	private static void append(Appendable buffy, FieldDescriptor fieldDescriptor, Object context)
+			throws IllegalArgumentException, IllegalAccessException, IOException
+	{
+		FieldAccessor accessor = fieldDescriptor.getAccessor();
+		if (accessor == null)
 		{
-			EfficientDecimalFormat decFormat = getFormat(formatStrings[0]);
+			buffy.append("null");
+			return;
+		}
 
-			try
-			{
-				decFormat.format(value, res);
-			}
-			catch (IOException e)
+		double value;
+		if (accessor.getField().getType() == double.class)
+			value = accessor.getDouble(context);
+		else
+		{
+			Double boxed = (Double) accessor.get(context);
+			if (boxed == null)
 			{
-				e.printStackTrace();
+				buffy.append("null");
+				return;
 			}
+			value = boxed;
 		}
+		String[] formatStrings = fieldDescriptor.getFormat();
+		if (formatStrings != null)
+			getFormat(formatStrings[0]).format(value, buffy);
 		else
+			NumberCodec.append(buffy, value);
+	}
+
+	/**
+	 * @return The pattern, compiled the first time it is asked for.
+	 */
+	private static CompiledDecimalFormat getFormat(String formatString)
+	{
+		CompiledDecimalFormat decFormat = formatMap.get(formatString);
+		if (decFormat == null)
 		{
-			res.append(Double.toString(value));
+			decFormat = CompiledDecimalFormat.compile(formatString);
+			CompiledDecimalFormat previous = formatMap.putIfAbsent(formatString, decFormat);
+			if (previous != null)
+				decFormat = previous;
 		}
-		return res.toString();
+		return decFormat;
 	}
 
-	private static EfficientDecimalFormat getFormat(String formatString)
+	/**
+	 * Written in BinaryFormat.TLV2 as 8 bytes, IEEE 754.
+	 */
+	@Override
+	public void writeBinary(Double instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
 	{
-		EfficientDecimalFormat decFormat = formatMap.get(formatString);
+		out.writeDouble(instance);
+	}
 
-		if (decFormat == null)
-		{
-			synchronized (formatMap)
-			{
-				decFormat = formatMap.get(formatString);
+	@Override
+	public Double readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return in.readDouble();
+	}
 
-				if (decFormat == null)
-				{
-					decFormat = new EfficientDecimalFormat(formatString);
-					formatMap.put(formatString, decFormat);
-				}
-			}
+	/**
+	 * This is a primitive type, so we write it without boxing it.
+	 */
+	@Override
+	public void writeBinary(DataOutput out, FieldAccessor accessor, Object context,
+			TranslationContext serializationContext) throws IOException
+	{
+		if (!isPrimitive())
+		{
+			super.writeBinary(out, accessor, context, serializationContext);
+			return;
 		}
+		out.writeDouble(accessor.getDouble(context));
+	}
 
-		return decFormat;
+	/**
+	 * This is a primitive type, so we set it without boxing it.
+	 */
+	@Override
+	public boolean setFieldFromBinary(Object context, FieldAccessor accessor, DataInput in,
+			int length, String[] formatStrings, ScalarUnmarshallingContext scalarUnmarshallingContext)
+			throws IOException
+	{
+		if (!isPrimitive())
+			return super.setFieldFromBinary(context, accessor, in, length, formatStrings,
+					scalarUnmarshallingContext);
+		accessor.setDouble(context, in.readDouble());
+		return true;
 	}
 }
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.XMLTools;
+import ecologylab.serialization.accessors.FieldAccessor;
 import ecologylab.serialization.annotations.simpl_collection;
 import ecologylab.serialization.annotations.simpl_nowrap;
 
@@ -40,7 +41,8 @@ public class EnumeratedType extends ReferenceType<Enum>
 	}
 
 	@Override
-	public boolean setField(Object context, Field field, String valueString, String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
    {
        if (valueString == null)
            return true;
@@ -50,16 +52,16 @@ public class EnumeratedType extends ReferenceType<Enum>
        
        try
        {
-      	 	referenceObject = XMLTools.createEnumeratedType(field, valueString);
+      	 	referenceObject = XMLTools.createEnumeratedType(accessor.getField(), valueString);
           if (referenceObject != null)
           {
-               field.set(context, referenceObject);
+               accessor.set(context, referenceObject);
                result 		= true;
           }
        }
        catch (Exception e)
        {
-           setFieldError(field, valueString, e);
+           setFieldError(accessor.getField(), valueString, e);
        }
        return result;
    }
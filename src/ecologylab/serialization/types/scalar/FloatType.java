@@ -3,12 +3,15 @@
  */
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Field;
 
+import ecologylab.generic.text.NumberCodec;
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.accessors.FieldAccessor;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
@@ -50,7 +53,16 @@ implements CrossLanguageTypeConstants
 	 */
 	public float getValue(String valueString)
 	{
-		return Float.parseFloat(valueString);
+		return NumberCodec.parseFloat(valueString, 0, valueString.length());
+	}
+
+	/**
+	 * Parse a float, or a rational, like 1/3, from the chars between start and end in value.
+	 */
+	public static float parse(CharSequence value, int start, int end)
+	{
+		return DoubleType.indexOfSlash(value, start, end) < 0 ? NumberCodec.parseFloat(value, start,
+				end) : (float) DoubleType.parse(value, start, end);
 	}
 
 	/**
@@ -64,26 +76,62 @@ implements CrossLanguageTypeConstants
 	public Float getInstance(String value, String[] formatStrings,
 			ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
-		return "null".equalsIgnoreCase(value) ? null : (value != null && value.contains("/")) ?  (float) DoubleType.rationalToDouble(value) : getValue(value);
+		return "null".equalsIgnoreCase(value) ? null : parse(value, 0, value.length());
 	}
 
 	/**
 	 * This is a primitive type, so we set it specially.
 	 * 
-	 * @see ecologylab.serialization.types.ScalarType#setField(Object, Field, String)
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, String,
+	 *      String[], ScalarUnmarshallingContext)
 	 */
 	@Override
-	public boolean setField(Object object, Field field, String value)
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
+		if (!isPrimitive() || valueString == null || "null".equalsIgnoreCase(valueString))
+			return super.setField(context, accessor, valueString, format, scalarUnmarshallingContext);
+
 		boolean result = false;
 		try
 		{
-			field.setFloat(object, getValue(value));
+			accessor.setFloat(context, parse(valueString, 0, valueString.length()));
 			result = true;
 		}
 		catch (Exception e)
 		{
-			setFieldError(field, value, e);
+			setFieldError(accessor.getField(), valueString, e);
+		}
+		return result;
+	}
+
+	/**
+	 * This is a primitive type, so we parse the chars where they are, without making a String.
+	 * 
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, CharSequence,
+	 *      int, int, String[], ScalarUnmarshallingContext)
+	 */
+	@Override
+	public boolean setField(Object context, FieldAccessor accessor, CharSequence value, int start,
+			int end, String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
+	{
+		if (isNull(value, start, end))
+			return super.setField(context, accessor, value, start, end, format,
+					scalarUnmarshallingContext);
+
+		boolean result = false;
+		try
+		{
+			float parsed = parse(value, start, end);
+			if (isPrimitive())
+				accessor.setFloat(context, parsed);
+			else
+				accessor.set(context, Float.valueOf(parsed));
+			result = true;
+		}
+		catch (Exception e)
+		{
+			setFieldError(accessor.getField(), value.subSequence(start, end).toString(), e);
 		}
 		return result;
 	}
@@ -92,12 +140,15 @@ implements CrossLanguageTypeConstants
 	 * The string representation for a Field of this type
 	 */
 	@Override
-	public String toString(Field field, Object context)
+	public String toString(FieldAccessor accessor, Object context)
 	{
+		if (!isPrimitive())
+			return super.toString(accessor, context);
+
 		String result = "COULDN'T CONVERT!";
 		try
 		{
-			result = Float.toString(field.getFloat(context));
+			result = Float.toString(accessor.getFloat(context));
 		}
 		catch (Exception e)
 		{
@@ -142,10 +193,16 @@ implements CrossLanguageTypeConstants
 	 * @return
 	 */
 	@Override
-	public boolean isDefaultValue(Field field, Object context) throws IllegalArgumentException,
-			IllegalAccessException
+	public boolean isDefaultValue(FieldAccessor accessor, Object context)
 	{
-		return (Float) field.get(context) == DEFAULT_VALUE;
+		if (context == null)
+			return true;
+		if (!isPrimitive())
+		{
+			Float value = (Float) accessor.get(context);
+			return value == null || value == DEFAULT_VALUE;
+		}
+		return accessor.getFloat(context) == DEFAULT_VALUE;
 	}
 
 	/**
@@ -177,16 +234,97 @@ implements CrossLanguageTypeConstants
 	public void appendValue(Appendable buffy, FieldDescriptor fieldDescriptor, Object context, TranslationContext serializationContext, Format format)
 			throws IllegalArgumentException, IllegalAccessException, IOException
 	{
-		buffy.append(getValueToAppend(fieldDescriptor, context));
+		FieldAccessor accessor = fieldDescriptor.getAccessor();
+		if (accessor == null)
+		{
+			buffy.append("null");
+			return;
+		}
+		if (accessor.getField().getType() == float.class)
+		{
+			NumberCodec.append(buffy, accessor.getFloat(context));
+			return;
+		}
+		Float value = (Float) accessor.get(context);
+		if (value == null)
+			buffy.append("null");
+		else
+			NumberCodec.append(buffy, value.floatValue());
 	}
-	
-	public static String getValueToAppend(FieldDescriptor fieldDescriptor, Object context) 
-		throws IllegalArgumentException, IllegalAccessException
+
+	/**
+	 * Append a value, from a collection or map, without making a String of it.
+	 */
+	@Override
+	public void appendValue(Float instance, Appendable appendable, boolean needsEscaping,
+			TranslationContext serializationContext, Format format) throws IOException
 	{
-		String result	= getNullStringIfNull(fieldDescriptor, context);
-		if (result == null)
-			result			= fieldDescriptor.getField().get(context).toString();
-		return result;
+		NumberCodec.append(appendable, instance.floatValue());
+	}
+
+	public static String getValueToAppend(FieldDescriptor fieldDescriptor, Object context)
+			throws IllegalArgumentException, IllegalAccessException
+	{
+		FieldAccessor accessor = fieldDescriptor.getAccessor();
+		if (accessor == null)
+			return "null";
+		StringBuilder buffy = new StringBuilder();
+		if (accessor.getField().getType() == float.class)
+			NumberCodec.append(buffy, accessor.getFloat(context));
+		else
+		{
+			Float value = (Float) accessor.get(context);
+			if (value == null)
+				return "null";
+			NumberCodec.append(buffy, value.floatValue());
+		}
+		return buffy.toString();
+	}
+
+	/**
+	 * Written in BinaryFormat.TLV2 as 4 bytes, IEEE 754.
+	 */
+	@Override
+	public void writeBinary(Float instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
+	{
+		out.writeFloat(instance);
+	}
+
+	@Override
+	public Float readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return in.readFloat();
+	}
+
+	/**
+	 * This is a primitive type, so we write it without boxing it.
+	 */
+	@Override
+	public void writeBinary(DataOutput out, FieldAccessor accessor, Object context,
+			TranslationContext serializationContext) throws IOException
+	{
+		if (!isPrimitive())
+		{
+			super.writeBinary(out, accessor, context, serializationContext);
+			return;
+		}
+		out.writeFloat(accessor.getFloat(context));
 	}
 
+	/**
+	 * This is a primitive type, so we set it without boxing it.
+	 */
+	@Override
+	public boolean setFieldFromBinary(Object context, FieldAccessor accessor, DataInput in,
+			int length, String[] formatStrings, ScalarUnmarshallingContext scalarUnmarshallingContext)
+			throws IOException
+	{
+		if (!isPrimitive())
+			return super.setFieldFromBinary(context, accessor, in, length, formatStrings,
+					scalarUnmarshallingContext);
+		accessor.setFloat(context, in.readFloat());
+		return true;
+	}
 }
@@ -3,12 +3,15 @@
  */
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
-import java.lang.reflect.Field;
 
+import ecologylab.generic.text.NumberCodec;
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.accessors.FieldAccessor;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
@@ -69,23 +72,56 @@ public class IntType extends ScalarType<Integer> implements CrossLanguageTypeCon
 	/**
 	 * This is a primitive type, so we set it specially.
 	 * 
-	 * @see ecologylab.serialization.types.ScalarType#setField(Object, Field, String)
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, String,
+	 *      String[], ScalarUnmarshallingContext)
 	 */
 	@Override
-	public boolean setField(Object object, Field field, String value)
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
 	{
+		if (!isPrimitive() || valueString == null || "null".equalsIgnoreCase(valueString))
+			return super.setField(context, accessor, valueString, format, scalarUnmarshallingContext);
+
 		boolean result = false;
-		int converted = Integer.MIN_VALUE;
 		try
 		{
-			converted = getValue(value);
-			field.setInt(object, converted);
+			accessor.setInt(context, getValue(valueString));
 			result = true;
 		}
 		catch (Exception e)
 		{
-			error("Got " + e + " while setting field " + field + " to " + value + "->" + converted
-					+ " in " + object);
+			setFieldError(accessor.getField(), valueString, e);
+		}
+		return result;
+	}
+
+	/**
+	 * This is a primitive type, so we parse the chars where they are, without making a String.
+	 * 
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, CharSequence,
+	 *      int, int, String[], ScalarUnmarshallingContext)
+	 */
+	@Override
+	public boolean setField(Object context, FieldAccessor accessor, CharSequence value, int start,
+			int end, String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
+	{
+		if (isNull(value, start, end))
+			return super.setField(context, accessor, value, start, end, format,
+					scalarUnmarshallingContext);
+
+		boolean result = false;
+		try
+		{
+			int parsed = NumberCodec.parseInt(value, start, end);
+			if (isPrimitive())
+				accessor.setInt(context, parsed);
+			else
+				accessor.set(context, Integer.valueOf(parsed));
+			result = true;
+		}
+		catch (Exception e)
+		{
+			setFieldError(accessor.getField(), value.subSequence(start, end).toString(), e);
 		}
 		return result;
 	}
@@ -94,12 +130,15 @@ public class IntType extends ScalarType<Integer> implements CrossLanguageTypeCon
 	 * The string representation for a Field of this type
 	 */
 	@Override
-	public String toString(Field field, Object context)
+	public String toString(FieldAccessor accessor, Object context)
 	{
+		if (!isPrimitive())
+			return super.toString(accessor, context);
+
 		String result = "COULDN'T CONVERT!";
 		try
 		{
-			result = Integer.toString(field.getInt(context));
+			result = Integer.toString(accessor.getInt(context));
 		}
 		catch (Exception e)
 		{
@@ -132,10 +171,16 @@ public class IntType extends ScalarType<Integer> implements CrossLanguageTypeCon
 	 * @return
 	 */
 	@Override
-	public boolean isDefaultValue(Field field, Object context) throws IllegalArgumentException,
-			IllegalAccessException
+	public boolean isDefaultValue(FieldAccessor accessor, Object context)
 	{
-		return (context == null) || ((Integer) field.get(context) == null || (Integer) field.get(context) == DEFAULT_VALUE);
+		if (context == null)
+			return true;
+		if (!isPrimitive())
+		{
+			Integer value = (Integer) accessor.get(context);
+			return value == null || value == DEFAULT_VALUE;
+		}
+		return accessor.getInt(context) == DEFAULT_VALUE;
 	}
 
 	/**
@@ -168,18 +213,80 @@ public class IntType extends ScalarType<Integer> implements CrossLanguageTypeCon
 			TranslationContext serializationContext, Format format) throws IllegalArgumentException,
 			IllegalAccessException, IOException
 	{
-		buffy.append(getValueToAppend(fieldDescriptor, context));
+		FieldAccessor accessor = fieldDescriptor.getAccessor();
+		if (accessor != null && accessor.getField().getType() == int.class)
+			NumberCodec.append(buffy, accessor.getInt(context));
+		else
+			buffy.append(getValueToAppend(fieldDescriptor, context));
+	}
+
+	/**
+	 * Append a value, from a collection or map, without making a String of it.
+	 */
+	@Override
+	public void appendValue(Integer instance, Appendable appendable, boolean needsEscaping,
+			TranslationContext serializationContext, Format format) throws IOException
+	{
+		NumberCodec.append(appendable, instance.intValue());
 	}
 
 	public static String getValueToAppend(FieldDescriptor fieldDescriptor, Object context)
 			throws IllegalArgumentException, IllegalAccessException
 	{
-		String result	= getNullStringIfNull(fieldDescriptor, context);
-		if (result == null)
+		FieldAccessor accessor = fieldDescriptor.getAccessor();
+		if (accessor == null)
+			return "null";
+		if (accessor.getField().getType() == int.class)
+			return Integer.toString(accessor.getInt(context));
+
+		Object value = accessor.get(context);
+		return value == null ? "null" : value.toString();
+	}
+
+	/**
+	 * Written in BinaryFormat.TLV2 as a zigzag varint.
+	 */
+	@Override
+	public void writeBinary(Integer instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
+	{
+		writeVarInt(out, instance);
+	}
+
+	@Override
+	public Integer readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return readVarInt(in);
+	}
+
+	/**
+	 * This is a primitive type, so we write it without boxing it.
+	 */
+	@Override
+	public void writeBinary(DataOutput out, FieldAccessor accessor, Object context,
+			TranslationContext serializationContext) throws IOException
+	{
+		if (!isPrimitive())
 		{
-			result = fieldDescriptor.getField().get(context).toString();
+			super.writeBinary(out, accessor, context, serializationContext);
+			return;
 		}
-		return result;
+		writeVarInt(out, accessor.getInt(context));
 	}
 
+	/**
+	 * This is a primitive type, so we set it without boxing it.
+	 */
+	@Override
+	public boolean setFieldFromBinary(Object context, FieldAccessor accessor, DataInput in,
+			int length, String[] formatStrings, ScalarUnmarshallingContext scalarUnmarshallingContext)
+			throws IOException
+	{
+		if (!isPrimitive())
+			return super.setFieldFromBinary(context, accessor, in, length, formatStrings,
+					scalarUnmarshallingContext);
+		accessor.setInt(context, readVarInt(in));
+		return true;
+	}
 }
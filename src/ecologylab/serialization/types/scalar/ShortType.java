@@ -3,12 +3,16 @@
  */
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.lang.reflect.Field;
 
+import ecologylab.generic.text.NumberCodec;
 import ecologylab.serialization.FieldDescriptor;
 import ecologylab.serialization.ScalarUnmarshallingContext;
 import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.accessors.FieldAccessor;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.formatenums.Format;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
@@ -76,16 +80,71 @@ public class ShortType extends ScalarType<Short>
 		}
 		return result;
 	}
+
+	/**
+	 * This is a primitive type, so we set it specially.
+	 * 
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, String,
+	 *      String[], ScalarUnmarshallingContext)
+	 */
+	@Override
+	public boolean setField(Object context, FieldAccessor accessor, String valueString,
+			String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
+	{
+		if (valueString == null || "null".equalsIgnoreCase(valueString))
+			return super.setField(context, accessor, valueString, format, scalarUnmarshallingContext);
+
+		boolean result = false;
+		try
+		{
+			accessor.setShort(context, getValue(valueString));
+			result = true;
+		}
+		catch (Exception e)
+		{
+			setFieldError(accessor.getField(), valueString, e);
+		}
+		return result;
+	}
+
+	/**
+	 * This is a primitive type, so we parse the chars where they are, without making a String.
+	 * 
+	 * @see ecologylab.serialization.types.ScalarType#setField(Object, FieldAccessor, CharSequence,
+	 *      int, int, String[], ScalarUnmarshallingContext)
+	 */
+	@Override
+	public boolean setField(Object context, FieldAccessor accessor, CharSequence value, int start,
+			int end, String[] format, ScalarUnmarshallingContext scalarUnmarshallingContext)
+	{
+		if (isNull(value, start, end))
+			return super.setField(context, accessor, value, start, end, format,
+					scalarUnmarshallingContext);
+
+		boolean result = false;
+		try
+		{
+			accessor.setShort(context, (short) NumberCodec.parseLong(value, start, end,
+					Short.MIN_VALUE, Short.MAX_VALUE));
+			result = true;
+		}
+		catch (Exception e)
+		{
+			setFieldError(accessor.getField(), value.subSequence(start, end).toString(), e);
+		}
+		return result;
+	}
+
 /**
  * The string representation for a Field of this type
  */
 	@Override
-	public String toString(Field field, Object context)
+	public String toString(FieldAccessor accessor, Object context)
 	{
 	   String result	= "COULDN'T CONVERT!";
 	   try
 	   {
-		  result		= Short.toString(field.getShort(context));
+		  result		= Short.toString(accessor.getShort(context));
 	   } catch (Exception e)
 	   {
 		  e.printStackTrace();
@@ -111,10 +170,9 @@ public class ShortType extends ScalarType<Short>
 	 * @param field
 	 * @return
 	 */
-    @Override public boolean isDefaultValue(Field field, Object context) 
-    throws IllegalArgumentException, IllegalAccessException
+    @Override public boolean isDefaultValue(FieldAccessor accessor, Object context)
     {
-    	return field.getShort(context) == DEFAULT_VALUE;
+    	return accessor.getShort(context) == DEFAULT_VALUE;
     }
 
     /**
@@ -131,7 +189,7 @@ public class ShortType extends ScalarType<Short>
     public void appendValue(StringBuilder buffy, FieldDescriptor f2xo, Object context) 
     throws IllegalArgumentException, IllegalAccessException
     {
-        short value = f2xo.getField().getShort(context);
+        short value = f2xo.getAccessor().getShort(context);
            
 		buffy.append(value);
     }
@@ -149,9 +207,47 @@ public class ShortType extends ScalarType<Short>
     public void appendValue(Appendable buffy, FieldDescriptor fieldDescriptor, Object context, TranslationContext serializationContext, Format format) 
     throws IllegalArgumentException, IllegalAccessException, IOException
     {
-        short value = fieldDescriptor.getField().getShort(context);
+        short value = fieldDescriptor.getAccessor().getShort(context);
            
-		buffy.append(Short.toString(value));
+		NumberCodec.append(buffy, value);
     }
 
+	/**
+	 * Written in BinaryFormat.TLV2 as a zigzag varint.
+	 */
+	@Override
+	public void writeBinary(Short instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
+	{
+		writeVarInt(out, instance);
+	}
+
+	@Override
+	public Short readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return (short) readVarInt(in);
+	}
+
+	/**
+	 * This is a primitive type, so we write it without boxing it.
+	 */
+	@Override
+	public void writeBinary(DataOutput out, FieldAccessor accessor, Object context,
+			TranslationContext serializationContext) throws IOException
+	{
+		writeVarInt(out, accessor.getShort(context));
+	}
+
+	/**
+	 * This is a primitive type, so we set it without boxing it.
+	 */
+	@Override
+	public boolean setFieldFromBinary(Object context, FieldAccessor accessor, DataInput in,
+			int length, String[] formatStrings, ScalarUnmarshallingContext scalarUnmarshallingContext)
+			throws IOException
+	{
+		accessor.setShort(context, (short) readVarInt(in));
+		return true;
+	}
 }
@@ -1,8 +1,12 @@
 package ecologylab.serialization.types.scalar;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.UUID;
 
 import ecologylab.serialization.ScalarUnmarshallingContext;
+import ecologylab.serialization.TranslationContext;
 import ecologylab.serialization.annotations.simpl_inherit;
 import ecologylab.serialization.types.CrossLanguageTypeConstants;
 import ecologylab.serialization.types.ScalarType;
@@ -29,4 +33,22 @@ implements CrossLanguageTypeConstants
 		return UUID.fromString(value);
 	}
 
+	/**
+	 * Written in BinaryFormat.TLV2 as 16 bytes, most significant first.
+	 */
+	@Override
+	public void writeBinary(UUID instance, DataOutput out, TranslationContext serializationContext)
+			throws IOException
+	{
+		out.writeLong(instance.getMostSignificantBits());
+		out.writeLong(instance.getLeastSignificantBits());
+	}
+
+	@Override
+	public UUID readBinary(DataInput in, int length, String[] formatStrings,
+			ScalarUnmarshallingContext scalarUnmarshallingContext) throws IOException
+	{
+		return new UUID(in.readLong(), in.readLong());
+	}
+
 }
@@ -0,0 +1,73 @@
+package ecologylab.generic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import ecologylab.generic.TimingWheel.Timeout;
+
+public class TimingWheelTest
+{
+	static final long	TICK	= 1000;
+
+	@Test
+	public void itemsTimeOutOnceIdleForTheirTimeout()
+	{
+		TimingWheel<String> wheel = new TimingWheel<String>(TICK, 8);
+		Timeout<String> a = wheel.schedule("a", 3 * TICK);
+		wheel.schedule("b", 5 * TICK);
+		long start = wheel.now();
+
+		assertTrue(wheel.expire(start + 3 * TICK - 1).isEmpty());
+		// due a tick after its timeout, and taken out at the next tick after that
+		assertEquals(Arrays.asList("a"), wheel.expire(start + 5 * TICK));
+		assertFalse(a.cancel());
+		assertEquals(1, wheel.size());
+
+		// past a whole turn of the wheel
+		assertEquals(Arrays.asList("b"), wheel.expire(start + 100 * TICK));
+		assertEquals(0, wheel.size());
+		assertEquals(0, wheel.timeUntilNextTick(start + 100 * TICK));
+	}
+
+	@Test
+	public void touchedItemsAreMovedOn()
+	{
+		TimingWheel<String> wheel = new TimingWheel<String>(TICK, 4);
+		Timeout<String> a = wheel.schedule("a", 3 * TICK);
+		Timeout<String> b = wheel.schedule("b", 3 * TICK);
+		Timeout<String> c = wheel.schedule("c", 3 * TICK);
+		long start = wheel.now();
+
+		assertTrue(wheel.expire(start + 2 * TICK).isEmpty());
+		assertEquals(start + 2 * TICK, wheel.now());
+		a.touch();
+		assertTrue(c.cancel());
+
+		assertEquals(Arrays.asList("b"), wheel.expire(start + 5 * TICK));
+		assertTrue(wheel.expire(start + 6 * TICK - 1).isEmpty());
+		assertEquals(Arrays.asList("a"), wheel.expire(start + 7 * TICK));
+		assertFalse(b.cancel());
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void longTimeoutsGoRoundTheWheel()
+	{
+		TimingWheel<Integer> wheel = new TimingWheel<Integer>(TICK, 4);
+		for (int i = 1; i <= 10; i++)
+			wheel.schedule(i, i * 10 * TICK);
+		long start = wheel.now();
+
+		HashSet<Integer> expired = new HashSet<Integer>();
+		for (long t = start; t <= start + 56 * TICK; t += TICK)
+			expired.addAll(wheel.expire(t));
+		assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3, 4, 5)), expired);
+		assertEquals(5, wheel.size());
+	}
+}
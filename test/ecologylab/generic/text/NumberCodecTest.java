@@ -0,0 +1,201 @@
+package ecologylab.generic.text;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class NumberCodecTest
+{
+	private static String format(double value)
+	{
+		StringBuilder buffy = new StringBuilder();
+		NumberCodec.append(buffy, value);
+		return buffy.toString();
+	}
+
+	private static String format(float value)
+	{
+		StringBuilder buffy = new StringBuilder();
+		NumberCodec.append(buffy, value);
+		return buffy.toString();
+	}
+
+	/**
+	 * @return How many significant digits the mantissa of a toString() has.
+	 */
+	private static int digits(String string)
+	{
+		int end = string.indexOf('E');
+		String mantissa = (end < 0 ? string : string.substring(0, end)).replace("-", "").replace(".",
+				"");
+		return Math.max(1, mantissa.replaceAll("^0+", "").replaceAll("0+$", "").length());
+	}
+
+	@Test
+	public void doublesLikeToString()
+	{
+		double[] values = { 0, -0.0, 1, -1, 0.1, 0.001, 9.999e-4, 1e7, 9999999, 1e-5, 123456789,
+				Double.MAX_VALUE, Double.MIN_NORMAL, 4.35, 100, 1e21, Double.NaN,
+				Double.NEGATIVE_INFINITY };
+		for (double value : values)
+			assertEquals(Double.toString(value), format(value));
+		assertEquals("2.82879384806159E17", format(2.82879384806159008E17));
+	}
+
+	@Test
+	public void shortestDigitsReadBack()
+	{
+		Random random = new Random(7);
+		for (int i = 0; i < 200000; i++)
+		{
+			double value = Double.longBitsToDouble(random.nextLong());
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				continue;
+			String string = format(value);
+			assertEquals(string, value, Double.parseDouble(string), 0);
+			assertTrue(string, digits(string) <= digits(Double.toString(value)));
+
+			float single = Float.intBitsToFloat(random.nextInt());
+			if (Float.isNaN(single) || Float.isInfinite(single))
+				continue;
+			string = format(single);
+			assertEquals(string, single, Float.parseFloat(string), 0);
+			assertTrue(string, digits(string) <= digits(Float.toString(single)));
+		}
+	}
+
+	@Test
+	public void integersIntoAnyAppendable() throws IOException
+	{
+		long[] values = { 0, 7, -7, Long.MAX_VALUE, Long.MIN_VALUE, 999999999999999999L,
+				Integer.MIN_VALUE };
+		StringWriter writer = new StringWriter();
+		StringBuilder expected = new StringBuilder();
+		for (long value : values)
+		{
+			NumberCodec.append(writer, value);
+			writer.append(' ');
+			expected.append(value).append(' ');
+		}
+		assertEquals(expected.toString(), writer.toString());
+	}
+
+	@Test
+	public void parseRegions()
+	{
+		String text = "<a>-2147483648</a><b>1.5e-3</b><c>3.4028235E38</c><d>0x1p3</d>";
+		assertEquals(Integer.MIN_VALUE, NumberCodec.parseInt(text, 3, 14));
+		assertEquals(-2147483648L, NumberCodec.parseLong(text, 3, 14));
+		assertEquals(1.5e-3, NumberCodec.parseDouble(text, 21, 27), 0);
+		assertEquals(Float.MAX_VALUE, NumberCodec.parseFloat(text, 34, 46), 0);
+		assertEquals(8.0, NumberCodec.parseDouble(text, 53, 58), 0);
+
+		String[] decimals = { "0", "-0", "+2", ".5", "5.", "1e22", "1e23", "9007199254740993",
+				"0.000001", "4.9e-324", " 7 ", "NaN", "1234567890123456789012" };
+		for (String decimal : decimals)
+		{
+			assertEquals(decimal, Double.doubleToLongBits(Double.parseDouble(decimal)),
+					Double.doubleToLongBits(NumberCodec.parseDouble(decimal, 0, decimal.length())));
+			assertEquals(decimal, Float.floatToIntBits(Float.parseFloat(decimal)),
+					Float.floatToIntBits(NumberCodec.parseFloat(decimal, 0, decimal.length())));
+		}
+
+		String[] malformed = { "", "-", "2147483648", "1a", " 1", "1.0" };
+		for (String integer : malformed)
+		{
+			try
+			{
+				NumberCodec.parseInt(integer, 0, integer.length());
+				fail("parsed " + integer);
+			}
+			catch (NumberFormatException e)
+			{
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void compiledFormatsMatchEfficientDecimalFormat() throws IOException
+	{
+		String[] patterns = { "#", "#.#", "#.0#", "#.###", "0.000", "#,##0.00", "#.", ".##", "0.0E0",
+				"#%" };
+		double[] values = { 0, -0.0, 0.5, 1.5, 2.5, -0.04, 0.05, 0.15, 1234567.891, 1e20, 1e-20,
+				0.0009, 999.9999, 0.995, Double.NaN, -1e300 };
+		Random random = new Random(3);
+		for (String pattern : patterns)
+		{
+			CompiledDecimalFormat compiled = CompiledDecimalFormat.compile(pattern);
+			EfficientDecimalFormat efficient = new EfficientDecimalFormat(pattern);
+			for (int i = 0; i < values.length + 10000; i++)
+			{
+				double value = i < values.length ? values[i] : random.nextGaussian()
+						* Math.pow(10, random.nextInt(12) - 6);
+				StringBuilder expected = new StringBuilder();
+				efficient.format(value, expected);
+				StringBuilder actual = new StringBuilder();
+				compiled.format(value, actual);
+				assertEquals(pattern + " " + value, expected.toString(), actual.toString());
+			}
+		}
+	}
+
+	@Test
+	public void compiledFormatsAreThreadSafe() throws Exception
+	{
+		final CompiledDecimalFormat format = CompiledDecimalFormat.compile("#,##0.###");
+		final double[] values = new double[10000];
+		final String[] expected = new String[values.length];
+		Random random = new Random(11);
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = random.nextDouble() * Math.pow(10, random.nextInt(10));
+			StringBuilder buffy = new StringBuilder();
+			format.format(values[i], buffy);
+			expected[i] = buffy.toString();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try
+		{
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < 8; t++)
+				results.add(executor.submit(new Callable<Integer>()
+				{
+					@Override
+					public Integer call() throws IOException
+					{
+						int mismatches = 0;
+						StringBuilder buffy = new StringBuilder();
+						for (int round = 0; round < 10; round++)
+							for (int i = 0; i < values.length; i++)
+							{
+								buffy.setLength(0);
+								format.format(values[i], buffy);
+								if (!expected[i].contentEquals(buffy))
+									mismatches++;
+							}
+						return mismatches;
+					}
+				}));
+			for (Future<Integer> result : results)
+				assertEquals(0, result.get().intValue());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+}
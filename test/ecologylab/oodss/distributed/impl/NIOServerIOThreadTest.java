@@ -0,0 +1,260 @@
+package ecologylab.oodss.distributed.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ecologylab.collections.Scope;
+import ecologylab.oodss.distributed.server.DoubleThreadedNIOServer;
+import ecologylab.oodss.messages.DefaultServicesTranslations;
+
+/**
+ * Connects plain sockets to a server whose connections are spread across I/O threads, and keeps
+ * track of made up connections, by address, from several threads at once.
+ */
+public class NIOServerIOThreadTest
+{
+	static final int								IO_THREADS			= 3;
+
+	static final int								MAX_CONNECTIONS	= 7;
+
+	static final long								WAIT						= 5000;
+
+	DoubleThreadedNIOServer					server;
+
+	NIOServerIOThread								backend;
+
+	final List<Socket>							sockets					= new ArrayList<Socket>();
+
+	@Before
+	public void start() throws IOException
+	{
+		ServerSocket free = new ServerSocket(0);
+		int port = free.getLocalPort();
+		free.close();
+
+		server = DoubleThreadedNIOServer.getInstance(port, InetAddress.getByName("127.0.0.1"),
+				DefaultServicesTranslations.get(), new Scope<Object>(), -1, 10000);
+		backend = server.getBackend();
+		backend.setIOThreads(IO_THREADS);
+		backend.setMaxConnections(MAX_CONNECTIONS);
+		server.start();
+	}
+
+	@After
+	public void stop() throws IOException
+	{
+		for (Socket socket : sockets)
+			socket.close();
+		server.stop();
+	}
+
+	@Test
+	public void connectionsAreSpreadAcrossIOThreadsUpToTheCap() throws Exception
+	{
+		assertEquals(IO_THREADS, backend.getIOThreads());
+
+		for (int i = 0; i < MAX_CONNECTIONS + 1; i++)
+			sockets.add(connect());
+
+		waitForConnections(MAX_CONNECTIONS);
+		int[] counts = backend.getIOThreadChannelCounts();
+		int total = 0;
+		for (int count : counts)
+		{
+			assertTrue(count + " of " + MAX_CONNECTIONS, count == MAX_CONNECTIONS / IO_THREADS
+					|| count == MAX_CONNECTIONS / IO_THREADS + 1);
+			total += count;
+		}
+		assertEquals(MAX_CONNECTIONS, total);
+
+		// the one over the cap is closed by the server
+		assertEquals(-1, sockets.get(MAX_CONNECTIONS).getInputStream().read());
+		assertEquals(MAX_CONNECTIONS, backend.getConnectionCount());
+
+		for (Socket socket : sockets)
+			socket.close();
+		waitForConnections(0);
+		assertArrayEquals(new int[IO_THREADS], backend.getIOThreadChannelCounts());
+
+		// room again, once they have gone
+		sockets.add(connect());
+		waitForConnections(1);
+	}
+
+	@Test
+	public void registrationsForANewAddressShareOneMap() throws Exception
+	{
+		final int threads = 8;
+		for (int round = 0; round < 50; round++)
+		{
+			final String address = "10.0." + round + ".1";
+			final CyclicBarrier start = new CyclicBarrier(threads);
+			final AtomicInteger firsts = new AtomicInteger();
+			runAll(threads, new Body()
+			{
+				@Override
+				public void run(int thread) throws Exception
+				{
+					start.await();
+					if (backend.addKeyForAddress(address, "token " + thread, null))
+						firsts.incrementAndGet();
+				}
+			});
+
+			assertEquals(threads, tokensFor(address).size());
+			assertEquals(1, firsts.get());
+		}
+	}
+
+	@Test
+	public void registrationsAreNotLostToMapsTakenOutMeanwhile() throws Exception
+	{
+		final String address = "10.1.0.1";
+		final int threads = 4;
+		runAll(threads, new Body()
+		{
+			@Override
+			public void run(int thread) throws Exception
+			{
+				// the map empties, and is taken out, whenever every thread has just removed its key
+				for (int i = 0; i < 20000; i++)
+				{
+					String token = "token " + thread + " " + i;
+					backend.addKeyForAddress(address, token, null);
+					backend.removeKeyForAddress(address, token);
+				}
+				backend.addKeyForAddress(address, "last " + thread, null);
+			}
+		});
+
+		assertEquals(new HashSet<String>(Arrays.asList("last 0", "last 1", "last 2", "last 3")),
+				tokensFor(address));
+
+		for (int thread = 0; thread < threads; thread++)
+			backend.removeKeyForAddress(address, "last " + thread);
+		assertNull(backend.keysForAddress(address));
+	}
+
+	@Test
+	public void aRegistrationStartsAgainWhenItsMapIsTakenOut() throws Exception
+	{
+		final String address = "10.2.0.1";
+		backend.addKeyForAddress(address, "old", null);
+		Map<String, SelectionKey> oldKeys = backend.keysForAddress(address);
+
+		Thread adder;
+		synchronized (oldKeys)
+		{
+			adder = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					backend.addKeyForAddress(address, "new", null);
+				}
+			};
+			adder.start();
+			// it has found oldKeys, and waits for its lock
+			long giveUp = System.currentTimeMillis() + WAIT;
+			while (adder.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < giveUp)
+				Thread.sleep(1);
+			assertEquals(Thread.State.BLOCKED, adder.getState());
+
+			backend.removeKeyForAddress(address, "old");
+			assertNull(backend.keysForAddress(address));
+		}
+		adder.join(WAIT);
+		assertFalse(adder.isAlive());
+
+		assertNotSame(oldKeys, backend.keysForAddress(address));
+		assertTrue(oldKeys.isEmpty());
+		assertEquals(Collections.singleton("new"), tokensFor(address));
+	}
+
+	interface Body
+	{
+		void run(int thread) throws Exception;
+	}
+
+	/**
+	 * Run body in each of threads threads, and wait for them to finish.
+	 */
+	static void runAll(int threads, final Body body) throws Exception
+	{
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread[] running = new Thread[threads];
+		for (int i = 0; i < threads; i++)
+		{
+			final int thread = i;
+			running[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						body.run(thread);
+					}
+					catch (Throwable e)
+					{
+						failures.add(e);
+					}
+				}
+			};
+			running[i].start();
+		}
+		for (Thread thread : running)
+			thread.join();
+		if (!failures.isEmpty())
+			throw new AssertionError(failures.get(0));
+	}
+
+	Set<String> tokensFor(String address)
+	{
+		Map<String, SelectionKey> keys = backend.keysForAddress(address);
+		synchronized (keys)
+		{
+			return new HashSet<String>(keys.keySet());
+		}
+	}
+
+	Socket connect() throws IOException
+	{
+		Socket socket = new Socket();
+		socket.connect(new InetSocketAddress("127.0.0.1", backend.getPortNumber()), (int) WAIT);
+		socket.setSoTimeout((int) WAIT);
+		return socket;
+	}
+
+	void waitForConnections(int expected) throws InterruptedException
+	{
+		long giveUp = System.currentTimeMillis() + WAIT;
+		while (backend.getConnectionCount() != expected && System.currentTimeMillis() < giveUp)
+			Thread.sleep(10);
+		assertEquals(expected, backend.getConnectionCount());
+	}
+}
@@ -0,0 +1,117 @@
+package ecologylab.oodss.distributed.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+import org.junit.Test;
+
+import ecologylab.io.ByteBufferPool;
+
+public class OutboundQueueTest
+{
+	/**
+	 * Takes at most room bytes before it is "full", like a socket in non-blocking mode.
+	 */
+	static class SlowChannel implements GatheringByteChannel
+	{
+		final ByteArrayOutputStream	written	= new ByteArrayOutputStream();
+
+		int													room;
+
+		int													writes;
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length)
+		{
+			writes++;
+			long total = 0;
+			for (int i = offset; i < offset + length; i++)
+				while (srcs[i].hasRemaining() && room > 0)
+				{
+					written.write(srcs[i].get());
+					room--;
+					total++;
+				}
+			return total;
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs)
+		{
+			return write(srcs, 0, srcs.length);
+		}
+
+		@Override
+		public int write(ByteBuffer src)
+		{
+			return (int) write(new ByteBuffer[] { src });
+		}
+
+		@Override
+		public boolean isOpen()
+		{
+			return true;
+		}
+
+		@Override
+		public void close()
+		{
+		}
+	}
+
+	static ByteBuffer bytes(String text)
+	{
+		return ByteBuffer.wrap(text.getBytes());
+	}
+
+	@Test
+	public void whatDoesNotFitStaysQueued() throws Exception
+	{
+		ByteBufferPool pool = new ByteBufferPool(1, 1, 16);
+		OutboundQueue queue = new OutboundQueue();
+		SlowChannel channel = new SlowChannel();
+		queue.offer(bytes("abc"), 8);
+		queue.offer(bytes("defg"), 8);
+		queue.offer(bytes("hi"), 8);
+		assertTrue(queue.isBackedUp());
+
+		channel.room = 5;
+		assertFalse(queue.write(channel, pool, 2));
+		assertEquals(1, channel.writes);
+		assertEquals("abcde", channel.written.toString());
+		assertEquals(4, queue.queuedBytes());
+		assertTrue(queue.isBackedUp());
+
+		channel.room = 100;
+		assertTrue(queue.write(channel, pool, 2));
+		assertEquals("abcdefghi", channel.written.toString());
+		assertTrue(queue.isEmpty());
+		assertFalse(queue.isBackedUp());
+		assertEquals(0, queue.queuedBytes());
+	}
+
+	@Test
+	public void buffersAreGatheredInBatches() throws Exception
+	{
+		ByteBufferPool pool = new ByteBufferPool(1, 1, 16);
+		OutboundQueue queue = new OutboundQueue();
+		SlowChannel channel = new SlowChannel();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < OutboundQueue.MAX_GATHER * 2 + 1; i++)
+		{
+			queue.offer(bytes("x" + i), 1 << 20);
+			expected.append("x").append(i);
+		}
+
+		channel.room = 1 << 20;
+		assertFalse(queue.write(channel, pool, 0));
+		assertEquals(3, channel.writes);
+		assertEquals(expected.toString(), channel.written.toString());
+		assertTrue(queue.isEmpty());
+	}
+}
@@ -0,0 +1,227 @@
+package ecologylab.oodss.distributed.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ecologylab.collections.Scope;
+import ecologylab.oodss.distributed.client.NIOClient;
+import ecologylab.oodss.messages.DefaultServicesTranslations;
+import ecologylab.oodss.messages.OkResponse;
+import ecologylab.oodss.messages.RequestMessage;
+import ecologylab.oodss.messages.ResponseMessage;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.annotations.simpl_inherit;
+import ecologylab.serialization.annotations.simpl_scalar;
+
+/**
+ * Sends requests from one client, to a server that performs them with an executor of several
+ * threads, and looks at the order in which they were performed.
+ */
+public class DoubleThreadedNIOServerTest
+{
+	static final int								TIMEOUT		= 10000;
+
+	static final List<String>				events		= Collections.synchronizedList(new ArrayList<String>());
+
+	/**
+	 * When set, each Lookup waits until this many have started, and records whether they all did.
+	 */
+	static volatile CountDownLatch	arrivals;
+
+	/**
+	 * Records when it starts and ends.
+	 */
+	@simpl_inherit
+	public static class Step extends RequestMessage
+	{
+		@simpl_scalar
+		String	name;
+
+		@simpl_scalar
+		int			millis;
+
+		public Step()
+		{
+		}
+
+		Step(String name, int millis)
+		{
+			this.name = name;
+			this.millis = millis;
+		}
+
+		@Override
+		public ResponseMessage performService(Scope clientSessionScope)
+		{
+			events.add("start " + name);
+			try
+			{
+				Thread.sleep(millis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			events.add("end " + name);
+			return OkResponse.get();
+		}
+	}
+
+	@simpl_inherit
+	public static class Lookup extends Step
+	{
+		public Lookup()
+		{
+		}
+
+		Lookup(String name, int millis)
+		{
+			super(name, millis);
+		}
+
+		@Override
+		public boolean isStateless()
+		{
+			return true;
+		}
+
+		@Override
+		public ResponseMessage performService(Scope clientSessionScope)
+		{
+			CountDownLatch arrivals = DoubleThreadedNIOServerTest.arrivals;
+			if (arrivals == null)
+				return super.performService(clientSessionScope);
+
+			arrivals.countDown();
+			try
+			{
+				events.add("all arrived " + arrivals.await(TIMEOUT, TimeUnit.MILLISECONDS));
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return OkResponse.get();
+		}
+	}
+
+	ExecutorService									pool;
+
+	DoubleThreadedNIOServer					server;
+
+	NIOClient<Scope<Object>>				client;
+
+	@Before
+	public void start() throws IOException
+	{
+		events.clear();
+		arrivals = null;
+
+		ServerSocket free = new ServerSocket(0);
+		int port = free.getLocalPort();
+		free.close();
+
+		SimplTypesScope translations = SimplTypesScope.get("double_threaded_nio_server_test",
+				DefaultServicesTranslations.get(), Step.class, Lookup.class);
+		server = DoubleThreadedNIOServer.getInstance(port, InetAddress.getByName("127.0.0.1"),
+				translations, new Scope<Object>(), -1, 10000);
+		pool = Executors.newFixedThreadPool(4);
+		server.setRequestExecutor(pool);
+		server.start();
+
+		client = new NIOClient<Scope<Object>>("127.0.0.1", port, translations, new Scope<Object>());
+		assertTrue(client.connect(TIMEOUT));
+	}
+
+	@After
+	public void stop()
+	{
+		client.disconnect();
+		server.stop();
+		pool.shutdownNow();
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void requestsArePerformedOneAtATimeInOrder() throws Exception
+	{
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 10; i++)
+		{
+			client.nonBlockingSendMessage(new Step("" + i, 5));
+			expected.add("start " + i);
+			expected.add("end " + i);
+		}
+		client.sendMessage(new Step("last", 0));
+		expected.add("start last");
+		expected.add("end last");
+
+		assertEquals(expected, events);
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void statelessRequestsArePerformedAtOnce() throws Exception
+	{
+		arrivals = new CountDownLatch(3);
+		for (int i = 0; i < 3; i++)
+			client.nonBlockingSendMessage(new Lookup("lookup " + i, 0));
+		client.sendMessage(new Step("after", 0));
+
+		assertEquals(Arrays.asList("all arrived true", "all arrived true", "all arrived true",
+				"start after", "end after"), events);
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void requestsAfterStatelessOnesWaitForThem() throws Exception
+	{
+		client.nonBlockingSendMessage(new Lookup("first lookup", 100));
+		client.nonBlockingSendMessage(new Step("deferred", 0));
+		client.nonBlockingSendMessage(new Lookup("second lookup", 100));
+		client.sendMessage(new Step("last", 0));
+
+		assertEquals(Arrays.asList("start first lookup", "end first lookup", "start deferred",
+				"end deferred", "start second lookup", "end second lookup", "start last", "end last"),
+				events);
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void rejectedSessionsAreScheduledAgain() throws Exception
+	{
+		final AtomicBoolean rejected = new AtomicBoolean();
+		server.setRequestExecutor(new Executor()
+		{
+			@Override
+			public void execute(Runnable task)
+			{
+				if (rejected.compareAndSet(false, true))
+					throw new RejectedExecutionException("full");
+				pool.execute(task);
+			}
+		});
+
+		client.nonBlockingSendMessage(new Step("rejected", 0));
+		while (!rejected.get())
+			Thread.sleep(10);
+		client.sendMessage(new Step("next", 0));
+
+		assertEquals(Arrays.asList("start rejected", "end rejected", "start next", "end next"), events);
+	}
+}
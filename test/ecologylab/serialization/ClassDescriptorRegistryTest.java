@@ -0,0 +1,104 @@
+package ecologylab.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_composite;
+import ecologylab.serialization.annotations.simpl_inherit;
+import ecologylab.serialization.annotations.simpl_scalar;
+
+public class ClassDescriptorRegistryTest
+{
+
+	public static class Node
+	{
+		@simpl_scalar
+		String					name;
+
+		@simpl_composite
+		Node						parent;
+
+		@simpl_collection("leaf")
+		ArrayList<Leaf>	leaves;
+	}
+
+	@simpl_inherit
+	public static class SpecialNode extends Node
+	{
+		@simpl_scalar
+		int	weight;
+	}
+
+	public static class Leaf
+	{
+		@simpl_scalar
+		String	value;
+	}
+
+	@Test
+	public void concurrentLookupsAgreeOnOneDescriptor() throws Exception
+	{
+		final int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<ClassDescriptor<?>>> results = new ArrayList<Future<ClassDescriptor<?>>>();
+			for (int i = 0; i < threads; i++)
+				results.add(executor.submit(new Callable<ClassDescriptor<?>>()
+				{
+					@Override
+					public ClassDescriptor<?> call() throws Exception
+					{
+						start.await();
+						return ClassDescriptor.getClassDescriptor(SpecialNode.class);
+					}
+				}));
+			start.countDown();
+
+			ClassDescriptor<?> first = results.get(0).get();
+			for (Future<ClassDescriptor<?>> result : results)
+				assertSame(first, result.get());
+			assertSame(first, ClassDescriptor.getClassDescriptor(SpecialNode.class));
+			assertEquals(4, first.allFieldDescriptors().size());
+			assertNotNull(first.getFieldDescriptorByFieldName("parent"));
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void prewarmDerivesReachableDescriptors()
+	{
+		SimplTypesScope scope = SimplTypesScope.get("class_descriptor_registry_test", Node.class);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try
+		{
+			scope.prewarm(executor);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+		scope.prewarm();
+
+		ClassDescriptor<?> leaf = ClassDescriptor.getClassDescriptor(Leaf.class);
+		assertSame(leaf, ClassDescriptor.getClassDescriptor(Node.class)
+				.getFieldDescriptorByFieldName("leaves").getElementClassDescriptor());
+		assertNotNull(leaf.pseudoFieldDescriptor());
+	}
+}
@@ -0,0 +1,145 @@
+package ecologylab.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import ecologylab.serialization.annotations.simpl_inherit;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.Format;
+
+public class ElementStateDeltaTest
+{
+	@simpl_inherit
+	@simpl_tag("score")
+	public static class Score extends ObservableElementState
+	{
+		@simpl_scalar
+		String	team;
+
+		@simpl_scalar
+		int			points;
+
+		@simpl_scalar
+		String	note;
+
+		void setTeam(String team)
+		{
+			this.team = team;
+			fieldChanged("team");
+		}
+
+		void setPoints(int points)
+		{
+			this.points = points;
+			fieldChanged("points");
+		}
+
+		void setNote(String note)
+		{
+			this.note = note;
+			fieldChanged("note");
+		}
+	}
+
+	static SimplTypesScope scope()
+	{
+		SimplTypesScope.get(ElementStateDelta.STATE_TYPES_SCOPE, Score.class);
+		return SimplTypesScope.get("element_state_delta_test", ElementStateDelta.class, Score.class);
+	}
+
+	static ElementStateDelta send(ElementStateDelta delta, Format format)
+			throws SIMPLTranslationException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SimplTypesScope.serialize(delta, bytes, format);
+		return (ElementStateDelta) scope().deserialize(new ByteArrayInputStream(bytes.toByteArray()),
+				format);
+	}
+
+	@Test
+	public void onlyChangedFieldsAreSent() throws SIMPLTranslationException
+	{
+		for (Format format : new Format[] { Format.XML, Format.JSON, Format.TLV })
+		{
+			Score score = new Score();
+			score.setTeam("red");
+			score.setPoints(3);
+			Score replica = new Score();
+			assertTrue(send(score.takeDelta(), format).applyTo(replica));
+			assertEquals("red", replica.team);
+			assertEquals(3, replica.points);
+			assertEquals(1, replica.getVersion());
+
+			score.setPoints(4);
+			score.note = "not sent";
+			ElementStateDelta delta = score.takeDelta();
+			assertEquals(1, delta.fields.size());
+			assertNull(delta.cleared);
+			replica.team = "kept";
+			assertTrue(send(delta, format).applyTo(replica));
+			assertEquals("kept", replica.team);
+			assertEquals(4, replica.points);
+			assertNull(replica.note);
+			assertEquals(2, replica.getVersion());
+		}
+	}
+
+	@Test
+	public void fieldsChangedToDefaultsAreCleared() throws SIMPLTranslationException
+	{
+		Score score = new Score();
+		score.setTeam("red");
+		score.setPoints(3);
+		Score replica = new Score();
+		score.takeDelta().applyTo(replica);
+
+		score.setTeam(null);
+		score.setPoints(0);
+		ElementStateDelta delta = send(score.takeDelta(), Format.XML);
+		assertNull(delta.fields);
+		assertTrue(delta.applyTo(replica));
+		assertNull(replica.team);
+		assertEquals(0, replica.points);
+	}
+
+	@Test
+	public void missedDeltasAreRejectedUntilASnapshot() throws SIMPLTranslationException
+	{
+		Score score = new Score();
+		score.setPoints(1);
+		score.takeDelta();
+		score.setPoints(2);
+		Score replica = new Score();
+		ElementStateDelta delta = score.takeDelta();
+		assertFalse(delta.applyTo(replica));
+		assertEquals(0, replica.points);
+
+		final Object[] updated = new Object[1];
+		replica.addObserver(new ElementObserver()
+		{
+			@Override
+			public void update(ObservableElementState o, Object arg)
+			{
+				updated[0] = arg;
+			}
+		});
+		ElementStateDelta snapshot = send(score.snapshot(), Format.JSON);
+		assertTrue(snapshot.applyTo(replica));
+		assertSame(snapshot, updated[0]);
+		assertEquals(2, replica.points);
+		assertFalse(delta.isEmpty());
+
+		score.setPoints(5);
+		assertTrue(send(score.takeDelta(), Format.TLV).applyTo(replica));
+		assertEquals(5, replica.points);
+	}
+}
@@ -0,0 +1,104 @@
+package ecologylab.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_composite;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.StringFormat;
+
+public class ElementStatePoolTest
+{
+	@simpl_tag("request")
+	public static class Request extends ElementState
+	{
+		@simpl_scalar
+		String					name;
+
+		@simpl_collection("part")
+		ArrayList<Part>	parts;
+
+		@simpl_composite
+		Holder					holder;
+	}
+
+	/**
+	 * Not public, and without a constructor of its own.
+	 */
+	@simpl_tag("holder")
+	static class Holder extends ElementState
+	{
+		@simpl_composite
+		Part	part;
+	}
+
+	@simpl_tag("part")
+	public static class Part extends ElementState
+	{
+		@simpl_scalar
+		int	number;
+
+		@Override
+		public void recycle()
+		{
+			number = 0;
+			super.recycle();
+		}
+	}
+
+	static final String	REQUEST	= "<request name=\"r\"><parts><part number=\"1\"/><part number=\"2\"/></parts>"
+																	+ "<holder><part number=\"3\"/></holder></request>";
+
+	static Request deserialize() throws SIMPLTranslationException
+	{
+		SimplTypesScope scope = SimplTypesScope.get("element_state_pool_test", Request.class,
+				Holder.class, Part.class);
+		return (Request) scope.deserialize(REQUEST, StringFormat.XML);
+	}
+
+	static Set<Part> parts(Request request)
+	{
+		Set<Part> parts = Collections.newSetFromMap(new IdentityHashMap<Part, Boolean>());
+		parts.addAll(request.parts);
+		parts.add(request.holder.part);
+		return parts;
+	}
+
+	@Test
+	public void recycledInstancesAreReused() throws SIMPLTranslationException
+	{
+		Request request = deserialize();
+		assertEquals(3, request.holder.part.number);
+		assertNull(ClassDescriptor.getClassDescriptor(Part.class).getInstancePool());
+
+		ElementStatePool.recycle(request);
+		assertEquals(3, request.holder.part.number);
+
+		assertNotNull(ClassDescriptor.getClassDescriptor(Part.class).poolInstances(3, 3));
+		assertNull(ClassDescriptor.getClassDescriptor(Holder.class).getInstancePool());
+
+		Request first = deserialize();
+		Set<Part> firstParts = parts(first);
+		ElementStatePool.recycle(first);
+		for (Part part : firstParts)
+			assertEquals(0, part.number);
+
+		Request second = deserialize();
+		assertEquals(firstParts, parts(second));
+		assertEquals(1, second.parts.get(0).number);
+		assertEquals(2, second.parts.get(1).number);
+		assertEquals(3, second.holder.part.number);
+		assertTrue(second.holder != first.holder);
+	}
+}
@@ -0,0 +1,98 @@
+package ecologylab.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ecologylab.serialization.StreamingDeserializationTest.Channel;
+import ecologylab.serialization.StreamingDeserializationTest.Feed;
+import ecologylab.serialization.StreamingDeserializationTest.Item;
+import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.formatenums.StringFormat;
+
+public class FieldProjectionTest
+{
+	private static final Format[]	FORMATS	= { Format.XML, Format.JSON, Format.TLV };
+
+	private static SimplTypesScope scope()
+	{
+		return SimplTypesScope.get("streaming_deserialization_test", Feed.class, Channel.class,
+				Item.class);
+	}
+
+	private static byte[] feedBytes(int count, Format format) throws SIMPLTranslationException
+	{
+		Feed feed = new Feed();
+		feed.channel = new Channel();
+		feed.channel.title = "news";
+		feed.channel.items = new ArrayList<Item>();
+		for (int i = 1; i <= count; i++)
+		{
+			Item item = new Item(i);
+			item.items = new ArrayList<Item>();
+			item.items.add(new Item(-i));
+			feed.channel.items.add(item);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SimplTypesScope.serialize(feed, bytes, format);
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void onlyProjectedFieldsAreSet() throws SIMPLTranslationException
+	{
+		for (Format format : FORMATS)
+		{
+			Feed feed = (Feed) scope().deserialize(new ByteArrayInputStream(feedBytes(20, format)),
+					format, FieldProjection.of("channel.items.number"));
+
+			assertNotEquals(format.toString(), "news", feed.channel.title);
+			assertEquals(format.toString(), 20, feed.channel.items.size());
+			for (int i = 1; i <= 20; i++)
+			{
+				Item item = feed.channel.items.get(i - 1);
+				assertEquals(format.toString(), i, item.number);
+				assertNull(format.toString(), item.items);
+			}
+		}
+	}
+
+	@Test
+	public void lastFieldIsDeserializedWhole() throws SIMPLTranslationException
+	{
+		for (Format format : FORMATS)
+		{
+			Feed feed = (Feed) scope().deserialize(new ByteArrayInputStream(feedBytes(5, format)),
+					format, FieldProjection.of("channel.title", "channel.items.items", "channel.items"));
+
+			assertEquals(format.toString(), "news", feed.channel.title);
+			assertEquals(format.toString(), 5, feed.channel.items.size());
+			assertEquals(format.toString(), -5, feed.channel.items.get(4).items.get(0).number);
+		}
+	}
+
+	@Test
+	public void skippedElementsMayNestAndBeEmpty() throws SIMPLTranslationException
+	{
+		String xml = "<feed><channel title=\"news\"><unknown a=\"/>\"><![CDATA[</unknown>]]></unknown>"
+				+ "<items><item number=\"1\"><item number=\"-1\"/><item number=\"-2\"><!-- <item> -->"
+				+ "<item number=\"-3\"></item></item></item><item number=\"2\"/>"
+				+ "<item number=\"3\"><item/></item></items></channel></feed>";
+		Feed feed = (Feed) scope().deserialize(xml, StringFormat.XML,
+				FieldProjection.of("channel.items.number"));
+
+		assertNotEquals("news", feed.channel.title);
+		assertEquals(3, feed.channel.items.size());
+		for (int i = 1; i <= 3; i++)
+		{
+			assertEquals(i, feed.channel.items.get(i - 1).number);
+			assertNull(feed.channel.items.get(i - 1).items);
+		}
+	}
+}
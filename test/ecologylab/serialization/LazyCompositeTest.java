@@ -0,0 +1,216 @@
+package ecologylab.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.deserializers.pullhandlers.stringformats.XMLParserFactory;
+import ecologylab.serialization.deserializers.pullhandlers.stringformats.XMLParserFactory.Implementation;
+import ecologylab.serialization.annotations.simpl_composite;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.formatenums.StringFormat;
+
+public class LazyCompositeTest
+{
+	@simpl_tag("envelope")
+	public static class Envelope
+	{
+		@simpl_scalar
+		String									to;
+
+		@simpl_composite
+		LazyComposite<Payload>	payload;
+
+		@simpl_scalar
+		int											number;
+	}
+
+	@simpl_tag("payload")
+	public static class Payload
+	{
+		@simpl_scalar
+		String					title;
+
+		@simpl_collection("part")
+		ArrayList<Part>	parts;
+	}
+
+	@simpl_tag("part")
+	public static class Part
+	{
+		@simpl_scalar
+		String	text;
+
+		public Part()
+		{
+		}
+
+		Part(String text)
+		{
+			this.text = text;
+		}
+	}
+
+	private static Implementation	xmlParser;
+
+	/**
+	 * XML elements are only kept by SimplXMLParser.
+	 */
+	@BeforeClass
+	public static void useSimplXMLParser()
+	{
+		xmlParser = XMLParserFactory.getImplementation();
+		XMLParserFactory.setImplementation(Implementation.SIMPL);
+	}
+
+	@AfterClass
+	public static void restoreXMLParser()
+	{
+		XMLParserFactory.setImplementation(xmlParser);
+	}
+
+	private static SimplTypesScope scope()
+	{
+		return SimplTypesScope.get("lazy_composite_test", Envelope.class, Payload.class, Part.class);
+	}
+
+	private static Envelope envelope()
+	{
+		Payload payload = new Payload();
+		payload.title = "a \"quoted\" <title> & more";
+		payload.parts = new ArrayList<Part>();
+		for (int i = 0; i < 3; i++)
+			payload.parts.add(new Part("part " + i + " & <" + i + ">"));
+
+		Envelope envelope = new Envelope();
+		envelope.to = "relay";
+		envelope.payload = new LazyComposite<Payload>(payload);
+		envelope.number = 7;
+		return envelope;
+	}
+
+	private static void assertPayload(Payload payload)
+	{
+		assertEquals("a \"quoted\" <title> & more", payload.title);
+		assertEquals(3, payload.parts.size());
+		assertEquals("part 2 & <2>", payload.parts.get(2).text);
+	}
+
+	@Test
+	public void untouchedFieldsAreWrittenAsTheyWereRead() throws SIMPLTranslationException
+	{
+		for (StringFormat format : new StringFormat[] { StringFormat.XML, StringFormat.JSON })
+		{
+			String serialized = SimplTypesScope.serialize(envelope(), format).toString();
+			Envelope envelope = (Envelope) scope().deserialize(serialized, format);
+
+			assertEquals(format.toString(), "relay", envelope.to);
+			assertEquals(format.toString(), 7, envelope.number);
+			assertFalse(format.toString(), envelope.payload.isDeserialized());
+			assertEquals(format.toString(), serialized,
+					SimplTypesScope.serialize(envelope, format).toString());
+
+			assertPayload(envelope.payload.get());
+			assertTrue(envelope.payload.isDeserialized());
+			assertEquals(format.toString(), serialized,
+					SimplTypesScope.serialize(envelope, format).toString());
+		}
+	}
+
+	@Test
+	public void tlvBlocksAreWrittenAsTheyWereRead() throws SIMPLTranslationException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SimplTypesScope.serialize(envelope(), bytes, Format.TLV);
+		Envelope envelope = (Envelope) scope().deserialize(new ByteArrayInputStream(bytes.toByteArray()),
+				Format.TLV);
+
+		assertEquals(7, envelope.number);
+		assertFalse(envelope.payload.isDeserialized());
+		ByteArrayOutputStream relayed = new ByteArrayOutputStream();
+		SimplTypesScope.serialize(envelope, relayed, Format.TLV);
+		assertArrayEquals(bytes.toByteArray(), relayed.toByteArray());
+
+		assertPayload(envelope.payload.get());
+	}
+
+	@Test
+	public void elementsLongerThanTheParserBufferAreKeptWhole() throws SIMPLTranslationException
+	{
+		Envelope original = envelope();
+		for (int i = 3; i < 2000; i++)
+			original.payload.peek().parts.add(new Part("part " + i));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SimplTypesScope.serialize(original, bytes, Format.XML);
+
+		Envelope envelope = (Envelope) scope().deserialize(new ByteArrayInputStream(bytes.toByteArray()),
+				Format.XML);
+		assertFalse(envelope.payload.isDeserialized());
+		assertEquals(7, envelope.number);
+		ByteArrayOutputStream relayed = new ByteArrayOutputStream();
+		SimplTypesScope.serialize(envelope, relayed, Format.XML);
+		assertArrayEquals(bytes.toByteArray(), relayed.toByteArray());
+
+		assertEquals(2000, envelope.payload.get().parts.size());
+		assertEquals("part 1999", envelope.payload.get().parts.get(1999).text);
+	}
+
+	@Test
+	public void keptElementsDeclareTheNamespacesTheyUse() throws Exception
+	{
+		String simpl = "http://ecologylab.net/research/simplGuide/serialization/index.html";
+		String xml = "<envelope xmlns:simpl=\"" + simpl + "\" to=\"relay\" number=\"7\">"
+				+ "<payload simpl:id=\"1\" title=\"t\"><parts><part simpl:id=\"2\" text=\"a\"/></parts>"
+				+ "</payload></envelope>";
+		Envelope envelope = (Envelope) scope().deserialize(xml, StringFormat.XML);
+		assertFalse(envelope.payload.isDeserialized());
+
+		// the relaying envelope has no simpl:id of its own, so it does not declare the namespace
+		String relayed = SimplTypesScope.serialize(envelope, StringFormat.XML).toString();
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		Element root = factory.newDocumentBuilder().parse(new InputSource(new StringReader(relayed)))
+				.getDocumentElement();
+		Element payload = (Element) root.getElementsByTagName("payload").item(0);
+		Element part = (Element) payload.getElementsByTagName("part").item(0);
+		assertEquals("1", payload.getAttributeNS(simpl, "id"));
+		assertEquals("2", part.getAttributeNS(simpl, "id"));
+
+		assertEquals("a", envelope.payload.get().parts.get(0).text);
+	}
+
+	@Test
+	public void otherFormatsDeserializeFirst() throws SIMPLTranslationException
+	{
+		String xml = SimplTypesScope.serialize(envelope(), StringFormat.XML).toString();
+		String json = SimplTypesScope.serialize(envelope(), StringFormat.JSON).toString();
+
+		Envelope envelope = (Envelope) scope().deserialize(xml, StringFormat.XML);
+		assertEquals(json, SimplTypesScope.serialize(envelope, StringFormat.JSON).toString());
+		assertTrue(envelope.payload.isDeserialized());
+
+		envelope = (Envelope) scope().deserialize(xml, StringFormat.XML);
+		Payload replacement = new Payload();
+		replacement.title = "new";
+		envelope.payload.set(replacement);
+		assertEquals("<envelope to=\"relay\" number=\"7\"><payload title=\"new\"></payload></envelope>",
+				SimplTypesScope.serialize(envelope, StringFormat.XML).toString());
+	}
+}
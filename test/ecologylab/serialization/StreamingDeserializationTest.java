@@ -0,0 +1,159 @@
+package ecologylab.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_composite;
+import ecologylab.serialization.annotations.simpl_nowrap;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.Format;
+
+public class StreamingDeserializationTest
+{
+
+	@simpl_tag("feed")
+	public static class Feed
+	{
+		@simpl_composite
+		Channel	channel;
+	}
+
+	@simpl_tag("channel")
+	public static class Channel
+	{
+		@simpl_scalar
+		String					title;
+
+		@simpl_collection("item")
+		ArrayList<Item>	items;
+	}
+
+	/**
+	 * Has a collection with the same name as the streamed one, which must not be streamed.
+	 */
+	@simpl_tag("item")
+	public static class Item
+	{
+		@simpl_scalar
+		int							number;
+
+		@simpl_nowrap
+		@simpl_collection("item")
+		ArrayList<Item>	items;
+
+		public Item()
+		{
+		}
+
+		Item(int number)
+		{
+			this.number = number;
+		}
+	}
+
+	private static final Format[]	FORMATS	= { Format.XML, Format.JSON, Format.TLV };
+
+	private static SimplTypesScope scope()
+	{
+		return SimplTypesScope.get("streaming_deserialization_test", Feed.class, Channel.class,
+				Item.class);
+	}
+
+	private static byte[] feedBytes(int count, Format format) throws SIMPLTranslationException
+	{
+		Feed feed = new Feed();
+		feed.channel = new Channel();
+		feed.channel.title = "news";
+		feed.channel.items = new ArrayList<Item>();
+		for (int i = 1; i <= count; i++)
+		{
+			Item item = new Item(i);
+			item.items = new ArrayList<Item>();
+			item.items.add(new Item(-i));
+			feed.channel.items.add(item);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SimplTypesScope.serialize(feed, bytes, format);
+		return bytes.toByteArray();
+	}
+
+	private static class Collector implements CollectionElementHandler<Item>
+	{
+		final ArrayList<Item>	items	= new ArrayList<Item>();
+
+		final int							limit;
+
+		Object								parent;
+
+		Collector(int limit)
+		{
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean handleElement(Object parent, Item element)
+		{
+			this.parent = parent;
+			items.add(element);
+			return items.size() < limit;
+		}
+	}
+
+	@Test
+	public void elementsGoToTheHandler() throws SIMPLTranslationException
+	{
+		for (Format format : FORMATS)
+		{
+			Collector collector = new Collector(Integer.MAX_VALUE);
+			Feed feed = (Feed) scope().deserializeStreaming(
+					new ByteArrayInputStream(feedBytes(50, format)), format, "channel.items", collector);
+
+			assertEquals(format.toString(), "news", feed.channel.title);
+			assertTrue(format.toString(), feed.channel.items == null || feed.channel.items.isEmpty());
+			assertSame(feed.channel, collector.parent);
+			assertEquals(format.toString(), 50, collector.items.size());
+			for (int i = 1; i <= 50; i++)
+			{
+				Item item = collector.items.get(i - 1);
+				assertEquals(i, item.number);
+				assertEquals(1, item.items.size());
+				assertEquals(-i, item.items.get(0).number);
+			}
+		}
+	}
+
+	@Test
+	public void handlerCanStopEarly() throws SIMPLTranslationException
+	{
+		for (Format format : FORMATS)
+		{
+			Collector collector = new Collector(3);
+			Object result = scope().deserializeStreaming(new ByteArrayInputStream(feedBytes(50, format)),
+					format, "channel.items", collector);
+
+			assertNull(result);
+			assertEquals(3, collector.items.size());
+		}
+	}
+
+	@Test
+	public void otherPathsAreNotStreamed() throws SIMPLTranslationException
+	{
+		Collector collector = new Collector(Integer.MAX_VALUE);
+		Feed feed = (Feed) scope().deserializeStreaming(
+				new ByteArrayInputStream(feedBytes(5, Format.XML)), Format.XML, "items", collector);
+
+		assertEquals(0, collector.items.size());
+		assertEquals(5, feed.channel.items.size());
+	}
+}
@@ -0,0 +1,150 @@
+package ecologylab.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import ecologylab.serialization.annotations.simpl_classes;
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_other_tags;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+
+public class TagIndexTest
+{
+	@simpl_tag("circle")
+	@simpl_other_tags({ "round", "disc" })
+	public static class Circle
+	{
+		@simpl_scalar
+		int			radius;
+
+		@simpl_scalar
+		@simpl_other_tags("label")
+		String	name;
+	}
+
+	public static class Square
+	{
+		@simpl_scalar
+		int	side;
+	}
+
+	@simpl_tag("triangle")
+	public static class Triangle
+	{
+		@simpl_scalar
+		int	base;
+	}
+
+	public static class Drawing
+	{
+		@simpl_collection
+		@simpl_classes({ Circle.class, Square.class })
+		ArrayList<Object>	shapes;
+
+		@simpl_collection("point")
+		ArrayList<Square>	points;
+	}
+
+	@Test
+	public void lookupsByStringRegionAndChars()
+	{
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (int i = 0; i < 200; i++)
+			map.put("tag_" + i, i);
+		TagIndex<Integer> index = TagIndex.of(map);
+
+		String text = "<tag_42 a=\"1\"/><tag_199>";
+		char[] chars = text.toCharArray();
+		assertEquals(Integer.valueOf(42), index.get("tag_42"));
+		assertEquals(Integer.valueOf(42), index.get(text, 1, 7));
+		assertEquals(Integer.valueOf(42), index.get(chars, 1, 6));
+		assertEquals(Integer.valueOf(199), index.get(text, 16, 23));
+		assertNull(index.get("tag_200"));
+		assertNull(index.get(text, 1, 5));
+		assertNull(index.get(chars, 0, 7));
+		assertNull(index.get((String) null));
+		assertNull(TagIndex.of(new HashMap<String, Integer>()).get("x"));
+	}
+
+	@Test
+	public void fieldsAndOtherTags()
+	{
+		ClassDescriptor<?> circle = ClassDescriptor.getClassDescriptor(Circle.class);
+		FieldDescriptor radius = circle.getFieldDescriptorByTag("radius", null, null);
+		FieldDescriptor name = circle.getFieldDescriptorByTag("name", null, null);
+
+		String text = "<radius><label>";
+		assertSame(radius, circle.getFieldDescriptorByTag(text, 1, 7));
+		assertSame(name, circle.getFieldDescriptorByTag(text, 9, 14));
+		assertSame(name, circle.getFieldDescriptorByTag("label".toCharArray(), 0, 5));
+		assertNull(circle.getFieldDescriptorByTag(text, 1, 6));
+
+		SimplTypesScope scope = SimplTypesScope.get("tag_index_test", Circle.class, Square.class);
+		assertSame(circle, scope.getClassDescriptorByTag("disc"));
+		assertSame(circle, scope.getClassDescriptorByTag("a round b", 2, 7));
+		assertNull(scope.getClassDescriptorByTag("a round b", 2, 6));
+	}
+
+	@Test
+	public void polymorphicCollectionTags()
+	{
+		ClassDescriptor<?> drawing = ClassDescriptor.getClassDescriptor(Drawing.class);
+		FieldDescriptor shapes = drawing.getFieldDescriptorByFieldName("shapes");
+		FieldDescriptor points = drawing.getFieldDescriptorByFieldName("points");
+
+		String text = "<square/><disc/><point/>";
+		assertTrue(shapes.isCollectionTag(text, 1, 7));
+		assertTrue(shapes.isCollectionTag(text, 10, 14));
+		assertFalse(shapes.isCollectionTag(text, 17, 22));
+		assertSame(ClassDescriptor.getClassDescriptor(Circle.class),
+				shapes.getChildClassDescriptor(text, 10, 14));
+
+		assertTrue(points.isCollectionTag(text, 17, 22));
+		assertFalse(points.isCollectionTag(text, 1, 7));
+	}
+
+	@Test
+	public void indexesKeepUpWithChangesMadeDuringLookups() throws InterruptedException
+	{
+		final SimplTypesScope scope = SimplTypesScope.get("tag_index_changes", Square.class);
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread reader = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				// keep building indexes, while they are being dropped
+				while (!done.get())
+					scope.getClassDescriptorByTag("square");
+			}
+		};
+		reader.start();
+		try
+		{
+			for (int i = 0; i < 2000; i++)
+			{
+				scope.addTranslation(Triangle.class);
+				assertSame(ClassDescriptor.getClassDescriptor(Triangle.class),
+						scope.getClassDescriptorByTag("triangle"));
+				scope.removeTranslation(Triangle.class);
+				assertNull(scope.getClassDescriptorByTag("triangle"));
+			}
+		}
+		finally
+		{
+			done.set(true);
+			reader.join();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package ecologylab.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ecologylab.serialization.SimplTypesScope.GRAPH_SWITCH;
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_composite;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.Format;
+
+public class TranslationContextGraphTest
+{
+
+	/**
+	 * All instances are equal, with the same hash code, so only identity tells them apart.
+	 */
+	@simpl_tag("node")
+	public static class Node
+	{
+		@simpl_scalar
+		String					name;
+
+		@simpl_composite
+		Node						next;
+
+		@simpl_collection("kid")
+		ArrayList<Node>	kids	= new ArrayList<Node>();
+
+		public Node()
+		{
+		}
+
+		Node(String name)
+		{
+			this.name = name;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 1;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			return other instanceof Node;
+		}
+	}
+
+	private GRAPH_SWITCH	graphSwitch;
+
+	@Before
+	public void graphOn()
+	{
+		graphSwitch = SimplTypesScope.graphSwitch;
+		SimplTypesScope.graphSwitch = GRAPH_SWITCH.ON;
+	}
+
+	@After
+	public void restoreGraphSwitch()
+	{
+		SimplTypesScope.graphSwitch = graphSwitch;
+	}
+
+	private static Node sharedGraph()
+	{
+		Node root = new Node("root");
+		Node shared = new Node("shared");
+		Node other = new Node("other");
+		root.next = shared;
+		root.kids.add(shared);
+		root.kids.add(other);
+		root.kids.add(shared);
+		other.next = root;
+		return root;
+	}
+
+	@Test
+	public void onlySharedObjectsGetIds()
+	{
+		Node root = sharedGraph();
+		TranslationContext translationContext = new TranslationContext();
+		translationContext.resolveGraph(root);
+
+		assertTrue(translationContext.isGraph());
+		assertTrue(translationContext.needsHashCode(root));
+		assertTrue(translationContext.needsHashCode(root.next));
+		assertFalse(translationContext.needsHashCode(root.kids.get(1)));
+		assertTrue(translationContext.alreadyVisited(root.kids.get(1)));
+		assertFalse(translationContext.getSimplId(root).equals(translationContext.getSimplId(root.next)));
+	}
+
+	@Test
+	public void deepChainsDoNotOverflowTheStack()
+	{
+		Node root = new Node("0");
+		Node last = root;
+		for (int i = 1; i < 200000; i++)
+		{
+			last.next = new Node(Integer.toString(i));
+			last = last.next;
+		}
+		last.next = root;
+
+		TranslationContext translationContext = new TranslationContext();
+		translationContext.resolveGraph(root);
+
+		assertTrue(translationContext.needsHashCode(root));
+		assertFalse(translationContext.needsHashCode(last));
+		assertEquals("1", translationContext.getSimplId(root));
+	}
+
+	@Test
+	public void sharingSurvivesRoundTrips() throws SIMPLTranslationException
+	{
+		SimplTypesScope scope = SimplTypesScope.get("translation_context_graph_test", Node.class);
+		for (Format format : new Format[] { Format.XML, Format.TLV, Format.TLV2 })
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			SimplTypesScope.serialize(sharedGraph(), bytes, format);
+			Node root = (Node) scope.deserialize(new ByteArrayInputStream(bytes.toByteArray()), format);
+
+			assertEquals(3, root.kids.size());
+			assertSame(root.next, root.kids.get(0));
+			assertSame(root.next, root.kids.get(2));
+			assertNotSame(root.next, root.kids.get(1));
+			assertSame(root, root.kids.get(1).next);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package ecologylab.serialization.accessors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+
+import org.junit.Test;
+
+public class FieldAccessorTest
+{
+
+	static class Fields
+	{
+		int							i;
+
+		long						l;
+
+		float						f;
+
+		double					d;
+
+		boolean					b;
+
+		short						s;
+
+		byte						by;
+
+		char						c;
+
+		Integer					boxed;
+
+		String					string;
+
+		volatile int		vol;
+
+		final String		constant	= "constant";
+	}
+
+	/**
+	 * Has accessors like those SimplProcessor writes, for the fields it can reach. The private field is
+	 * left out of them.
+	 */
+	static class Generated
+	{
+		int							i;
+
+		volatile int		vol;
+
+		private int			hidden;
+
+		static final class SimplAccessors extends GeneratedAccessors
+		{
+			public SimplAccessors()
+			{
+				super(new String[] { "i", "vol" }, new String[] { "int", "int" });
+			}
+
+			@Override
+			protected FieldAccessor accessor(int index, Field field)
+			{
+				switch (index)
+				{
+				case 0:
+					return new FieldAccessor(field)
+					{
+						@Override
+						public Object get(Object object)
+						{
+							return ((Generated) object).i;
+						}
+
+						@Override
+						public void set(Object object, Object value)
+						{
+							((Generated) object).i = (Integer) value;
+						}
+					};
+				case 1:
+					return new FieldAccessor(field)
+					{
+						@Override
+						public Object get(Object object)
+						{
+							return ((Generated) object).vol;
+						}
+
+						@Override
+						public void set(Object object, Object value)
+						{
+							((Generated) object).vol = (Integer) value;
+						}
+					};
+				default:
+					return null;
+				}
+			}
+		}
+	}
+
+	static final FieldAccessorFactory.Strategy[]	STRATEGIES	= FieldAccessorFactory.Strategy.values();
+
+	static FieldAccessor accessor(String name, FieldAccessorFactory.Strategy strategy)
+			throws NoSuchFieldException
+	{
+		return accessor(Fields.class, name, strategy);
+	}
+
+	static FieldAccessor accessor(Class<?> thatClass, String name,
+			FieldAccessorFactory.Strategy strategy) throws NoSuchFieldException
+	{
+		FieldAccessorFactory.Strategy previous = FieldAccessorFactory.getStrategy();
+		FieldAccessorFactory.setStrategy(strategy);
+		try
+		{
+			Field field = thatClass.getDeclaredField(name);
+			return FieldAccessorFactory.create(field);
+		}
+		finally
+		{
+			FieldAccessorFactory.setStrategy(previous);
+		}
+	}
+
+	@Test
+	public void typedAccessorsReadAndWritePrimitives() throws NoSuchFieldException
+	{
+		for (FieldAccessorFactory.Strategy strategy : STRATEGIES)
+		{
+			Fields fields = new Fields();
+			accessor("i", strategy).setInt(fields, -7);
+			accessor("l", strategy).setLong(fields, 1L << 40);
+			accessor("f", strategy).setFloat(fields, 1.5f);
+			accessor("d", strategy).setDouble(fields, -2.25);
+			accessor("b", strategy).setBoolean(fields, true);
+			accessor("s", strategy).setShort(fields, (short) 300);
+			accessor("by", strategy).setByte(fields, (byte) -3);
+			accessor("c", strategy).setChar(fields, 'q');
+			accessor("vol", strategy).setInt(fields, 11);
+
+			assertEquals(strategy.toString(), -7, fields.i);
+			assertEquals(1L << 40, fields.l);
+			assertEquals(1.5f, fields.f, 0);
+			assertEquals(-2.25, fields.d, 0);
+			assertTrue(fields.b);
+			assertEquals(300, fields.s);
+			assertEquals(-3, fields.by);
+			assertEquals('q', fields.c);
+			assertEquals(11, fields.vol);
+
+			assertEquals(-7, accessor("i", strategy).getInt(fields));
+			assertEquals(1L << 40, accessor("l", strategy).getLong(fields));
+			assertEquals('q', accessor("c", strategy).getChar(fields));
+			assertEquals(Integer.valueOf(-7), accessor("i", strategy).get(fields));
+			assertEquals(Double.valueOf(-2.25), accessor("d", strategy).get(fields));
+		}
+	}
+
+	@Test
+	public void boxedAccessorsReadAndWriteReferences() throws NoSuchFieldException
+	{
+		for (FieldAccessorFactory.Strategy strategy : STRATEGIES)
+		{
+			Fields fields = new Fields();
+			FieldAccessor string = accessor("string", strategy);
+			string.set(fields, "value");
+			assertSame("value", string.get(fields));
+			string.set(fields, null);
+			assertNull(string.get(fields));
+
+			accessor("i", strategy).set(fields, 5);
+			assertEquals(5, fields.i);
+
+			FieldAccessor boxed = accessor("boxed", strategy);
+			boxed.set(fields, 9);
+			assertEquals(Integer.valueOf(9), boxed.get(fields));
+			assertEquals(9, boxed.getInt(fields));
+		}
+	}
+
+	@Test
+	public void badValuesAreRejected() throws NoSuchFieldException
+	{
+		for (FieldAccessorFactory.Strategy strategy : STRATEGIES)
+		{
+			Fields fields = new Fields();
+			try
+			{
+				accessor("string", strategy).set(fields, Integer.valueOf(1));
+				fail(strategy + " set an Integer into a String field");
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+			try
+			{
+				accessor("i", strategy).get("not a Fields");
+				fail(strategy + " read a field from an object of the wrong class");
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+			try
+			{
+				accessor("i", strategy).set(fields, null);
+				fail(strategy + " set null into an int field");
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void unsafeOnlyWhenAskedFor()
+	{
+		if (System.getProperty(FieldAccessorFactory.STRATEGY_PROPERTY) == null)
+			assertEquals(FieldAccessorFactory.Strategy.METHOD_HANDLE, FieldAccessorFactory.getStrategy());
+	}
+
+	@Test
+	public void finalFieldsStillReadable() throws NoSuchFieldException
+	{
+		for (FieldAccessorFactory.Strategy strategy : STRATEGIES)
+			assertEquals("constant", accessor("constant", strategy).get(new Fields()));
+	}
+
+	static boolean isGenerated(FieldAccessor accessor)
+	{
+		return accessor.getClass().getEnclosingClass() == Generated.SimplAccessors.class;
+	}
+
+	@Test
+	public void generatedAccessorsWhereThereAreAny() throws NoSuchFieldException
+	{
+		assertNull(GeneratedAccessors.forClass(Fields.class));
+		assertTrue(GeneratedAccessors.forClass(Generated.class) instanceof Generated.SimplAccessors);
+
+		FieldAccessor i = accessor(Generated.class, "i", FieldAccessorFactory.Strategy.GENERATED);
+		assertTrue(isGenerated(i));
+		Generated generated = new Generated();
+		i.setInt(generated, 3);
+		assertEquals(3, generated.i);
+		assertEquals(3, i.getInt(generated));
+
+		assertFalse(isGenerated(accessor(Generated.class, "i", FieldAccessorFactory.Strategy.UNSAFE)));
+		assertTrue(isGenerated(accessor(Generated.class, "vol", FieldAccessorFactory.Strategy.UNSAFE)));
+		assertFalse(isGenerated(accessor(Generated.class, "hidden",
+				FieldAccessorFactory.Strategy.GENERATED)));
+	}
+}
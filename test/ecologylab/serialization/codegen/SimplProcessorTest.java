@@ -0,0 +1,228 @@
+package ecologylab.serialization.codegen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ecologylab.serialization.ClassDescriptor;
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.accessors.GeneratedAccessors;
+import ecologylab.serialization.formatenums.StringFormat;
+
+/**
+ * Runs SimplProcessor in javac, over the classes in SHAPE, SQUARE and POINT, and compares them with
+ * the same classes built without it. ClassDescriptors are looked up by class name, so each build
+ * puts them in a package of its own.
+ */
+public class SimplProcessorTest
+{
+	static final String	PROCESSOR				= "codegen/ecologylab/serialization/codegen/SimplProcessor.java";
+
+	/**
+	 * The processor is built on its own, so it is not on the classpath of the tests.
+	 */
+	static final String	PROCESSOR_CLASS	= "ecologylab.serialization.codegen.SimplProcessor";
+
+	static final String	SHAPE						= "package %s;\n"
+			+ "import java.util.ArrayList;\n"
+			+ "import ecologylab.serialization.annotations.*;\n"
+			+ "public class Shape\n{\n"
+			+ "\t@simpl_scalar String name;\n"
+			+ "\t@simpl_scalar private int hidden = 3;\n"
+			+ "\t@simpl_scalar final int version = 2;\n"
+			+ "\t@simpl_scalar @simpl_hints(Hint.XML_LEAF) String note;\n"
+			+ "\t@simpl_composite Shape inner;\n"
+			+ "\t@simpl_collection(\"point\") @simpl_nowrap ArrayList<Point> points;\n"
+			+ "}\n";
+
+	static final String	SQUARE					= "package %s;\n"
+			+ "import ecologylab.serialization.annotations.*;\n"
+			+ "@simpl_inherit public class Square extends Shape\n{\n"
+			+ "\t@simpl_scalar double side;\n" + "}\n";
+
+	static final String	POINT						= "package %s;\n"
+			+ "import ecologylab.serialization.annotations.*;\n"
+			+ "public class Point\n{\n" + "\t@simpl_scalar int x;\n"
+			+ "\t@simpl_scalar int y;\n" + "}\n";
+
+	static final String	XML							= "<square name=\"sq\" side=\"1.5\"><note>a &amp; b</note>"
+			+ "<inner name=\"in\"/><point x=\"1\" y=\"2\"/><point x=\"3\" y=\"4\"/>"
+			+ "</square>";
+
+	static final String	GENERATED				= "codegentest.generated";
+
+	static final String	PLAIN						= "codegentest.plain";
+
+	static File					dir;
+
+	static ClassLoader	loader;
+
+	@BeforeClass
+	public static void compile() throws IOException
+	{
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(javac);
+		Assume.assumeTrue(new File(PROCESSOR).isFile());
+
+		dir = File.createTempFile("simpl_processor_test", "");
+		dir.delete();
+		File processor = mkdir("processor");
+		File gensrc = mkdir("gensrc");
+		File classes = mkdir("classes");
+
+		assertEquals(0, javac.run(null, null, null, "-d", processor.getPath(), PROCESSOR));
+
+		String classpath = System.getProperty("java.class.path");
+		List<String> args = new ArrayList<String>(Arrays.asList("-nowarn", "-cp", classpath,
+				"-processorpath", processor.getPath(), "-processor", PROCESSOR_CLASS, "-s",
+				gensrc.getPath(), "-d", classes.getPath()));
+		args.addAll(write(GENERATED));
+		assertEquals(0, javac.run(null, null, null, args.toArray(new String[args.size()])));
+
+		args = new ArrayList<String>(Arrays.asList("-nowarn", "-cp", classpath, "-proc:none", "-d",
+				classes.getPath()));
+		args.addAll(write(PLAIN));
+		assertEquals(0, javac.run(null, null, null, args.toArray(new String[args.size()])));
+
+		loader = new URLClassLoader(new URL[] { classes.toURI().toURL() },
+				SimplProcessorTest.class.getClassLoader());
+	}
+
+	/**
+	 * Write SHAPE, SQUARE and POINT, in packageName.
+	 * 
+	 * @return Their files.
+	 */
+	static List<String> write(String packageName) throws IOException
+	{
+		List<String> files = new ArrayList<String>();
+		String[][] sources = { { "Shape", SHAPE }, { "Square", SQUARE }, { "Point", POINT } };
+		for (String[] source : sources)
+		{
+			File file = new File(dir, "sources/" + packageName.replace('.', '/') + "/" + source[0]
+					+ ".java");
+			file.getParentFile().mkdirs();
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+			try
+			{
+				writer.write(String.format(source[1], packageName));
+			}
+			finally
+			{
+				writer.close();
+			}
+			files.add(file.getPath());
+		}
+		return files;
+	}
+
+	static File mkdir(String name)
+	{
+		File result = new File(dir, name);
+		result.mkdirs();
+		return result;
+	}
+
+	@AfterClass
+	public static void delete()
+	{
+		if (dir != null)
+			delete(dir);
+	}
+
+	static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+			for (File child : children)
+				delete(child);
+		file.delete();
+	}
+
+	@Test
+	public void onlyReachableFieldsGetAccessors() throws ClassNotFoundException
+	{
+		assertTrue(new File(dir, "gensrc/codegentest/generated/Shape" + GeneratedAccessors.SUFFIX
+				+ ".java").isFile());
+		Class<?> shape = loader.loadClass(GENERATED + ".Shape");
+		GeneratedAccessors accessors = GeneratedAccessors.forClass(shape);
+		assertNotNull(accessors);
+
+		PrintStream err = System.err;
+		ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(warnings));
+		try
+		{
+			for (Field field : shape.getDeclaredFields())
+			{
+				boolean reachable = !Modifier.isPrivate(field.getModifiers())
+						&& !Modifier.isFinal(field.getModifiers());
+				assertEquals(field.getName(), reachable, accessors.getAccessor(field) != null);
+			}
+		}
+		finally
+		{
+			System.setErr(err);
+		}
+		assertEquals("", warnings.toString());
+		assertNotNull(accessors.getInstantiator());
+	}
+
+	@Test
+	public void generatedSerializersWriteWhatTheLoopsDo() throws ClassNotFoundException,
+			SIMPLTranslationException
+	{
+		Object withGenerated = deserialize(GENERATED);
+		Object withoutGenerated = deserialize(PLAIN);
+
+		for (String name : new String[] { "Shape", "Square", "Point" })
+		{
+			assertNotNull(name, ClassDescriptor.getClassDescriptor(
+					loader.loadClass(GENERATED + "." + name)).getGeneratedSerializer());
+			assertNull(name, ClassDescriptor.getClassDescriptor(loader.loadClass(PLAIN + "." + name))
+					.getGeneratedSerializer());
+		}
+
+		for (StringFormat format : new StringFormat[] { StringFormat.XML, StringFormat.JSON })
+		{
+			String expected = SimplTypesScope.serialize(withoutGenerated, format).toString();
+			String actual = SimplTypesScope.serialize(withGenerated, format).toString();
+			assertEquals(format.toString(), expected, actual);
+			assertTrue(actual, actual.contains("\"sq\"") && actual.contains("1.5"));
+		}
+	}
+
+	static Object deserialize(String packageName) throws ClassNotFoundException,
+			SIMPLTranslationException
+	{
+		SimplTypesScope scope = SimplTypesScope.get("simpl_processor_test_" + packageName,
+				loader.loadClass(packageName + ".Shape"), loader.loadClass(packageName + ".Square"),
+				loader.loadClass(packageName + ".Point"));
+		return scope.deserialize(XML, StringFormat.XML);
+	}
+}
@@ -0,0 +1,265 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.annotations.simpl_classes;
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_composite;
+import ecologylab.serialization.annotations.simpl_inherit;
+import ecologylab.serialization.annotations.simpl_nowrap;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.deserializers.ISimplDeserializationPost;
+import ecologylab.serialization.formatenums.StringFormat;
+
+public class ParallelCollectionDeserializerTest
+{
+
+	@simpl_tag("archive")
+	public static class Archive
+	{
+		@simpl_scalar
+		String					name;
+
+		@simpl_composite
+		Entry						latest;
+
+		@simpl_nowrap
+		@simpl_collection("entry")
+		ArrayList<Entry>	entries;
+	}
+
+	@simpl_tag("entry")
+	public static class Entry
+	{
+		@simpl_scalar
+		int		number;
+
+		@simpl_scalar
+		String	text;
+
+		public Entry()
+		{
+		}
+
+		Entry(int number)
+		{
+			this.number = number;
+			this.text = "<entry & \"" + number + "\">";
+		}
+	}
+
+	@simpl_tag("shelf")
+	public static class Shelf
+	{
+		@simpl_classes({ Book.class, Disk.class })
+		@simpl_collection
+		ArrayList<Entry>	things;
+
+		@simpl_scalar
+		String						name;
+	}
+
+	@simpl_inherit
+	@simpl_tag("book")
+	public static class Book extends Entry
+	{
+		@simpl_scalar
+		String	author;
+	}
+
+	@simpl_inherit
+	@simpl_tag("disk")
+	public static class Disk extends Entry
+	{
+		@simpl_scalar
+		int	tracks;
+	}
+
+	/**
+	 * Its post hook fails when it is named broken, so that the skeleton fails while the chunks are
+	 * still being deserialized.
+	 */
+	@simpl_tag("crate")
+	public static class Crate implements ISimplDeserializationPost
+	{
+		@simpl_scalar
+		String					name;
+
+		@simpl_nowrap
+		@simpl_collection("item")
+		ArrayList<Item>	items;
+
+		@Override
+		public void deserializationPostHook(TranslationContext translationContext, Object object)
+		{
+			if ("broken".equals(name))
+				throw new IllegalStateException("broken crate");
+		}
+	}
+
+	/**
+	 * Counts how many have been deserialized.
+	 */
+	@simpl_tag("item")
+	public static class Item implements ISimplDeserializationPost
+	{
+		static final AtomicInteger	deserialized	= new AtomicInteger();
+
+		@simpl_scalar
+		int													number;
+
+		@Override
+		public void deserializationPostHook(TranslationContext translationContext, Object object)
+		{
+			deserialized.incrementAndGet();
+		}
+	}
+
+	private static final ForkJoinPool	POOL	= new ForkJoinPool(4);
+
+	@AfterClass
+	public static void shutdownPool()
+	{
+		POOL.shutdown();
+	}
+
+	private static SimplTypesScope scope()
+	{
+		return SimplTypesScope.get("parallel_collection_deserializer_test", Archive.class,
+				Entry.class, Shelf.class, Book.class, Disk.class, Crate.class, Item.class);
+	}
+
+	private static Archive archive(int count)
+	{
+		Archive archive = new Archive();
+		archive.name = "archive";
+		archive.latest = new Entry(count);
+		archive.entries = new ArrayList<Entry>();
+		for (int i = 1; i <= count; i++)
+			archive.entries.add(new Entry(i));
+		return archive;
+	}
+
+	@Test
+	public void elementsKeepDocumentOrder() throws SIMPLTranslationException
+	{
+		for (StringFormat format : new StringFormat[] { StringFormat.XML, StringFormat.JSON })
+		{
+			String document = SimplTypesScope.serialize(archive(1000), format).toString();
+			Archive archive = (Archive) scope().deserializeParallel(document, format, "entries", POOL);
+
+			assertEquals("archive", archive.name);
+			assertEquals(1000, archive.latest.number);
+			assertEquals(format.toString(), 1000, archive.entries.size());
+			for (int i = 1; i <= 1000; i++)
+			{
+				assertEquals(i, archive.entries.get(i - 1).number);
+				assertEquals(new Entry(i).text, archive.entries.get(i - 1).text);
+			}
+		}
+	}
+
+	@Test
+	public void polymorphicElementsGetTheirClasses() throws SIMPLTranslationException
+	{
+		Shelf shelf = new Shelf();
+		shelf.name = "shelf";
+		shelf.things = new ArrayList<Entry>();
+		for (int i = 1; i <= 100; i++)
+		{
+			if (i % 2 == 0)
+			{
+				Book book = new Book();
+				book.number = i;
+				book.author = "author " + i;
+				shelf.things.add(book);
+			}
+			else
+			{
+				Disk disk = new Disk();
+				disk.number = i;
+				disk.tracks = i;
+				shelf.things.add(disk);
+			}
+		}
+
+		for (StringFormat format : new StringFormat[] { StringFormat.XML, StringFormat.JSON })
+		{
+			String document = SimplTypesScope.serialize(shelf, format).toString();
+			Shelf result = (Shelf) scope().deserializeParallel(document, format, "things", POOL);
+
+			assertEquals("shelf", result.name);
+			assertEquals(format.toString(), 100, result.things.size());
+			for (int i = 1; i <= 100; i++)
+			{
+				Entry thing = result.things.get(i - 1);
+				assertEquals(i, thing.number);
+				if (i % 2 == 0)
+					assertEquals("author " + i, ((Book) thing).author);
+				else
+					assertEquals(i, ((Disk) thing).tracks);
+			}
+		}
+	}
+
+	@Test
+	public void emptyCollections() throws SIMPLTranslationException
+	{
+		for (StringFormat format : new StringFormat[] { StringFormat.XML, StringFormat.JSON })
+		{
+			String document = SimplTypesScope.serialize(archive(0), format).toString();
+			Archive archive = (Archive) scope().deserializeParallel(document, format, "entries", POOL);
+
+			assertEquals("archive", archive.name);
+			assertTrue(archive.entries == null || archive.entries.isEmpty());
+		}
+	}
+
+	@Test
+	public void chunksStopWhenTheSkeletonFails() throws Exception
+	{
+		StringBuilder document = new StringBuilder("<crate name=\"broken\">");
+		for (int i = 0; i < 20000; i++)
+			document.append("<item number=\"").append(i).append("\"/>");
+		document.append("</crate>");
+
+		try
+		{
+			scope().deserializeParallel(document, StringFormat.XML, "items", POOL);
+			fail("the skeleton should have failed");
+		}
+		catch (SIMPLTranslationException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("broken crate"));
+		}
+
+		// every chunk has finished or been dropped by the time it fails
+		int deserialized = Item.deserialized.get();
+		Thread.sleep(100);
+		assertEquals(deserialized, Item.deserialized.get());
+	}
+
+	@Test
+	public void referencesAreFoundWithoutCopying()
+	{
+		StringBuilder text = new StringBuilder("<a simpl:id=\"1\"/><b simpl:re");
+		assertFalse(ParallelCollectionDeserializer.contains(text, "simpl:ref"));
+		text.append("f=\"1\"/>");
+		assertTrue(ParallelCollectionDeserializer.contains(text, "simpl:ref"));
+		assertFalse(ParallelCollectionDeserializer.contains("", "simpl:ref"));
+	}
+}
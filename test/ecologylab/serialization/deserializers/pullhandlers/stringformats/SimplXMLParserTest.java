@@ -0,0 +1,260 @@
+package ecologylab.serialization.deserializers.pullhandlers.stringformats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.Test;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.TranslationContext;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.StringFormat;
+
+public class SimplXMLParserTest
+{
+	@simpl_tag("note")
+	public static class Note
+	{
+		@simpl_scalar
+		String	title;
+
+		@simpl_scalar
+		String	body;
+
+		@simpl_scalar
+		int			number;
+	}
+
+	/**
+	 * @return The events, one per line: start and end tags with their attributes, and text in quotes.
+	 */
+	private static String events(XMLParser parser) throws SIMPLTranslationException
+	{
+		StringBuilder events = new StringBuilder();
+		for (int event = parser.next(); event != XMLParser.END_DOCUMENT; event = parser.next())
+		{
+			switch (event)
+			{
+			case XMLParser.START_ELEMENT:
+				events.append('<').append(parser.getName());
+				for (int i = 0; i < parser.getAttributeCount(); i++)
+				{
+					events.append(' ');
+					if (parser.getAttributePrefix(i).length() > 0)
+						events.append(parser.getAttributePrefix(i)).append(':');
+					events.append(parser.getAttributeLocalName(i)).append("=[")
+							.append(parser.getAttributeValue(i)).append(']');
+				}
+				events.append(">\n");
+				break;
+			case XMLParser.END_ELEMENT:
+				events.append("</").append(parser.getName()).append(">\n");
+				break;
+			case XMLParser.CHARACTERS:
+				events.append('"').append(parser.getText()).append("\"\n");
+				break;
+			}
+		}
+		return events.toString();
+	}
+
+	@Test
+	public void markupAndReferences() throws SIMPLTranslationException
+	{
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<!DOCTYPE note [ <!ELEMENT note ANY> ]>\n<!-- a comment -->\n"
+				+ "<note xmlns:simpl=\"http://ecologylab.net/research/simplGuide/serialization/index.html\""
+				+ " simpl:id='7' title=\"a &amp; b &lt;c&gt;\tand&#10;d\">"
+				+ "<?pi ignored?><body>one &quot;two&quot; &#x1F600; &apos;<![CDATA[<raw> & ]]]]></body>"
+				+ "<empty/><number>42</number>\r\n</note>\n";
+		SimplXMLParser parser = new SimplXMLParser();
+		parser.reset(xml);
+
+		assertEquals("<note simpl:id=[7] title=[a & b <c> and\nd]>\n" + "<body>\n"
+				+ "\"one \"two\" 😀 '\"\n" + "\"<raw> & ]]\"\n" + "</body>\n" + "<empty>\n"
+				+ "</empty>\n" + "<number>\n" + "\"42\"\n" + "</number>\n" + "\"\n\"\n" + "</note>\n",
+				events(parser));
+		assertEquals(XMLParser.END_DOCUMENT, parser.getEventType());
+	}
+
+	@Test
+	public void prefixesAndNextTag() throws SIMPLTranslationException
+	{
+		SimplXMLParser parser = new SimplXMLParser();
+		parser.reset("<a:b>\n  <c d:e=\"f\"/>\n</a:b>");
+
+		assertEquals(XMLParser.START_ELEMENT, parser.nextTag());
+		assertEquals("a", parser.getPrefix());
+		assertEquals("b", parser.getLocalName());
+		assertEquals(XMLParser.START_ELEMENT, parser.nextTag());
+		assertEquals("", parser.getPrefix());
+		assertEquals("c", parser.getLocalName());
+		assertEquals("d", parser.getAttributePrefix(0));
+		assertEquals("e", parser.getAttributeLocalName(0));
+		assertEquals("f", parser.getAttributeValueCharSequence(0).toString());
+		assertEquals(XMLParser.END_ELEMENT, parser.nextTag());
+		assertEquals("c", parser.getLocalName());
+		assertEquals(XMLParser.END_ELEMENT, parser.nextTag());
+		assertEquals("b", parser.getLocalName());
+	}
+
+	@Test
+	public void namespacesInScope() throws SIMPLTranslationException
+	{
+		SimplXMLParser parser = new SimplXMLParser();
+		parser.reset("<a xmlns=\"u\" xmlns:p=\"v\"><b xmlns:p=\"w&amp;x\"/><c p:d=\"e\"/></a>");
+
+		assertEquals(XMLParser.START_ELEMENT, parser.nextTag());
+		assertEquals(0, parser.getAttributeCount());
+		assertEquals(" xmlns=\"u\" xmlns:p=\"v\"", namespaceDeclarations(parser));
+		assertEquals(XMLParser.START_ELEMENT, parser.nextTag());
+		assertEquals(" xmlns=\"u\" xmlns:p=\"w&amp;x\"", namespaceDeclarations(parser));
+		assertEquals(XMLParser.END_ELEMENT, parser.nextTag());
+		assertEquals(XMLParser.START_ELEMENT, parser.nextTag());
+		assertEquals(" xmlns=\"u\" xmlns:p=\"v\"", namespaceDeclarations(parser));
+
+		parser.reset("<a/>");
+		assertEquals(XMLParser.START_ELEMENT, parser.nextTag());
+		assertEquals("", namespaceDeclarations(parser));
+	}
+
+	private static String namespaceDeclarations(SimplXMLParser parser)
+	{
+		StringBuilder tag = new StringBuilder();
+		parser.appendNamespaceDeclarations(tag);
+		return tag.toString();
+	}
+
+	@Test
+	public void malformedDocumentsThrow()
+	{
+		String[] documents = { "<a><b></a>", "<a>", "<a>&nbsp;</a>", "<a/><b/>", "text<a/>",
+				"<a x=\"1></a>" };
+		SimplXMLParser parser = new SimplXMLParser();
+		for (String document : documents)
+		{
+			try
+			{
+				parser.reset(document);
+				events(parser);
+				fail("parsed " + document);
+			}
+			catch (SIMPLTranslationException e)
+			{
+				// expected
+			}
+		}
+	}
+
+	/**
+	 * A document several buffers long, with multi-byte characters and references that straddle the
+	 * ends of buffers.
+	 */
+	private static String longDocument()
+	{
+		StringBuilder xml = new StringBuilder("<list>");
+		for (int i = 0; i < 2000; i++)
+			xml.append("<item name=\"café ").append(i).append("\">中文 &amp; 😀 ")
+					.append(i).append("</item>");
+		return xml.append("</list>").toString();
+	}
+
+	/**
+	 * Hands out a few bytes at a time.
+	 */
+	private static InputStream trickle(final byte[] bytes)
+	{
+		return new ByteArrayInputStream(bytes)
+		{
+			@Override
+			public synchronized int read(byte[] b, int off, int len)
+			{
+				return super.read(b, off, Math.min(len, 1 + pos % 7));
+			}
+		};
+	}
+
+	@Test
+	public void bytesMatchChars() throws Exception
+	{
+		String xml = longDocument();
+		SimplXMLParser parser = new SimplXMLParser();
+		parser.reset(xml);
+		String expected = events(parser);
+
+		byte[] utf8 = xml.getBytes("UTF-8");
+		parser.reset(trickle(utf8));
+		assertEquals(expected, events(parser));
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(utf8.length);
+		direct.put(utf8).flip();
+		parser.reset(direct);
+		assertEquals(expected, events(parser));
+
+		parser.reset(ByteBuffer.wrap(utf8));
+		assertEquals(expected, events(parser));
+
+		byte[] utf16 = xml.getBytes("UTF-16");
+		parser.reset(new ByteArrayInputStream(utf16));
+		assertEquals(expected, events(parser));
+	}
+
+	@Test
+	public void declaredEncoding() throws Exception
+	{
+		String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a b=\"é\">ü</a>";
+		SimplXMLParser parser = new SimplXMLParser();
+		parser.reset(new ByteArrayInputStream(xml.getBytes("ISO-8859-1")));
+		assertEquals("<a b=[é]>\n\"ü\"\n</a>\n", events(parser));
+	}
+
+	@Test
+	public void deserializeFromMappedFile() throws SIMPLTranslationException, IOException
+	{
+		Note note = new Note();
+		note.title = "café & <bar>";
+		note.body = "line 1\nline 2 中文";
+		note.number = 7;
+		String xml = SimplTypesScope.serialize(note, StringFormat.XML).toString();
+		SimplTypesScope scope = SimplTypesScope.get("simpl_xml_parser_test", Note.class);
+
+		File file = File.createTempFile("simpl_xml_parser_test", ".xml");
+		try
+		{
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(xml.getBytes("UTF-8"));
+			out.close();
+
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+			try
+			{
+				ByteBuffer mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+						file.length());
+				Note result = (Note) new XMLPullDeserializer(scope, new TranslationContext())
+						.parse(mapped);
+				assertEquals(note.title, result.title);
+				assertEquals(note.body, result.body);
+				assertEquals(7, result.number);
+			}
+			finally
+			{
+				randomAccessFile.close();
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+}
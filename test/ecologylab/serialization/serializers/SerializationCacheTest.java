@@ -0,0 +1,175 @@
+package ecologylab.serialization.serializers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ecologylab.serialization.ElementState;
+import ecologylab.serialization.ObservableElementState;
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.annotations.simpl_cached;
+import ecologylab.serialization.annotations.simpl_composite;
+import ecologylab.serialization.annotations.simpl_inherit;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.Format;
+import ecologylab.serialization.formatenums.StringFormat;
+
+public class SerializationCacheTest
+{
+	@simpl_cached
+	@simpl_tag("country")
+	public static class Country extends ElementState
+	{
+		@simpl_scalar
+		String	code;
+
+		@simpl_scalar
+		String	name;
+	}
+
+	@simpl_cached(versionField = "revision")
+	@simpl_tag("config")
+	public static class Config extends ElementState
+	{
+		@simpl_scalar
+		int			revision;
+
+		@simpl_scalar
+		String	mode;
+	}
+
+	@simpl_inherit
+	@simpl_cached
+	@simpl_tag("counter")
+	public static class Counter extends ObservableElementState
+	{
+		@simpl_scalar
+		int	count;
+
+		void increment()
+		{
+			count++;
+			fieldChanged("count");
+		}
+	}
+
+	@simpl_tag("message")
+	public static class Message extends ElementState
+	{
+		@simpl_composite
+		Country	from;
+
+		@simpl_composite
+		Config	config;
+
+		@simpl_composite
+		Counter	counter;
+	}
+
+	static Message message()
+	{
+		Message message = new Message();
+		message.from = new Country();
+		message.from.code = "nz";
+		message.from.name = "New Zealand";
+		message.config = new Config();
+		message.config.mode = "fast";
+		message.counter = new Counter();
+		return message;
+	}
+
+	static String serialize(Object object, StringFormat format) throws SIMPLTranslationException
+	{
+		return SimplTypesScope.serialize(object, format).toString();
+	}
+
+	static byte[] serialize(Object object, Format format) throws SIMPLTranslationException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		SimplTypesScope.serialize(object, bytes, format);
+		return bytes.toByteArray();
+	}
+
+	@After
+	public void uninstall()
+	{
+		SerializationCache.set(null);
+	}
+
+	@Test
+	public void cachedBodiesAreSplicedIn() throws SIMPLTranslationException
+	{
+		Message message = message();
+		String xml = serialize(message, StringFormat.XML);
+		String json = serialize(message, StringFormat.JSON);
+		byte[] tlv = serialize(message, Format.TLV);
+		byte[] tlv2 = serialize(message, Format.TLV2);
+
+		SerializationCache cache = new SerializationCache(1 << 20);
+		SerializationCache.set(cache);
+		for (int i = 0; i < 2; i++)
+		{
+			assertEquals(xml, serialize(message, StringFormat.XML));
+			assertEquals(json, serialize(message, StringFormat.JSON));
+			assertArrayEquals(tlv, serialize(message, Format.TLV));
+			assertArrayEquals(tlv2, serialize(message, Format.TLV2));
+		}
+		assertEquals(12, cache.size());
+		assertEquals(12, cache.getMissCount());
+		assertEquals(12, cache.getHitCount());
+
+		// the root is cached too, and its body is reused in any field
+		assertTrue(xml.contains(serialize(message.from, StringFormat.XML).replace("<country", "<from")));
+		assertEquals(13, cache.getHitCount());
+	}
+
+	@Test
+	public void changedVersionsAreSerializedAgain() throws SIMPLTranslationException
+	{
+		SerializationCache.set(new SerializationCache(1 << 20));
+		Message message = message();
+		serialize(message, StringFormat.XML);
+
+		message.from.name = "Aotearoa";
+		message.config.mode = "slow";
+		String xml = serialize(message, StringFormat.XML);
+		assertTrue(xml.contains("New Zealand"));
+		assertTrue(xml.contains("fast"));
+
+		message.config.revision++;
+		message.counter.increment();
+		xml = serialize(message, StringFormat.XML);
+		assertTrue(xml.contains("slow"));
+		assertTrue(xml.contains("count=\"1\""));
+
+		SerializationCache.get().remove(message.from);
+		assertTrue(serialize(message, StringFormat.XML).contains("Aotearoa"));
+	}
+
+	@Test
+	public void leastRecentlyUsedEntriesAreEvicted()
+	{
+		SerializationCache cache = new SerializationCache(3 * SerializationCache.ENTRY_OVERHEAD + 30);
+		Object a = new Object(), b = new Object(), c = new Object();
+		cache.put(a, Format.XML, 0, "0123456789");
+		cache.put(b, Format.XML, 0, "0123456789");
+		assertEquals("0123456789", cache.get(a, Format.XML, 0));
+		cache.put(c, Format.XML, 0, "01234567890");
+		assertEquals(1, cache.getEvictionCount());
+		assertNull(cache.get(b, Format.XML, 0));
+		assertEquals("0123456789", cache.get(a, Format.XML, 0));
+		assertNull(cache.get(a, Format.XML, 1));
+		assertEquals(2 * SerializationCache.ENTRY_OVERHEAD + 21, cache.getWeight());
+
+		cache.put(a, Format.XML, 0, new byte[1000]);
+		assertEquals(1, cache.size());
+	}
+}
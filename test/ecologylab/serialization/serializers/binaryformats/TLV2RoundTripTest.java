@@ -0,0 +1,162 @@
+package ecologylab.serialization.serializers.binaryformats;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.BinaryFormat;
+import ecologylab.serialization.primaryScenarioEnum;
+import ecologylab.serialization.secondaryScenarioEnum;
+import ecologylab.serialization.serializers.FormatSerializer;
+import ecologylab.serialization.types.ScalarType;
+
+public class TLV2RoundTripTest
+{
+
+	@simpl_tag("scalars")
+	public static class Scalars
+	{
+		@simpl_scalar
+		int										anInt;
+
+		@simpl_scalar
+		long									aLong;
+
+		@simpl_scalar
+		float									aFloat;
+
+		@simpl_scalar
+		double								aDouble;
+
+		@simpl_scalar
+		boolean								aBoolean;
+
+		@simpl_scalar
+		short									aShort;
+
+		@simpl_scalar
+		byte									aByte;
+
+		@simpl_scalar
+		char									aChar;
+
+		@simpl_scalar
+		Integer								boxed;
+
+		@simpl_scalar
+		String								text;
+
+		@simpl_scalar
+		Date									date;
+
+		@simpl_scalar
+		UUID									uuid;
+
+		@simpl_scalar
+		primaryScenarioEnum		named;
+
+		@simpl_scalar
+		secondaryScenarioEnum	valued;
+
+		@simpl_collection("n")
+		ArrayList<Integer>		numbers;
+	}
+
+	@Test
+	public void varintsRoundTrip() throws IOException
+	{
+		int[] ints = { 0, 1, -1, 63, -64, 64, 300, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		long[] longs = { 0, -1, 1L << 40, Long.MAX_VALUE, Long.MIN_VALUE };
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int i : ints)
+			ScalarType.writeVarInt(out, i);
+		for (long l : longs)
+			ScalarType.writeVarLong(out, l);
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		for (int i : ints)
+			assertEquals(i, ScalarType.readVarInt(in));
+		for (long l : longs)
+			assertEquals(l, ScalarType.readVarLong(in));
+		assertEquals(-1, in.read());
+	}
+
+	@Test
+	public void scalarsRoundTrip() throws SIMPLTranslationException
+	{
+		SimplTypesScope scope = SimplTypesScope.get("tlv2_round_trip_test", Scalars.class);
+
+		Scalars scalars = new Scalars();
+		scalars.anInt = -42;
+		scalars.aLong = 1L << 50;
+		scalars.aFloat = 1.5f;
+		scalars.aDouble = -Math.PI;
+		scalars.aBoolean = true;
+		scalars.aShort = -7;
+		scalars.aByte = 9;
+		scalars.aChar = 'é';
+		scalars.boxed = 12345;
+		scalars.text = "café & <tags>";
+		scalars.date = new Date(1234567890123L);
+		scalars.uuid = UUID.randomUUID();
+		scalars.named = primaryScenarioEnum.thirdValue;
+		scalars.valued = secondaryScenarioEnum.secondValue;
+		scalars.numbers = new ArrayList<Integer>();
+		scalars.numbers.add(-1);
+		scalars.numbers.add(1000000);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		FormatSerializer.getBinarySerializer(BinaryFormat.TLV2).serialize(scalars, bytes);
+		Scalars result = (Scalars) scope.codec(BinaryFormat.TLV2).deserialize(bytes.toByteArray());
+
+		assertEquals(scalars.anInt, result.anInt);
+		assertEquals(scalars.aLong, result.aLong);
+		assertEquals(scalars.aFloat, result.aFloat, 0);
+		assertEquals(scalars.aDouble, result.aDouble, 0);
+		assertEquals(scalars.aBoolean, result.aBoolean);
+		assertEquals(scalars.aShort, result.aShort);
+		assertEquals(scalars.aByte, result.aByte);
+		assertEquals(scalars.aChar, result.aChar);
+		assertEquals(scalars.boxed, result.boxed);
+		assertEquals(scalars.text, result.text);
+		assertEquals(scalars.date, result.date);
+		assertEquals(scalars.uuid, result.uuid);
+		assertEquals(scalars.named, result.named);
+		assertEquals(scalars.valued, result.valued);
+		assertEquals(scalars.numbers, result.numbers);
+	}
+
+	@Test
+	public void nullCollectionsAreSkipped() throws SIMPLTranslationException
+	{
+		SimplTypesScope scope = SimplTypesScope.get("tlv2_round_trip_test", Scalars.class);
+
+		Scalars scalars = new Scalars();
+		scalars.text = "only";
+		for (BinaryFormat format : BinaryFormat.values())
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			FormatSerializer.getBinarySerializer(format).serialize(scalars, bytes);
+			Scalars result = (Scalars) scope.codec(format).deserialize(bytes.toByteArray());
+
+			assertEquals(scalars.text, result.text);
+			assertEquals(null, result.numbers);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package ecologylab.serialization.serializers.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferOutputTest
+{
+
+	static void writeEverything(DataOutput out) throws IOException
+	{
+		out.writeInt(0xCAFEBABE);
+		out.writeLong(-2);
+		out.writeShort(-3);
+		out.writeChar('é');
+		out.writeBoolean(true);
+		out.writeByte(0x7F);
+		out.writeFloat(1.5f);
+		out.writeDouble(-0.25);
+		out.writeBytes("bytes");
+		out.writeChars("chars");
+		out.writeUTF("héllo 日本 \u0000");
+		out.write(new byte[100], 10, 50);
+	}
+
+	@Test
+	public void writesLikeDataOutputStream() throws IOException
+	{
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		writeEverything(new DataOutputStream(expected));
+
+		for (boolean direct : new boolean[] { false, true })
+		{
+			ByteBufferOutput output = new ByteBufferOutput(16, direct);
+			writeEverything(output);
+
+			assertArrayEquals(expected.toByteArray(), output.toByteArray());
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			output.writeTo(written);
+			assertArrayEquals(expected.toByteArray(), written.toByteArray());
+		}
+	}
+
+	@Test
+	public void patchesReservedLengths()
+	{
+		ByteBufferOutput output = new ByteBufferOutput(16, false);
+		int outer = output.reserveInt();
+		output.writeInt(7);
+		int inner = output.reserveInt();
+		output.write(new byte[40]);
+		output.patchInt(inner, output.position() - inner - 4);
+		output.patchInt(outer, output.position() - outer - 4);
+
+		ByteBuffer bytes = output.byteBuffer();
+		assertEquals(52, bytes.remaining());
+		assertEquals(48, bytes.getInt());
+		assertEquals(7, bytes.getInt());
+		assertEquals(40, bytes.getInt());
+
+		output.clear();
+		assertEquals(0, output.byteBuffer().remaining());
+	}
+}
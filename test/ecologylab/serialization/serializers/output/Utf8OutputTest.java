@@ -0,0 +1,97 @@
+package ecologylab.serialization.serializers.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+public class Utf8OutputTest
+{
+
+	static final String	MIXED	= "plain ascii, héllo, 日本語, 😀 & <tags>";
+
+	@Test
+	public void encodesLikeStringGetBytes() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Utf8Output output = new Utf8Output(bytes);
+		output.append(MIXED);
+		output.release();
+
+		assertArrayEquals(MIXED.getBytes("UTF-8"), bytes.toByteArray());
+	}
+
+	@Test
+	public void joinsSurrogatePairSplitAcrossAppends() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Utf8Output output = new Utf8Output(Channels.newChannel(bytes));
+		output.append('x').append('\ud83d').append("\ude00y");
+		output.release();
+
+		assertEquals("x😀y", new String(bytes.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void drainsWhenStagingBufferFills() throws IOException
+	{
+		StringBuilder big = new StringBuilder();
+		while (big.length() < 3 * Utf8Output.STAGING_BUFFER_SIZE)
+			big.append(MIXED);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Utf8Output output = new Utf8Output(bytes);
+		for (int i = 0; i < big.length(); i++)
+			output.append(big.charAt(i));
+		output.release();
+
+		assertEquals(big.toString(), new String(bytes.toByteArray(), "UTF-8"));
+	}
+
+	@Test
+	public void copiesFragmentsAcrossDrains() throws IOException
+	{
+		OutputFragment fragment = OutputFragment.of("<tég>");
+		StringBuilder expected = new StringBuilder("?<tég>");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Utf8Output output = new Utf8Output(bytes);
+		output.append('\ud83d').append(fragment);
+		while (expected.length() < 3 * Utf8Output.STAGING_BUFFER_SIZE)
+		{
+			output.append(fragment).append('x');
+			expected.append(fragment).append('x');
+		}
+		output.release();
+
+		assertEquals(expected.toString(), new String(bytes.toByteArray(), "UTF-8"));
+
+		StringBuilder chars = new StringBuilder();
+		new StringBuilderOutput(chars).append(fragment).append(fragment);
+		assertEquals("<tég><tég>", chars.toString());
+	}
+
+	@Test
+	public void writesIntoByteBufferUntilFull() throws IOException
+	{
+		ByteBuffer target = ByteBuffer.allocate(8);
+		Utf8Output output = new Utf8Output(target);
+		output.append("123456");
+		try
+		{
+			output.append("é's");
+			fail("expected the target ByteBuffer to overflow");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+		assertEquals(8, target.position());
+	}
+}
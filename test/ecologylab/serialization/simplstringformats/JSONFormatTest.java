@@ -1,14 +1,42 @@
 package ecologylab.serialization.simplstringformats;
 
 import static ecologylab.serialization.simplstringformats.SimplStringFormatTesting.roundtrip;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.junit.Test;
 
 import ecologylab.serialization.ISimplStringFormat;
+import ecologylab.serialization.SIMPLTranslationException;
+import ecologylab.serialization.SimplTypesScope;
+import ecologylab.serialization.annotations.simpl_collection;
+import ecologylab.serialization.annotations.simpl_scalar;
+import ecologylab.serialization.annotations.simpl_tag;
+import ecologylab.serialization.formatenums.StringFormat;
 
 
 public class JSONFormatTest {
 
+	@simpl_tag("shelf")
+	public static class Shelf {
+		@simpl_collection("book")
+		ArrayList<Book> books;
+
+		@simpl_collection("label")
+		ArrayList<String> labels;
+
+		@simpl_scalar
+		String name;
+	}
+
+	@simpl_tag("book")
+	public static class Book {
+		@simpl_scalar
+		String title;
+	}
+
 	@Test
 	public void testAFewCases() {
 		ISimplStringFormat format = new JSONFormat();
@@ -16,4 +44,18 @@ public class JSONFormatTest {
 		roundtrip(format, "sad;lkfjsadf \r\n <some html asdfasdf> </html> <!CDATA[\"awwwwwww yeah \"]--> ");	
 	}
 
+	@Test
+	public void fieldsAfterAWrappedCollectionAreRead() throws SIMPLTranslationException {
+		SimplTypesScope scope = SimplTypesScope.get("json_format_test", Shelf.class, Book.class);
+		String json = "{\"shelf\":{\"books\":{\"book\":[{\"title\":\"a\"},{\"title\":\"b\"}]},"
+				+ "\"labels\":{\"label\":[\"x\",\"y\"]},\"name\":\"top\"}}";
+
+		Shelf shelf = (Shelf) scope.deserialize(json, StringFormat.JSON);
+
+		assertEquals(2, shelf.books.size());
+		assertEquals("b", shelf.books.get(1).title);
+		assertEquals(Arrays.asList("x", "y"), shelf.labels);
+		assertEquals("top", shelf.name);
+	}
+
 }